@@ -0,0 +1,98 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.hadoop.hbase;
+
+import java.nio.ByteBuffer;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.hadoop.hbase.benchmarks.BenchmarkData;
+import org.apache.hadoop.hbase.classification.InterfaceAudience;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * {@link CellComparator} on neighbouring cells of the same row, which differ in their
+ * qualifier, and on cells of neighbouring rows, which share a long row prefix. Cells are
+ * either on-heap {@link KeyValue}s or {@link OffheapKeyValue}s over direct memory.
+ */
+@InterfaceAudience.Private
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 1, jvmArgsAppend = { "-Xms1g", "-Xmx1g" })
+public class CellComparatorBenchmark {
+  private static final int ROWS = 1024;
+  private static final int COLUMNS = 4;
+
+  @Param({ "KeyValue", "OffheapKeyValue" })
+  public String cellType;
+
+  private Cell[] cells;
+  private int sameRowIndex;
+  private int nextRowIndex;
+
+  @Setup
+  public void setUp() {
+    List<KeyValue> kvs = BenchmarkData.sortedKeyValues(ROWS, COLUMNS, 16);
+    cells = new Cell[kvs.size()];
+    for (int i = 0; i < cells.length; i++) {
+      KeyValue kv = kvs.get(i);
+      if ("OffheapKeyValue".equals(cellType)) {
+        ByteBuffer buf = ByteBuffer.allocateDirect(kv.getLength());
+        buf.put(kv.getBuffer(), kv.getOffset(), kv.getLength());
+        cells[i] = new OffheapKeyValue(buf, 0, kv.getLength(), false, 0);
+      } else {
+        cells[i] = kv;
+      }
+    }
+  }
+
+  @Benchmark
+  public int compareSameRow() {
+    // Cell i and i + 1 are on the same row unless i is the last column of its row
+    int i = sameRowIndex;
+    sameRowIndex = (i + COLUMNS) % (cells.length - COLUMNS);
+    return CellComparator.COMPARATOR.compare(cells[i], cells[i + 1]);
+  }
+
+  @Benchmark
+  public int compareNextRow() {
+    int i = nextRowIndex;
+    nextRowIndex = (i + COLUMNS) % (cells.length - COLUMNS);
+    return CellComparator.COMPARATOR.compare(cells[i], cells[i + COLUMNS]);
+  }
+
+  @Benchmark
+  public int compareRows() {
+    int i = nextRowIndex;
+    nextRowIndex = (i + COLUMNS) % (cells.length - COLUMNS);
+    return CellComparator.COMPARATOR.compareRows(cells[i], cells[i + COLUMNS]);
+  }
+}
@@ -0,0 +1,85 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.hadoop.hbase;
+
+import java.nio.ByteBuffer;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.hadoop.hbase.benchmarks.BenchmarkData;
+import org.apache.hadoop.hbase.classification.InterfaceAudience;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+/**
+ * Parsing serialized {@link KeyValue}s: walking a block of them the way an unencoded HFile
+ * block is read, and pulling apart the key of each.
+ */
+@InterfaceAudience.Private
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 1, jvmArgsAppend = { "-Xms1g", "-Xmx1g" })
+public class KeyValueBenchmark {
+  private static final int ROWS = 256;
+  private static final int COLUMNS = 4;
+
+  @Param({ "16", "256" })
+  public int valueLength;
+
+  private byte[] block;
+  private KeyValue[] kvs;
+
+  @Setup
+  public void setUp() {
+    List<KeyValue> list = BenchmarkData.sortedKeyValues(ROWS, COLUMNS, valueLength);
+    block = BenchmarkData.serialize(list);
+    kvs = list.toArray(new KeyValue[list.size()]);
+  }
+
+  @Benchmark
+  public void walkBlock(Blackhole bh) {
+    ByteBuffer buf = ByteBuffer.wrap(block);
+    KeyValue kv;
+    while ((kv = KeyValueUtil.nextShallowCopy(buf, false, false)) != null) {
+      bh.consume(kv);
+    }
+  }
+
+  @Benchmark
+  public long parseKeys() {
+    long sum = 0;
+    for (KeyValue kv : kvs) {
+      sum += kv.getRowLength() + kv.getFamilyLength() + kv.getQualifierLength()
+          + kv.getQualifierOffset() + kv.getTimestamp() + kv.getTypeByte() + kv.getValueLength();
+    }
+    return sum;
+  }
+}
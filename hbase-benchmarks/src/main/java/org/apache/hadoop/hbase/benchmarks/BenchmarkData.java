@@ -0,0 +1,94 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.hadoop.hbase.benchmarks;
+
+import java.io.ByteArrayOutputStream;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import org.apache.hadoop.hbase.KeyValue;
+import org.apache.hadoop.hbase.classification.InterfaceAudience;
+import org.apache.hadoop.hbase.util.Bytes;
+
+/**
+ * Generates the data the benchmarks run on. Everything derives from a fixed seed, so every run,
+ * on any build and any machine, measures the same bytes.
+ */
+@InterfaceAudience.Private
+public final class BenchmarkData {
+  public static final long SEED = 0x48426173654A4D48L;
+
+  public static final byte[] FAMILY = Bytes.toBytes("f");
+  public static final long TIMESTAMP = 1451606400000L;
+
+  private BenchmarkData() {
+  }
+
+  /**
+   * @param salt distinguishes the datasets of different benchmarks
+   */
+  public static Random newRandom(long salt) {
+    return new Random(SEED ^ salt);
+  }
+
+  public static byte[] randomBytes(Random random, int length) {
+    byte[] bytes = new byte[length];
+    random.nextBytes(bytes);
+    return bytes;
+  }
+
+  /**
+   * @return row key <code>i</code>; keys share a long common prefix and sort in order of
+   *         <code>i</code>, like the keys of a real table
+   */
+  public static byte[] row(int i) {
+    return Bytes.toBytes(String.format("user-row-%010d", i));
+  }
+
+  public static byte[] qualifier(int i) {
+    return Bytes.toBytes(String.format("q%04d", i));
+  }
+
+  /**
+   * @return <code>rows * columnsPerRow</code> KeyValues in sort order, with random values
+   */
+  public static List<KeyValue> sortedKeyValues(int rows, int columnsPerRow, int valueLength) {
+    Random random = newRandom(rows * 31L + columnsPerRow);
+    List<KeyValue> kvs = new ArrayList<KeyValue>(rows * columnsPerRow);
+    for (int r = 0; r < rows; r++) {
+      byte[] row = row(r);
+      for (int c = 0; c < columnsPerRow; c++) {
+        kvs.add(new KeyValue(row, FAMILY, qualifier(c), TIMESTAMP,
+            randomBytes(random, valueLength)));
+      }
+    }
+    return kvs;
+  }
+
+  /**
+   * @return the KeyValues back to back in their serialized form, as in an unencoded block
+   */
+  public static byte[] serialize(List<KeyValue> kvs) {
+    ByteArrayOutputStream out = new ByteArrayOutputStream();
+    for (KeyValue kv : kvs) {
+      out.write(kv.getBuffer(), kv.getOffset(), kv.getLength());
+    }
+    return out.toByteArray();
+  }
+}
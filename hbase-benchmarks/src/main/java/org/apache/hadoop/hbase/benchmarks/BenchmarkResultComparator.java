@@ -0,0 +1,144 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.hadoop.hbase.benchmarks;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.TreeMap;
+
+import org.apache.hadoop.hbase.classification.InterfaceAudience;
+import org.codehaus.jackson.JsonNode;
+import org.codehaus.jackson.map.ObjectMapper;
+
+/**
+ * Compares two JMH JSON result files, typically of two builds, benchmark by benchmark.
+ * <p>
+ * Usage: <code>BenchmarkResultComparator &lt;baseline.json&gt; &lt;current.json&gt;
+ * [threshold percent, default 10]</code>
+ * <p>
+ * A change only counts when it is larger than both the error margins of the two scores added up
+ * and the threshold. Exits with 1 if any benchmark got slower by such a change, so it can gate a
+ * build.
+ */
+@InterfaceAudience.Private
+public final class BenchmarkResultComparator {
+
+  static final double DEFAULT_THRESHOLD_PERCENT = 10;
+
+  /** One benchmark result: a score with its error margin */
+  static final class Score {
+    final String mode;
+    final double score;
+    final double error;
+    final String unit;
+
+    Score(String mode, double score, double error, String unit) {
+      this.mode = mode;
+      this.score = score;
+      this.error = Double.isNaN(error) ? 0 : error;
+      this.unit = unit;
+    }
+
+    /** Throughput-like modes count operations per time unit, so there higher is better */
+    boolean higherIsBetter() {
+      return "thrpt".equals(mode);
+    }
+  }
+
+  private BenchmarkResultComparator() {
+  }
+
+  /**
+   * @return the scores of a JMH JSON result file, keyed by benchmark name and parameters
+   */
+  static Map<String, Score> readScores(File file) throws IOException {
+    JsonNode results = new ObjectMapper().readTree(file);
+    Map<String, Score> scores = new TreeMap<String, Score>();
+    for (JsonNode result : results) {
+      StringBuilder key = new StringBuilder(result.get("benchmark").getTextValue());
+      JsonNode params = result.get("params");
+      if (params != null) {
+        // Sort the parameters so the key does not depend on their order in the file
+        Map<String, String> sorted = new TreeMap<String, String>();
+        for (Iterator<Map.Entry<String, JsonNode>> it = params.getFields(); it.hasNext();) {
+          Map.Entry<String, JsonNode> param = it.next();
+          sorted.put(param.getKey(), param.getValue().asText());
+        }
+        key.append(sorted);
+      }
+      key.append(" threads=").append(result.get("threads").asInt());
+      JsonNode metric = result.get("primaryMetric");
+      scores.put(key.toString(), new Score(result.get("mode").getTextValue(),
+          metric.get("score").asDouble(), metric.get("scoreError").asDouble(),
+          metric.get("scoreUnit").getTextValue()));
+    }
+    return scores;
+  }
+
+  /**
+   * Prints the comparison of every benchmark in either file.
+   * @return the number of benchmarks that got slower beyond noise and threshold
+   */
+  static int compare(Map<String, Score> baseline, Map<String, Score> current,
+      double thresholdPercent, PrintStream out) {
+    int regressions = 0;
+    for (Map.Entry<String, Score> e : current.entrySet()) {
+      Score cur = e.getValue();
+      Score base = baseline.get(e.getKey());
+      if (base == null) {
+        out.println(String.format("NEW     %s: %.3f +/- %.3f %s", e.getKey(), cur.score,
+          cur.error, cur.unit));
+        continue;
+      }
+      double change = base.score == 0 ? 0 : (cur.score - base.score) * 100 / base.score;
+      String verdict = "SAME   ";
+      if (Math.abs(cur.score - base.score) > base.error + cur.error
+          && Math.abs(change) >= thresholdPercent) {
+        boolean better = (cur.score > base.score) == cur.higherIsBetter();
+        verdict = better ? "FASTER " : "SLOWER ";
+        if (!better) {
+          regressions++;
+        }
+      }
+      out.println(String.format("%s %s: %.3f +/- %.3f -> %.3f +/- %.3f %s (%+.1f%%)", verdict,
+        e.getKey(), base.score, base.error, cur.score, cur.error, cur.unit, change));
+    }
+    for (String key : baseline.keySet()) {
+      if (!current.containsKey(key)) {
+        out.println("GONE    " + key);
+      }
+    }
+    return regressions;
+  }
+
+  public static void main(String[] args) throws IOException {
+    if (args.length < 2 || args.length > 3) {
+      System.err.println("Usage: " + BenchmarkResultComparator.class.getName()
+          + " <baseline.json> <current.json> [threshold percent, default "
+          + DEFAULT_THRESHOLD_PERCENT + "]");
+      System.exit(2);
+    }
+    double threshold = args.length > 2 ? Double.parseDouble(args[2]) : DEFAULT_THRESHOLD_PERCENT;
+    int regressions = compare(readScores(new File(args[0])), readScores(new File(args[1])),
+      threshold, System.out);
+    System.exit(regressions > 0 ? 1 : 0);
+  }
+}
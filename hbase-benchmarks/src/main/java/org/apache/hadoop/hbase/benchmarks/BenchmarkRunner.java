@@ -0,0 +1,59 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.hadoop.hbase.benchmarks;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import org.apache.hadoop.hbase.classification.InterfaceAudience;
+import org.apache.hadoop.hbase.util.VersionInfo;
+import org.openjdk.jmh.Main;
+
+/**
+ * Entry point of the benchmarks jar. Takes the regular JMH command line, but unless a result
+ * format is given, writes the results as JSON to a file named after the HBase version and
+ * source revision, ready to be compared with {@link BenchmarkResultComparator}.
+ */
+@InterfaceAudience.Private
+public final class BenchmarkRunner {
+
+  private BenchmarkRunner() {
+  }
+
+  static String defaultResultFile() {
+    String revision = VersionInfo.getRevision();
+    if (revision.length() > 12) {
+      revision = revision.substring(0, 12);
+    }
+    return "jmh-" + VersionInfo.getVersion() + "-" + revision + ".json";
+  }
+
+  public static void main(String[] args) throws Exception {
+    List<String> jmhArgs = new ArrayList<String>(Arrays.asList(args));
+    if (!jmhArgs.contains("-rf")) {
+      jmhArgs.add("-rf");
+      jmhArgs.add("json");
+      if (!jmhArgs.contains("-rff")) {
+        jmhArgs.add("-rff");
+        jmhArgs.add(defaultResultFile());
+      }
+    }
+    Main.main(jmhArgs.toArray(new String[jmhArgs.size()]));
+  }
+}
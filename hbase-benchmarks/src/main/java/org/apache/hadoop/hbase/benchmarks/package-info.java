@@ -0,0 +1,45 @@
+/*
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+/**
+JMH microbenchmarks of HBase hot paths, and the tooling to run them and compare runs.
+
+<p>The benchmarks live next to the code they measure, in the same packages, so they can reach
+package-private classes such as the memstore's cell set. They run on data generated by
+{@link org.apache.hadoop.hbase.benchmarks.BenchmarkData} from a fixed seed, so two runs measure
+the same bytes.</p>
+
+<h2>Running</h2>
+<pre>
+mvn package -DskipTests -pl hbase-benchmarks -am
+java -jar hbase-benchmarks/target/benchmarks.jar [benchmark regex] [JMH options]
+</pre>
+<p>Without a regex every benchmark runs; <code>-h</code> lists the JMH options. Unless
+<code>-rf</code> is given, results are written as JSON to
+<code>jmh-&lt;version&gt;-&lt;revision&gt;.json</code> in the working directory.</p>
+
+<h2>Comparing two builds</h2>
+<pre>
+java -cp hbase-benchmarks/target/benchmarks.jar \
+  org.apache.hadoop.hbase.benchmarks.BenchmarkResultComparator before.json after.json [percent]
+</pre>
+<p>Prints each benchmark as FASTER, SLOWER or SAME and exits with 1 if any got slower by more
+than its error margin and the threshold, 10% unless given.</p>
+*/
+package org.apache.hadoop.hbase.benchmarks;
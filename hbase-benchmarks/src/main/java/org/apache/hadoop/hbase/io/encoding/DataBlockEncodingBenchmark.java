@@ -0,0 +1,157 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.hadoop.hbase.io.encoding;
+
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.hadoop.hbase.Cell;
+import org.apache.hadoop.hbase.CellComparator;
+import org.apache.hadoop.hbase.HConstants;
+import org.apache.hadoop.hbase.KeyValue;
+import org.apache.hadoop.hbase.benchmarks.BenchmarkData;
+import org.apache.hadoop.hbase.classification.InterfaceAudience;
+import org.apache.hadoop.hbase.io.ByteArrayOutputStream;
+import org.apache.hadoop.hbase.io.compress.Compression;
+import org.apache.hadoop.hbase.io.hfile.HFileContext;
+import org.apache.hadoop.hbase.io.hfile.HFileContextBuilder;
+import org.apache.hadoop.hbase.nio.SingleByteBuff;
+import org.openjdk.jmh.annotations.AuxCounters;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+/**
+ * Encoding a data block, scanning it through the seeker and seeking to random keys in it, for
+ * each {@link DataBlockEncoding}. The block holds about 64KB of cells, the default block size.
+ * The counters of {@link #encodeBlock(Counters)} give the encoded block size, so seek times can
+ * be weighed against the space an encoding saves.
+ */
+@InterfaceAudience.Private
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 1, jvmArgsAppend = { "-Xms1g", "-Xmx1g" })
+public class DataBlockEncodingBenchmark {
+  private static final int ROWS = 512;
+  private static final int COLUMNS = 4;
+  private static final int VALUE_LENGTH = 8;
+  private static final int SEEK_KEYS = 1024;
+  private static final int ENCODED_DATA_OFFSET =
+      HConstants.HFILEBLOCK_HEADER_SIZE + DataBlockEncoding.ID_SIZE;
+
+  @Param({ "PREFIX", "DIFF", "FAST_DIFF", "PREFIX_TREE", "ROW_INDEX_V1" })
+  public String encoding;
+
+  private List<KeyValue> kvs;
+  private DataBlockEncoder encoder;
+  private HFileBlockEncodingContext encodingCtx;
+  private DataBlockEncoder.EncodedSeeker seeker;
+  private SingleByteBuff encodedBlock;
+  private Cell[] seekKeys;
+  private int seekIndex;
+
+  @AuxCounters
+  @State(Scope.Thread)
+  public static class Counters {
+    public long blocks;
+    public long encodedBytes;
+
+    @Setup(Level.Iteration)
+    public void reset() {
+      blocks = 0;
+      encodedBytes = 0;
+    }
+  }
+
+  @Setup
+  public void setUp() throws IOException {
+    DataBlockEncoding dbe = DataBlockEncoding.valueOf(encoding);
+    HFileContext meta = new HFileContextBuilder().withHBaseCheckSum(false)
+        .withIncludesMvcc(false).withIncludesTags(false)
+        .withCompression(Compression.Algorithm.NONE).build();
+    kvs = BenchmarkData.sortedKeyValues(ROWS, COLUMNS, VALUE_LENGTH);
+    encoder = dbe.getEncoder();
+    encodingCtx = encoder.newDataBlockEncodingContext(dbe, HConstants.HFILEBLOCK_DUMMY_HEADER,
+      meta);
+    byte[] encoded = encode();
+    encodedBlock = new SingleByteBuff(
+        ByteBuffer.wrap(encoded, ENCODED_DATA_OFFSET, encoded.length - ENCODED_DATA_OFFSET)
+            .slice());
+    seeker = encoder.createSeeker(CellComparator.COMPARATOR,
+      encoder.newDataBlockDecodingContext(meta));
+    seeker.setCurrentBuffer(encodedBlock);
+
+    Random random = BenchmarkData.newRandom(SEEK_KEYS);
+    seekKeys = new Cell[SEEK_KEYS];
+    for (int i = 0; i < SEEK_KEYS; i++) {
+      seekKeys[i] = kvs.get(random.nextInt(kvs.size()));
+    }
+  }
+
+  private byte[] encode() throws IOException {
+    ByteArrayOutputStream baos = new ByteArrayOutputStream();
+    baos.write(HConstants.HFILEBLOCK_DUMMY_HEADER);
+    DataOutputStream dos = new DataOutputStream(baos);
+    encoder.startBlockEncoding(encodingCtx, dos);
+    for (KeyValue kv : kvs) {
+      encoder.encode(kv, encodingCtx, dos);
+    }
+    encoder.endBlockEncoding(encodingCtx, dos, baos.getBuffer());
+    return baos.toByteArray();
+  }
+
+  @Benchmark
+  public byte[] encodeBlock(Counters counters) throws IOException {
+    byte[] encoded = encode();
+    counters.blocks++;
+    counters.encodedBytes += encoded.length - ENCODED_DATA_OFFSET;
+    return encoded;
+  }
+
+  @Benchmark
+  public void scanBlock(Blackhole bh) {
+    seeker.rewind();
+    do {
+      bh.consume(seeker.getCell());
+    } while (seeker.next());
+  }
+
+  @Benchmark
+  public int seekInBlock() {
+    int i = seekIndex;
+    seekIndex = (i + 1) % SEEK_KEYS;
+    return seeker.seekToKeyInBlock(seekKeys[i], false);
+  }
+}
@@ -0,0 +1,138 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.hadoop.hbase.io.hfile;
+
+import java.nio.ByteBuffer;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.hadoop.hbase.classification.InterfaceAudience;
+import org.openjdk.jmh.annotations.AuxCounters;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Replays a read trace against an {@link LruBlockCache} with and without an admission policy.
+ * Random reads of a hot working set that would fit the cache are interleaved with a scan that
+ * never reads a block twice. The hits and misses counters of the result are what to compare
+ * between the policies; the time per access shows what the policy costs.
+ */
+@InterfaceAudience.Private
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 1, jvmArgsAppend = { "-Xms1g", "-Xmx1g" })
+public class BlockCacheAdmissionBenchmark {
+  private static final int BLOCK_SIZE = 1024;
+  private static final int CACHED_BLOCKS = 4096;
+  private static final int HOT_BLOCKS = CACHED_BLOCKS * 3 / 4;
+
+  @Param({ "none", "tinylfu" })
+  public String policy;
+
+  /** Percentage of the reads that go to the scan rather than the hot set */
+  @Param({ "50" })
+  public int scanPercent;
+
+  private LruBlockCache cache;
+  private Random random;
+  private long nextScanBlock;
+
+  /** Hits and misses of the measured iterations, reported next to the time per access */
+  @AuxCounters
+  @State(Scope.Thread)
+  public static class Counters {
+    public long hits;
+    public long misses;
+
+    @Setup(Level.Iteration)
+    public void reset() {
+      hits = 0;
+      misses = 0;
+    }
+  }
+
+  @Setup
+  public void setUp() {
+    cache = new LruBlockCache((long) CACHED_BLOCKS * BLOCK_SIZE, BLOCK_SIZE, false);
+    if (!"none".equals(policy)) {
+      cache.setAdmissionPolicy(new TinyLfuAdmissionPolicy(CACHED_BLOCKS));
+    }
+    random = new Random(42);
+    nextScanBlock = HOT_BLOCKS;
+  }
+
+  @Benchmark
+  public boolean access(Counters counters) {
+    long block = random.nextInt(100) < scanPercent ? nextScanBlock++ : random.nextInt(HOT_BLOCKS);
+    BlockCacheKey key = new BlockCacheKey("hfile", block * BLOCK_SIZE);
+    if (cache.getBlock(key, true, false, true) != null) {
+      counters.hits++;
+      return true;
+    }
+    counters.misses++;
+    cache.cacheBlock(key, Block.INSTANCE);
+    return false;
+  }
+
+  /** A cached block that takes up a block's worth of heap without holding any data */
+  private static class Block implements Cacheable {
+    static final Block INSTANCE = new Block();
+
+    @Override
+    public long heapSize() {
+      return BLOCK_SIZE;
+    }
+
+    @Override
+    public int getSerializedLength() {
+      return 0;
+    }
+
+    @Override
+    public void serialize(ByteBuffer destination) {
+    }
+
+    @Override
+    public CacheableDeserializer<Cacheable> getDeserializer() {
+      return null;
+    }
+
+    @Override
+    public BlockType getBlockType() {
+      return BlockType.DATA;
+    }
+
+    @Override
+    public MemoryType getMemoryType() {
+      return MemoryType.EXCLUSIVE;
+    }
+  }
+}
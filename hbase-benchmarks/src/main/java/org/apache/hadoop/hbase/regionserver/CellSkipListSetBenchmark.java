@@ -0,0 +1,124 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.hadoop.hbase.regionserver;
+
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.apache.hadoop.hbase.Cell;
+import org.apache.hadoop.hbase.CellComparator;
+import org.apache.hadoop.hbase.CellUtil;
+import org.apache.hadoop.hbase.KeyValue;
+import org.apache.hadoop.hbase.benchmarks.BenchmarkData;
+import org.apache.hadoop.hbase.classification.InterfaceAudience;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * The memstore's {@link CellSkipListSet}: inserts from concurrent writers, as handlers do, and
+ * point lookups in a filled set, as gets and scanner seeks do.
+ */
+@InterfaceAudience.Private
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 1, jvmArgsAppend = { "-Xms1g", "-Xmx1g" })
+public class CellSkipListSetBenchmark {
+  private static final int ROWS = 64 * 1024;
+  private static final int COLUMNS = 4;
+
+  private KeyValue[] cells;
+  private Cell[] lookupKeys;
+  private CellSkipListSet filled;
+  private CellSkipListSet fresh;
+  private final AtomicInteger next = new AtomicInteger();
+
+  @Setup
+  public void setUp() {
+    List<KeyValue> kvs = BenchmarkData.sortedKeyValues(ROWS, COLUMNS, 16);
+    cells = kvs.toArray(new KeyValue[kvs.size()]);
+    // Insert in random order so the set is not built from an ordered stream
+    Random random = BenchmarkData.newRandom(ROWS);
+    for (int i = cells.length - 1; i > 0; i--) {
+      int j = random.nextInt(i + 1);
+      KeyValue tmp = cells[i];
+      cells[i] = cells[j];
+      cells[j] = tmp;
+    }
+    filled = new CellSkipListSet(CellComparator.COMPARATOR);
+    for (KeyValue kv : cells) {
+      filled.add(kv);
+    }
+    lookupKeys = new Cell[cells.length];
+    for (int i = 0; i < cells.length; i++) {
+      lookupKeys[i] = CellUtil.createFirstOnRow(cells[i]);
+    }
+  }
+
+  /**
+   * Start every iteration on an empty set, so adds measure a growing memstore and not
+   * overwrites of existing cells.
+   */
+  @Setup(Level.Iteration)
+  public void newSet() {
+    fresh = new CellSkipListSet(CellComparator.COMPARATOR);
+    next.set(0);
+  }
+
+  private int nextIndex() {
+    return (next.getAndIncrement() & Integer.MAX_VALUE) % cells.length;
+  }
+
+  @Benchmark
+  @Threads(1)
+  public boolean add() {
+    return fresh.add(cells[nextIndex()]);
+  }
+
+  @Benchmark
+  @Threads(8)
+  public boolean addConcurrent() {
+    return fresh.add(cells[nextIndex()]);
+  }
+
+  @Benchmark
+  @Threads(1)
+  public Cell ceiling() {
+    return filled.ceiling(lookupKeys[nextIndex()]);
+  }
+
+  @Benchmark
+  @Threads(1)
+  public Cell get() {
+    return filled.get(cells[nextIndex()]);
+  }
+}
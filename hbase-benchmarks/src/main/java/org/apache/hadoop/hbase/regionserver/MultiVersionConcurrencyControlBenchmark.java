@@ -0,0 +1,161 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.hadoop.hbase.regionserver;
+
+import java.util.LinkedList;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.apache.hadoop.hbase.classification.InterfaceAudience;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * A write transaction through {@link MultiVersionConcurrencyControl}: begin, complete and wait
+ * for the read point, from one writer and from eight concurrent ones. The
+ * <code>synchronized</code> variant is the write queue as it was before it went lock-free, kept
+ * here as the baseline to compare against.
+ */
+@InterfaceAudience.Private
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 1, jvmArgsAppend = { "-Xms1g", "-Xmx1g" })
+public class MultiVersionConcurrencyControlBenchmark {
+
+  @Param({ "lockfree", "synchronized" })
+  public String impl;
+
+  private MultiVersionConcurrencyControl mvcc;
+  private SynchronizedMvcc synchronizedMvcc;
+
+  @Setup
+  public void setUp() {
+    if ("synchronized".equals(impl)) {
+      synchronizedMvcc = new SynchronizedMvcc();
+    } else {
+      mvcc = new MultiVersionConcurrencyControl();
+    }
+  }
+
+  private long write() {
+    if (synchronizedMvcc != null) {
+      SynchronizedMvcc.Entry e = synchronizedMvcc.begin();
+      synchronizedMvcc.completeAndWait(e);
+      return e.writeNumber;
+    }
+    MultiVersionConcurrencyControl.WriteEntry e = mvcc.begin();
+    mvcc.completeAndWait(e);
+    return e.getWriteNumber();
+  }
+
+  @Benchmark
+  @Threads(1)
+  public long write1() {
+    return write();
+  }
+
+  @Benchmark
+  @Threads(8)
+  public long write8() {
+    return write();
+  }
+
+  /**
+   * The write queue of MultiVersionConcurrencyControl before it went lock-free: a linked list
+   * guarded by its own monitor, with readers waiting on a second one.
+   */
+  static final class SynchronizedMvcc {
+    private final AtomicLong readPoint = new AtomicLong(0);
+    private final AtomicLong writePoint = new AtomicLong(0);
+    private final Object readWaiters = new Object();
+    private final LinkedList<Entry> writeQueue = new LinkedList<Entry>();
+
+    static final class Entry {
+      final long writeNumber;
+      boolean completed;
+
+      Entry(long writeNumber) {
+        this.writeNumber = writeNumber;
+      }
+    }
+
+    Entry begin() {
+      synchronized (writeQueue) {
+        Entry e = new Entry(writePoint.incrementAndGet());
+        writeQueue.add(e);
+        return e;
+      }
+    }
+
+    void completeAndWait(Entry e) {
+      complete(e);
+      waitForRead(e);
+    }
+
+    boolean complete(Entry entry) {
+      synchronized (writeQueue) {
+        entry.completed = true;
+        long nextReadValue = MultiVersionConcurrencyControl.NONE;
+        while (!writeQueue.isEmpty()) {
+          Entry first = writeQueue.getFirst();
+          if (!first.completed) {
+            break;
+          }
+          nextReadValue = first.writeNumber;
+          writeQueue.removeFirst();
+        }
+        if (nextReadValue > 0) {
+          synchronized (readWaiters) {
+            readPoint.set(nextReadValue);
+            readWaiters.notifyAll();
+          }
+        }
+        return readPoint.get() >= entry.writeNumber;
+      }
+    }
+
+    void waitForRead(Entry e) {
+      boolean interrupted = false;
+      synchronized (readWaiters) {
+        while (readPoint.get() < e.writeNumber) {
+          try {
+            readWaiters.wait(10);
+          } catch (InterruptedException ie) {
+            interrupted = true;
+          }
+        }
+      }
+      if (interrupted) {
+        Thread.currentThread().interrupt();
+      }
+    }
+  }
+}
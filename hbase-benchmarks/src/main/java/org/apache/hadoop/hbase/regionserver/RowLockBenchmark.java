@@ -0,0 +1,224 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.hadoop.hbase.regionserver;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.fs.FileUtil;
+import org.apache.hadoop.fs.Path;
+import org.apache.hadoop.hbase.HBaseConfiguration;
+import org.apache.hadoop.hbase.HColumnDescriptor;
+import org.apache.hadoop.hbase.HRegionInfo;
+import org.apache.hadoop.hbase.HTableDescriptor;
+import org.apache.hadoop.hbase.TableName;
+import org.apache.hadoop.hbase.benchmarks.BenchmarkData;
+import org.apache.hadoop.hbase.classification.InterfaceAudience;
+import org.apache.hadoop.hbase.regionserver.Region.RowLock;
+import org.apache.hadoop.hbase.util.HashedBytes;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Taking and releasing the row read lock a batch mutation takes for each of its rows, from one
+ * thread and from eight, over one row that all of them share or over many. The
+ * <code>previous</code> variant is the row lock manager of HRegion as it was before it reused
+ * lock contexts and lock objects, kept here as the baseline to compare against.
+ */
+@InterfaceAudience.Private
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 1, jvmArgsAppend = { "-Xms1g", "-Xmx1g" })
+public class RowLockBenchmark {
+
+  @Param({ "current", "previous" })
+  public String impl;
+
+  @Param({ "1", "1024" })
+  public int rowCount;
+
+  private File rootDir;
+  private HRegion region;
+  private PreviousRowLocks previousRowLocks;
+  private byte[][] rows;
+
+  /** Where each thread is in the rows */
+  @State(Scope.Thread)
+  public static class Cursor {
+    int next;
+  }
+
+  @Setup
+  public void setUp() throws IOException {
+    rows = new byte[rowCount][];
+    for (int i = 0; i < rowCount; i++) {
+      rows[i] = BenchmarkData.row(i);
+    }
+    if ("previous".equals(impl)) {
+      previousRowLocks = new PreviousRowLocks();
+      return;
+    }
+    Configuration conf = HBaseConfiguration.create();
+    HTableDescriptor htd = new HTableDescriptor(TableName.valueOf("RowLockBenchmark"));
+    htd.addFamily(new HColumnDescriptor("f"));
+    HRegionInfo info = new HRegionInfo(htd.getTableName(), null, null, false);
+    rootDir = Files.createTempDirectory("RowLockBenchmark").toFile();
+    region = HRegion.createHRegion(info, new Path(rootDir.toURI()), conf, htd, null);
+  }
+
+  @TearDown
+  public void tearDown() throws IOException {
+    if (region != null) {
+      region.close();
+      FileUtil.fullyDelete(rootDir);
+    }
+  }
+
+  private int lockAndRelease(Cursor cursor) throws IOException {
+    int i = cursor.next;
+    cursor.next = i + 1 == rowCount ? 0 : i + 1;
+    RowLock lock = previousRowLocks != null ? previousRowLocks.getRowLock(rows[i], true)
+        : region.getRowLock(rows[i], true);
+    lock.release();
+    return i;
+  }
+
+  @Benchmark
+  @Threads(1)
+  public int lock1(Cursor cursor) throws IOException {
+    return lockAndRelease(cursor);
+  }
+
+  @Benchmark
+  @Threads(8)
+  public int lock8(Cursor cursor) throws IOException {
+    return lockAndRelease(cursor);
+  }
+
+  /**
+   * The row locks of HRegion before they reused contexts and lock objects: every call offers the
+   * lock map a new context, and every acquisition gets its own lock object.
+   */
+  static final class PreviousRowLocks {
+    private static final int WAIT_DURATION = 30000;
+    private final ConcurrentHashMap<HashedBytes, Context> lockedRows =
+        new ConcurrentHashMap<HashedBytes, Context>();
+
+    RowLock getRowLock(byte[] row, boolean readLock) throws IOException {
+      HashedBytes rowKey = new HashedBytes(row);
+      Context context = null;
+      Impl result = null;
+      while (result == null) {
+        context = new Context(rowKey);
+        Context existing = lockedRows.putIfAbsent(rowKey, context);
+        if (existing != null) {
+          context = existing;
+        }
+        result = readLock ? context.newReadLock() : context.newWriteLock();
+      }
+      try {
+        if (!result.lock.tryLock(WAIT_DURATION, TimeUnit.MILLISECONDS)) {
+          context.cleanUp();
+          throw new IOException("Timed out waiting for lock for row: " + rowKey);
+        }
+      } catch (InterruptedException e) {
+        context.cleanUp();
+        Thread.currentThread().interrupt();
+        throw new IOException(e);
+      }
+      return result;
+    }
+
+    final class Context {
+      private final HashedBytes row;
+      final ReadWriteLock readWriteLock = new ReentrantReadWriteLock(true);
+      final AtomicBoolean usable = new AtomicBoolean(true);
+      final AtomicInteger count = new AtomicInteger(0);
+      final Object lock = new Object();
+
+      Context(HashedBytes row) {
+        this.row = row;
+      }
+
+      Impl newWriteLock() {
+        return getRowLock(readWriteLock.writeLock());
+      }
+
+      Impl newReadLock() {
+        return getRowLock(readWriteLock.readLock());
+      }
+
+      private Impl getRowLock(Lock l) {
+        count.incrementAndGet();
+        synchronized (lock) {
+          return usable.get() ? new Impl(this, l) : null;
+        }
+      }
+
+      void cleanUp() {
+        if (count.decrementAndGet() <= 0) {
+          synchronized (lock) {
+            if (count.get() <= 0) {
+              usable.set(false);
+              lockedRows.remove(row);
+            }
+          }
+        }
+      }
+    }
+
+    static final class Impl implements RowLock {
+      private final Context context;
+      private final Lock lock;
+
+      Impl(Context context, Lock lock) {
+        this.context = context;
+        this.lock = lock;
+      }
+
+      @Override
+      public void release() {
+        lock.unlock();
+        context.cleanUp();
+      }
+    }
+  }
+}
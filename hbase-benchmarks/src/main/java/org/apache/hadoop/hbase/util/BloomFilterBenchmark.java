@@ -0,0 +1,158 @@
+/**
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.hadoop.hbase.util;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.hadoop.hbase.benchmarks.BenchmarkData;
+import org.apache.hadoop.hbase.classification.InterfaceAudience;
+import org.apache.hadoop.hbase.nio.ByteBuff;
+import org.apache.hadoop.hbase.nio.SingleByteBuff;
+import org.openjdk.jmh.annotations.AuxCounters;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Lookups in classic and blocked Bloom filter chunks, filled up to their max keys as the compound
+ * Bloom filter writer fills them. The chunks together are larger than the CPU caches, like the
+ * Bloom filters of the many store files of a region server. The positives counter of the absent
+ * key lookups, over their lookups counter, is the false positive rate of the layout.
+ */
+@InterfaceAudience.Private
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 1, jvmArgsAppend = { "-Xms2g", "-Xmx2g" })
+public class BloomFilterBenchmark {
+  private static final int QUERIES = 1 << 16;
+
+  @Param({ "classic", "blocked" })
+  public String layout;
+
+  @Param({ "131072" })
+  public int chunkBytes;
+
+  @Param({ "128" })
+  public int chunks;
+
+  @Param({ "0.01" })
+  public float errorRate;
+
+  private boolean blocked;
+  private ByteBuff[] blooms;
+  private Hash hash;
+  private int hashCount;
+  private byte[][] presentKeys;
+  private int[] presentChunks;
+  private byte[][] absentKeys;
+  private int[] absentChunks;
+  private int next;
+
+  /** Lookups and positive answers of the measured iterations */
+  @AuxCounters
+  @State(Scope.Thread)
+  public static class Counters {
+    public long lookups;
+    public long positives;
+
+    @Setup(Level.Iteration)
+    public void reset() {
+      lookups = 0;
+      positives = 0;
+    }
+  }
+
+  @Setup
+  public void setUp() throws IOException {
+    blocked = "blocked".equals(layout);
+    blooms = new ByteBuff[chunks];
+    int maxKeys = 0;
+    for (int c = 0; c < chunks; c++) {
+      BloomFilterChunk chunk = BloomFilterUtil.createBySize(chunkBytes, errorRate,
+          Hash.MURMUR_HASH, 0, blocked);
+      chunk.allocBloom();
+      maxKeys = (int) chunk.getMaxKeys();
+      for (int i = 0; i < maxKeys; i++) {
+        chunk.add(BenchmarkData.row(c * maxKeys + i));
+      }
+      ByteArrayOutputStream out = new ByteArrayOutputStream((int) chunk.getByteSize());
+      chunk.writeBloom(new DataOutputStream(out));
+      blooms[c] = new SingleByteBuff(ByteBuffer.wrap(out.toByteArray()));
+      hash = chunk.hash;
+      hashCount = chunk.getHashCount();
+    }
+
+    Random random = BenchmarkData.newRandom(chunks);
+    int keyCount = chunks * maxKeys;
+    presentKeys = new byte[QUERIES][];
+    presentChunks = new int[QUERIES];
+    absentKeys = new byte[QUERIES][];
+    absentChunks = new int[QUERIES];
+    for (int q = 0; q < QUERIES; q++) {
+      int present = random.nextInt(keyCount);
+      presentKeys[q] = BenchmarkData.row(present);
+      presentChunks[q] = present / maxKeys;
+      absentKeys[q] = BenchmarkData.row(keyCount + random.nextInt(Integer.MAX_VALUE - keyCount));
+      absentChunks[q] = random.nextInt(chunks);
+    }
+  }
+
+  @Benchmark
+  public boolean presentKey(Counters counters) {
+    int q = next++ & (QUERIES - 1);
+    return lookup(presentKeys[q], presentChunks[q], counters);
+  }
+
+  @Benchmark
+  public boolean absentKey(Counters counters) {
+    int q = next++ & (QUERIES - 1);
+    return lookup(absentKeys[q], absentChunks[q], counters);
+  }
+
+  private boolean lookup(byte[] key, int chunk, Counters counters) {
+    ByteBuff bloom = blooms[chunk];
+    boolean result = blocked
+        ? BloomFilterUtil.containsBlocked(key, 0, key.length, bloom, 0, bloom.limit(), hash,
+            hashCount)
+        : BloomFilterUtil.contains(key, 0, key.length, bloom, 0, bloom.limit(), hash,
+            hashCount);
+    counters.lookups++;
+    if (result) {
+      counters.positives++;
+    }
+    return result;
+  }
+}
@@ -0,0 +1,105 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.hadoop.hbase.util;
+
+import java.nio.ByteBuffer;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.hadoop.hbase.benchmarks.BenchmarkData;
+import org.apache.hadoop.hbase.classification.InterfaceAudience;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Byte range comparison through {@link Bytes} and {@link ByteBufferUtils}, on heap and direct
+ * memory. The two ranges only differ in their last byte, so every comparison walks them end to
+ * end.
+ */
+@InterfaceAudience.Private
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 1, jvmArgsAppend = { "-Xms1g", "-Xmx1g" })
+public class BytesBenchmark {
+
+  @Param({ "8", "32", "256", "4096" })
+  public int length;
+
+  private byte[] left;
+  private byte[] right;
+  private ByteBuffer leftHeap;
+  private ByteBuffer rightHeap;
+  private ByteBuffer leftDirect;
+  private ByteBuffer rightDirect;
+
+  @Setup
+  public void setUp() {
+    Random random = BenchmarkData.newRandom(length);
+    left = BenchmarkData.randomBytes(random, length);
+    right = left.clone();
+    right[length - 1]++;
+    leftHeap = ByteBuffer.wrap(left);
+    rightHeap = ByteBuffer.wrap(right);
+    leftDirect = toDirect(left);
+    rightDirect = toDirect(right);
+  }
+
+  private static ByteBuffer toDirect(byte[] bytes) {
+    ByteBuffer buf = ByteBuffer.allocateDirect(bytes.length);
+    buf.put(bytes);
+    buf.flip();
+    return buf;
+  }
+
+  @Benchmark
+  public int bytesCompareTo() {
+    return Bytes.compareTo(left, right);
+  }
+
+  @Benchmark
+  public boolean bytesEquals() {
+    return Bytes.equals(left, right);
+  }
+
+  @Benchmark
+  public int byteBufferCompareToHeap() {
+    return ByteBufferUtils.compareTo(leftHeap, 0, length, rightHeap, 0, length);
+  }
+
+  @Benchmark
+  public int byteBufferCompareToDirect() {
+    return ByteBufferUtils.compareTo(leftDirect, 0, length, rightDirect, 0, length);
+  }
+
+  @Benchmark
+  public int byteBufferCompareToArrayAndDirect() {
+    return ByteBufferUtils.compareTo(left, 0, length, rightDirect, 0, length);
+  }
+}
@@ -36,5 +36,17 @@ public enum BloomType {
   /**
    * Bloom enabled with Table row &amp; column (family+qualifier) as Key
    */
-  ROWCOL
+  ROWCOL,
+  /**
+   * Bloom enabled with a fixed length prefix of the Table row as Key, so that scans within one
+   * prefix can skip files too. The length is set by RowPrefixBloomFilter.prefix_length in the
+   * column family configuration.
+   */
+  ROWPREFIX_FIXED_LENGTH,
+  /**
+   * Bloom enabled with the Table row up to and including its first delimiter as Key, so that
+   * scans within one prefix can skip files too. The delimiter is set by
+   * RowPrefixDelimitedBloomFilter.delimiter in the column family configuration.
+   */
+  ROWPREFIX_DELIMITED
 }
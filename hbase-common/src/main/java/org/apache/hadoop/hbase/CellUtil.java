@@ -197,6 +197,60 @@ public final class CellUtil {
     return destinationOffset + tlen;
   }
 
+  public static int copyRowTo(Cell cell, ByteBuffer destination, int destinationOffset) {
+    short rowLen = cell.getRowLength();
+    if (cell instanceof ByteBufferedCell) {
+      return ByteBufferUtils.copyFromBufferToBuffer(((ByteBufferedCell) cell).getRowByteBuffer(),
+          destination, ((ByteBufferedCell) cell).getRowPosition(), destinationOffset, rowLen);
+    }
+    return ByteBufferUtils.copyFromArrayToBuffer(destination, destinationOffset,
+        cell.getRowArray(), cell.getRowOffset(), rowLen);
+  }
+
+  public static int copyFamilyTo(Cell cell, ByteBuffer destination, int destinationOffset) {
+    byte fLen = cell.getFamilyLength();
+    if (cell instanceof ByteBufferedCell) {
+      return ByteBufferUtils.copyFromBufferToBuffer(
+          ((ByteBufferedCell) cell).getFamilyByteBuffer(), destination,
+          ((ByteBufferedCell) cell).getFamilyPosition(), destinationOffset, fLen);
+    }
+    return ByteBufferUtils.copyFromArrayToBuffer(destination, destinationOffset,
+        cell.getFamilyArray(), cell.getFamilyOffset(), fLen);
+  }
+
+  public static int copyQualifierTo(Cell cell, ByteBuffer destination, int destinationOffset) {
+    int qlen = cell.getQualifierLength();
+    if (cell instanceof ByteBufferedCell) {
+      return ByteBufferUtils.copyFromBufferToBuffer(
+          ((ByteBufferedCell) cell).getQualifierByteBuffer(), destination,
+          ((ByteBufferedCell) cell).getQualifierPosition(), destinationOffset, qlen);
+    }
+    return ByteBufferUtils.copyFromArrayToBuffer(destination, destinationOffset,
+        cell.getQualifierArray(), cell.getQualifierOffset(), qlen);
+  }
+
+  public static int copyValueTo(Cell cell, ByteBuffer destination, int destinationOffset) {
+    int vlen = cell.getValueLength();
+    if (cell instanceof ByteBufferedCell) {
+      return ByteBufferUtils.copyFromBufferToBuffer(
+          ((ByteBufferedCell) cell).getValueByteBuffer(), destination,
+          ((ByteBufferedCell) cell).getValuePosition(), destinationOffset, vlen);
+    }
+    return ByteBufferUtils.copyFromArrayToBuffer(destination, destinationOffset,
+        cell.getValueArray(), cell.getValueOffset(), vlen);
+  }
+
+  public static int copyTagTo(Cell cell, ByteBuffer destination, int destinationOffset) {
+    int tlen = cell.getTagsLength();
+    if (cell instanceof ByteBufferedCell) {
+      return ByteBufferUtils.copyFromBufferToBuffer(
+          ((ByteBufferedCell) cell).getTagsByteBuffer(), destination,
+          ((ByteBufferedCell) cell).getTagsPosition(), destinationOffset, tlen);
+    }
+    return ByteBufferUtils.copyFromArrayToBuffer(destination, destinationOffset,
+        cell.getTagsArray(), cell.getTagsOffset(), tlen);
+  }
+
   /********************* misc *************************************/
 
   public static byte getRowByte(Cell cell, int index) {
@@ -156,6 +156,40 @@ public class KeyValueUtil {
     return pos;
   }
 
+  /**
+   * Writes the cell in KeyValue format at the given offset of the buffer, which may be direct.
+   * This is absolute positional writing and won't affect the position of the buffer.
+   * @return the offset in the buffer right after the written cell
+   */
+  public static int appendToByteBuffer(final Cell cell, final ByteBuffer buf, final int offset) {
+    int pos = offset;
+    buf.putInt(pos, keyLength(cell));
+    pos += Bytes.SIZEOF_INT;
+    buf.putInt(pos, cell.getValueLength());
+    pos += Bytes.SIZEOF_INT;
+    buf.putShort(pos, cell.getRowLength());
+    pos += Bytes.SIZEOF_SHORT;
+    pos = CellUtil.copyRowTo(cell, buf, pos);
+    buf.put(pos, cell.getFamilyLength());
+    pos += Bytes.SIZEOF_BYTE;
+    pos = CellUtil.copyFamilyTo(cell, buf, pos);
+    pos = CellUtil.copyQualifierTo(cell, buf, pos);
+    buf.putLong(pos, cell.getTimestamp());
+    pos += Bytes.SIZEOF_LONG;
+    buf.put(pos, cell.getTypeByte());
+    pos += Bytes.SIZEOF_BYTE;
+    pos = CellUtil.copyValueTo(cell, buf, pos);
+    int tagsLength = cell.getTagsLength();
+    if (tagsLength > 0) {
+      // Same two byte encoding as Bytes#putAsShort
+      buf.put(pos, (byte) ((tagsLength >> 8) & 0xFF));
+      buf.put(pos + 1, (byte) (tagsLength & 0xFF));
+      pos += Bytes.SIZEOF_SHORT;
+      pos = CellUtil.copyTagTo(cell, buf, pos);
+    }
+    return pos;
+  }
+
   /**
    * The position will be set to the beginning of the new ByteBuffer
    * @param cell
@@ -1117,7 +1117,7 @@ abstract class BufferedDataBlockEncoder implements DataBlockEncoder {
     blkEncodingCtx.setEncodingState(new BufferedDataBlockEncodingState());
   }
 
-  private static class BufferedDataBlockEncodingState extends EncodingState {
+  static class BufferedDataBlockEncodingState extends EncodingState {
     int unencodedDataSizeWritten = 0;
   }
 
@@ -0,0 +1,246 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements. See the NOTICE file distributed with this
+ * work for additional information regarding copyright ownership. The ASF
+ * licenses this file to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.hadoop.hbase.io.encoding;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+
+import org.apache.hadoop.hbase.ByteBufferedKeyOnlyKeyValue;
+import org.apache.hadoop.hbase.Cell;
+import org.apache.hadoop.hbase.CellComparator;
+import org.apache.hadoop.hbase.CellUtil;
+import org.apache.hadoop.hbase.KeyValue;
+import org.apache.hadoop.hbase.KeyValueUtil;
+import org.apache.hadoop.hbase.classification.InterfaceAudience;
+import org.apache.hadoop.hbase.nio.ByteBuff;
+import org.apache.hadoop.hbase.util.ByteBufferUtils;
+import org.apache.hadoop.hbase.util.Bytes;
+import org.apache.hadoop.io.WritableUtils;
+
+/**
+ * Stores cells unencoded, in the KeyValue serialization format, and appends an index of the
+ * offsets of the first cell of every row to the block. A seek binary searches the index for the
+ * row and only walks the cells of at most two rows, instead of every cell before the key. Since
+ * every cell has to be decodable on its own, tags are never compressed.
+ * <pre>
+ * int unencodedDataSize
+ * cells: int keyLength, int valueLength, key, value, [short tagsLength, tags], [vlong mvcc]
+ * int rowOffset * rowCount  (relative to the start of unencodedDataSize)
+ * int rowCount
+ * </pre>
+ */
+@InterfaceAudience.Private
+public class RowIndexCodecV1 extends BufferedDataBlockEncoder {
+
+  private static final int INITIAL_ROW_COUNT = 64;
+
+  static class RowIndexEncodingState extends BufferedDataBlockEncodingState {
+    int[] rowOffsets = new int[INITIAL_ROW_COUNT];
+    int rowCount = 0;
+
+    void addRow(int offset) {
+      if (rowCount == rowOffsets.length) {
+        rowOffsets = Arrays.copyOf(rowOffsets, rowCount * 2);
+      }
+      rowOffsets[rowCount++] = offset;
+    }
+  }
+
+  @Override
+  public void startBlockEncoding(HFileBlockEncodingContext blkEncodingCtx, DataOutputStream out)
+      throws IOException {
+    super.startBlockEncoding(blkEncodingCtx, out);
+    blkEncodingCtx.setEncodingState(new RowIndexEncodingState());
+  }
+
+  @Override
+  public int internalEncode(Cell cell, HFileBlockDefaultEncodingContext encodingContext,
+      DataOutputStream out) throws IOException {
+    RowIndexEncodingState state = (RowIndexEncodingState) encodingContext.getEncodingState();
+    if (state.prevCell == null || !CellUtil.matchingRows(state.prevCell, cell)) {
+      // The cells written so far are exactly as long as their unencoded size
+      state.addRow(Bytes.SIZEOF_INT + state.unencodedDataSizeWritten);
+    }
+    state.prevCell = cell;
+
+    int klength = KeyValueUtil.keyLength(cell);
+    int vlength = cell.getValueLength();
+    out.writeInt(klength);
+    out.writeInt(vlength);
+    CellUtil.writeFlatKey(cell, out);
+    CellUtil.writeValue(out, cell, vlength);
+    int size = klength + vlength + KeyValue.KEYVALUE_INFRASTRUCTURE_SIZE;
+    if (encodingContext.getHFileContext().isIncludesTags()) {
+      int tagsLength = cell.getTagsLength();
+      out.writeShort(tagsLength);
+      if (tagsLength > 0) {
+        CellUtil.writeTags(out, cell, tagsLength);
+      }
+      size += tagsLength + KeyValue.TAGS_LENGTH_SIZE;
+    }
+    if (encodingContext.getHFileContext().isIncludesMvcc()) {
+      WritableUtils.writeVLong(out, cell.getSequenceId());
+      size += WritableUtils.getVIntSize(cell.getSequenceId());
+    }
+    return size;
+  }
+
+  @Override
+  public void endBlockEncoding(HFileBlockEncodingContext encodingCtx, DataOutputStream out,
+      byte[] uncompressedBytesWithHeader) throws IOException {
+    // The unencoded size goes into uncompressedBytesWithHeader, so write it before appending
+    // anything that could make the stream reallocate that array.
+    super.endBlockEncoding(encodingCtx, out, uncompressedBytesWithHeader);
+    RowIndexEncodingState state = (RowIndexEncodingState) encodingCtx.getEncodingState();
+    for (int i = 0; i < state.rowCount; i++) {
+      out.writeInt(state.rowOffsets[i]);
+    }
+    out.writeInt(state.rowCount);
+  }
+
+  @Override
+  public Cell getFirstKeyCellInBlock(ByteBuff block) {
+    int keyLength = block.getIntAfterPosition(Bytes.SIZEOF_INT);
+    int pos = 3 * Bytes.SIZEOF_INT;
+    ByteBuffer key = block.asSubByteBuffer(pos + keyLength).duplicate();
+    return createFirstKeyCell(key, keyLength);
+  }
+
+  @Override
+  public String toString() {
+    return RowIndexCodecV1.class.getSimpleName();
+  }
+
+  @Override
+  public EncodedSeeker createSeeker(CellComparator comparator,
+      final HFileBlockDecodingContext decodingCtx) {
+    return new RowIndexSeeker(comparator, decodingCtx);
+  }
+
+  @Override
+  protected ByteBuffer internalDecodeKeyValues(DataInputStream source, int allocateHeaderLength,
+      int skipLastBytes, HFileBlockDefaultDecodingContext decodingCtx) throws IOException {
+    // The row index after the cells is not part of the decoded block
+    int decompressedSize = source.readInt();
+    ByteBuffer buffer = ByteBuffer.allocate(decompressedSize + allocateHeaderLength);
+    buffer.position(allocateHeaderLength);
+    ByteBufferUtils.copyFromStreamToBuffer(buffer, source, decompressedSize);
+    return buffer;
+  }
+
+  private static class RowIndexSeeker extends BufferedEncodedSeeker<SeekerState> {
+    /** The whole encoded block, including the row index. */
+    private ByteBuff block;
+    private int rowIndexOffset;
+    private int rowCount;
+    private final ByteBufferedKeyOnlyKeyValue rowKey = new ByteBufferedKeyOnlyKeyValue();
+
+    RowIndexSeeker(CellComparator comparator, HFileBlockDecodingContext decodingCtx) {
+      super(comparator, decodingCtx);
+      // Tags are stored uncompressed, see the class comment
+      tagCompressionContext = null;
+    }
+
+    @Override
+    public void setCurrentBuffer(ByteBuff buffer) {
+      block = buffer;
+      rowCount = buffer.getInt(buffer.limit() - Bytes.SIZEOF_INT);
+      rowIndexOffset = buffer.limit() - (rowCount + 1) * Bytes.SIZEOF_INT;
+      // Hide the row index so that scanning stops at the last cell
+      ByteBuff cells = buffer.duplicate();
+      cells.limit(rowIndexOffset);
+      super.setCurrentBuffer(cells);
+    }
+
+    @Override
+    public int seekToKeyInBlock(Cell seekCell, boolean seekBefore) {
+      // Find the first row which is not before the row of seekCell
+      int low = 0;
+      int high = rowCount;
+      while (low < high) {
+        int mid = (low + high) >>> 1;
+        if (comparator.compareRows(seekCell, firstKeyOfRow(mid)) > 0) {
+          low = mid + 1;
+        } else {
+          high = mid;
+        }
+      }
+      // Start from that row if its first cell is before seekCell, otherwise the answer is the
+      // last cell of the previous row. Either way the scan starts at a cell which is not after
+      // seekCell, so a previous cell is available when needed, just as for a scan from the
+      // start of the block.
+      int startRow = low - 1;
+      if (low < rowCount) {
+        Cell firstKey = firstKeyOfRow(low);
+        if (comparator.compareRows(seekCell, firstKey) == 0) {
+          int comp = comparator.compareKeyIgnoresMvcc(seekCell, firstKey);
+          if (comp > 0 || (comp == 0 && !seekBefore)) {
+            startRow = low;
+          }
+        }
+      }
+      currentBuffer.position(rowOffset(Math.max(startRow, 0)));
+      decodeNext();
+      current.setKey(current.keyBuffer, current.memstoreTS);
+      return super.seekToKeyInBlock(seekCell, seekBefore);
+    }
+
+    private int rowOffset(int row) {
+      return block.getInt(rowIndexOffset + row * Bytes.SIZEOF_INT);
+    }
+
+    private Cell firstKeyOfRow(int row) {
+      int offset = rowOffset(row);
+      int keyLength = block.getInt(offset);
+      block.asSubByteBuffer(offset + 2 * Bytes.SIZEOF_INT, keyLength, tmpPair);
+      rowKey.setKey(tmpPair.getFirst(), tmpPair.getSecond(), keyLength);
+      return rowKey;
+    }
+
+    @Override
+    protected void decodeFirst() {
+      currentBuffer.skip(Bytes.SIZEOF_INT);
+      decodeNext();
+    }
+
+    @Override
+    protected void decodeNext() {
+      current.keyLength = currentBuffer.getInt();
+      current.valueLength = currentBuffer.getInt();
+      current.ensureSpaceForKey();
+      currentBuffer.get(current.keyBuffer, 0, current.keyLength);
+      current.valueOffset = currentBuffer.position();
+      currentBuffer.skip(current.valueLength);
+      if (includesTags()) {
+        // Read short as unsigned, high byte first
+        current.tagsLength = ((currentBuffer.get() & 0xff) << 8) ^ (currentBuffer.get() & 0xff);
+        current.tagsOffset = currentBuffer.position();
+        currentBuffer.skip(current.tagsLength);
+      }
+      if (includesMvcc()) {
+        current.memstoreTS = ByteBuff.readVLong(currentBuffer);
+      } else {
+        current.memstoreTS = 0;
+      }
+      current.lastCommonPrefix = 0;
+      current.nextKvOffset = currentBuffer.position();
+    }
+  }
+}
@@ -36,6 +36,12 @@ public class HeapMemorySizeUtil {
       "hbase.regionserver.global.memstore.size.lower.limit";
   public static final String MEMSTORE_SIZE_LOWER_LIMIT_OLD_KEY =
       "hbase.regionserver.global.memstore.lowerLimit";
+  /**
+   * Size in MB of the off-heap memory the memstores may use. When greater than 0 the MSLAB chunks
+   * are direct ByteBuffers taken out of this budget rather than byte[] on the heap.
+   */
+  public static final String MEMSTORE_OFFHEAP_SIZE_KEY =
+      "hbase.regionserver.offheap.global.memstore.size";
 
   public static final float DEFAULT_MEMSTORE_SIZE = 0.4f;
   // Default lower water mark limit is 95% size of memstore size.
@@ -89,6 +95,14 @@ public class HeapMemorySizeUtil {
     return limit;
   }
 
+  /**
+   * @return configured off-heap size of the memstores in bytes, 0 when they are on heap
+   */
+  public static long getOffheapGlobalMemstoreSize(final Configuration conf) {
+    long offheapMB = conf.getLong(MEMSTORE_OFFHEAP_SIZE_KEY, 0);
+    return offheapMB > 0 ? offheapMB * 1024 * 1024 : 0;
+  }
+
   /**
    * Retrieve configured size for global memstore lower water mark as fraction of global memstore
    * size.
@@ -0,0 +1,42 @@
+/**
+ * Copyright The Apache Software Foundation
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements. See the NOTICE file distributed with this
+ * work for additional information regarding copyright ownership. The ASF
+ * licenses this file to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.hadoop.hbase.util;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+
+import org.apache.hadoop.hbase.classification.InterfaceAudience;
+
+/**
+ * Supplies the buffers of a {@link ByteBufferArray}, so the array can be backed by heap, direct
+ * or memory mapped buffers alike.
+ */
+@InterfaceAudience.Private
+public interface ByteBufferAllocator {
+
+  /**
+   * Allocates the buffer at the given index of the array.
+   * @param size size of the buffer to allocate
+   * @param index index of the buffer in the array; buffer <code>i</code> starts at byte
+   *          <code>i * size</code> of the array
+   * @return a buffer of <code>size</code> bytes
+   * @throws IOException
+   */
+  ByteBuffer allocate(int size, int index) throws IOException;
+}
@@ -18,6 +18,7 @@
  */
 package org.apache.hadoop.hbase.util;
 
+import java.io.IOException;
 import java.nio.ByteBuffer;
 import java.util.concurrent.locks.Lock;
 import java.util.concurrent.locks.ReentrantLock;
@@ -51,30 +52,76 @@ public final class ByteBufferArray {
    * we will allocate one additional buffer with capacity 0;
    * @param capacity total size of the byte buffer array
    * @param directByteBuffer true if we allocate direct buffer
+   * @throws IOException
    */
-  public ByteBufferArray(long capacity, boolean directByteBuffer) {
-    this.bufferSize = DEFAULT_BUFFER_SIZE;
-    if (this.bufferSize > (capacity / 16))
-      this.bufferSize = (int) roundUp(capacity / 16, 32768);
+  public ByteBufferArray(long capacity, boolean directByteBuffer) throws IOException {
+    this(capacity, defaultBufferSize(capacity),
+        directByteBuffer ? DIRECT_ALLOCATOR : HEAP_ALLOCATOR);
+  }
+
+  /**
+   * Creates the array out of buffers of <code>bufferSize</code> bytes each, as many as needed to
+   * cover the capacity, taken from the given allocator.
+   * @param capacity total size of the byte buffer array
+   * @param bufferSize size of each buffer
+   * @param allocator supplies the buffers
+   * @throws IOException if the allocator fails
+   */
+  public ByteBufferArray(long capacity, int bufferSize, ByteBufferAllocator allocator)
+      throws IOException {
+    this.bufferSize = bufferSize;
     this.bufferCount = (int) (roundUp(capacity, bufferSize) / bufferSize);
     LOG.info("Allocating buffers total=" + StringUtils.byteDesc(capacity)
         + ", sizePerBuffer=" + StringUtils.byteDesc(bufferSize) + ", count="
-        + bufferCount + ", direct=" + directByteBuffer);
+        + bufferCount + ", allocator=" + allocator);
     buffers = new ByteBuffer[bufferCount + 1];
     locks = new Lock[bufferCount + 1];
     for (int i = 0; i <= bufferCount; i++) {
       locks[i] = new ReentrantLock();
       if (i < bufferCount) {
-        buffers[i] = directByteBuffer ? ByteBuffer.allocateDirect(bufferSize)
-            : ByteBuffer.allocate(bufferSize);
+        buffers[i] = allocator.allocate(bufferSize, i);
       } else {
         buffers[i] = ByteBuffer.allocate(0);
       }
+    }
+  }
 
+  /**
+   * @return the size of each buffer when not told otherwise: 4MB, or less if that would make
+   *         fewer than 16 buffers
+   */
+  public static int defaultBufferSize(long capacity) {
+    if (DEFAULT_BUFFER_SIZE > (capacity / 16)) {
+      return (int) roundUp(capacity / 16, 32768);
     }
+    return DEFAULT_BUFFER_SIZE;
   }
 
-  private long roundUp(long n, long to) {
+  private static final ByteBufferAllocator HEAP_ALLOCATOR = new ByteBufferAllocator() {
+    @Override
+    public ByteBuffer allocate(int size, int index) {
+      return ByteBuffer.allocate(size);
+    }
+
+    @Override
+    public String toString() {
+      return "heap";
+    }
+  };
+
+  private static final ByteBufferAllocator DIRECT_ALLOCATOR = new ByteBufferAllocator() {
+    @Override
+    public ByteBuffer allocate(int size, int index) {
+      return ByteBuffer.allocateDirect(size);
+    }
+
+    @Override
+    public String toString() {
+      return "direct";
+    }
+  };
+
+  private static long roundUp(long n, long to) {
     return ((n + to - 1) / to) * to;
   }
 
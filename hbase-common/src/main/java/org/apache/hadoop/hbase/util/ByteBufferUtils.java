@@ -926,6 +926,30 @@ public final class ByteBufferUtils {
     }
   }
 
+  /**
+   * Copies the bytes from given array's offset to length part into the given buffer at the given
+   * offset. This is absolute positional copying and won't affect the position of the buffer.
+   * @param out
+   * @param outOffset
+   * @param in
+   * @param inOffset
+   * @param length
+   * @return the offset in 'out' right after the copied bytes
+   */
+  public static int copyFromArrayToBuffer(ByteBuffer out, int outOffset, byte[] in, int inOffset,
+      int length) {
+    if (out.hasArray()) {
+      System.arraycopy(in, inOffset, out.array(), out.arrayOffset() + outOffset, length);
+    } else if (UNSAFE_AVAIL) {
+      UnsafeAccess.copy(in, inOffset, out, outOffset, length);
+    } else {
+      ByteBuffer outDup = out.duplicate();
+      outDup.position(outOffset);
+      outDup.put(in, inOffset, length);
+    }
+    return outOffset + length;
+  }
+
   /**
    * Copies specified number of bytes from given offset of 'in' ByteBuffer to
    * the array.
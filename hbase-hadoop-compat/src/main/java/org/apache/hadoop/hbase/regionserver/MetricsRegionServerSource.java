@@ -141,6 +141,12 @@ public interface MetricsRegionServerSource extends BaseSource {
    */
   void updateFlushTime(long t);
 
+  /**
+   * Update the histogram of how long flush requests waited in the flush queue
+   * @param t time the request waited, in milliseconds
+   */
+  void updateFlushQueueWaitTime(long t);
+
   // Strings used for exporting to metrics system.
   String REGION_COUNT = "regionCount";
   String REGION_COUNT_DESC = "Number of regions";
@@ -221,6 +227,9 @@ public interface MetricsRegionServerSource extends BaseSource {
   String BLOCK_CACHE_PRIMARY_EVICTION_COUNT = "blockCacheEvictionCountPrimary";
   String BLOCK_CACHE_PRIMARY_EVICTION_COUNT_DESC =
       "Count of the number of blocks evicted from primary replica in the block cache.";
+  String BLOCK_CACHE_EVICTION_TIME = "blockCacheEvictionTime";
+  String BLOCK_CACHE_EVICTION_TIME_DESC =
+      "Milliseconds the block cache spent evicting blocks to make room.";
   String BLOCK_CACHE_HIT_PERCENT = "blockCacheCountHitPercent";
   String BLOCK_CACHE_HIT_PERCENT_DESC =
       "Percent of block cache requests that are hits";
@@ -230,6 +239,15 @@ public interface MetricsRegionServerSource extends BaseSource {
   String BLOCK_CACHE_FAILED_INSERTION_COUNT = "blockCacheFailedInsertionCount";
   String BLOCK_CACHE_FAILED_INSERTION_COUNT_DESC = "Number of times that a block cache " +
       "insertion failed. Usually due to size restrictions.";
+  String BLOCK_CACHE_DECOMPRESS_COUNT = "blockCacheDecompressCount";
+  String BLOCK_CACHE_DECOMPRESS_COUNT_DESC =
+      "Number of hits on blocks cached compressed that decompressed the block.";
+  String BLOCK_CACHE_DECOMPRESS_TIME = "blockCacheDecompressTime";
+  String BLOCK_CACHE_DECOMPRESS_TIME_DESC =
+      "Time in ms spent decompressing blocks cached compressed on hits.";
+  String BLOCK_CACHE_ESTIMATED_HIT_RATIO = "blockCacheEstimatedHitRatioAtSize";
+  String BLOCK_CACHE_ESTIMATED_HIT_RATIO_DESC =
+      "Hit ratio the block cache ghost cache estimates at this percent of the current size.";
   String RS_START_TIME_NAME = "regionServerStartTime";
   String ZOOKEEPER_QUORUM_NAME = "zookeeperQuorum";
   String SERVER_NAME_NAME = "serverName";
@@ -278,6 +296,12 @@ public interface MetricsRegionServerSource extends BaseSource {
   String MAJOR_COMPACTED_CELLS_SIZE = "majorCompactedCellsSize";
   String MAJOR_COMPACTED_CELLS_SIZE_DESC =
       "The total amount of data processed during major compactions, in bytes";
+  String COMPACTIONS_CACHED_ON_WRITE = "compactionsCachedOnWriteCount";
+  String COMPACTIONS_CACHED_ON_WRITE_DESC =
+      "The number of compactions of hot files whose output was cached on write";
+  String COMPACTIONS_NOT_CACHED_ON_WRITE = "compactionsNotCachedOnWriteCount";
+  String COMPACTIONS_NOT_CACHED_ON_WRITE_DESC =
+      "The number of compactions of cold files whose output was not cached";
   String CELLS_COUNT_COMPACTED_TO_MOB = "cellsCountCompactedToMob";
   String CELLS_COUNT_COMPACTED_TO_MOB_DESC =
       "The number of cells moved to mob during compaction";
@@ -316,6 +340,22 @@ public interface MetricsRegionServerSource extends BaseSource {
   String HEDGED_READ_WINS = "hedgedReadWins";
   String HEDGED_READ_WINS_DESC =
       "The number of times we started a hedged read and a hedged read won";
+  String PARALLEL_SEEK_COUNT = "storeFileParallelSeekCount";
+  String PARALLEL_SEEK_COUNT_DESC =
+      "Number of seeks which sought store files not in the block cache in parallel.";
+  String PARALLEL_SEEK_TIME = "storeFileParallelSeekTime";
+  String PARALLEL_SEEK_TIME_DESC =
+      "Time in ms spent in seeks which went parallel.";
+  String PARALLEL_SEEK_FILE_COUNT = "storeFileParallelSeekFileCount";
+  String PARALLEL_SEEK_FILE_COUNT_DESC =
+      "Number of store files sought by the parallel seek threads.";
+  String SERIAL_SEEK_COUNT = "storeFileSerialSeekCount";
+  String SERIAL_SEEK_COUNT_DESC =
+      "Number of seeks which could have gone parallel but were done serially as few of " +
+      "their store files were not in the block cache.";
+  String SERIAL_SEEK_TIME = "storeFileSerialSeekTime";
+  String SERIAL_SEEK_TIME_DESC =
+      "Time in ms spent in seeks which could have gone parallel but were done serially.";
 
   String BLOCKED_REQUESTS_COUNT = "blockedRequestCount";
   String BLOCKED_REQUESTS_COUNT_DESC = "The number of blocked requests because of memstore size is "
@@ -327,4 +367,5 @@ public interface MetricsRegionServerSource extends BaseSource {
   String SPLIT_SUCCESS_KEY = "splitSuccessCount";
   String SPLIT_SUCCESS_DESC = "Number of successfully executed splits";
   String FLUSH_KEY = "flushTime";
+  String FLUSH_QUEUE_WAIT_KEY = "flushQueueWaitTime";
 }
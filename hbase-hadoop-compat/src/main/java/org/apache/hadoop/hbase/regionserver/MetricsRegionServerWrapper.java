@@ -18,6 +18,8 @@
 
 package org.apache.hadoop.hbase.regionserver;
 
+import java.util.Map;
+
 /**
  * This is the interface that will expose RegionServer information to hadoop1/hadoop2
  * implementations of the MetricsRegionServerSource.
@@ -227,6 +229,11 @@ public interface MetricsRegionServerWrapper {
    */
   long getBlockCachePrimaryEvictedCount();
 
+  /**
+   * Get the milliseconds the block cache spent evicting blocks.
+   */
+  long getBlockCacheEvictionTime();
+
 
   /**
    * Get the percent of all requests that hit the block cache.
@@ -243,6 +250,22 @@ public interface MetricsRegionServerWrapper {
    */
   long getBlockCacheFailedInsertions();
 
+  /**
+   * Number of hits on blocks cached compressed, each of which decompressed the block.
+   */
+  long getBlockCacheDecompressCount();
+
+  /**
+   * Time in ms spent decompressing blocks cached compressed on hits.
+   */
+  long getBlockCacheDecompressTime();
+
+  /**
+   * Hit ratios of the block cache estimated by its ghost cache since startup, keyed by the size
+   * they are estimated at as a percent of the current size. Empty if there is no ghost cache.
+   */
+  Map<Integer, Float> getBlockCacheEstimatedHitRatios();
+
   /**
    * Force a re-computation of the metrics.
    */
@@ -283,6 +306,16 @@ public interface MetricsRegionServerWrapper {
    */
   long getMajorCompactedCellsSize();
 
+  /**
+   * Get the number of compactions whose output was cached on write.
+   */
+  long getCompactionsCachedOnWrite();
+
+  /**
+   * Get the number of compactions whose output was not cached as its input was cold.
+   */
+  long getCompactionsNotCachedOnWrite();
+
   /**
    * Gets the number of cells moved to mob during compaction.
    */
@@ -363,6 +396,32 @@ public interface MetricsRegionServerWrapper {
    */
   long getHedgedReadWins();
 
+  /**
+   * @return Count of seeks which sought store files not in the block cache in parallel.
+   */
+  long getParallelSeekCount();
+
+  /**
+   * @return Time in ms spent in seeks which went parallel.
+   */
+  long getParallelSeekTime();
+
+  /**
+   * @return Count of store files sought by the parallel seek threads.
+   */
+  long getParallelSeekFileCount();
+
+  /**
+   * @return Count of seeks which could have gone parallel but were done serially, as few of
+   *         their store files were not in the block cache.
+   */
+  long getSerialSeekCount();
+
+  /**
+   * @return Time in ms spent in seeks which could have gone parallel but were done serially.
+   */
+  long getSerialSeekTime();
+
   /**
    * @return Count of requests blocked because the memstore size is larger than blockingMemStoreSize
    */
@@ -39,6 +39,12 @@ public interface MetricsRegionSource extends Comparable<MetricsRegionSource> {
   String COPROCESSOR_EXECUTION_STATISTICS_DESC = "Statistics for coprocessor execution times";
   String REPLICA_ID = "replicaid";
   String REPLICA_ID_DESC = "The replica ID of a region. 0 is primary, otherwise is secondary";
+  String PREFETCH_REMAINING_SIZE = "prefetchRemainingSize";
+  String PREFETCH_REMAINING_SIZE_DESC =
+      "Bytes of this region's store files still waiting to be prefetched into the block cache";
+  String STORE_FLUSH_TIME = "storeFlushTime";
+  String STORE_FLUSH_TIME_DESC =
+      "Total time in ms the stores of this region spent writing out and committing flushes";
 
   /**
    * Close the region's metrics as this region is closing.
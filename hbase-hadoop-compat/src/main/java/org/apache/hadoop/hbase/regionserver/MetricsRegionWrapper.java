@@ -86,4 +86,14 @@ public interface MetricsRegionWrapper {
    * Get the replica id of this region.
    */
   int getReplicaId();
+
+  /**
+   * Get the number of bytes of this region's store files not yet prefetched into the block cache.
+   */
+  long getPrefetchRemainingSize();
+
+  /**
+   * Get the total time in ms the stores of this region spent writing out and committing flushes.
+   */
+  long getStoreFlushTime();
 }
@@ -57,6 +57,11 @@ public interface MetricsWALSource extends BaseSource {
   String SLOW_APPEND_COUNT_DESC = "Number of appends that were slow.";
   String SYNC_TIME = "syncTime";
   String SYNC_TIME_DESC = "The time it took to sync the WAL to HDFS.";
+  String SYNC_BATCH_SIZE = "syncBatchSize";
+  String SYNC_BATCH_SIZE_DESC = "Number of handler syncs released by one sync of the WAL.";
+  String GROUP_COMMIT_WAIT_TIME = "groupCommitWaitTime";
+  String GROUP_COMMIT_WAIT_TIME_DESC =
+      "Time (in microseconds) a WAL sync was held back to let more handler syncs join it.";
   String ROLL_REQUESTED = "rollRequest";
   String ROLL_REQUESTED_DESC = "How many times a log roll has been requested total";
   String LOW_REPLICA_ROLL_REQUESTED = "lowReplicaRollRequest";
@@ -88,6 +93,16 @@ public interface MetricsWALSource extends BaseSource {
    */
   void incrementSyncTime(long time);
 
+  /**
+   * Add the number of handler syncs one sync of the wal released.
+   */
+  void incrementSyncBatchSize(long count);
+
+  /**
+   * Add the time a sync of the wal was held back to gather more handler syncs.
+   */
+  void incrementGroupCommitWaitTime(long time);
+
   void incrementLogRollRequested();
 
   void incrementLowReplicationLogRoll();
@@ -18,6 +18,8 @@
 
 package org.apache.hadoop.hbase.regionserver;
 
+import java.util.Map;
+
 import org.apache.hadoop.hbase.classification.InterfaceAudience;
 import org.apache.hadoop.hbase.metrics.BaseSourceImpl;
 import org.apache.hadoop.metrics2.MetricHistogram;
@@ -55,6 +57,7 @@ public class MetricsRegionServerSourceImpl
 
   private final MetricHistogram splitTimeHisto;
   private final MetricHistogram flushTimeHisto;
+  private final MetricHistogram flushQueueWaitTimeHisto;
 
   public MetricsRegionServerSourceImpl(MetricsRegionServerWrapper rsWrap) {
     this(METRICS_NAME, METRICS_DESCRIPTION, METRICS_CONTEXT, METRICS_JMX_CONTEXT, rsWrap);
@@ -88,6 +91,7 @@ public class MetricsRegionServerSourceImpl
 
     splitTimeHisto = getMetricsRegistry().newTimeHistogram(SPLIT_KEY);
     flushTimeHisto = getMetricsRegistry().newTimeHistogram(FLUSH_KEY);
+    flushQueueWaitTimeHisto = getMetricsRegistry().newTimeHistogram(FLUSH_QUEUE_WAIT_KEY);
 
     splitRequest = getMetricsRegistry().newCounter(SPLIT_REQUEST_KEY, SPLIT_REQUEST_DESC, 0L);
     splitSuccess = getMetricsRegistry().newCounter(SPLIT_SUCCESS_KEY, SPLIT_SUCCESS_DESC, 0L);
@@ -173,6 +177,11 @@ public class MetricsRegionServerSourceImpl
     flushTimeHisto.add(t);
   }
 
+  @Override
+  public void updateFlushQueueWaitTime(long t) {
+    flushQueueWaitTimeHisto.add(t);
+  }
+
   /**
    * Yes this is a get function that doesn't return anything.  Thanks Hadoop for breaking all
    * expectations of java programmers.  Instead of returning anything Hadoop metrics expects
@@ -247,12 +256,18 @@ public class MetricsRegionServerSourceImpl
               rsWrap.getBlockCacheEvictedCount())
           .addCounter(Interns.info(BLOCK_CACHE_PRIMARY_EVICTION_COUNT,
             BLOCK_CACHE_PRIMARY_EVICTION_COUNT_DESC), rsWrap.getBlockCachePrimaryEvictedCount())
+          .addCounter(Interns.info(BLOCK_CACHE_EVICTION_TIME, BLOCK_CACHE_EVICTION_TIME_DESC),
+              rsWrap.getBlockCacheEvictionTime())
           .addGauge(Interns.info(BLOCK_CACHE_HIT_PERCENT, BLOCK_CACHE_HIT_PERCENT_DESC),
               rsWrap.getBlockCacheHitPercent())
           .addGauge(Interns.info(BLOCK_CACHE_EXPRESS_HIT_PERCENT,
               BLOCK_CACHE_EXPRESS_HIT_PERCENT_DESC), rsWrap.getBlockCacheHitCachingPercent())
           .addCounter(Interns.info(BLOCK_CACHE_FAILED_INSERTION_COUNT,
               BLOCK_CACHE_FAILED_INSERTION_COUNT_DESC),rsWrap.getBlockCacheFailedInsertions())
+          .addCounter(Interns.info(BLOCK_CACHE_DECOMPRESS_COUNT,
+              BLOCK_CACHE_DECOMPRESS_COUNT_DESC), rsWrap.getBlockCacheDecompressCount())
+          .addCounter(Interns.info(BLOCK_CACHE_DECOMPRESS_TIME,
+              BLOCK_CACHE_DECOMPRESS_TIME_DESC), rsWrap.getBlockCacheDecompressTime())
           .addCounter(Interns.info(UPDATES_BLOCKED_TIME, UPDATES_BLOCKED_DESC),
               rsWrap.getUpdatesBlockedTime())
           .addCounter(Interns.info(FLUSHED_CELLS, FLUSHED_CELLS_DESC),
@@ -267,6 +282,11 @@ public class MetricsRegionServerSourceImpl
               rsWrap.getCompactedCellsSize())
           .addCounter(Interns.info(MAJOR_COMPACTED_CELLS_SIZE, MAJOR_COMPACTED_CELLS_SIZE_DESC),
               rsWrap.getMajorCompactedCellsSize())
+          .addCounter(Interns.info(COMPACTIONS_CACHED_ON_WRITE, COMPACTIONS_CACHED_ON_WRITE_DESC),
+              rsWrap.getCompactionsCachedOnWrite())
+          .addCounter(
+              Interns.info(COMPACTIONS_NOT_CACHED_ON_WRITE, COMPACTIONS_NOT_CACHED_ON_WRITE_DESC),
+              rsWrap.getCompactionsNotCachedOnWrite())
 
           .addCounter(
               Interns.info(CELLS_COUNT_COMPACTED_FROM_MOB, CELLS_COUNT_COMPACTED_FROM_MOB_DESC),
@@ -303,6 +323,16 @@ public class MetricsRegionServerSourceImpl
           .addCounter(Interns.info(HEDGED_READS, HEDGED_READS_DESC), rsWrap.getHedgedReadOps())
           .addCounter(Interns.info(HEDGED_READ_WINS, HEDGED_READ_WINS_DESC),
               rsWrap.getHedgedReadWins())
+          .addCounter(Interns.info(PARALLEL_SEEK_COUNT, PARALLEL_SEEK_COUNT_DESC),
+              rsWrap.getParallelSeekCount())
+          .addCounter(Interns.info(PARALLEL_SEEK_TIME, PARALLEL_SEEK_TIME_DESC),
+              rsWrap.getParallelSeekTime())
+          .addCounter(Interns.info(PARALLEL_SEEK_FILE_COUNT, PARALLEL_SEEK_FILE_COUNT_DESC),
+              rsWrap.getParallelSeekFileCount())
+          .addCounter(Interns.info(SERIAL_SEEK_COUNT, SERIAL_SEEK_COUNT_DESC),
+              rsWrap.getSerialSeekCount())
+          .addCounter(Interns.info(SERIAL_SEEK_TIME, SERIAL_SEEK_TIME_DESC),
+              rsWrap.getSerialSeekTime())
 
           .addCounter(Interns.info(BLOCKED_REQUESTS_COUNT, BLOCKED_REQUESTS_COUNT_DESC),
             rsWrap.getBlockedRequestsCount())
@@ -311,6 +341,11 @@ public class MetricsRegionServerSourceImpl
               rsWrap.getZookeeperQuorum())
           .tag(Interns.info(SERVER_NAME_NAME, SERVER_NAME_DESC), rsWrap.getServerName())
           .tag(Interns.info(CLUSTER_ID_NAME, CLUSTER_ID_DESC), rsWrap.getClusterId());
+
+      for (Map.Entry<Integer, Float> entry : rsWrap.getBlockCacheEstimatedHitRatios().entrySet()) {
+        mrb.addGauge(Interns.info(BLOCK_CACHE_ESTIMATED_HIT_RATIO + entry.getKey(),
+            BLOCK_CACHE_ESTIMATED_HIT_RATIO_DESC), entry.getValue());
+      }
     }
 
     metricsRegistry.snapshot(mrb, all);
@@ -243,6 +243,12 @@ public class MetricsRegionSourceImpl implements MetricsRegionSource {
       mrb.addCounter(Interns.info(regionNamePrefix + MetricsRegionSource.REPLICA_ID,
               MetricsRegionSource.REPLICA_ID_DESC),
           this.regionWrapper.getReplicaId());
+      mrb.addGauge(Interns.info(regionNamePrefix + MetricsRegionSource.PREFETCH_REMAINING_SIZE,
+              MetricsRegionSource.PREFETCH_REMAINING_SIZE_DESC),
+          this.regionWrapper.getPrefetchRemainingSize());
+      mrb.addCounter(Interns.info(regionNamePrefix + MetricsRegionSource.STORE_FLUSH_TIME,
+              MetricsRegionSource.STORE_FLUSH_TIME_DESC),
+          this.regionWrapper.getStoreFlushTime());
     }
   }
 
@@ -138,5 +138,15 @@ public class TestMetricsRegionSourceImpl {
     public int getReplicaId() {
       return 0;
     }
+
+    @Override
+    public long getPrefetchRemainingSize() {
+      return 0;
+    }
+
+    @Override
+    public long getStoreFlushTime() {
+      return 0;
+    }
   }
 }
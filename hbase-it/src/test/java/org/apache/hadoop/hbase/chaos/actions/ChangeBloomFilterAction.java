@@ -26,6 +26,7 @@ import org.apache.hadoop.hbase.HTableDescriptor;
 import org.apache.hadoop.hbase.TableName;
 import org.apache.hadoop.hbase.client.Admin;
 import org.apache.hadoop.hbase.regionserver.BloomType;
+import org.apache.hadoop.hbase.util.BloomFilterUtil;
 
 /**
  * Action that tries to adjust the bloom filter setting on all the columns of a
@@ -68,6 +69,11 @@ public class ChangeBloomFilterAction extends Action {
           + bloomArray[bloomFilterIndex] + " on column "
           + descriptor.getNameAsString() + " of table " + tableName);
       descriptor.setBloomFilterType(bloomArray[bloomFilterIndex]);
+      if (bloomArray[bloomFilterIndex] == BloomType.ROWPREFIX_FIXED_LENGTH) {
+        descriptor.setConfiguration(BloomFilterUtil.PREFIX_LENGTH_KEY, "10");
+      } else if (bloomArray[bloomFilterIndex] == BloomType.ROWPREFIX_DELIMITED) {
+        descriptor.setConfiguration(BloomFilterUtil.DELIMITER_KEY, "#");
+      }
       LOG.debug("Performing action: Just set bloom filter type to "
           + bloomArray[bloomFilterIndex] + " on column "
           + descriptor.getNameAsString() + " of table " + tableName);
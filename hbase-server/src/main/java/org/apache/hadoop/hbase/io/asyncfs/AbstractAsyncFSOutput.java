@@ -0,0 +1,203 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.hadoop.hbase.io.asyncfs;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.CompletionHandler;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.apache.hadoop.hbase.classification.InterfaceAudience;
+
+/**
+ * Base of the {@link AsyncFSOutput} implementations. Keeps at most one flush outstanding
+ * against the filesystem. Flushes requested while one is in flight are not sent one by one;
+ * they wait, and everything written and requested meanwhile goes out as a single batch once
+ * the outstanding flush completes. Under load this grows the batches on its own, and it keeps
+ * the callbacks in request order.
+ * <p>
+ * Subclasses implement {@link #doFlush(ByteBuffer, boolean)} and report its outcome through
+ * {@link #batchCompleted(long)} or {@link #batchFailed(Throwable)}, from any thread.
+ */
+@InterfaceAudience.Private
+public abstract class AbstractAsyncFSOutput implements AsyncFSOutput {
+  private static final Log LOG = LogFactory.getLog(AbstractAsyncFSOutput.class);
+
+  private static final int INITIAL_BUFFER_SIZE = 64 * 1024;
+
+  private static final class Callback<A> {
+    private final A attachment;
+    private final CompletionHandler<Long, ? super A> handler;
+
+    Callback(A attachment, CompletionHandler<Long, ? super A> handler) {
+      this.attachment = attachment;
+      this.handler = handler;
+    }
+
+    void completed(long length) {
+      try {
+        this.handler.completed(length, this.attachment);
+      } catch (Throwable t) {
+        LOG.warn("Flush callback threw, continuing", t);
+      }
+    }
+
+    void failed(Throwable cause) {
+      try {
+        this.handler.failed(cause, this.attachment);
+      } catch (Throwable t) {
+        LOG.warn("Flush callback threw, continuing", t);
+      }
+    }
+  }
+
+  // All below guarded by 'this'
+  private byte[] buf = new byte[INITIAL_BUFFER_SIZE];
+  private int count = 0;
+  private long length = 0;
+  private List<Callback<?>> waiting = new ArrayList<Callback<?>>();
+  private boolean syncRequested = false;
+  // Callbacks of the batch the filesystem currently has; null when nothing is in flight
+  private List<Callback<?>> inFlight = null;
+  // Once a flush failed the file is in an unknown state; fail everything after it
+  private Throwable error = null;
+
+  @Override
+  public synchronized void write(byte[] b, int off, int len) {
+    if (this.count + len > this.buf.length) {
+      this.buf = Arrays.copyOf(this.buf, Math.max(this.buf.length << 1, this.count + len));
+    }
+    System.arraycopy(b, off, this.buf, this.count, len);
+    this.count += len;
+    this.length += len;
+  }
+
+  @Override
+  public synchronized int buffered() {
+    return this.count;
+  }
+
+  @Override
+  public synchronized long getLength() {
+    return this.length;
+  }
+
+  @Override
+  public <A> void flush(A attachment, CompletionHandler<Long, ? super A> handler,
+      boolean sync) {
+    Throwable failure;
+    synchronized (this) {
+      failure = this.error;
+      if (failure == null) {
+        this.waiting.add(new Callback<A>(attachment, handler));
+        this.syncRequested |= sync;
+        // The flush in flight sends what we just queued when it completes.
+        if (this.inFlight != null) return;
+        this.inFlight = new ArrayList<Callback<?>>(0);
+      }
+    }
+    if (failure != null) {
+      handler.failed(failure, attachment);
+      return;
+    }
+    sendNextBatch();
+  }
+
+  /**
+   * Hands the buffer and the waiting callbacks to the filesystem. Only called by the thread
+   * that made <code>inFlight</code> non-null, so there is never more than one batch out.
+   */
+  private void sendNextBatch() {
+    ByteBuffer data;
+    boolean sync;
+    synchronized (this) {
+      this.inFlight = this.waiting;
+      this.waiting = new ArrayList<Callback<?>>();
+      data = ByteBuffer.wrap(Arrays.copyOf(this.buf, this.count));
+      this.count = 0;
+      sync = this.syncRequested;
+      this.syncRequested = false;
+    }
+    try {
+      doFlush(data, sync);
+    } catch (Throwable t) {
+      batchFailed(t);
+    }
+  }
+
+  /**
+   * Called by the implementation once all the bytes of the batch are acknowledged.
+   * @param fileLength length of the file after the batch
+   */
+  protected final void batchCompleted(long fileLength) {
+    List<Callback<?>> done;
+    boolean more;
+    synchronized (this) {
+      done = this.inFlight;
+      more = !this.waiting.isEmpty();
+      this.inFlight = more ? new ArrayList<Callback<?>>(0) : null;
+    }
+    for (Callback<?> callback : done) {
+      callback.completed(fileLength);
+    }
+    if (more) sendNextBatch();
+  }
+
+  /**
+   * Called by the implementation when the batch could not be written. Fails the batch and
+   * everything after it.
+   */
+  protected final void batchFailed(Throwable cause) {
+    List<Callback<?>> failed = new ArrayList<Callback<?>>();
+    synchronized (this) {
+      if (this.error == null) this.error = cause;
+      if (this.inFlight != null) failed.addAll(this.inFlight);
+      failed.addAll(this.waiting);
+      this.waiting = new ArrayList<Callback<?>>();
+      this.inFlight = null;
+    }
+    for (Callback<?> callback : failed) {
+      callback.failed(cause);
+    }
+  }
+
+  @Override
+  public void close() throws IOException {
+    try {
+      AsyncFSOutputHelper.flushAndWait(this, true);
+    } finally {
+      doClose();
+    }
+  }
+
+  /**
+   * Writes <code>data</code> after everything sent before it and, if <code>sync</code>, makes
+   * it durable. Must end in a call to {@link #batchCompleted(long)} or
+   * {@link #batchFailed(Throwable)}; <code>data</code> may be empty.
+   */
+  protected abstract void doFlush(ByteBuffer data, boolean sync);
+
+  /**
+   * Releases the file; nothing is outstanding when this is called.
+   */
+  protected abstract void doClose() throws IOException;
+}
@@ -0,0 +1,62 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.hadoop.hbase.io.asyncfs;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.channels.CompletionHandler;
+
+import org.apache.hadoop.hbase.classification.InterfaceAudience;
+
+/**
+ * An output stream whose flushes do not block the caller. Writes only go to a local buffer; a
+ * {@link #flush(Object, CompletionHandler, boolean)} hands the buffered bytes to the filesystem
+ * and calls back once they are out. Flush callbacks always complete in the order the flushes
+ * were requested.
+ */
+@InterfaceAudience.Private
+public interface AsyncFSOutput extends Closeable {
+
+  /**
+   * Appends to the local buffer. Nothing is sent until the next flush.
+   */
+  void write(byte[] b, int off, int len);
+
+  /**
+   * @return number of bytes written but not yet handed to the filesystem
+   */
+  int buffered();
+
+  /**
+   * @return total number of bytes written to this output, flushed or not
+   */
+  long getLength();
+
+  /**
+   * Sends everything written so far. The handler is passed the file length once all those
+   * bytes have been acknowledged, or the failure if they could not be.
+   * @param sync whether the bytes must also be made durable, not just handed off
+   */
+  <A> void flush(A attachment, CompletionHandler<Long, ? super A> handler, boolean sync);
+
+  /**
+   * Flushes and syncs anything still buffered, waits for it, and closes the file.
+   */
+  @Override
+  void close() throws IOException;
+}
@@ -0,0 +1,99 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.hadoop.hbase.io.asyncfs;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.nio.channels.CompletionHandler;
+import java.util.concurrent.CountDownLatch;
+
+import org.apache.hadoop.fs.FileSystem;
+import org.apache.hadoop.fs.LocalFileSystem;
+import org.apache.hadoop.fs.Path;
+import org.apache.hadoop.hbase.classification.InterfaceAudience;
+
+/**
+ * Helpers for creating and waiting on {@link AsyncFSOutput}s.
+ */
+@InterfaceAudience.Private
+public final class AsyncFSOutputHelper {
+
+  private AsyncFSOutputHelper() {
+  }
+
+  /**
+   * Creates an {@link AsyncFSOutput} for <code>path</code>. Local files are written with
+   * asynchronous file channel I/O; other filesystems go through their regular output stream,
+   * driven by a per-file thread. Local files bypass the checksum layer, so any stale
+   * <code>.crc</code> file for <code>path</code> is removed first.
+   */
+  @SuppressWarnings("deprecation")
+  public static AsyncFSOutput createOutput(FileSystem fs, Path path, boolean overwritable,
+      int bufferSize, short replication, long blockSize) throws IOException {
+    if (fs instanceof LocalFileSystem) {
+      LocalFileSystem localFs = (LocalFileSystem) fs;
+      // A checksum left from an earlier file of that name would fail every read of this one
+      localFs.getRawFileSystem().delete(localFs.getChecksumFile(path), false);
+      return new LocalAsyncFSOutput(localFs.pathToFile(path), overwritable);
+    }
+    return new StreamAsyncFSOutput(
+      fs.createNonRecursive(path, overwritable, bufferSize, replication, blockSize, null),
+      path.getName());
+  }
+
+  /**
+   * Flushes <code>output</code> and blocks until the flush completes.
+   * @return the length of the file after the flush
+   */
+  public static long flushAndWait(AsyncFSOutput output, boolean sync) throws IOException {
+    WaitingHandler handler = new WaitingHandler();
+    output.flush(null, handler, sync);
+    return handler.get();
+  }
+
+  private static final class WaitingHandler implements CompletionHandler<Long, Void> {
+    private final CountDownLatch latch = new CountDownLatch(1);
+    private volatile long length;
+    private volatile Throwable cause;
+
+    @Override
+    public void completed(Long length, Void attachment) {
+      this.length = length;
+      this.latch.countDown();
+    }
+
+    @Override
+    public void failed(Throwable cause, Void attachment) {
+      this.cause = cause;
+      this.latch.countDown();
+    }
+
+    long get() throws IOException {
+      try {
+        this.latch.await();
+      } catch (InterruptedException e) {
+        throw (IOException) new InterruptedIOException().initCause(e);
+      }
+      if (this.cause != null) {
+        throw this.cause instanceof IOException ?
+          (IOException) this.cause : new IOException(this.cause);
+      }
+      return this.length;
+    }
+  }
+}
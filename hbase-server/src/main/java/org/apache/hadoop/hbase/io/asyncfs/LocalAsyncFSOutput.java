@@ -0,0 +1,111 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.hadoop.hbase.io.asyncfs;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.AsynchronousFileChannel;
+import java.nio.channels.CompletionHandler;
+import java.nio.file.StandardOpenOption;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import org.apache.hadoop.hbase.classification.InterfaceAudience;
+import org.apache.hadoop.hbase.util.Threads;
+
+/**
+ * {@link AsyncFSOutput} on a local file, written through an {@link AsynchronousFileChannel}.
+ * No thread waits on a write; the channel calls back when it is done. The channel has no
+ * asynchronous force, so syncs are made durable on a thread of their own rather than on the
+ * channel's callback thread or the thread asking for the flush.
+ * <p>
+ * The file is written below the {@link org.apache.hadoop.fs.LocalFileSystem} checksum layer:
+ * no <code>.crc</code> side file is written, and reads of the file are not verified.
+ */
+@InterfaceAudience.Private
+public class LocalAsyncFSOutput extends AbstractAsyncFSOutput {
+
+  private final AsynchronousFileChannel channel;
+  private final ExecutorService syncExecutor;
+  // Only touched by the single batch in flight
+  private long position = 0;
+
+  public LocalAsyncFSOutput(File file, boolean overwritable) throws IOException {
+    if (overwritable) {
+      this.channel = AsynchronousFileChannel.open(file.toPath(), StandardOpenOption.WRITE,
+        StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING);
+    } else {
+      this.channel = AsynchronousFileChannel.open(file.toPath(), StandardOpenOption.WRITE,
+        StandardOpenOption.CREATE_NEW);
+    }
+    this.syncExecutor = Executors.newSingleThreadExecutor(
+      Threads.newDaemonThreadFactory("AsyncFSOutput-" + file.getName()));
+  }
+
+  @Override
+  protected void doFlush(final ByteBuffer data, final boolean sync) {
+    if (!data.hasRemaining()) {
+      finish(sync);
+      return;
+    }
+    this.channel.write(data, this.position, null, new CompletionHandler<Integer, Void>() {
+      @Override
+      public void completed(Integer written, Void attachment) {
+        position += written;
+        if (data.hasRemaining()) {
+          // Short write; go again for the rest
+          channel.write(data, position, null, this);
+          return;
+        }
+        finish(sync);
+      }
+
+      @Override
+      public void failed(Throwable cause, Void attachment) {
+        batchFailed(cause);
+      }
+    });
+  }
+
+  private void finish(boolean sync) {
+    if (!sync) {
+      batchCompleted(this.position);
+      return;
+    }
+    // force blocks until the disk has the data; keep it off the channel's threads
+    this.syncExecutor.execute(new Runnable() {
+      @Override
+      public void run() {
+        try {
+          channel.force(false);
+        } catch (IOException e) {
+          batchFailed(e);
+          return;
+        }
+        batchCompleted(position);
+      }
+    });
+  }
+
+  @Override
+  protected void doClose() throws IOException {
+    this.syncExecutor.shutdown();
+    this.channel.close();
+  }
+}
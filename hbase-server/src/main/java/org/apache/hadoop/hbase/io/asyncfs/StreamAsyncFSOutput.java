@@ -0,0 +1,72 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.hadoop.hbase.io.asyncfs;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import org.apache.hadoop.fs.FSDataOutputStream;
+import org.apache.hadoop.hbase.classification.InterfaceAudience;
+import org.apache.hadoop.hbase.util.Threads;
+
+/**
+ * {@link AsyncFSOutput} over a filesystem stream that only has a blocking API. A single thread
+ * per file does the writes and hflushes; callers never wait on it, and since flushes queue up
+ * behind the one in flight, each hflush carries every edit that arrived while the previous one
+ * ran.
+ */
+@InterfaceAudience.Private
+public class StreamAsyncFSOutput extends AbstractAsyncFSOutput {
+
+  private final FSDataOutputStream out;
+  private final ExecutorService executor;
+
+  public StreamAsyncFSOutput(FSDataOutputStream out, String name) {
+    this.out = out;
+    this.executor = Executors.newSingleThreadExecutor(
+      Threads.newDaemonThreadFactory("AsyncFSOutput-" + name));
+  }
+
+  @Override
+  protected void doFlush(final ByteBuffer data, final boolean sync) {
+    this.executor.execute(new Runnable() {
+      @Override
+      public void run() {
+        try {
+          out.write(data.array(), data.arrayOffset() + data.position(), data.remaining());
+          if (sync) {
+            out.hflush();
+          } else {
+            out.flush();
+          }
+          batchCompleted(out.getPos());
+        } catch (IOException e) {
+          batchFailed(e);
+        }
+      }
+    });
+  }
+
+  @Override
+  protected void doClose() throws IOException {
+    this.executor.shutdown();
+    this.out.close();
+  }
+}
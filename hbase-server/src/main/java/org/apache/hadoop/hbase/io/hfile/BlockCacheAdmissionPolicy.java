@@ -0,0 +1,50 @@
+/**
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.hadoop.hbase.io.hfile;
+
+import org.apache.hadoop.hbase.classification.InterfaceAudience;
+
+/**
+ * Decides whether a block cache that is full takes in a new block, which means evicting some
+ * other block sooner. Lets a cache keep its working set when one-off reads, like those of a
+ * full table scan, would otherwise push it out.
+ * <p>
+ * Implementations are called from the read path of every handler, so they must be thread safe
+ * and cheap; they may be approximate.
+ * @see TinyLfuAdmissionPolicy
+ */
+@InterfaceAudience.Private
+public interface BlockCacheAdmissionPolicy {
+
+  /**
+   * Notes a lookup of the block, whether it was cached or not.
+   */
+  void recordAccess(BlockCacheKey cacheKey);
+
+  /**
+   * Asked when caching a block in a cache that is full.
+   * @return true if the block is worth caching in place of what the cache would evict for it
+   */
+  boolean admit(BlockCacheKey cacheKey);
+
+  /**
+   * Notes that the cache evicted the block to make room for others.
+   */
+  void recordEviction(BlockCacheKey cacheKey);
+}
@@ -0,0 +1,296 @@
+/**
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.hadoop.hbase.io.hfile;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import org.apache.commons.cli.CommandLine;
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.hbase.HConstants;
+import org.apache.hadoop.hbase.classification.InterfaceAudience;
+import org.apache.hadoop.hbase.io.hfile.BlockCacheTracer.Access;
+import org.apache.hadoop.hbase.io.hfile.bucket.BucketCache;
+import org.apache.hadoop.hbase.nio.ByteBuff;
+import org.apache.hadoop.hbase.util.AbstractHBaseTool;
+import org.apache.hadoop.util.StringUtils.TraditionalBinaryPrefix;
+
+import com.google.common.annotations.VisibleForTesting;
+
+/**
+ * Replays block cache traces recorded with {@link CacheConfig#BLOCKCACHE_TRACE_PATH_KEY} against
+ * block caches of other kinds and sizes, and with other admission policies, and prints the hit
+ * ratio and byte hit ratio each would have had. Traces of several regionservers are replayed one
+ * after another. The first line is what the traced cache itself did.
+ * <pre>
+ * hbase org.apache.hadoop.hbase.io.hfile.BlockCacheTraceReplayer -t trace[,trace...]
+ *     -s 256m,1g,4g [-c lru,bucket,combined] [-p none,tinylfu] [-l1 0.1] [-e offheap]
+ * </pre>
+ * Caches are built from the given configuration, as a regionserver would build them, except
+ * that LruBlockCache evicts in line rather than from a thread, so that replays repeat.
+ */
+@InterfaceAudience.Private
+public class BlockCacheTraceReplayer extends AbstractHBaseTool {
+  /** Writer queue of the BucketCache; long, so the replay does not drop blocks it outruns */
+  private static final int BUCKET_WRITER_QUEUE = 64 * 1024;
+
+  private List<String> traces;
+  private List<String> caches;
+  private List<String> policies;
+  private List<Long> sizes;
+  private float l1Fraction;
+  private String ioEngine;
+
+  public static void main(String[] args) {
+    new BlockCacheTraceReplayer().doStaticMain(args);
+  }
+
+  @Override
+  protected void addOptions() {
+    addRequiredOptWithArg("t", "traces", "Comma separated block cache traces to replay");
+    addRequiredOptWithArg("s", "sizes", "Comma separated cache sizes, like 512m,2g");
+    addOptWithArg("c", "caches", "Comma separated caches to replay against, of lru, bucket "
+        + "and combined; lru is the default");
+    addOptWithArg("p", "policies", "Comma separated admission policies, of none, tinylfu and "
+        + "class names; none is the default");
+    addOptWithArg("l1", "l1fraction", "Share of a combined cache in its LruBlockCache; 0.1 is "
+        + "the default");
+    addOptWithArg("e", "ioengine", "IOEngine of the BucketCache; offheap is the default");
+  }
+
+  @Override
+  protected void processOptions(CommandLine cmd) {
+    traces = Arrays.asList(cmd.getOptionValue("t").split(","));
+    sizes = new ArrayList<Long>();
+    for (String size : cmd.getOptionValue("s").split(",")) {
+      sizes.add(TraditionalBinaryPrefix.string2long(size.trim()));
+    }
+    caches = Arrays.asList(cmd.getOptionValue("c", "lru").split(","));
+    policies = Arrays.asList(cmd.getOptionValue("p", "none").split(","));
+    l1Fraction = Float.parseFloat(cmd.getOptionValue("l1", "0.1"));
+    ioEngine = cmd.getOptionValue("e", "offheap");
+  }
+
+  @Override
+  protected int doWork() throws Exception {
+    System.out.println(String.format("%-9s %-10s %10s %12s %9s %9s", "cache", "policy", "size",
+      "lookups", "hits", "bytehits"));
+    print("traced", "-", -1, replay(traces, null));
+    for (String cache : caches) {
+      for (String policy : policies) {
+        for (long size : sizes) {
+          BlockCache blockCache = createCache(getConf(), cache.trim(), policy.trim(), size,
+            l1Fraction, ioEngine);
+          try {
+            print(cache, policy, size, replay(traces, blockCache));
+          } finally {
+            blockCache.shutdown();
+          }
+        }
+      }
+    }
+    return EXIT_SUCCESS;
+  }
+
+  private static void print(String cache, String policy, long size, Result result) {
+    System.out.println(String.format("%-9s %-10s %10s %12d %9.4f %9.4f", cache, policy,
+      size < 0 ? "-" : TraditionalBinaryPrefix.long2String(size, "", 1), result.getLookups(),
+      result.getHitRatio(), result.getByteHitRatio()));
+  }
+
+  /**
+   * @param cache lru, bucket or combined
+   * @param policy an admission policy, as {@link CacheConfig#BLOCKCACHE_ADMISSION_POLICY_KEY}
+   *          takes it
+   * @param size bytes the cache holds
+   * @param l1Fraction share of a combined cache in its LruBlockCache
+   * @param ioEngine IOEngine of a BucketCache
+   */
+  @VisibleForTesting
+  static BlockCache createCache(Configuration conf, String cache, String policy, long size,
+      float l1Fraction, String ioEngine) throws IOException {
+    Configuration c = new Configuration(conf);
+    c.set(CacheConfig.BLOCKCACHE_ADMISSION_POLICY_KEY, policy);
+    int blockSize = c.getInt(CacheConfig.BLOCKCACHE_BLOCKSIZE_KEY, HConstants.DEFAULT_BLOCKSIZE);
+    if (cache.equals("lru")) {
+      return createLru(c, size, blockSize);
+    } else if (cache.equals("bucket")) {
+      return createBucket(c, size, blockSize, ioEngine);
+    } else if (cache.equals("combined")) {
+      long l1Size = (long) (size * l1Fraction);
+      return new CombinedBlockCache(createLru(c, l1Size, blockSize),
+          createBucket(c, size - l1Size, blockSize, ioEngine));
+    }
+    throw new IllegalArgumentException("Unknown block cache " + cache);
+  }
+
+  private static LruBlockCache createLru(Configuration c, long size, int blockSize) {
+    LruBlockCache lru = new LruBlockCache(size, blockSize, false, c);
+    lru.setAdmissionPolicy(CacheConfig.getAdmissionPolicy(c, size / blockSize));
+    return lru;
+  }
+
+  private static BucketCache createBucket(Configuration c, long size, int blockSize,
+      String ioEngine) throws IOException {
+    BucketCache bucket = new BucketCache(ioEngine, size, blockSize, null,
+        CacheConfig.DEFAULT_BUCKET_CACHE_WRITER_THREADS, BUCKET_WRITER_QUEUE, null);
+    bucket.setAdmissionPolicy(CacheConfig.getAdmissionPolicy(c, size / blockSize));
+    return bucket;
+  }
+
+  /**
+   * Replays the traces against the cache: looks up each block the trace did, and caches it on
+   * a miss if the traced reader did.
+   * @param cache the cache to replay against, or null for what the traced cache did
+   */
+  @VisibleForTesting
+  static Result replay(List<String> traces, BlockCache cache) throws IOException {
+    Result result = new Result();
+    Access access = new Access();
+    for (String trace : traces) {
+      BlockCacheTracer.Reader reader = new BlockCacheTracer.Reader(trace.trim());
+      try {
+        while (reader.next(access)) {
+          boolean hit;
+          if (cache == null) {
+            hit = access.isHit();
+          } else {
+            BlockCacheKey key = new BlockCacheKey(access.getHfileName(), access.getOffset());
+            Cacheable block = cache.getBlock(key, access.isCaching(), false, true);
+            hit = block != null;
+            if (hit) {
+              cache.returnBlock(key, block);
+            } else if (access.isCaching()) {
+              cache.cacheBlock(key, new TraceBlock(access.getBlockType(), access.getSize()));
+            }
+          }
+          result.add(access.getSize(), hit);
+        }
+      } finally {
+        reader.close();
+      }
+    }
+    return result;
+  }
+
+  /**
+   * Lookups and hits of a replay.
+   */
+  @VisibleForTesting
+  static class Result {
+    private long lookups;
+    private long hits;
+    private long bytes;
+    private long hitBytes;
+
+    void add(long size, boolean hit) {
+      lookups++;
+      bytes += size;
+      if (hit) {
+        hits++;
+        hitBytes += size;
+      }
+    }
+
+    long getLookups() {
+      return lookups;
+    }
+
+    long getHits() {
+      return hits;
+    }
+
+    double getHitRatio() {
+      return lookups == 0 ? 0 : (double) hits / lookups;
+    }
+
+    double getByteHitRatio() {
+      return bytes == 0 ? 0 : (double) hitBytes / bytes;
+    }
+  }
+
+  /**
+   * Stands in for a traced block: takes up as much of a cache as the block did, and no data.
+   */
+  private static class TraceBlock implements Cacheable {
+    private static final CacheableDeserializer<Cacheable> DESERIALIZER =
+        new CacheableDeserializer<Cacheable>() {
+      @Override
+      public Cacheable deserialize(ByteBuff b) throws IOException {
+        return new TraceBlock(BlockType.values()[b.get(0)], b.limit());
+      }
+
+      @Override
+      public Cacheable deserialize(ByteBuff b, boolean reuse, MemoryType memType)
+          throws IOException {
+        return deserialize(b);
+      }
+
+      @Override
+      public int getDeserialiserIdentifier() {
+        return DESERIALIZER_ID;
+      }
+    };
+    private static final int DESERIALIZER_ID =
+        CacheableDeserializerIdManager.registerDeserializer(DESERIALIZER);
+
+    private final BlockType blockType;
+    private final int size;
+
+    TraceBlock(BlockType blockType, long size) {
+      this.blockType = blockType;
+      // The first byte holds the type, for a block read back from a BucketCache
+      this.size = (int) Math.max(size, 1);
+    }
+
+    @Override
+    public long heapSize() {
+      return size;
+    }
+
+    @Override
+    public int getSerializedLength() {
+      return size;
+    }
+
+    @Override
+    public void serialize(ByteBuffer destination) {
+      destination.put((byte) blockType.ordinal());
+      destination.rewind();
+    }
+
+    @Override
+    public CacheableDeserializer<Cacheable> getDeserializer() {
+      return DESERIALIZER;
+    }
+
+    @Override
+    public BlockType getBlockType() {
+      return blockType;
+    }
+
+    @Override
+    public MemoryType getMemoryType() {
+      return MemoryType.EXCLUSIVE;
+    }
+  }
+}
@@ -0,0 +1,252 @@
+/**
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.hadoop.hbase.io.hfile;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.apache.hadoop.hbase.classification.InterfaceAudience;
+import org.apache.hadoop.io.IOUtils;
+import org.apache.hadoop.io.WritableUtils;
+
+/**
+ * Records the block cache lookups of HFile readers to a local file, for
+ * {@link BlockCacheTraceReplayer} to replay against other cache sizes, caches and admission
+ * policies. Each lookup is written as the block's HFile, offset, type and size and whether it
+ * was a hit, in a handful of bytes; HFile names are written once and referred to by number after.
+ * <p>
+ * Writes are buffered and serialized on this tracer, so tracing costs every lookup some
+ * contention; it is meant to be turned on for a while, not left on. Recording stops once the
+ * trace reaches its maximum size, on the first write error, and on {@link #close()}. A trace cut
+ * short by a crash reads fine up to its last whole record.
+ */
+@InterfaceAudience.Private
+public class BlockCacheTracer implements Closeable {
+  private static final Log LOG = LogFactory.getLog(BlockCacheTracer.class);
+
+  /** "BCT1" */
+  private static final int MAGIC = 0x42435431;
+  private static final byte FILE_RECORD = 0;
+  private static final byte ACCESS_RECORD = 1;
+  private static final byte HIT = 1;
+  private static final byte CACHING = 2;
+
+  private final String path;
+  private final long maxSize;
+  private final Map<String, Integer> fileIds = new HashMap<String, Integer>();
+  /** Null once recording stopped */
+  private DataOutputStream out;
+
+  /**
+   * @param path local file to write the trace to, replacing any file there
+   * @param maxSize bytes after which recording stops; at most 2GB
+   */
+  public BlockCacheTracer(String path, long maxSize) throws IOException {
+    this.path = path;
+    this.maxSize = Math.min(maxSize, Integer.MAX_VALUE);
+    this.out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(path)));
+    // Block types are written by their position in this table; the enum's order may change
+    BlockType[] types = BlockType.values();
+    out.writeInt(MAGIC);
+    out.writeByte(types.length);
+    for (BlockType type : types) {
+      out.writeUTF(type.name());
+    }
+    LOG.info("Recording block cache lookups to " + path);
+  }
+
+  /**
+   * Records a lookup of a block.
+   * @param cacheKey the block looked up
+   * @param blockType its type
+   * @param size its heap size, as the cache accounts it
+   * @param hit whether it was in the cache
+   * @param caching whether the reader caches the block when it is not
+   */
+  public synchronized void record(BlockCacheKey cacheKey, BlockType blockType, long size,
+      boolean hit, boolean caching) {
+    if (out == null) {
+      return;
+    }
+    try {
+      Integer fileId = fileIds.get(cacheKey.getHfileName());
+      if (fileId == null) {
+        fileId = fileIds.size();
+        fileIds.put(cacheKey.getHfileName(), fileId);
+        out.writeByte(FILE_RECORD);
+        out.writeUTF(cacheKey.getHfileName());
+      }
+      out.writeByte(ACCESS_RECORD);
+      WritableUtils.writeVInt(out, fileId);
+      WritableUtils.writeVLong(out, cacheKey.getOffset());
+      out.writeByte(blockType.ordinal());
+      WritableUtils.writeVLong(out, size);
+      out.writeByte((hit ? HIT : 0) | (caching ? CACHING : 0));
+      if (out.size() >= maxSize) {
+        LOG.info("Block cache trace " + path + " reached its maximum size of " + maxSize
+            + " bytes; stopped recording");
+        close();
+      }
+    } catch (IOException e) {
+      LOG.warn("Failed writing block cache trace " + path + "; stopped recording", e);
+      IOUtils.closeStream(out);
+      out = null;
+    }
+  }
+
+  /**
+   * Stops recording and flushes what was recorded.
+   */
+  @Override
+  public synchronized void close() {
+    if (out == null) {
+      return;
+    }
+    try {
+      out.close();
+    } catch (IOException e) {
+      LOG.warn("Failed closing block cache trace " + path, e);
+    }
+    out = null;
+  }
+
+  /**
+   * A lookup read back from a trace. {@link Reader#next(Access)} fills in the same instance
+   * over and over.
+   */
+  public static class Access {
+    private String hfileName;
+    private long offset;
+    private BlockType blockType;
+    private long size;
+    private boolean hit;
+    private boolean caching;
+
+    public String getHfileName() {
+      return hfileName;
+    }
+
+    public long getOffset() {
+      return offset;
+    }
+
+    public BlockType getBlockType() {
+      return blockType;
+    }
+
+    public long getSize() {
+      return size;
+    }
+
+    /**
+     * @return whether the block was in the cache when traced
+     */
+    public boolean isHit() {
+      return hit;
+    }
+
+    /**
+     * @return whether the reader cached the block if it was not in the cache
+     */
+    public boolean isCaching() {
+      return caching;
+    }
+  }
+
+  /**
+   * Reads the lookups of a trace in the order they were recorded.
+   */
+  public static class Reader implements Closeable {
+    private final DataInputStream in;
+    private final BlockType[] types;
+    private final List<String> fileNames = new ArrayList<String>();
+
+    public Reader(String path) throws IOException {
+      in = new DataInputStream(new BufferedInputStream(new FileInputStream(path)));
+      try {
+        if (in.readInt() != MAGIC) {
+          throw new IOException(path + " is not a block cache trace");
+        }
+        types = new BlockType[in.readUnsignedByte()];
+        for (int i = 0; i < types.length; i++) {
+          types[i] = BlockType.valueOf(in.readUTF());
+        }
+      } catch (IOException e) {
+        in.close();
+        throw e;
+      } catch (IllegalArgumentException e) {
+        in.close();
+        throw new IOException(path + " has an unknown block type", e);
+      }
+    }
+
+    /**
+     * @param access where to put the next lookup
+     * @return false at the end of the trace, or at the record a crash cut short
+     */
+    public boolean next(Access access) throws IOException {
+      try {
+        while (true) {
+          int tag = in.read();
+          if (tag < 0) {
+            return false;
+          } else if (tag == FILE_RECORD) {
+            fileNames.add(in.readUTF());
+          } else if (tag == ACCESS_RECORD) {
+            int fileId = WritableUtils.readVInt(in);
+            access.offset = WritableUtils.readVLong(in);
+            int type = in.readUnsignedByte();
+            access.size = WritableUtils.readVLong(in);
+            byte flags = in.readByte();
+            if (fileId < 0 || fileId >= fileNames.size() || type >= types.length) {
+              throw new IOException("Corrupt block cache trace record");
+            }
+            access.hfileName = fileNames.get(fileId);
+            access.blockType = types[type];
+            access.hit = (flags & HIT) != 0;
+            access.caching = (flags & CACHING) != 0;
+            return true;
+          } else {
+            throw new IOException("Unknown block cache trace record " + tag);
+          }
+        }
+      } catch (EOFException e) {
+        return false;
+      }
+    }
+
+    @Override
+    public void close() throws IOException {
+      in.close();
+    }
+  }
+}
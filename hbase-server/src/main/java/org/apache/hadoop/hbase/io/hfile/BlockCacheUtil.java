@@ -25,6 +25,7 @@ import java.util.concurrent.ConcurrentSkipListSet;
 
 import org.apache.hadoop.hbase.classification.InterfaceAudience;
 import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.hbase.io.hfile.bucket.BucketCache;
 import org.codehaus.jackson.JsonGenerationException;
 import org.codehaus.jackson.annotate.JsonIgnoreProperties;
 import org.codehaus.jackson.map.JsonMappingException;
@@ -149,6 +150,32 @@ public class BlockCacheUtil {
     return MAPPER.writeValueAsString(bc);
   }
 
+  /**
+   * Whether the cache, or any of the caches it is made of, contains the block, without fetching
+   * it. Caches which cannot tell without fetching it are taken not to contain it.
+   * @param bc
+   * @param cacheKey
+   * @return true if contains the block
+   */
+  public static boolean containsBlock(final BlockCache bc, final BlockCacheKey cacheKey) {
+    BlockCache[] bcs = bc.getBlockCaches();
+    if (bcs != null) {
+      for (BlockCache cache : bcs) {
+        if (cache != null && containsBlock(cache, cacheKey)) {
+          return true;
+        }
+      }
+      return false;
+    }
+    if (bc instanceof LruBlockCache) {
+      return ((LruBlockCache) bc).containsBlock(cacheKey);
+    }
+    if (bc instanceof BucketCache) {
+      return ((BucketCache) bc).containsBlock(cacheKey);
+    }
+    return false;
+  }
+
   /**
    * @param cb
    * @return The block content of <code>bc</code> as a String minus the filename.
@@ -88,6 +88,21 @@ public class CacheConfig {
   public static final String BUCKET_CACHE_PERSISTENT_PATH_KEY = 
       "hbase.bucketcache.persistent.path";
 
+  /**
+   * How often, in milliseconds, a persistent bucket cache checkpoints its index, so that it is
+   * restored after a crash too. If not positive, the index is only persisted on shutdown.
+   */
+  public static final String BUCKET_CACHE_PERSIST_INTERVAL_KEY =
+      "hbase.bucketcache.persist.intervalinmillis";
+
+  /**
+   * How long, in milliseconds, after a restart a persistent bucket cache keeps the blocks it
+   * restored of HFiles that are neither read nor cached. Those HFiles are taken to be gone once
+   * the window ends. If not positive, such blocks stay until evicted as usual.
+   */
+  public static final String BUCKET_CACHE_RECONCILE_WINDOW_KEY =
+      "hbase.bucketcache.persistence.reconcile.window";
+
   /**
    * If the bucket cache is used in league with the lru on-heap block cache (meta blocks such
    * as indices and blooms are kept in the lru blockcache and the data blocks in the
@@ -96,6 +111,16 @@ public class CacheConfig {
   public static final String BUCKET_CACHE_COMBINED_KEY = 
       "hbase.bucketcache.combinedcache.enabled";
 
+  /**
+   * If the bucket cache is combined with the lru block cache, whether data blocks are kept in
+   * the bucket cache in their on-disk, compressed and/or encrypted, form. They are decompressed
+   * on every hit, into buffers of a pool holding as many as
+   * {@link #BUCKET_CACHE_COMPRESSED_BUFFERS_KEY} buffers.
+   */
+  public static final String BUCKET_CACHE_COMPRESSED_KEY = "hbase.bucketcache.cachecompressed";
+  public static final String BUCKET_CACHE_COMPRESSED_BUFFERS_KEY =
+      "hbase.bucketcache.cachecompressed.buffers";
+
   public static final String BUCKET_CACHE_WRITER_THREADS_KEY = "hbase.bucketcache.writer.threads";
   public static final String BUCKET_CACHE_WRITER_QUEUE_KEY = 
       "hbase.bucketcache.writer.queuelength";
@@ -111,6 +136,8 @@ public class CacheConfig {
   public static final boolean DEFAULT_BUCKET_CACHE_COMBINED = true;
   public static final int DEFAULT_BUCKET_CACHE_WRITER_THREADS = 3;
   public static final int DEFAULT_BUCKET_CACHE_WRITER_QUEUE = 64;
+  public static final boolean DEFAULT_BUCKET_CACHE_COMPRESSED = false;
+  public static final int DEFAULT_BUCKET_CACHE_COMPRESSED_BUFFERS = 256;
 
  /**
    * Configuration key to prefetch all blocks of a given file into the block cache
@@ -127,6 +154,26 @@ public class CacheConfig {
    */
   public static final String BLOCKCACHE_BLOCKSIZE_KEY = "hbase.offheapcache.minblocksize";
 
+  /**
+   * Which blocks the L1 and L2 block caches take in once full: "none" to take in all, "tinylfu"
+   * for {@link TinyLfuAdmissionPolicy}, which keeps out blocks read less often than those it
+   * would evict for them, or the name of a {@link BlockCacheAdmissionPolicy} class with a
+   * public constructor taking the number of blocks the cache holds, as a long.
+   */
+  public static final String BLOCKCACHE_ADMISSION_POLICY_KEY =
+      "hbase.blockcache.admission.policy";
+  public static final String DEFAULT_BLOCKCACHE_ADMISSION_POLICY = "none";
+
+  /**
+   * Local file to record the block cache lookups of HFile readers to, for
+   * {@link BlockCacheTraceReplayer}. Unset, the default, records nothing.
+   */
+  public static final String BLOCKCACHE_TRACE_PATH_KEY = "hbase.blockcache.trace.path";
+
+  /** Size a block cache trace stops growing at */
+  public static final String BLOCKCACHE_TRACE_MAX_SIZE_KEY = "hbase.blockcache.trace.max.size";
+  public static final long DEFAULT_BLOCKCACHE_TRACE_MAX_SIZE = 1024L * 1024 * 1024;
+
   private static final String EXTERNAL_BLOCKCACHE_KEY = "hbase.blockcache.use.external";
   private static final boolean EXTERNAL_BLOCKCACHE_DEFAULT = false;
 
@@ -194,7 +241,7 @@ public class CacheConfig {
   private final boolean cacheDataCompressed;
 
   /** Whether data blocks should be prefetched into the cache */
-  private final boolean prefetchOnOpen;
+  private boolean prefetchOnOpen;
 
   /**
    * If true and if more than one tier in this cache deploy -- e.g. CombinedBlockCache has an L1
@@ -205,6 +252,12 @@ public class CacheConfig {
 
   private final boolean dropBehindCompaction;
 
+  /**
+   * Where data blocks cached compressed in the L2 tier are decompressed into on hits, or null if
+   * they are not cached compressed there.
+   */
+  private DecompressionBufferPool decompressionBufferPool;
+
   /**
    * Create a cache configuration using the specified configuration object and
    * family descriptor.
@@ -232,6 +285,7 @@ public class CacheConfig {
             HColumnDescriptor.DEFAULT_CACHE_DATA_IN_L1) || family.isCacheDataInL1(),
         conf.getBoolean(DROP_BEHIND_CACHE_COMPACTION_KEY,DROP_BEHIND_CACHE_COMPACTION_DEFAULT)
      );
+    this.decompressionBufferPool = getDecompressionBufferPool(conf, this.blockCache);
   }
 
   /**
@@ -254,6 +308,7 @@ public class CacheConfig {
           HColumnDescriptor.DEFAULT_CACHE_DATA_IN_L1),
         conf.getBoolean(DROP_BEHIND_CACHE_COMPACTION_KEY,DROP_BEHIND_CACHE_COMPACTION_DEFAULT)
      );
+    this.decompressionBufferPool = getDecompressionBufferPool(conf, this.blockCache);
   }
 
   /**
@@ -302,6 +357,14 @@ public class CacheConfig {
         cacheConf.cacheBloomsOnWrite, cacheConf.evictOnClose,
         cacheConf.cacheDataCompressed, cacheConf.prefetchOnOpen,
         cacheConf.cacheDataInL1, cacheConf.dropBehindCompaction);
+    this.decompressionBufferPool = cacheConf.decompressionBufferPool;
+  }
+
+  /**
+   * @return where to record lookups of the block cache, or null if they are not recorded
+   */
+  public BlockCacheTracer getBlockCacheTracer() {
+    return this.blockCache == null ? null : GLOBAL_BLOCK_CACHE_TRACER;
   }
 
   /**
@@ -436,12 +499,20 @@ public class CacheConfig {
     if (!isBlockCacheEnabled()) return false;
     switch (category) {
       case DATA:
-        return this.cacheDataCompressed;
+        return this.cacheDataCompressed || getDecompressionBufferPool() != null;
       default:
         return false;
     }
   }
 
+  /**
+   * @return the pool to decompress data blocks cached compressed into on hits, or null if the
+   *         data blocks of this family are not cached compressed in the L2 tier
+   */
+  public DecompressionBufferPool getDecompressionBufferPool() {
+    return isBlockCacheEnabled() && !this.cacheDataInL1 ? this.decompressionBufferPool : null;
+  }
+
   /**
    * @return true if blocks should be prefetched into the cache on open, false if not
    */
@@ -449,6 +520,14 @@ public class CacheConfig {
     return isBlockCacheEnabled() && this.prefetchOnOpen;
   }
 
+  /**
+   * @param prefetchOnOpen whether blocks should be prefetched into the cache when an HFile
+   *                       reader is opened
+   */
+  public void setPrefetchOnOpen(boolean prefetchOnOpen) {
+    this.prefetchOnOpen = prefetchOnOpen;
+  }
+
   /**
    * Return true if we may find this type of block in block cache.
    * <p>
@@ -516,6 +595,14 @@ public class CacheConfig {
   @VisibleForTesting
   static BlockCache GLOBAL_BLOCK_CACHE_INSTANCE;
 
+  /** Records lookups of the block cache instance, or null */
+  @VisibleForTesting
+  static BlockCacheTracer GLOBAL_BLOCK_CACHE_TRACER;
+
+  /** Pool shared by the families caching data blocks compressed in the L2 tier */
+  private static DecompressionBufferPool GLOBAL_DECOMPRESSION_BUFFER_POOL;
+  private static boolean warnedNotCombined = false;
+
   /** Boolean whether we have disabled the block cache entirely. */
   @VisibleForTesting
   static boolean blockCacheDisabled = false;
@@ -547,7 +634,28 @@ public class CacheConfig {
     int blockSize = c.getInt(BLOCKCACHE_BLOCKSIZE_KEY, HConstants.DEFAULT_BLOCKSIZE);
     LOG.info("Allocating LruBlockCache size=" +
       StringUtils.byteDesc(lruCacheSize) + ", blockSize=" + StringUtils.byteDesc(blockSize));
-    return new LruBlockCache(lruCacheSize, blockSize, true, c);
+    LruBlockCache lru = new LruBlockCache(lruCacheSize, blockSize, true, c);
+    lru.setAdmissionPolicy(getAdmissionPolicy(c, lruCacheSize / blockSize));
+    lru.setGhostCache(GhostCache.create(c, lruCacheSize));
+    return lru;
+  }
+
+  /**
+   * @param expectedBlocks how many blocks the cache holds, roughly
+   * @return the configured admission policy for a block cache, or null if it is to take in all
+   */
+  @VisibleForTesting
+  static BlockCacheAdmissionPolicy getAdmissionPolicy(Configuration c, long expectedBlocks) {
+    String policy = c.get(BLOCKCACHE_ADMISSION_POLICY_KEY, DEFAULT_BLOCKCACHE_ADMISSION_POLICY)
+        .trim();
+    if (policy.equalsIgnoreCase("none")) {
+      return null;
+    }
+    if (policy.equalsIgnoreCase("tinylfu")) {
+      return new TinyLfuAdmissionPolicy(expectedBlocks);
+    }
+    return ReflectionUtils.instantiateWithCustomCtor(policy, new Class<?>[] { long.class },
+      new Object[] { expectedBlocks });
   }
 
   /**
@@ -633,10 +741,15 @@ public class CacheConfig {
       int ioErrorsTolerationDuration = c.getInt(
         "hbase.bucketcache.ioengine.errors.tolerated.duration",
         BucketCache.DEFAULT_ERROR_TOLERATION_DURATION);
+      long persistInterval = c.getLong(BUCKET_CACHE_PERSIST_INTERVAL_KEY,
+        BucketCache.DEFAULT_CHECKPOINT_INTERVAL);
+      long reconcileWindow = c.getLong(BUCKET_CACHE_RECONCILE_WINDOW_KEY,
+        BucketCache.DEFAULT_RECONCILE_WINDOW);
       // Bucket cache logs its stats on creation internal to the constructor.
       bucketCache = new BucketCache(bucketCacheIOEngineName,
         bucketCacheSize, blockSize, bucketSizes, writerThreads, writerQueueLen, persistentPath,
-        ioErrorsTolerationDuration);
+        ioErrorsTolerationDuration, persistInterval, reconcileWindow);
+      bucketCache.setAdmissionPolicy(getAdmissionPolicy(c, bucketCacheSize / blockSize));
     } catch (IOException ioex) {
       LOG.error("Can't instantiate bucket cache", ioex); throw new RuntimeException(ioex);
     }
@@ -679,6 +792,48 @@ public class CacheConfig {
       }
       l1.setVictimCache(l2);
     }
+    GLOBAL_BLOCK_CACHE_TRACER = getTracer(conf);
     return GLOBAL_BLOCK_CACHE_INSTANCE;
   }
+
+  /**
+   * @return the pool to decompress the data blocks cached compressed in the bucket cache into,
+   *         or null if they are not cached compressed there
+   */
+  private static synchronized DecompressionBufferPool getDecompressionBufferPool(
+      Configuration conf, BlockCache blockCache) {
+    if (!conf.getBoolean(BUCKET_CACHE_COMPRESSED_KEY, DEFAULT_BUCKET_CACHE_COMPRESSED)) {
+      return null;
+    }
+    // Only a CombinedBlockCache keeps the data blocks in its L2 tier alone
+    if (!(blockCache instanceof CombinedBlockCache)
+        || blockCache instanceof InclusiveCombinedBlockCache) {
+      if (blockCache != null && !warnedNotCombined) {
+        warnedNotCombined = true;
+        LOG.warn(BUCKET_CACHE_COMPRESSED_KEY + " requires a bucket cache combined with the lru "
+            + "block cache; data blocks are cached as configured by "
+            + CACHE_DATA_BLOCKS_COMPRESSED_KEY);
+      }
+      return null;
+    }
+    if (GLOBAL_DECOMPRESSION_BUFFER_POOL == null) {
+      GLOBAL_DECOMPRESSION_BUFFER_POOL = new DecompressionBufferPool(conf.getInt(
+        BUCKET_CACHE_COMPRESSED_BUFFERS_KEY, DEFAULT_BUCKET_CACHE_COMPRESSED_BUFFERS));
+    }
+    return GLOBAL_DECOMPRESSION_BUFFER_POOL;
+  }
+
+  private static BlockCacheTracer getTracer(Configuration conf) {
+    String path = conf.get(BLOCKCACHE_TRACE_PATH_KEY);
+    if (path == null || path.isEmpty()) {
+      return null;
+    }
+    try {
+      return new BlockCacheTracer(path,
+          conf.getLong(BLOCKCACHE_TRACE_MAX_SIZE_KEY, DEFAULT_BLOCKCACHE_TRACE_MAX_SIZE));
+    } catch (IOException e) {
+      LOG.warn("Failed creating block cache trace " + path + "; not recording", e);
+      return null;
+    }
+  }
 }
@@ -18,6 +18,7 @@
  */
 package org.apache.hadoop.hbase.io.hfile;
 
+import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicLong;
 
 import org.apache.hadoop.hbase.classification.InterfaceAudience;
@@ -70,6 +71,9 @@ public class CacheStats {
   /** The number of times an eviction has occurred */
   private final AtomicLong evictionCount = new AtomicLong(0);
 
+  /** The time spent in evictions, in nanoseconds */
+  private final AtomicLong evictionTime = new AtomicLong(0);
+
   /** The total number of blocks that have been evicted */
   private final AtomicLong evictedBlockCount = new AtomicLong(0);
 
@@ -79,6 +83,12 @@ public class CacheStats {
   /** The total number of blocks that were not inserted. */
   private final AtomicLong failedInserts = new AtomicLong(0);
 
+  /** The number of hits on blocks cached compressed that were decompressed */
+  private final AtomicLong decompressCount = new AtomicLong(0);
+
+  /** The time spent decompressing blocks cached compressed, in nanoseconds */
+  private final AtomicLong decompressTime = new AtomicLong(0);
+
   /** The number of metrics periods to include in window */
   private final int numPeriodsInWindow;
   /** Hit counts for each period in window */
@@ -151,6 +161,15 @@ public class CacheStats {
     evictionCount.incrementAndGet();
   }
 
+  /**
+   * Counts an eviction run.
+   * @param nanos how long it took
+   */
+  public void evict(long nanos) {
+    evictionCount.incrementAndGet();
+    evictionTime.addAndGet(nanos);
+  }
+
   public void evicted(final long t, boolean primary) {
     if (t > this.startTime) this.ageAtEviction.update(t - this.startTime);
     this.evictedBlockCount.incrementAndGet();
@@ -163,6 +182,15 @@ public class CacheStats {
     return failedInserts.incrementAndGet();
   }
 
+  /**
+   * Counts a hit on a block cached compressed.
+   * @param nanos how long it took to decompress the block
+   */
+  public void decompressed(long nanos) {
+    decompressCount.incrementAndGet();
+    decompressTime.addAndGet(nanos);
+  }
+
   public long getRequestCount() {
     return getHitCount() + getMissCount();
   }
@@ -199,6 +227,13 @@ public class CacheStats {
     return evictionCount.get();
   }
 
+  /**
+   * @return milliseconds spent in evictions that were timed
+   */
+  public long getEvictionTime() {
+    return TimeUnit.NANOSECONDS.toMillis(evictionTime.get());
+  }
+
   public long getEvictedCount() {
     return this.evictedBlockCount.get();
   }
@@ -231,6 +266,17 @@ public class CacheStats {
     return failedInserts.get();
   }
 
+  public long getDecompressCount() {
+    return decompressCount.get();
+  }
+
+  /**
+   * @return milliseconds spent decompressing blocks cached compressed on hits
+   */
+  public long getDecompressTime() {
+    return TimeUnit.NANOSECONDS.toMillis(decompressTime.get());
+  }
+
   public void rollMetricsPeriod() {
     hitCounts[windowIndex] = getHitCount() - lastHitCount;
     lastHitCount = getHitCount();
@@ -190,6 +190,12 @@ public class CombinedBlockCache implements ResizableBlockCache, HeapSize {
           + bucketCacheStats.getEvictionCount();
     }
 
+    @Override
+    public long getEvictionTime() {
+      return lruCacheStats.getEvictionTime()
+          + bucketCacheStats.getEvictionTime();
+    }
+
     @Override
     public long getEvictedCount() {
       return lruCacheStats.getEvictedCount()
@@ -253,6 +259,11 @@ public class CombinedBlockCache implements ResizableBlockCache, HeapSize {
     this.lruCache.setMaxSize(size);
   }
 
+  @Override
+  public GhostCache getGhostCache() {
+    return this.lruCache.getGhostCache();
+  }
+
   @Override
   public void returnBlock(BlockCacheKey cacheKey, Cacheable block) {
     // A noop
@@ -64,7 +64,22 @@ public class CompoundBloomFilter extends CompoundBloomFilterBase
    */
   public CompoundBloomFilter(DataInput meta, HFile.Reader reader)
       throws IOException {
+    this(meta, reader, false);
+  }
+
+  /**
+   * De-serialization for compound Bloom filter metadata. Must be consistent
+   * with what {@link CompoundBloomFilterWriter} does.
+   *
+   * @param meta serialized Bloom filter metadata without any magic blocks
+   * @param blocked whether the chunks are blocked Bloom filters, as told by
+   *          the version of the metadata
+   * @throws IOException
+   */
+  public CompoundBloomFilter(DataInput meta, HFile.Reader reader, boolean blocked)
+      throws IOException {
     this.reader = reader;
+    this.blocked = blocked;
 
     totalByteSize = meta.readLong();
     hashCount = meta.readInt();
@@ -122,9 +137,15 @@ public class CompoundBloomFilter extends CompoundBloomFilterBase
       }
       try {
         ByteBuff bloomBuf = bloomBlock.getBufferReadOnly();
-        result =
-            BloomFilterUtil.contains(key, keyOffset, keyLength, bloomBuf, bloomBlock.headerSize(),
-              bloomBlock.getUncompressedSizeWithoutHeader(), hash, hashCount);
+        if (blocked) {
+          result = BloomFilterUtil.containsBlocked(key, keyOffset, keyLength, bloomBuf,
+              bloomBlock.headerSize(), bloomBlock.getUncompressedSizeWithoutHeader(), hash,
+              hashCount);
+        } else {
+          result =
+              BloomFilterUtil.contains(key, keyOffset, keyLength, bloomBuf, bloomBlock.headerSize(),
+                bloomBlock.getUncompressedSizeWithoutHeader(), hash, hashCount);
+        }
       } finally {
         // After the use return back the block if it was served from a cache.
         reader.returnBlock(bloomBlock);
@@ -165,6 +186,10 @@ public class CompoundBloomFilter extends CompoundBloomFilterBase
     return numChunks;
   }
 
+  public boolean isBlocked() {
+    return blocked;
+  }
+
   public void enableTestingStats() {
     numQueriesPerChunk = new long[numChunks];
     numPositivesPerChunk = new long[numChunks];
@@ -200,6 +225,8 @@ public class CompoundBloomFilter extends CompoundBloomFilterBase
     sb.append(BloomFilterUtil.formatStats(this));
     sb.append(BloomFilterUtil.STATS_RECORD_SEP + 
         "Number of chunks: " + numChunks);
+    sb.append(BloomFilterUtil.STATS_RECORD_SEP +
+        "Blocked chunks: " + blocked);
     sb.append(BloomFilterUtil.STATS_RECORD_SEP + 
         ((comparator != null) ? "Comparator: "
         + comparator.getClass().getSimpleName() : "Comparator: "
@@ -40,6 +40,14 @@ public class CompoundBloomFilterBase implements BloomFilterBase {
    */
   public static final int VERSION = 3;
 
+  /**
+   * The Bloom filter version of compound Bloom filters with blocked chunks, where all the bits of
+   * a key are in one block of
+   * {@link org.apache.hadoop.hbase.util.BloomFilterUtil#BLOOM_BLOCK_BYTES}. The chunks have the
+   * same block type as in {@link #VERSION}.
+   */
+  public static final int BLOCKED_VERSION = 4;
+
   /** Target error rate for configuring the filter and for information */
   protected float errorRate;
 
@@ -50,6 +58,8 @@ public class CompoundBloomFilterBase implements BloomFilterBase {
 
   /** Hash function type to use, as defined in {@link org.apache.hadoop.hbase.util.Hash} */
   protected int hashType;
+  /** Whether the chunks are blocked Bloom filters */
+  protected boolean blocked;
   /** Comparator used to compare Bloom filter keys */
   protected CellComparator comparator;
 
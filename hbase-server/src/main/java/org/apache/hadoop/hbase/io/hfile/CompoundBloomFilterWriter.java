@@ -91,6 +91,25 @@ public class CompoundBloomFilterWriter extends CompoundBloomFilterBase
   public CompoundBloomFilterWriter(int chunkByteSizeHint, float errorRate,
       int hashType, int maxFold, boolean cacheOnWrite,
       CellComparator comparator) {
+    this(chunkByteSizeHint, errorRate, hashType, maxFold, cacheOnWrite, comparator, false);
+  }
+
+  /**
+   * @param chunkByteSizeHint
+   *          each chunk's size in bytes. The real chunk size might be different
+   *          as required by the fold factor and the blocks.
+   * @param errorRate
+   *          target false positive rate
+   * @param hashType
+   *          hash function type to use
+   * @param maxFold
+   *          maximum degree of folding allowed
+   * @param blocked
+   *          whether to write blocked Bloom filter chunks
+   */
+  public CompoundBloomFilterWriter(int chunkByteSizeHint, float errorRate,
+      int hashType, int maxFold, boolean cacheOnWrite,
+      CellComparator comparator, boolean blocked) {
     chunkByteSize = BloomFilterUtil.computeFoldableByteSize(
         chunkByteSizeHint * 8L, maxFold);
 
@@ -99,6 +118,7 @@ public class CompoundBloomFilterWriter extends CompoundBloomFilterBase
     this.maxFold = maxFold;
     this.cacheOnWrite = cacheOnWrite;
     this.comparator = comparator;
+    this.blocked = blocked;
   }
 
   @Override
@@ -176,7 +196,7 @@ public class CompoundBloomFilterWriter extends CompoundBloomFilterBase
       if (prevChunk == null) {
         // First chunk
         chunk = BloomFilterUtil.createBySize(chunkByteSize, errorRate,
-            hashType, maxFold);
+            hashType, maxFold, blocked);
       } else {
         // Use the same parameters as the last chunk, but a new array and
         // a zero key count.
@@ -234,7 +254,7 @@ public class CompoundBloomFilterWriter extends CompoundBloomFilterBase
      */
     @Override
     public void write(DataOutput out) throws IOException {
-      out.writeInt(VERSION);
+      out.writeInt(blocked ? BLOCKED_VERSION : VERSION);
 
       out.writeLong(getByteSize());
       out.writeInt(prevChunk.getHashCount());
@@ -0,0 +1,76 @@
+/**
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.hadoop.hbase.io.hfile;
+
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.apache.hadoop.hbase.classification.InterfaceAudience;
+
+import com.google.common.annotations.VisibleForTesting;
+
+/**
+ * Reservoir of the on-heap arrays that blocks cached in their on-disk form are decompressed
+ * into on a cache hit. The unpacked copy of such a block is private to its reader, so its
+ * array can be taken back once the reader returns the block, as it does blocks of shared
+ * memory; see {@link HFileBlock#releaseBuffer()}.
+ *
+ * <p>Holds at most the configured number of arrays. Arrays too small for a request are dropped
+ * and replaced by one of the requested length, so the pool settles on the size of the largest
+ * blocks. This class is thread safe.
+ */
+@InterfaceAudience.Private
+public class DecompressionBufferPool {
+  private final Queue<byte[]> arrays = new ConcurrentLinkedQueue<byte[]>();
+  private final AtomicInteger count = new AtomicInteger();
+  private final int maxArrays;
+
+  public DecompressionBufferPool(int maxArrays) {
+    this.maxArrays = maxArrays;
+  }
+
+  /**
+   * @return an array at least {@code length} long, taken from the pool if one is there
+   */
+  byte[] getArray(int length) {
+    byte[] array = arrays.poll();
+    if (array == null) {
+      return new byte[length];
+    }
+    count.decrementAndGet();
+    return array.length < length ? new byte[length] : array;
+  }
+
+  /**
+   * Gives an array back to the pool, or drops it if the pool is full.
+   */
+  void putArray(byte[] array) {
+    if (count.incrementAndGet() > maxArrays) {
+      count.decrementAndGet();
+      return;
+    }
+    arrays.offer(array);
+  }
+
+  @VisibleForTesting
+  int size() {
+    return count.get();
+  }
+}
@@ -0,0 +1,172 @@
+/**
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.hadoop.hbase.io.hfile;
+
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+import org.apache.hadoop.hbase.classification.InterfaceAudience;
+
+import com.google.common.annotations.VisibleForTesting;
+
+/**
+ * Approximate count of how often each item was seen recently: a count-min sketch of 4-bit
+ * counters. Every item maps to one counter in each of four rows and its estimate is the least
+ * of them, so collisions can only make it larger. Counts saturate at 15, and once as many items
+ * were added as ten times the width of the sketch all counters are halved, so old popularity
+ * fades.
+ * <p>
+ * Each long of the table holds 16 counters, in four groups of four. An item uses the same group
+ * in each of the four longs its rows map it to, so a lookup touches at most four cache lines.
+ * <p>
+ * Thread safe. Counters are incremented with compare-and-set, so a saturated counter never
+ * overflows into its neighbour; aging is done by one thread at a time.
+ */
+@InterfaceAudience.Private
+class FrequencySketch {
+  /** Seeds picking, per row, which long of the table the counter is in */
+  private static final long[] SEEDS = new long[] { 0xc3a5c85c97cb3127L, 0xb492b66fbe98f273L,
+      0x9ae16a3b2f90404fL, 0xcbf29ce484222325L };
+  /** The low bit of each counter */
+  private static final long ONE_MASK = 0x1111111111111111L;
+  /** All bits of each counter but the high one, to halve counters with a shift */
+  private static final long RESET_MASK = 0x7777777777777777L;
+  static final int MAX_FREQUENCY = 15;
+
+  private final AtomicLongArray table;
+  private final int tableMask;
+  private final int sampleSize;
+  private final AtomicInteger additions = new AtomicInteger();
+
+  /**
+   * @param expectedItems roughly how many distinct items are worth telling apart, like the
+   *          number of blocks that fit in the cache
+   */
+  FrequencySketch(long expectedItems) {
+    int maximum = (int) Math.min(Math.max(expectedItems, 16), 1 << 30);
+    int size = Integer.highestOneBit(maximum - 1) << 1;
+    this.table = new AtomicLongArray(size);
+    this.tableMask = size - 1;
+    this.sampleSize = (int) Math.min(10L * size, Integer.MAX_VALUE);
+  }
+
+  /**
+   * @return the estimated number of times the item was added lately, at most
+   *         {@link #MAX_FREQUENCY}
+   */
+  int frequency(int item) {
+    int hash = spread(item);
+    // Which of the four groups of four counters in a long the item uses
+    int start = (hash & 3) << 2;
+    int frequency = Integer.MAX_VALUE;
+    for (int i = 0; i < 4; i++) {
+      int index = indexOf(hash, i);
+      int count = (int) ((table.get(index) >>> ((start + i) << 2)) & 0xfL);
+      frequency = Math.min(frequency, count);
+    }
+    return frequency;
+  }
+
+  /**
+   * Counts one more occurrence of the item.
+   * @return true if this addition made all counters age
+   */
+  boolean increment(int item) {
+    int hash = spread(item);
+    int start = (hash & 3) << 2;
+    boolean added = false;
+    for (int i = 0; i < 4; i++) {
+      added |= incrementAt(indexOf(hash, i), start + i);
+    }
+    return added && additions.incrementAndGet() >= sampleSize && reset();
+  }
+
+  /**
+   * Increments the given counter of the given long unless it is saturated.
+   * @return true if it was incremented
+   */
+  private boolean incrementAt(int index, int counter) {
+    int offset = counter << 2;
+    long mask = 0xfL << offset;
+    while (true) {
+      long value = table.get(index);
+      if ((value & mask) == mask) {
+        return false;
+      }
+      if (table.compareAndSet(index, value, value + (1L << offset))) {
+        return true;
+      }
+    }
+  }
+
+  /**
+   * Halves all counters. Odd counts lose their half, which the addition count accounts for.
+   * Additions made meanwhile by other threads are kept.
+   * @return false if another thread aged the counters first
+   */
+  private synchronized boolean reset() {
+    int sampled = additions.get();
+    if (sampled < sampleSize) {
+      return false;
+    }
+    int odd = 0;
+    for (int i = 0; i < table.length(); i++) {
+      while (true) {
+        long value = table.get(i);
+        if (table.compareAndSet(i, value, (value >>> 1) & RESET_MASK)) {
+          odd += Long.bitCount(value & ONE_MASK);
+          break;
+        }
+      }
+    }
+    additions.addAndGet(((sampled >>> 1) - (odd >>> 2)) - sampled);
+    return true;
+  }
+
+  /**
+   * @return the sum of all counters of the table
+   */
+  @VisibleForTesting
+  long sumOfCounters() {
+    long sum = 0;
+    for (int i = 0; i < table.length(); i++) {
+      long value = table.get(i);
+      for (int counter = 0; counter < 16; counter++) {
+        sum += (value >>> (counter << 2)) & 0xfL;
+      }
+    }
+    return sum;
+  }
+
+  private int indexOf(int item, int row) {
+    long hash = (item + SEEDS[row]) * SEEDS[row];
+    hash += hash >>> 32;
+    return ((int) hash) & tableMask;
+  }
+
+  /**
+   * Mixes the bits of a hash code, which is often poor, like that of a key made of a file name
+   * and a block offset.
+   */
+  private static int spread(int x) {
+    x = ((x >>> 16) ^ x) * 0x45d9f3b;
+    x = ((x >>> 16) ^ x) * 0x45d9f3b;
+    return (x >>> 16) ^ x;
+  }
+}
@@ -0,0 +1,423 @@
+/**
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.hadoop.hbase.io.hfile;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.hbase.classification.InterfaceAudience;
+
+import com.google.common.annotations.VisibleForTesting;
+
+/**
+ * Estimates the hit ratio an LRU block cache would have at sizes a few steps either side of its
+ * current one. It keeps an LRU stack of block keys and sizes only, cut into levels: the first
+ * holds as many bytes as the smallest estimated size, each of the others one step more. A lookup
+ * of a key found in level i would have hit in any cache as large as the bottom of level i, so
+ * counting hits per level gives the whole curve in one pass. The levels past the current size
+ * hold keys the cache has already evicted, the ghosts.
+ * <p>
+ * Only keys hashing into the sample are tracked and the levels are scaled down by the sample
+ * rate, so the stack costs a small fraction of the cache's own bookkeeping. The stack is a
+ * plain LRU while the cache it shadows evicts by priority, so the estimates are approximate;
+ * they are meant for comparing sizes, not for predicting the hit ratio exactly.
+ */
+@InterfaceAudience.Private
+public class GhostCache {
+  /** Fraction of the block keys to track; 0 turns the ghost cache off */
+  public static final String SAMPLE_RATE_KEY = "hbase.lru.ghostcache.sample.rate";
+  static final float DEFAULT_SAMPLE_RATE = 0f;
+
+  /** Size difference between two neighbouring estimates, as a fraction of the cache size */
+  public static final String STEP_KEY = "hbase.lru.ghostcache.step";
+  static final float DEFAULT_STEP = 0.05f;
+
+  /** Number of estimates on each side of the current cache size */
+  public static final String STEPS_KEY = "hbase.lru.ghostcache.steps";
+  static final int DEFAULT_STEPS = 4;
+
+  private static final int SAMPLE_BITS = 16;
+
+  private final float sampleRate;
+  private final int sampleThreshold;
+  private final float step;
+  private final int steps;
+
+  /** Relative cache size at the bottom of each level */
+  private final float[] sizes;
+  private final Level[] levels;
+  private final Map<BlockCacheKey, Node> nodes = new HashMap<BlockCacheKey, Node>();
+
+  /** Sampled lookups, and how many of them were found in each level */
+  private long lookups;
+  private final long[] hits;
+
+  /**
+   * @param capacity size of the cache to shadow, in bytes
+   * @return a ghost cache as configured, or null if it is turned off
+   */
+  public static GhostCache create(Configuration conf, long capacity) {
+    float sampleRate = conf.getFloat(SAMPLE_RATE_KEY, DEFAULT_SAMPLE_RATE);
+    if (sampleRate <= 0) {
+      return null;
+    }
+    return new GhostCache(capacity, sampleRate, conf.getFloat(STEP_KEY, DEFAULT_STEP),
+        conf.getInt(STEPS_KEY, DEFAULT_STEPS));
+  }
+
+  /**
+   * @param capacity size of the cache to shadow, in bytes
+   * @param sampleRate fraction of the block keys to track
+   * @param step size difference between two neighbouring estimates, relative to the cache size
+   * @param steps number of estimates on each side of the current size
+   */
+  public GhostCache(long capacity, float sampleRate, float step, int steps) {
+    if (sampleRate <= 0 || sampleRate > 1) {
+      throw new IllegalArgumentException("Sample rate must be in (0, 1]: " + sampleRate);
+    }
+    if (step <= 0 || steps < 1 || steps * step >= 1) {
+      throw new IllegalArgumentException("Need at least one step, and steps * step below 1: "
+          + steps + " * " + step);
+    }
+    this.sampleRate = sampleRate;
+    this.sampleThreshold = (int) Math.ceil(sampleRate * (1 << SAMPLE_BITS));
+    this.step = step;
+    this.steps = steps;
+    this.sizes = new float[2 * steps + 1];
+    this.levels = new Level[sizes.length];
+    this.hits = new long[sizes.length];
+    for (int i = 0; i < sizes.length; i++) {
+      sizes[i] = 1 + (i - steps) * step;
+      levels[i] = new Level();
+    }
+    setCapacity(capacity);
+  }
+
+  /**
+   * Records a lookup the cache found.
+   * @param size heap size of the block
+   */
+  public void hit(BlockCacheKey key, long size) {
+    if (!isSampled(key)) {
+      return;
+    }
+    synchronized (this) {
+      lookups++;
+      Node node = nodes.get(key);
+      if (node == null) {
+        // Not in the stack, usually because the cache kept it by priority past plain LRU order.
+        // It hit at the current size, so count it there.
+        hits[steps]++;
+        add(key, size);
+        return;
+      }
+      hits[node.level]++;
+      moveToTop(node);
+    }
+  }
+
+  /**
+   * Records a lookup the cache missed. If the key is still in the stack, it would have hit in a
+   * cache large enough to reach its level.
+   */
+  public void miss(BlockCacheKey key) {
+    if (!isSampled(key)) {
+      return;
+    }
+    synchronized (this) {
+      lookups++;
+      Node node = nodes.get(key);
+      if (node != null) {
+        hits[node.level]++;
+        moveToTop(node);
+      }
+    }
+  }
+
+  /**
+   * Records a block put in the cache.
+   * @param size heap size of the block
+   */
+  public void cached(BlockCacheKey key, long size) {
+    if (!isSampled(key)) {
+      return;
+    }
+    synchronized (this) {
+      Node node = nodes.get(key);
+      if (node == null) {
+        add(key, size);
+      } else if (node.size != size) {
+        levels[node.level].size += size - node.size;
+        node.size = size;
+        demote();
+      }
+    }
+  }
+
+  /**
+   * Records a block removed from the cache other than to make room, e.g. because its file is
+   * gone, so that it stops counting against the other blocks.
+   */
+  public void evicted(BlockCacheKey key) {
+    if (!isSampled(key)) {
+      return;
+    }
+    synchronized (this) {
+      Node node = nodes.remove(key);
+      if (node != null) {
+        levels[node.level].remove(node);
+      }
+    }
+  }
+
+  /**
+   * Follows a resize of the cache. The estimates stay relative to the cache size, so the levels
+   * are refilled in stack order to their new sizes.
+   * @param capacity new size of the cache, in bytes
+   */
+  public synchronized void setCapacity(long capacity) {
+    List<Node> stack = new ArrayList<Node>(nodes.size());
+    for (Level level : levels) {
+      for (Node node = level.head; node != null; node = node.next) {
+        stack.add(node);
+      }
+      level.head = level.tail = null;
+      level.size = 0;
+    }
+    double sampledCapacity = (double) capacity * sampleRate;
+    levels[0].capacity = Math.round(sampledCapacity * sizes[0]);
+    for (int i = 1; i < levels.length; i++) {
+      levels[i].capacity = Math.round(sampledCapacity * step);
+    }
+    int i = 0;
+    for (Node node : stack) {
+      while (i < levels.length - 1 && levels[i].size >= levels[i].capacity) {
+        i++;
+      }
+      if (levels[i].size >= levels[i].capacity) {
+        nodes.remove(node.key);
+        continue;
+      }
+      node.level = i;
+      levels[i].addLast(node);
+    }
+  }
+
+  /**
+   * @return the hit ratios estimated from all sampled lookups so far
+   */
+  public synchronized Curve getCurve() {
+    long[] cumulativeHits = new long[hits.length];
+    long sum = 0;
+    for (int i = 0; i < hits.length; i++) {
+      sum += hits[i];
+      cumulativeHits[i] = sum;
+    }
+    return new Curve(sizes, cumulativeHits, lookups);
+  }
+
+  @VisibleForTesting
+  synchronized int getTrackedCount() {
+    return nodes.size();
+  }
+
+  // Called before taking the lock, so that lookups of unsampled keys never contend on it
+  private boolean isSampled(BlockCacheKey key) {
+    return (key.hashCode() * 0x9E3779B9) >>> (Integer.SIZE - SAMPLE_BITS) < sampleThreshold;
+  }
+
+  private void add(BlockCacheKey key, long size) {
+    Node node = new Node(key, size);
+    nodes.put(key, node);
+    levels[0].addFirst(node);
+    demote();
+  }
+
+  private void moveToTop(Node node) {
+    levels[node.level].remove(node);
+    node.level = 0;
+    levels[0].addFirst(node);
+    demote();
+  }
+
+  /**
+   * Pushes the least recent keys of every overfull level down to the next one, dropping them
+   * off the bottom of the stack.
+   */
+  private void demote() {
+    for (int i = 0; i < levels.length; i++) {
+      Level level = levels[i];
+      while (level.size > level.capacity && level.tail != null) {
+        Node node = level.tail;
+        level.remove(node);
+        if (i + 1 < levels.length) {
+          node.level = i + 1;
+          levels[i + 1].addFirst(node);
+        } else {
+          nodes.remove(node.key);
+        }
+      }
+    }
+  }
+
+  /**
+   * Hit ratios estimated at a range of cache sizes, each relative to the current size.
+   */
+  public static final class Curve {
+    private final float[] sizes;
+    private final long[] hits;
+    private final long lookups;
+
+    Curve(float[] sizes, long[] hits, long lookups) {
+      this.sizes = sizes;
+      this.hits = hits;
+      this.lookups = lookups;
+    }
+
+    /**
+     * @return the number of sizes estimated
+     */
+    public int getPointCount() {
+      return sizes.length;
+    }
+
+    /**
+     * @return the size estimated at the given point, relative to the current cache size
+     */
+    public float getSize(int point) {
+      return sizes[point];
+    }
+
+    /**
+     * @return the hit ratio estimated at the given point, 0 if there were no lookups
+     */
+    public float getHitRatio(int point) {
+      return lookups == 0 ? 0 : (float) hits[point] / lookups;
+    }
+
+    /**
+     * @param size cache size relative to the current one
+     * @return the hit ratio estimated at that size, interpolated between the points; sizes above
+     *         the largest point get its estimate, as the curve is not known past it
+     */
+    public float getHitRatio(float size) {
+      if (size <= sizes[0]) {
+        return size <= 0 ? 0 : getHitRatio(0) * size / sizes[0];
+      }
+      for (int i = 1; i < sizes.length; i++) {
+        if (size <= sizes[i]) {
+          float fraction = (size - sizes[i - 1]) / (sizes[i] - sizes[i - 1]);
+          return getHitRatio(i - 1) + fraction * (getHitRatio(i) - getHitRatio(i - 1));
+        }
+      }
+      return getHitRatio(sizes.length - 1);
+    }
+
+    /**
+     * @return the number of sampled lookups the estimates are based on
+     */
+    public long getLookupCount() {
+      return lookups;
+    }
+
+    /**
+     * @param earlier a curve taken earlier from the same ghost cache
+     * @return the curve of just the lookups made since the earlier one was taken
+     */
+    public Curve since(Curve earlier) {
+      long[] delta = new long[hits.length];
+      for (int i = 0; i < hits.length; i++) {
+        delta[i] = hits[i] - earlier.hits[i];
+      }
+      return new Curve(sizes, delta, lookups - earlier.lookups);
+    }
+
+    @Override
+    public String toString() {
+      StringBuilder sb = new StringBuilder("lookups=").append(lookups);
+      for (int i = 0; i < sizes.length; i++) {
+        sb.append(", ").append(Math.round(sizes[i] * 100)).append("%=").append(getHitRatio(i));
+      }
+      return sb.toString();
+    }
+  }
+
+  /** One step of the LRU stack, most recently used key first */
+  private static final class Level {
+    private Node head;
+    private Node tail;
+    private long size;
+    private long capacity;
+
+    private void addFirst(Node node) {
+      node.prev = null;
+      node.next = head;
+      if (head == null) {
+        tail = node;
+      } else {
+        head.prev = node;
+      }
+      head = node;
+      size += node.size;
+    }
+
+    private void addLast(Node node) {
+      node.next = null;
+      node.prev = tail;
+      if (tail == null) {
+        head = node;
+      } else {
+        tail.next = node;
+      }
+      tail = node;
+      size += node.size;
+    }
+
+    private void remove(Node node) {
+      if (node.prev == null) {
+        head = node.next;
+      } else {
+        node.prev.next = node.next;
+      }
+      if (node.next == null) {
+        tail = node.prev;
+      } else {
+        node.next.prev = node.prev;
+      }
+      node.prev = node.next = null;
+      size -= node.size;
+    }
+  }
+
+  private static final class Node {
+    private final BlockCacheKey key;
+    private long size;
+    private int level;
+    private Node prev;
+    private Node next;
+
+    private Node(BlockCacheKey key, long size) {
+      this.key = key;
+      this.size = size;
+    }
+  }
+}
@@ -474,6 +474,26 @@ public class HFile {
 
     @VisibleForTesting
     boolean prefetchComplete();
+
+    /**
+     * Guesses, without reading from the file, whether seeking to the key would find the blocks
+     * it needs in the block cache.
+     * @return true if the index blocks on the way to the data block for the key, and that data
+     *         block, are all cached
+     */
+    boolean isSeekCached(Cell key);
+
+    /**
+     * @return the number of data blocks that reads other than compactions found in the block
+     *         cache over the last five to ten minutes
+     */
+    long getDataBlockCacheHits();
+
+    /**
+     * @return the number of data blocks that reads other than compactions looked up in the block
+     *         cache but had to read from the file system over the last five to ten minutes
+     */
+    long getDataBlockCacheMisses();
   }
 
   /**
@@ -203,6 +203,9 @@ public class HFileBlock implements Cacheable {
 
   private MemoryType memType = MemoryType.EXCLUSIVE;
 
+  /** The pool {@link #buf} was taken from, or null if it is not to be given back to one */
+  private DecompressionBufferPool bufferPool;
+
   /**
    * Creates a new {@link HFile} block from the given fields. This constructor
    * is mostly used when the block data has already been read and uncompressed,
@@ -540,6 +543,17 @@ public class HFileBlock implements Cacheable {
    * encoded structure. Internal structures are shared between instances where applicable.
    */
   HFileBlock unpack(HFileContext fileContext, FSReader reader) throws IOException {
+    return unpack(fileContext, reader, null);
+  }
+
+  /**
+   * Retrieves the decompressed/decrypted view of this block like
+   * {@link #unpack(HFileContext, FSReader)}, but into a buffer taken from the given pool if
+   * not null. The returned block then is of {@link MemoryType#SHARED} memory, so that its
+   * users give it back through {@link #releaseBuffer()} once done with its cells.
+   */
+  HFileBlock unpack(HFileContext fileContext, FSReader reader, DecompressionBufferPool pool)
+      throws IOException {
     if (!fileContext.isCompressedOrEncrypted()) {
       // TODO: cannot use our own fileContext here because HFileBlock(ByteBuffer, boolean),
       // which is used for block serialization to L2 cache, does not preserve encoding and
@@ -548,7 +562,7 @@ public class HFileBlock implements Cacheable {
     }
 
     HFileBlock unpacked = new HFileBlock(this);
-    unpacked.allocateBuffer(); // allocates space for the decompressed block
+    unpacked.allocateBuffer(pool); // allocates space for the decompressed block
 
     HFileBlockDecodingContext ctx = blockType == BlockType.ENCODED_DATA ?
       reader.getBlockDecodingContext() : reader.getDefaultBlockDecodingContext();
@@ -586,18 +600,26 @@ public class HFileBlock implements Cacheable {
   }
 
   /**
-   * Always allocates a new buffer of the correct size. Copies header bytes
-   * from the existing buffer. Does not change header fields.
+   * Always allocates a new buffer of the correct size, from the given pool if not null. Copies
+   * header bytes from the existing buffer. Does not change header fields.
    * Reserve room to keep checksum bytes too.
    */
-  private void allocateBuffer() {
+  private void allocateBuffer(DecompressionBufferPool pool) {
     int cksumBytes = totalChecksumBytes();
     int headerSize = headerSize();
     int capacityNeeded = headerSize + uncompressedSizeWithoutHeader +
         cksumBytes + (hasNextBlockHeader() ? headerSize : 0);
 
     // TODO we need consider allocating offheap here?
-    ByteBuffer newBuf = ByteBuffer.allocate(capacityNeeded);
+    ByteBuffer newBuf;
+    if (pool == null) {
+      newBuf = ByteBuffer.allocate(capacityNeeded);
+    } else {
+      // Slice so that the capacity is that needed whatever the length of the pooled array
+      newBuf = ByteBuffer.wrap(pool.getArray(capacityNeeded), 0, capacityNeeded).slice();
+      this.bufferPool = pool;
+      this.memType = MemoryType.SHARED;
+    }
 
     // Copy header bytes into newBuf.
     // newBuf is HBB so no issue in calling array()
@@ -609,6 +631,22 @@ public class HFileBlock implements Cacheable {
     buf.limit(headerSize + uncompressedSizeWithoutHeader + cksumBytes);
   }
 
+  /**
+   * Gives the buffer of this block back to the pool it was unpacked into, if any. The block
+   * must not be used afterwards.
+   * @return true if the buffer was pooled, false if this block is not one unpacked into a
+   *         pooled buffer
+   */
+  boolean releaseBuffer() {
+    DecompressionBufferPool pool = this.bufferPool;
+    if (pool == null) {
+      return false;
+    }
+    this.bufferPool = null;
+    pool.putArray(buf.array());
+    return true;
+  }
+
   /**
    * Return true when this block's buffer has been unpacked, false otherwise. Note this is a
    * calculated heuristic, not tracked attribute of the block.
@@ -665,8 +703,8 @@ public class HFileBlock implements Cacheable {
   public long heapSize() {
     long size = ClassSize.align(
         ClassSize.OBJECT +
-        // Block type, multi byte buffer, MemoryType and meta references
-        4 * ClassSize.REFERENCE +
+        // Block type, multi byte buffer, MemoryType, buffer pool and meta references
+        5 * ClassSize.REFERENCE +
         // On-disk size, uncompressed size, and next block's on-disk size
         // bytePerChecksum and onDiskDataSize
         4 * Bytes.SIZEOF_INT +
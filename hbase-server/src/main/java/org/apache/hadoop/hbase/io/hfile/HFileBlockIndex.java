@@ -387,6 +387,43 @@ public class HFileBlockIndex {
       return blockWithScanInfo;
     }
 
+    /**
+     * Finds the data block that may contain the given key, walking down from the root index
+     * through only those index blocks that are in the given cache.
+     * @param cache where to look up the index blocks
+     * @param hfileName name of the file, for the cache keys of its blocks
+     * @param primaryReplica whether the file is read by the primary replica, for the cache keys
+     * @return the offset of the data block, or -1 if an index block on the way is not cached
+     */
+    long getCachedDataBlockOffset(Cell key, BlockCache cache, String hfileName,
+        boolean primaryReplica) {
+      // Keys before the first one are looked for in the first block
+      int rootLevelIndex = Math.max(0, rootBlockContainingKey(key));
+      long currentOffset = blockOffsets[rootLevelIndex];
+      for (int lookupLevel = 1; lookupLevel < searchTreeLevel; lookupLevel++) {
+        BlockCacheKey cacheKey = new BlockCacheKey(hfileName, currentOffset, primaryReplica);
+        Cacheable cached = cache.getBlock(cacheKey, false, true, false);
+        if (cached == null) {
+          return -1;
+        }
+        try {
+          if (!(cached instanceof HFileBlock) || !((HFileBlock) cached).isUnpacked()
+              || ((HFileBlock) cached).getBlockType().isData()) {
+            return -1;
+          }
+          ByteBuff buffer = ((HFileBlock) cached).getBufferWithoutHeader();
+          if (locateNonRootIndexEntry(buffer, key, comparator) == -1) {
+            // Only for a key before the first one of the file; go to the first entry
+            buffer.position(Bytes.SIZEOF_INT * (buffer.getIntAfterPosition(0) + 2));
+          }
+          currentOffset = buffer.getLong();
+        } finally {
+          cache.returnBlock(cacheKey, cached);
+        }
+      }
+      return currentOffset;
+    }
+
     @Override
     public Cell midkey() throws IOException {
       if (rootCount == 0)
@@ -55,6 +55,8 @@ import org.apache.hadoop.hbase.regionserver.KeyValueScanner;
 import org.apache.hadoop.hbase.security.EncryptionUtil;
 import org.apache.hadoop.hbase.util.ByteBufferUtils;
 import org.apache.hadoop.hbase.util.Bytes;
+import org.apache.hadoop.hbase.util.Counter;
+import org.apache.hadoop.hbase.util.EnvironmentEdgeManager;
 import org.apache.hadoop.hbase.util.IdLock;
 import org.apache.hadoop.hbase.util.ObjectIntPair;
 import org.apache.hadoop.io.WritableUtils;
@@ -135,6 +137,68 @@ public class HFileReaderImpl implements HFile.Reader, Configurable {
    */
   private IdLock offsetLock = new IdLock();
 
+  /** Lookups of data blocks by user reads in the block cache, over the last few minutes */
+  private final BlockCacheAccessStats dataBlockCacheAccesses = new BlockCacheAccessStats();
+
+  /**
+   * Counts of the block cache hits and misses of a file over a window that slides in steps of
+   * {@link #STEP_MS}: the counts of the previous step and of the current one. Reads older than
+   * that say little about whether the file is still hot.
+   */
+  private static final class BlockCacheAccessStats {
+    private static final long STEP_MS = 5 * 60 * 1000;
+
+    private final Counter hits = new Counter();
+    private final Counter misses = new Counter();
+    private volatile long previousHits = 0;
+    private volatile long previousMisses = 0;
+    private volatile long stepStart = EnvironmentEdgeManager.currentTime();
+
+    void hit() {
+      roll();
+      hits.increment();
+    }
+
+    void miss() {
+      roll();
+      misses.increment();
+    }
+
+    long getHits() {
+      roll();
+      return previousHits + hits.get();
+    }
+
+    long getMisses() {
+      roll();
+      return previousMisses + misses.get();
+    }
+
+    /**
+     * Starts a new step if the current one is over. Counts racing with the roll may land in
+     * either step, or get lost; they are only estimates.
+     */
+    private void roll() {
+      long now = EnvironmentEdgeManager.currentTime();
+      if (now - stepStart < STEP_MS) {
+        return;
+      }
+      synchronized (this) {
+        long elapsed = now - stepStart;
+        if (elapsed < STEP_MS) {
+          return;
+        }
+        // After a whole step without any access, the current counts are too old to keep
+        boolean idle = elapsed >= 2 * STEP_MS;
+        previousHits = idle ? 0 : hits.get();
+        previousMisses = idle ? 0 : misses.get();
+        hits.set(0);
+        misses.set(0);
+        stepStart = now;
+      }
+    }
+  }
+
   /**
    * Blocks read from the load-on-open section, excluding data root index, meta
    * index, and file info.
@@ -246,22 +310,20 @@ public class HFileReaderImpl implements HFile.Reader, Configurable {
 
     // Prefetch file blocks upon open if requested
     if (cacheConf.shouldPrefetchOnOpen()) {
-      PrefetchExecutor.request(path, new Runnable() {
-        public void run() {
-          try {
-            long offset = 0;
-            long end = fileSize - getTrailer().getTrailerSize();
+      PrefetchExecutor.request(path, getPrefetchRangeStarts(), fileSize - trailer.getTrailerSize(),
+        new PrefetchExecutor.RangeReader() {
+          @Override
+          public void read(PrefetchExecutor.Range range) throws IOException {
+            long offset = range.getStart();
             HFileBlock prevBlock = null;
-            while (offset < end) {
-              if (Thread.interrupted()) {
-                break;
-              }
+            while (offset < range.getEnd()) {
               long onDiskSize = -1;
               if (prevBlock != null) {
                 onDiskSize = prevBlock.getNextBlockOnDiskSizeWithHeader();
               }
-              HFileBlock block = readBlock(offset, onDiskSize, true, false, false, false,
-                null, null);
+              // Ranges read in parallel share the stream, so use positional reads
+              HFileBlock block = readBlock(offset, onDiskSize, true, range.isParallel(), false,
+                false, null, null);
               // Need not update the current block. Ideally here the readBlock won't find the
               // block in cache. We call this readBlock so that block data is read from FS and
               // cached in BC. So there is no reference count increment that happens here.
@@ -269,20 +331,12 @@ public class HFileReaderImpl implements HFile.Reader, Configurable {
               returnBlock(block);
               prevBlock = block;
               offset += block.getOnDiskSizeWithHeader();
+              if (!range.blockRead(block.getOnDiskSizeWithHeader())) {
+                break;
+              }
             }
-          } catch (IOException e) {
-            // IOExceptions are probably due to region closes (relocation, etc.)
-            if (LOG.isTraceEnabled()) {
-              LOG.trace("Exception encountered while prefetching " + path + ":", e);
-            }
-          } catch (Exception e) {
-            // Other exceptions are interesting
-            LOG.warn("Exception encountered while prefetching " + path + ":", e);
-          } finally {
-            PrefetchExecutor.complete(path);
           }
-        }
-      });
+        });
     }
 
     byte[] tmp = fileInfo.get(FileInfo.MAX_TAGS_LEN);
@@ -350,6 +404,10 @@ public class HFileReaderImpl implements HFile.Reader, Configurable {
 
   @Override
   public void returnBlock(HFileBlock block) {
+    if (block != null && block.releaseBuffer()) {
+      // A private copy of a block cached compressed; the cached block was returned on unpacking
+      return;
+    }
     BlockCache blockCache = this.cacheConf.getBlockCache();
     if (blockCache != null && block != null) {
       BlockCacheKey cacheKey = new BlockCacheKey(this.getFileContext().getHFileName(),
@@ -1336,9 +1394,12 @@ public class HFileReaderImpl implements HFile.Reader, Configurable {
        if (cachedBlock != null) {
          if (cacheConf.shouldCacheCompressed(cachedBlock.getBlockType().getCategory())) {
            HFileBlock compressedBlock = cachedBlock;
-           cachedBlock = compressedBlock.unpack(hfileContext, fsBlockReader);
+           long startTime = System.nanoTime();
+           cachedBlock = compressedBlock.unpack(hfileContext, fsBlockReader,
+             cacheConf.getDecompressionBufferPool());
            // In case of compressed block after unpacking we can return the compressed block
           if (compressedBlock != cachedBlock) {
+            cache.getStats().decompressed(System.nanoTime() - startTime);
             cache.returnBlock(cacheKey, compressedBlock);
           }
         }
@@ -1378,7 +1439,7 @@ public class HFileReaderImpl implements HFile.Reader, Configurable {
                      ", actual: " + actualDataBlockEncoding);
              // This is an error scenario. so here we need to decrement the
              // count.
-             cache.returnBlock(cacheKey, cachedBlock);
+             returnBlock(cachedBlock);
              cache.evictBlock(cacheKey);
            }
            return null;
@@ -1389,6 +1450,19 @@ public class HFileReaderImpl implements HFile.Reader, Configurable {
      return null;
    }
 
+  /**
+   * Records a lookup of the block cache if lookups are being traced.
+   * @param block the block looked up, unpacked
+   * @param caching whether the block is cached when it was not found
+   */
+  private void traceAccess(BlockCacheKey cacheKey, HFileBlock block, boolean hit,
+      boolean caching) {
+    BlockCacheTracer tracer = cacheConf.getBlockCacheTracer();
+    if (tracer != null) {
+      tracer.record(cacheKey, block.getBlockType(), block.heapSize(), hit, caching);
+    }
+  }
+
   /**
    * @param metaBlockName
    * @param cacheBlock Add block to cache, if found
@@ -1428,6 +1502,7 @@ public class HFileReaderImpl implements HFile.Reader, Configurable {
           BlockType.META, null);
         if (cachedBlock != null) {
           assert cachedBlock.isUnpacked() : "Packed block leak.";
+          traceAccess(cacheKey, cachedBlock, true, cacheBlock);
           // Return a distinct 'shallow copy' of the block,
           // so pos does not get messed by the scanner
           return cachedBlock;
@@ -1437,6 +1512,9 @@ public class HFileReaderImpl implements HFile.Reader, Configurable {
 
       HFileBlock metaBlock = fsBlockReader.readBlockData(metaBlockOffset,
           blockSize, -1, true).unpack(hfileContext, fsBlockReader);
+      if (cacheConf.isBlockCacheEnabled()) {
+        traceAccess(cacheKey, metaBlock, false, cacheBlock);
+      }
 
       // Cache the block
       if (cacheBlock) {
@@ -1489,9 +1567,14 @@ public class HFileReaderImpl implements HFile.Reader, Configurable {
               traceScope.getSpan().addTimelineAnnotation("blockCacheHit");
             }
             assert cachedBlock.isUnpacked() : "Packed block leak.";
+            traceAccess(cacheKey, cachedBlock, true, cacheBlock
+                && cacheConf.shouldCacheBlockOnRead(cachedBlock.getBlockType().getCategory()));
             if (cachedBlock.getBlockType().isData()) {
               if (updateCacheMetrics) {
                 HFile.dataBlockReadCnt.incrementAndGet();
+                if (!isCompaction) {
+                  dataBlockCacheAccesses.hit();
+                }
               }
               // Validate encoding type for data blocks. We include encoding
               // type in the cache key, and we expect it to match on a cache hit.
@@ -1522,6 +1605,10 @@ public class HFileReaderImpl implements HFile.Reader, Configurable {
         validateBlockType(hfileBlock, expectedBlockType);
         HFileBlock unpacked = hfileBlock.unpack(hfileContext, fsBlockReader);
         BlockType.BlockCategory category = hfileBlock.getBlockType().getCategory();
+        if (cacheConf.shouldReadBlockFromCache(expectedBlockType)) {
+          traceAccess(cacheKey, unpacked, false,
+            cacheBlock && cacheConf.shouldCacheBlockOnRead(category));
+        }
 
         // Cache the block if necessary
         if (cacheBlock && cacheConf.shouldCacheBlockOnRead(category)) {
@@ -1532,6 +1619,9 @@ public class HFileReaderImpl implements HFile.Reader, Configurable {
 
         if (updateCacheMetrics && hfileBlock.getBlockType().isData()) {
           HFile.dataBlockReadCnt.incrementAndGet();
+          if (!isCompaction && cacheConf.shouldReadBlockFromCache(expectedBlockType)) {
+            dataBlockCacheAccesses.miss();
+          }
         }
 
         return unpacked;
@@ -1813,6 +1903,58 @@ public class HFileReaderImpl implements HFile.Reader, Configurable {
     return PrefetchExecutor.isCompleted(path);
   }
 
+  @Override
+  public boolean isSeekCached(Cell key) {
+    if (dataBlockIndexReader == null || dataBlockIndexReader.isEmpty()) {
+      return true;
+    }
+    BlockCache cache = cacheConf.getBlockCache();
+    if (cache == null) {
+      return false;
+    }
+    // The seek reads the index blocks on the way to the data block as well as the data block
+    long offset = dataBlockIndexReader.getCachedDataBlockOffset(key, cache, name,
+      this.isPrimaryReplicaReader());
+    return offset >= 0 && BlockCacheUtil.containsBlock(cache,
+      new BlockCacheKey(name, offset, this.isPrimaryReplicaReader()));
+  }
+
+  /**
+   * Splits the file into ranges of about the configured size to be prefetched in parallel. The
+   * ranges start at blocks the root index points to, so that each range is a walk from a block
+   * boundary.
+   */
+  private long[] getPrefetchRangeStarts() {
+    long rangeSize = conf.getLong(PrefetchExecutor.PREFETCH_RANGE_SIZE_KEY,
+      PrefetchExecutor.DEFAULT_PREFETCH_RANGE_SIZE);
+    List<Long> starts = new ArrayList<Long>();
+    starts.add(0L);
+    if (rangeSize > 0 && fileSize > rangeSize) {
+      for (int i = 0; i < dataBlockIndexReader.getRootBlockCount(); i++) {
+        long offset = dataBlockIndexReader.getRootBlockOffset(i);
+        if (offset - starts.get(starts.size() - 1) >= rangeSize
+            && offset < trailer.getLoadOnOpenDataOffset()) {
+          starts.add(offset);
+        }
+      }
+    }
+    long[] rangeStarts = new long[starts.size()];
+    for (int i = 0; i < rangeStarts.length; i++) {
+      rangeStarts[i] = starts.get(i);
+    }
+    return rangeStarts;
+  }
+
+  @Override
+  public long getDataBlockCacheHits() {
+    return dataBlockCacheAccesses.getHits();
+  }
+
+  @Override
+  public long getDataBlockCacheMisses() {
+    return dataBlockCacheAccesses.getMisses();
+  }
+
   protected HFileContext createHFileContext(FSDataInputStreamWrapper fsdis, long fileSize,
       HFileSystem hfs, Path path, FixedFileTrailer trailer) throws IOException {
     HFileContextBuilder builder = new HFileContextBuilder()
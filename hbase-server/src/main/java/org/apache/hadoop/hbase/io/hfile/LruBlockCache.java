@@ -20,6 +20,7 @@ package org.apache.hadoop.hbase.io.hfile;
 
 import java.lang.ref.WeakReference;
 import java.nio.ByteBuffer;
+import java.util.ArrayList;
 import java.util.EnumMap;
 import java.util.Iterator;
 import java.util.List;
@@ -86,12 +87,16 @@ import com.google.common.util.concurrent.ThreadFactoryBuilder;
  * process to start.  It evicts enough blocks to get the size below the
  * minimum size specified.<p>
  *
- * Eviction happens in a separate thread and involves a single full-scan
- * of the map.  It determines how many bytes must be freed to reach the minimum
- * size, and then while scanning determines the fewest least-recently-used
- * blocks necessary from each of the three priorities (would be 3 times bytes
- * to free).  It then uses the priority chunk sizes to evict fairly according
- * to the relative sizes and usage.
+ * Eviction happens in a separate thread.  It determines how many bytes must be
+ * freed to reach the minimum size, and uses the priority chunk sizes to evict
+ * fairly according to the relative sizes and usage.<p>
+ *
+ * The LRU order is kept in segments, blocks assigned to them by the hash of
+ * their key, each with a list per priority under its own lock.  A hit moves
+ * the block to the end of its list; eviction takes blocks off the heads of the
+ * lists, each segment giving up its share of the bytes to free, so it only
+ * touches the blocks it evicts.  Within a segment the order is exact; across
+ * segments it is approximate, so small caches get a single segment.
  */
 @InterfaceAudience.Private
 @JsonIgnoreProperties({"encodingCountsForTest"})
@@ -121,6 +126,12 @@ public class LruBlockCache implements ResizableBlockCache, HeapSize {
    */
   static final String LRU_IN_MEMORY_FORCE_MODE_CONFIG_NAME = "hbase.lru.rs.inmemoryforcemode";
 
+  /**
+   * Most segments the LRU order is split into; there are fewer in caches too small for each
+   * segment to hold {@link #MIN_SEGMENT_BLOCKS} blocks
+   */
+  static final String LRU_SEGMENTS_CONFIG_NAME = "hbase.lru.blockcache.segments";
+
   /** Default Configuration Parameters*/
 
   /** Backing Concurrent Map Configuration */
@@ -138,6 +149,10 @@ public class LruBlockCache implements ResizableBlockCache, HeapSize {
 
   static final boolean DEFAULT_IN_MEMORY_FORCE_MODE = false;
 
+  /** LRU segments */
+  static final int DEFAULT_SEGMENTS = 32;
+  static final int MIN_SEGMENT_BLOCKS = 1024;
+
   /** Statistics thread */
   static final int statThreadPeriod = 60 * 5;
   private static final String LRU_MAX_BLOCK_SIZE = "hbase.lru.max.block.size";
@@ -146,6 +161,9 @@ public class LruBlockCache implements ResizableBlockCache, HeapSize {
   /** Concurrent map (the cache) */
   private final Map<BlockCacheKey,LruCachedBlock> map;
 
+  /** LRU order of the blocks; a block is added and removed under the lock of its segment */
+  private final Segment[] segments;
+
   /** Eviction lock (locked when eviction in process) */
   private final ReentrantLock evictionLock = new ReentrantLock(true);
   private final long maxBlockSize;
@@ -202,6 +220,12 @@ public class LruBlockCache implements ResizableBlockCache, HeapSize {
   /** Where to send victims (blocks evicted/missing from the cache) */
   private BlockCache victimHandler = null;
 
+  /** Decides which blocks get in once the cache is full, if set */
+  private BlockCacheAdmissionPolicy admissionPolicy = null;
+
+  /** Estimates the hit ratio at other cache sizes, if set */
+  private volatile GhostCache ghostCache = null;
+
   /**
    * Default constructor.  Specify maximum size and expected average block
    * size (approximation is fine).
@@ -227,7 +251,8 @@ public class LruBlockCache implements ResizableBlockCache, HeapSize {
         DEFAULT_MULTI_FACTOR,
         DEFAULT_MEMORY_FACTOR,
         false,
-        DEFAULT_MAX_BLOCK_SIZE
+        DEFAULT_MAX_BLOCK_SIZE,
+        DEFAULT_SEGMENTS
         );
   }
 
@@ -242,7 +267,8 @@ public class LruBlockCache implements ResizableBlockCache, HeapSize {
         conf.getFloat(LRU_MULTI_PERCENTAGE_CONFIG_NAME, DEFAULT_MULTI_FACTOR),
         conf.getFloat(LRU_MEMORY_PERCENTAGE_CONFIG_NAME, DEFAULT_MEMORY_FACTOR),
         conf.getBoolean(LRU_IN_MEMORY_FORCE_MODE_CONFIG_NAME, DEFAULT_IN_MEMORY_FORCE_MODE),
-        conf.getLong(LRU_MAX_BLOCK_SIZE, DEFAULT_MAX_BLOCK_SIZE)
+        conf.getLong(LRU_MAX_BLOCK_SIZE, DEFAULT_MAX_BLOCK_SIZE),
+        conf.getInt(LRU_SEGMENTS_CONFIG_NAME, DEFAULT_SEGMENTS)
         );
   }
 
@@ -268,6 +294,20 @@ public class LruBlockCache implements ResizableBlockCache, HeapSize {
       int mapInitialSize, float mapLoadFactor, int mapConcurrencyLevel,
       float minFactor, float acceptableFactor, float singleFactor,
       float multiFactor, float memoryFactor, boolean forceInMemory, long maxBlockSize) {
+    this(maxSize, blockSize, evictionThread, mapInitialSize, mapLoadFactor, mapConcurrencyLevel,
+        minFactor, acceptableFactor, singleFactor, multiFactor, memoryFactor, forceInMemory,
+        maxBlockSize, DEFAULT_SEGMENTS);
+  }
+
+  /**
+   * Configurable constructor.
+   * @param maxSegments most segments to split the LRU order into
+   */
+  public LruBlockCache(long maxSize, long blockSize, boolean evictionThread,
+      int mapInitialSize, float mapLoadFactor, int mapConcurrencyLevel,
+      float minFactor, float acceptableFactor, float singleFactor,
+      float multiFactor, float memoryFactor, boolean forceInMemory, long maxBlockSize,
+      int maxSegments) {
     this.maxBlockSize = maxBlockSize;
     if(singleFactor + multiFactor + memoryFactor != 1 ||
         singleFactor < 0 || multiFactor < 0 || memoryFactor < 0) {
@@ -285,6 +325,10 @@ public class LruBlockCache implements ResizableBlockCache, HeapSize {
     this.forceInMemory = forceInMemory;
     map = new ConcurrentHashMap<BlockCacheKey,LruCachedBlock>(mapInitialSize,
         mapLoadFactor, mapConcurrencyLevel);
+    this.segments = new Segment[segmentCount(maxSize, blockSize, maxSegments)];
+    for (int i = 0; i < segments.length; i++) {
+      segments[i] = new Segment();
+    }
     this.minFactor = minFactor;
     this.acceptableFactor = acceptableFactor;
     this.singleFactor = singleFactor;
@@ -310,6 +354,10 @@ public class LruBlockCache implements ResizableBlockCache, HeapSize {
   @Override
   public void setMaxSize(long maxSize) {
     this.maxSize = maxSize;
+    GhostCache ghostCache = this.ghostCache;
+    if (ghostCache != null) {
+      ghostCache.setCapacity(maxSize);
+    }
     if(this.size.get() > acceptableSize() && !evictionInProgress) {
       runEviction();
     }
@@ -357,9 +405,25 @@ public class LruBlockCache implements ResizableBlockCache, HeapSize {
       LOG.warn(msg);
       return;
     }
+    GhostCache ghostCache = this.ghostCache;
+    if (ghostCache != null) {
+      // Whether or not it is admitted, a plain LRU cache of some size would have taken it in
+      ghostCache.cached(cacheKey, buf.heapSize());
+    }
+    if (admissionPolicy != null && !inMemory && size.get() >= minSize()
+        && !admissionPolicy.admit(cacheKey)) {
+      // Not worth evicting anything here for; the victim cache may still take it
+      if (victimHandler != null) {
+        victimHandler.cacheBlock(cacheKey, buf, inMemory, cacheDataInL1);
+      }
+      return;
+    }
     cb = new LruCachedBlock(cacheKey, buf, count.incrementAndGet(), inMemory);
+    if (!segmentFor(cacheKey).add(cb)) {
+      // Raced with another thread caching the same block
+      return;
+    }
     long newSize = updateSizeMetrics(cb, false);
-    map.put(cacheKey, cb);
     long val = elements.incrementAndGet();
     if (LOG.isTraceEnabled()) {
       long size = map.size();
@@ -436,9 +500,14 @@ public class LruBlockCache implements ResizableBlockCache, HeapSize {
   @Override
   public Cacheable getBlock(BlockCacheKey cacheKey, boolean caching, boolean repeat,
       boolean updateCacheMetrics) {
+    if (admissionPolicy != null && !repeat) {
+      admissionPolicy.recordAccess(cacheKey);
+    }
     LruCachedBlock cb = map.get(cacheKey);
+    GhostCache ghostCache = this.ghostCache;
     if (cb == null) {
       if (!repeat && updateCacheMetrics) stats.miss(caching, cacheKey.isPrimary());
+      if (ghostCache != null && !repeat && updateCacheMetrics) ghostCache.miss(cacheKey);
       // If there is another block cache then try and read there.
       // However if this is a retry ( second time in double checked locking )
       // And it's already a miss then the l2 will also be a miss.
@@ -454,7 +523,8 @@ public class LruBlockCache implements ResizableBlockCache, HeapSize {
       return null;
     }
     if (updateCacheMetrics) stats.hit(caching, cacheKey.isPrimary());
-    cb.access(count.incrementAndGet());
+    if (ghostCache != null && updateCacheMetrics) ghostCache.hit(cacheKey, cb.heapSize());
+    segmentFor(cacheKey).access(cb, count.incrementAndGet());
     return cb.getBuffer();
   }
 
@@ -469,6 +539,10 @@ public class LruBlockCache implements ResizableBlockCache, HeapSize {
 
   @Override
   public boolean evictBlock(BlockCacheKey cacheKey) {
+    GhostCache ghostCache = this.ghostCache;
+    if (ghostCache != null) {
+      ghostCache.evicted(cacheKey);
+    }
     LruCachedBlock cb = map.get(cacheKey);
     if (cb == null) return false;
     evictBlock(cb, false);
@@ -509,7 +583,19 @@ public class LruBlockCache implements ResizableBlockCache, HeapSize {
    * @return the heap size of evicted block
    */
   protected long evictBlock(LruCachedBlock block, boolean evictedByEvictionProcess) {
-    map.remove(block.getCacheKey());
+    if (!segmentFor(block.getCacheKey()).remove(block)) {
+      // Evicted already
+      return 0;
+    }
+    return evicted(block, evictedByEvictionProcess);
+  }
+
+  /**
+   * Accounts for a block taken out of the map and its segment, and hands it to the victim
+   * handler if it was evicted to make room.
+   * @return the heap size of evicted block
+   */
+  private long evicted(LruCachedBlock block, boolean evictedByEvictionProcess) {
     updateSizeMetrics(block, true);
     long val = elements.decrementAndGet();
     if (LOG.isTraceEnabled()) {
@@ -517,6 +603,9 @@ public class LruBlockCache implements ResizableBlockCache, HeapSize {
       assertCounterSanity(size, val);
     }
     stats.evicted(block.getCachedTime(), block.getCacheKey().isPrimary());
+    if (evictedByEvictionProcess && admissionPolicy != null) {
+      admissionPolicy.recordEviction(block.getCacheKey());
+    }
     if (evictedByEvictionProcess && victimHandler != null) {
       if (victimHandler instanceof BucketCache) {
         boolean wait = getCurrentSize() < acceptableSize();
@@ -549,6 +638,7 @@ public class LruBlockCache implements ResizableBlockCache, HeapSize {
     // Ensure only one eviction at a time
     if(!evictionLock.tryLock()) return;
 
+    long start = System.nanoTime();
     try {
       evictionInProgress = true;
       long currentSize = this.size.get();
@@ -563,30 +653,9 @@ public class LruBlockCache implements ResizableBlockCache, HeapSize {
       if(bytesToFree <= 0) return;
 
       // Instantiate priority buckets
-      BlockBucket bucketSingle = new BlockBucket("single", bytesToFree, blockSize,
-          singleSize());
-      BlockBucket bucketMulti = new BlockBucket("multi", bytesToFree, blockSize,
-          multiSize());
-      BlockBucket bucketMemory = new BlockBucket("memory", bytesToFree, blockSize,
-          memorySize());
-
-      // Scan entire map putting into appropriate buckets
-      for(LruCachedBlock cachedBlock : map.values()) {
-        switch(cachedBlock.getPriority()) {
-          case SINGLE: {
-            bucketSingle.add(cachedBlock);
-            break;
-          }
-          case MULTI: {
-            bucketMulti.add(cachedBlock);
-            break;
-          }
-          case MEMORY: {
-            bucketMemory.add(cachedBlock);
-            break;
-          }
-        }
-      }
+      BlockBucket bucketSingle = new BlockBucket("single", BlockPriority.SINGLE, singleSize());
+      BlockBucket bucketMulti = new BlockBucket("multi", BlockPriority.MULTI, multiSize());
+      BlockBucket bucketMemory = new BlockBucket("memory", BlockPriority.MEMORY, memorySize());
 
       long bytesFreed = 0;
       if (forceInMemory || memoryFactor > 0.999f) {
@@ -661,7 +730,7 @@ public class LruBlockCache implements ResizableBlockCache, HeapSize {
           "memory=" + StringUtils.byteDesc(memory));
       }
     } finally {
-      stats.evict();
+      stats.evict(System.nanoTime() - start);
       evictionInProgress = false;
       evictionLock.unlock();
     }
@@ -685,40 +754,48 @@ public class LruBlockCache implements ResizableBlockCache, HeapSize {
   }
 
   /**
-   * Used to group blocks into priority buckets.  There will be a BlockBucket
-   * for each priority (single, multi, memory).  Once bucketed, the eviction
-   * algorithm takes the appropriate number of elements out of each according
-   * to configuration parameters and their relatives sizes.
+   * The blocks of one priority (single, multi, memory), across all segments.  The eviction
+   * algorithm takes the appropriate number of bytes out of each according to configuration
+   * parameters and their relatives sizes.
    */
   private class BlockBucket implements Comparable<BlockBucket> {
 
     private final String name;
-    private LruCachedBlockQueue queue;
+    private final BlockPriority priority;
+    /** Bytes of the priority in each segment, as of when the eviction started */
+    private final long[] segmentSizes = new long[segments.length];
     private long totalSize = 0;
     private long bucketSize;
 
-    public BlockBucket(String name, long bytesToFree, long blockSize, long bucketSize) {
+    public BlockBucket(String name, BlockPriority priority, long bucketSize) {
       this.name = name;
+      this.priority = priority;
       this.bucketSize = bucketSize;
-      queue = new LruCachedBlockQueue(bytesToFree, blockSize);
-      totalSize = 0;
-    }
-
-    public void add(LruCachedBlock block) {
-      totalSize += block.heapSize();
-      queue.add(block);
+      for (int i = 0; i < segments.length; i++) {
+        segmentSizes[i] = segments[i].size(priority);
+        totalSize += segmentSizes[i];
+      }
     }
 
+    /**
+     * Evicts the least recently used blocks of each segment, each segment giving up its share of
+     * the bytes to free.
+     */
     public long free(long toFree) {
       if (LOG.isTraceEnabled()) {
         LOG.trace("freeing " + StringUtils.byteDesc(toFree) + " from " + this);
       }
-      LruCachedBlock cb;
       long freedBytes = 0;
-      while ((cb = queue.pollLast()) != null) {
-        freedBytes += evictBlock(cb, true);
-        if (freedBytes >= toFree) {
-          return freedBytes;
+      if (totalSize > 0) {
+        for (int i = 0; i < segments.length && freedBytes < toFree; i++) {
+          long share = (long) Math.ceil((double) toFree * segmentSizes[i] / totalSize);
+          if (share > 0) {
+            freedBytes += segments[i].evict(priority, Math.min(share, toFree - freedBytes));
+          }
+        }
+        // Segments that shrank meanwhile fell short; make it up from any
+        for (int i = 0; i < segments.length && freedBytes < toFree; i++) {
+          freedBytes += segments[i].evict(priority, toFree - freedBytes);
         }
       }
       if (LOG.isTraceEnabled()) {
@@ -750,7 +827,7 @@ public class LruBlockCache implements ResizableBlockCache, HeapSize {
 
     @Override
     public int hashCode() {
-      return Objects.hashCode(name, bucketSize, queue, totalSize);
+      return Objects.hashCode(name, bucketSize, totalSize);
     }
 
     @Override
@@ -763,6 +840,188 @@ public class LruBlockCache implements ResizableBlockCache, HeapSize {
     }
   }
 
+  /**
+   * @return how many segments a cache of the given size is split into: as many as allowed, up to
+   *         the power of two that leaves each {@link #MIN_SEGMENT_BLOCKS} blocks
+   */
+  static int segmentCount(long maxSize, long blockSize, int maxSegments) {
+    long blocks = maxSize / Math.max(blockSize, 1);
+    int count = 1;
+    while (count * 2 <= maxSegments && blocks / (count * 2) >= MIN_SEGMENT_BLOCKS) {
+      count *= 2;
+    }
+    return count;
+  }
+
+  private Segment segmentFor(BlockCacheKey cacheKey) {
+    int h = cacheKey.hashCode();
+    // Spread the high bits down, as the segment count is a power of two
+    return segments[(h ^ (h >>> 16)) & (segments.length - 1)];
+  }
+
+  @VisibleForTesting
+  int getSegmentCount() {
+    return segments.length;
+  }
+
+  /**
+   * A shard of the LRU order: the blocks whose keys hash to it, in a doubly linked list per
+   * priority, least recently used first.  Blocks go in and out of the map under the lock of
+   * their segment too, so a block is in its list exactly when it is in the map.
+   */
+  private class Segment {
+    private final ReentrantLock lock = new ReentrantLock();
+    private final LruCachedBlock[] heads = new LruCachedBlock[BlockPriority.values().length];
+    private final LruCachedBlock[] tails = new LruCachedBlock[BlockPriority.values().length];
+    /** Heap size of the blocks in each list */
+    private final long[] sizes = new long[BlockPriority.values().length];
+
+    /**
+     * Puts the block in the map, unless one is there under its key already.
+     * @return whether the block was added
+     */
+    boolean add(LruCachedBlock cb) {
+      lock.lock();
+      try {
+        if (map.containsKey(cb.getCacheKey())) {
+          return false;
+        }
+        map.put(cb.getCacheKey(), cb);
+        link(cb);
+        return true;
+      } finally {
+        lock.unlock();
+      }
+    }
+
+    /**
+     * Marks the block as just used, moving it to the end of its list, or of the multi-access
+     * list on its second use.
+     */
+    void access(LruCachedBlock cb, long accessTime) {
+      lock.lock();
+      try {
+        if (isLinked(cb)) {
+          unlink(cb);
+          cb.access(accessTime);
+          link(cb);
+        } else {
+          // Evicted since it was looked up
+          cb.access(accessTime);
+        }
+      } finally {
+        lock.unlock();
+      }
+    }
+
+    /**
+     * Takes the block out of the map and its list.
+     * @return false if it was not in them
+     */
+    boolean remove(LruCachedBlock cb) {
+      lock.lock();
+      try {
+        if (!isLinked(cb)) {
+          return false;
+        }
+        unlink(cb);
+        map.remove(cb.getCacheKey());
+        return true;
+      } finally {
+        lock.unlock();
+      }
+    }
+
+    /**
+     * Evicts the least recently used blocks of the priority until the given bytes are freed or
+     * there are none left.  The blocks are taken out under the lock and handed to the victim
+     * handler after.
+     * @return bytes freed
+     */
+    long evict(BlockPriority priority, long toFree) {
+      List<LruCachedBlock> victims = new ArrayList<LruCachedBlock>();
+      long freedBytes = 0;
+      lock.lock();
+      try {
+        LruCachedBlock cb;
+        while (freedBytes < toFree && (cb = heads[priority.ordinal()]) != null) {
+          unlink(cb);
+          map.remove(cb.getCacheKey());
+          victims.add(cb);
+          freedBytes += cb.heapSize();
+        }
+      } finally {
+        lock.unlock();
+      }
+      for (LruCachedBlock victim : victims) {
+        evicted(victim, true);
+      }
+      return freedBytes;
+    }
+
+    long size(BlockPriority priority) {
+      lock.lock();
+      try {
+        return sizes[priority.ordinal()];
+      } finally {
+        lock.unlock();
+      }
+    }
+
+    void clear() {
+      lock.lock();
+      try {
+        for (int i = 0; i < heads.length; i++) {
+          for (LruCachedBlock cb = heads[i]; cb != null; ) {
+            LruCachedBlock next = cb.next;
+            cb.prev = null;
+            cb.next = null;
+            cb = next;
+          }
+          heads[i] = null;
+          tails[i] = null;
+          sizes[i] = 0;
+        }
+      } finally {
+        lock.unlock();
+      }
+    }
+
+    private boolean isLinked(LruCachedBlock cb) {
+      return cb.prev != null || heads[cb.getPriority().ordinal()] == cb;
+    }
+
+    private void link(LruCachedBlock cb) {
+      int i = cb.getPriority().ordinal();
+      cb.prev = tails[i];
+      cb.next = null;
+      if (tails[i] == null) {
+        heads[i] = cb;
+      } else {
+        tails[i].next = cb;
+      }
+      tails[i] = cb;
+      sizes[i] += cb.heapSize();
+    }
+
+    private void unlink(LruCachedBlock cb) {
+      int i = cb.getPriority().ordinal();
+      if (cb.prev == null) {
+        heads[i] = cb.next;
+      } else {
+        cb.prev.next = cb.next;
+      }
+      if (cb.next == null) {
+        tails[i] = cb.prev;
+      } else {
+        cb.next.prev = cb.prev;
+      }
+      cb.prev = null;
+      cb.next = null;
+      sizes[i] -= cb.heapSize();
+    }
+  }
+
   /**
    * Get the maximum size of this cache.
    * @return max size in bytes
@@ -902,7 +1161,7 @@ public class LruBlockCache implements ResizableBlockCache, HeapSize {
   }
 
   public final static long CACHE_FIXED_OVERHEAD = ClassSize.align(
-      (3 * Bytes.SIZEOF_LONG) + (10 * ClassSize.REFERENCE) +
+      (3 * Bytes.SIZEOF_LONG) + (13 * ClassSize.REFERENCE) +
       (5 * Bytes.SIZEOF_FLOAT) + (2 * Bytes.SIZEOF_BOOLEAN)
       + ClassSize.OBJECT);
 
@@ -1051,7 +1310,19 @@ public class LruBlockCache implements ResizableBlockCache, HeapSize {
   /** Clears the cache. Used in tests. */
   @VisibleForTesting
   public void clearCache() {
-    this.map.clear();
+    for (Segment segment : segments) {
+      segment.lock.lock();
+    }
+    try {
+      this.map.clear();
+      for (Segment segment : segments) {
+        segment.clear();
+      }
+    } finally {
+      for (Segment segment : segments) {
+        segment.lock.unlock();
+      }
+    }
     this.elements.set(0);
   }
 
@@ -1098,6 +1369,27 @@ public class LruBlockCache implements ResizableBlockCache, HeapSize {
     victimHandler = handler;
   }
 
+  /**
+   * Sets the policy deciding which blocks get in once the cache is full. Blocks cached in-memory
+   * always get in. Call before using the cache.
+   */
+  public void setAdmissionPolicy(BlockCacheAdmissionPolicy admissionPolicy) {
+    this.admissionPolicy = admissionPolicy;
+  }
+
+  /**
+   * Sets the ghost cache to keep track of the hit ratio this cache would have at other sizes.
+   * Call before using the cache.
+   */
+  public void setGhostCache(GhostCache ghostCache) {
+    this.ghostCache = ghostCache;
+  }
+
+  @Override
+  public GhostCache getGhostCache() {
+    return ghostCache;
+  }
+
   @VisibleForTesting
   Map<BlockCacheKey, LruCachedBlock> getMapForTests() {
     return map;
@@ -35,7 +35,7 @@ import org.apache.hadoop.hbase.util.ClassSize;
 public class LruCachedBlock implements HeapSize, Comparable<LruCachedBlock> {
 
   public final static long PER_BLOCK_OVERHEAD = ClassSize.align(
-    ClassSize.OBJECT + (3 * ClassSize.REFERENCE) + (3 * Bytes.SIZEOF_LONG) +
+    ClassSize.OBJECT + (5 * ClassSize.REFERENCE) + (3 * Bytes.SIZEOF_LONG) +
     ClassSize.STRING + ClassSize.BYTE_BUFFER);
 
   private final BlockCacheKey cacheKey;
@@ -48,6 +48,13 @@ public class LruCachedBlock implements HeapSize, Comparable<LruCachedBlock> {
    */
   private final long cachedTime = System.nanoTime();
 
+  /**
+   * Neighbours in the LRU list of the {@link LruBlockCache} segment holding this block, less
+   * recently used first; guarded by the lock of that segment.
+   */
+  LruCachedBlock prev;
+  LruCachedBlock next;
+
   public LruCachedBlock(BlockCacheKey cacheKey, Cacheable buf, long accessTime) {
     this(cacheKey, buf, accessTime, false);
   }
@@ -18,15 +18,23 @@
  */
 package org.apache.hadoop.hbase.io.hfile;
 
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedList;
+import java.util.List;
 import java.util.Map;
 import java.util.Random;
+import java.util.concurrent.ConcurrentMap;
 import java.util.concurrent.ConcurrentSkipListMap;
-import java.util.concurrent.Future;
 import java.util.concurrent.RejectedExecutionException;
 import java.util.concurrent.ScheduledExecutorService;
 import java.util.concurrent.ScheduledThreadPoolExecutor;
 import java.util.concurrent.ThreadFactory;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
 import java.util.regex.Pattern;
 
 import org.apache.commons.logging.Log;
@@ -36,20 +44,44 @@ import org.apache.hadoop.conf.Configuration;
 import org.apache.hadoop.fs.Path;
 import org.apache.hadoop.hbase.HBaseConfiguration;
 import org.apache.hadoop.hbase.HConstants;
+import org.apache.hadoop.hbase.util.EnvironmentEdgeManager;
 
+import com.google.common.annotations.VisibleForTesting;
+
+/**
+ * Prefetches the blocks of HFiles into the block cache once they are opened. A large file is
+ * split into ranges read in parallel. Ranges ready to be read are picked by the priority of their
+ * region, so that the regions most in demand warm up first, and all reads share a budget of
+ * bytes per second so that warming up hundreds of regions does not starve other reads.
+ */
 public class PrefetchExecutor {
 
   private static final Log LOG = LogFactory.getLog(PrefetchExecutor.class);
 
-  /** Futures for tracking block prefetch activity */
-  private static final Map<Path,Future<?>> prefetchFutures =
-    new ConcurrentSkipListMap<Path,Future<?>>();
+  /** Bytes per second all prefetches may read together, 0 for no limit */
+  public static final String PREFETCH_BANDWIDTH_KEY = "hbase.hfile.prefetch.bandwidth";
+  public static final long DEFAULT_PREFETCH_BANDWIDTH = 0;
+
+  /** Size from which a file is split into ranges prefetched in parallel */
+  public static final String PREFETCH_RANGE_SIZE_KEY = "hbase.hfile.prefetch.range.size";
+  public static final long DEFAULT_PREFETCH_RANGE_SIZE = 128 * 1024 * 1024;
+
+  /** Prefetches in progress, by file */
+  private static final ConcurrentMap<Path, FilePrefetch> prefetches =
+    new ConcurrentSkipListMap<Path, FilePrefetch>();
+  /** Ranges ready to be read. All access must be synchronized. */
+  private static final List<Range> pendingRanges = new LinkedList<Range>();
+  /** Progress of the regions with files being prefetched, by encoded region name. */
+  private static final Map<String, RegionProgress> regions = new HashMap<String, RegionProgress>();
   /** Executor pool shared among all HFiles for block prefetch */
   private static final ScheduledExecutorService prefetchExecutorPool;
   /** Delay before beginning prefetch */
   private static final int prefetchDelayMillis;
   /** Variation in prefetch delay times, to mitigate stampedes */
   private static final float prefetchDelayVariation;
+  /** Budget shared by the reads of all prefetches */
+  private static final Throttle throttle;
+  private static volatile RegionPriority regionPriority;
   static {
     // Consider doing this on demand with a configuration passed in rather
     // than in a static initializer.
@@ -58,6 +90,7 @@ public class PrefetchExecutor {
     // Set to 0 for no delay
     prefetchDelayMillis = conf.getInt("hbase.hfile.prefetch.delay", 1000);
     prefetchDelayVariation = conf.getFloat("hbase.hfile.prefetch.delay.variation", 0.2f);
+    throttle = new Throttle(conf.getLong(PREFETCH_BANDWIDTH_KEY, DEFAULT_PREFETCH_BANDWIDTH));
     int prefetchThreads = conf.getInt("hbase.hfile.thread.prefetch", 4);
     prefetchExecutorPool = new ScheduledThreadPoolExecutor(prefetchThreads,
       new ThreadFactory() {
@@ -88,7 +121,44 @@ public class PrefetchExecutor {
             Path.SEPARATOR_CHAR +
         ")");
 
-  public static void request(Path path, Runnable runnable) {
+  /**
+   * Reads the blocks of a range of an HFile into the block cache.
+   */
+  public interface RangeReader {
+    /**
+     * Reads the blocks from {@link Range#getStart()} up to {@link Range#getEnd()}, telling the
+     * range of every block read, and stopping as soon as it says so.
+     */
+    void read(Range range) throws IOException;
+  }
+
+  /**
+   * Tells how urgently the files of a region are to be prefetched.
+   */
+  public interface RegionPriority {
+    /**
+     * @return the priority of the region; files of regions of a higher priority are read first
+     */
+    long getPriority(String encodedRegionName);
+  }
+
+  /**
+   * Sets how the regions of the files to prefetch are prioritised, null to prefetch files in the
+   * order they are opened.
+   */
+  public static void setRegionPriority(RegionPriority priority) {
+    regionPriority = priority;
+  }
+
+  /**
+   * Requests an HFile to be prefetched.
+   * @param path the file to prefetch
+   * @param rangeStarts the offsets, block boundaries, at which the ranges of the file read in
+   *          parallel start, the first one being 0
+   * @param end the offset up to which the file is read
+   * @param reader reads the ranges
+   */
+  public static void request(Path path, long[] rangeStarts, long end, RangeReader reader) {
     if (!prefetchPathExclude.matcher(path.toString()).find()) {
       long delay;
       if (prefetchDelayMillis > 0) {
@@ -97,32 +167,31 @@ public class PrefetchExecutor {
       } else {
         delay = 0;
       }
+      final FilePrefetch prefetch = new FilePrefetch(path, rangeStarts, end, reader);
       try {
         if (LOG.isDebugEnabled()) {
-          LOG.debug("Prefetch requested for " + path + ", delay=" + delay + " ms");
+          LOG.debug("Prefetch requested for " + path + ", delay=" + delay + " ms, ranges="
+              + rangeStarts.length);
         }
-        prefetchFutures.put(path, prefetchExecutorPool.schedule(runnable, delay,
-          TimeUnit.MILLISECONDS));
+        prefetches.put(path, prefetch);
+        prefetchExecutorPool.schedule(new Runnable() {
+          @Override
+          public void run() {
+            prefetch.start();
+          }
+        }, delay, TimeUnit.MILLISECONDS);
       } catch (RejectedExecutionException e) {
-        prefetchFutures.remove(path);
+        prefetch.cancel();
         LOG.warn("Prefetch request rejected for " + path);
       }
     }
   }
 
-  public static void complete(Path path) {
-    prefetchFutures.remove(path);
-    if (LOG.isDebugEnabled()) {
-      LOG.debug("Prefetch completed for " + path);
-    }
-  }
-
   public static void cancel(Path path) {
-    Future<?> future = prefetchFutures.get(path);
-    if (future != null) {
+    FilePrefetch prefetch = prefetches.get(path);
+    if (prefetch != null) {
       // ok to race with other cancellation attempts
-      future.cancel(true);
-      prefetchFutures.remove(path);
+      prefetch.cancel();
       if (LOG.isDebugEnabled()) {
         LOG.debug("Prefetch cancelled for " + path);
       }
@@ -130,11 +199,291 @@ public class PrefetchExecutor {
   }
 
   public static boolean isCompleted(Path path) {
-    Future<?> future = prefetchFutures.get(path);
-    if (future != null) {
-      return future.isDone(); 
+    FilePrefetch prefetch = prefetches.get(path);
+    if (prefetch != null) {
+      return prefetch.isCompleted();
     }
     return true;
   }
 
+  /**
+   * @return the number of bytes of the files of the region still to prefetch
+   */
+  public static long getRemainingBytes(String encodedRegionName) {
+    synchronized (regions) {
+      RegionProgress progress = regions.get(encodedRegionName);
+      return progress == null ? 0 : Math.max(progress.remainingBytes.get(), 0);
+    }
+  }
+
+  /**
+   * Store files sit in a directory per family in the directory of their region.
+   */
+  private static String getEncodedRegionName(Path path) {
+    Path regionDir = path.getParent() == null ? null : path.getParent().getParent();
+    return regionDir == null ? "" : regionDir.getName();
+  }
+
+  /**
+   * Reads the range of highest priority among those ready.
+   */
+  private static void readNextRange() {
+    Range next = null;
+    synchronized (pendingRanges) {
+      RegionPriority priority = regionPriority;
+      Map<String, Long> priorities = new HashMap<String, Long>();
+      long highest = Long.MIN_VALUE;
+      for (Range range : pendingRanges) {
+        if (priority == null) {
+          next = range;
+          break;
+        }
+        String region = range.prefetch.progress.encodedRegionName;
+        Long p = priorities.get(region);
+        if (p == null) {
+          p = priority.getPriority(region);
+          priorities.put(region, p);
+        }
+        // The earliest wins among ranges of the same priority
+        if (p > highest) {
+          highest = p;
+          next = range;
+        }
+      }
+      if (next == null) {
+        // Removed by a cancellation
+        return;
+      }
+      pendingRanges.remove(next);
+    }
+    next.read();
+  }
+
+  /**
+   * The prefetch of a file.
+   */
+  private static class FilePrefetch {
+    private final Path path;
+    private final List<Range> ranges;
+    private final RangeReader reader;
+    private final RegionProgress progress;
+    private final AtomicInteger remainingRanges;
+    /** Whether the ranges were queued to be read. Guarded by pendingRanges. */
+    private boolean started;
+    private volatile boolean cancelled;
+
+    FilePrefetch(Path path, long[] rangeStarts, long end, RangeReader reader) {
+      this.path = path;
+      this.reader = reader;
+      this.ranges = new ArrayList<Range>(rangeStarts.length);
+      for (int i = 0; i < rangeStarts.length; i++) {
+        long rangeEnd = i + 1 < rangeStarts.length ? rangeStarts[i + 1] : end;
+        ranges.add(new Range(this, rangeStarts[i], rangeEnd));
+      }
+      this.remainingRanges = new AtomicInteger(ranges.size());
+      this.progress = RegionProgress.fileRequested(getEncodedRegionName(path), end);
+    }
+
+    void start() {
+      synchronized (pendingRanges) {
+        if (cancelled) {
+          return;
+        }
+        started = true;
+        pendingRanges.addAll(ranges);
+      }
+      try {
+        for (int i = 0; i < ranges.size(); i++) {
+          prefetchExecutorPool.execute(new Runnable() {
+            @Override
+            public void run() {
+              readNextRange();
+            }
+          });
+        }
+      } catch (RejectedExecutionException e) {
+        LOG.warn("Prefetch rejected for " + path);
+        cancel();
+      }
+    }
+
+    void cancel() {
+      List<Range> unread = new ArrayList<Range>();
+      synchronized (pendingRanges) {
+        if (cancelled) {
+          return;
+        }
+        cancelled = true;
+        if (!started) {
+          unread.addAll(ranges);
+        }
+        for (Iterator<Range> it = pendingRanges.iterator(); it.hasNext();) {
+          Range range = it.next();
+          if (range.prefetch == this) {
+            it.remove();
+            unread.add(range);
+          }
+        }
+      }
+      for (Range range : unread) {
+        rangeDone(range);
+      }
+    }
+
+    boolean isCompleted() {
+      return remainingRanges.get() <= 0;
+    }
+
+    void rangeDone(Range range) {
+      progress.remainingBytes.addAndGet(-Math.max(range.end - range.start - range.read, 0));
+      if (remainingRanges.decrementAndGet() == 0) {
+        prefetches.remove(path, this);
+        progress.fileDone();
+        if (LOG.isDebugEnabled()) {
+          LOG.debug("Prefetch " + (cancelled ? "cancelled" : "completed") + " for " + path);
+        }
+      }
+    }
+  }
+
+  /**
+   * A range of an HFile, starting at a block boundary, read sequentially.
+   */
+  public static class Range {
+    private final FilePrefetch prefetch;
+    private final long start;
+    private final long end;
+    private long read;
+
+    Range(FilePrefetch prefetch, long start, long end) {
+      this.prefetch = prefetch;
+      this.start = start;
+      this.end = end;
+    }
+
+    public long getStart() {
+      return start;
+    }
+
+    public long getEnd() {
+      return end;
+    }
+
+    /**
+     * @return true if the file has more than one range, read in parallel
+     */
+    public boolean isParallel() {
+      return prefetch.ranges.size() > 1;
+    }
+
+    /**
+     * Accounts for a block read, waiting for the read budget to allow for it.
+     * @param size the size of the block on disk
+     * @return false if the range should not be read any further
+     */
+    public boolean blockRead(long size) {
+      read += size;
+      prefetch.progress.remainingBytes.addAndGet(-size);
+      long wait = throttle.reserve(size);
+      if (wait > 0) {
+        try {
+          TimeUnit.NANOSECONDS.sleep(wait);
+        } catch (InterruptedException e) {
+          Thread.currentThread().interrupt();
+          return false;
+        }
+      }
+      return !prefetch.cancelled && !Thread.currentThread().isInterrupted();
+    }
+
+    void read() {
+      try {
+        prefetch.reader.read(this);
+      } catch (IOException e) {
+        // IOExceptions are probably due to region closes (relocation, etc.)
+        if (LOG.isTraceEnabled()) {
+          LOG.trace("Exception encountered while prefetching " + prefetch.path + ":", e);
+        }
+      } catch (Exception e) {
+        // Other exceptions are interesting
+        LOG.warn("Exception encountered while prefetching " + prefetch.path + ":", e);
+      } finally {
+        prefetch.rangeDone(this);
+      }
+    }
+  }
+
+  /**
+   * How far the prefetch of the files of a region has got.
+   */
+  private static class RegionProgress {
+    private final String encodedRegionName;
+    private final long startTime = EnvironmentEdgeManager.currentTime();
+    private final AtomicLong remainingBytes = new AtomicLong();
+    private long totalBytes;
+    private int files;
+    private int pendingFiles;
+
+    private RegionProgress(String encodedRegionName) {
+      this.encodedRegionName = encodedRegionName;
+    }
+
+    static RegionProgress fileRequested(String encodedRegionName, long size) {
+      synchronized (regions) {
+        RegionProgress progress = regions.get(encodedRegionName);
+        if (progress == null) {
+          progress = new RegionProgress(encodedRegionName);
+          regions.put(encodedRegionName, progress);
+        }
+        progress.files++;
+        progress.pendingFiles++;
+        progress.totalBytes += size;
+        progress.remainingBytes.addAndGet(size);
+        return progress;
+      }
+    }
+
+    void fileDone() {
+      synchronized (regions) {
+        if (--pendingFiles > 0) {
+          return;
+        }
+        regions.remove(encodedRegionName);
+      }
+      LOG.info("Prefetched " + files + " file(s), " + totalBytes + " bytes, of region "
+          + encodedRegionName + " in " + (EnvironmentEdgeManager.currentTime() - startTime)
+          + " ms");
+    }
+  }
+
+  /**
+   * Spreads reads over time so that they stay within a budget of bytes per second.
+   */
+  @VisibleForTesting
+  static class Throttle {
+    private final long bytesPerSecond;
+    /** When the budget allows for the next read. Guarded by this. */
+    private long nextReadTime = System.nanoTime();
+
+    Throttle(long bytesPerSecond) {
+      this.bytesPerSecond = bytesPerSecond;
+    }
+
+    /**
+     * Takes the given number of bytes out of the budget.
+     * @return how long to wait before reading them, in nanoseconds
+     */
+    synchronized long reserve(long bytes) {
+      if (bytesPerSecond <= 0) {
+        return 0;
+      }
+      long now = System.nanoTime();
+      if (nextReadTime < now) {
+        nextReadTime = now;
+      }
+      long wait = nextReadTime - now;
+      nextReadTime += TimeUnit.SECONDS.toNanos(bytes) / bytesPerSecond;
+      return wait;
+    }
+  }
 }
@@ -31,4 +31,10 @@ public interface ResizableBlockCache extends BlockCache {
    * @param size The max heap size.
    */
   void setMaxSize(long size);
+
+  /**
+   * @return the ghost cache estimating the hit ratio of this cache at other sizes, or null if
+   *         there is none
+   */
+  GhostCache getGhostCache();
 }
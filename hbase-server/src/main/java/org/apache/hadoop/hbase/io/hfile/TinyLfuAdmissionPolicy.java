@@ -0,0 +1,76 @@
+/**
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.hadoop.hbase.io.hfile;
+
+import org.apache.hadoop.hbase.classification.InterfaceAudience;
+
+/**
+ * Admits a block into a full cache only if it was asked for more often lately than the blocks
+ * the cache evicts, after TinyLFU. How often blocks are asked for is estimated by a
+ * {@link FrequencySketch} that sees every lookup, hits and misses alike, so a block of a one-off
+ * scan, looked up once, does not get in at the expense of blocks read over and over.
+ * <p>
+ * TinyLFU compares the candidate with the block the cache would evict for it. The block caches
+ * evict in batches, with no single victim known up front, so the candidate is compared with a
+ * running average of the frequencies of the blocks recently evicted instead, which it has to beat
+ * by half a count, as a tie does not justify the churn. The average ages with the sketch, so a
+ * cache that stopped admitting blocks does not stay closed.
+ */
+@InterfaceAudience.Private
+public class TinyLfuAdmissionPolicy implements BlockCacheAdmissionPolicy {
+  /** Weight of the latest victim in the running average */
+  private static final double VICTIM_WEIGHT = 1.0 / 8;
+  /** By how much a candidate has to be more frequent than the victims */
+  private static final double MARGIN = 0.5;
+
+  private final FrequencySketch sketch;
+  /** Running average of the frequencies of the evicted blocks; 0 until the first eviction */
+  private volatile double victimFrequency;
+
+  /**
+   * @param expectedBlocks roughly how many blocks the cache holds
+   */
+  public TinyLfuAdmissionPolicy(long expectedBlocks) {
+    this.sketch = new FrequencySketch(expectedBlocks);
+  }
+
+  @Override
+  public void recordAccess(BlockCacheKey cacheKey) {
+    if (sketch.increment(cacheKey.hashCode())) {
+      victimFrequency /= 2;
+    }
+  }
+
+  @Override
+  public boolean admit(BlockCacheKey cacheKey) {
+    int frequency = sketch.frequency(cacheKey.hashCode());
+    // Saturated counters can not tell hot from hotter; let those in
+    return frequency >= FrequencySketch.MAX_FREQUENCY || frequency >= victimFrequency + MARGIN;
+  }
+
+  @Override
+  public void recordEviction(BlockCacheKey cacheKey) {
+    double frequency = sketch.frequency(cacheKey.hashCode());
+    victimFrequency += (frequency - victimFrequency) * VICTIM_WEIGHT;
+  }
+
+  double getVictimFrequency() {
+    return victimFrequency;
+  }
+}
@@ -21,6 +21,7 @@
 package org.apache.hadoop.hbase.io.hfile.bucket;
 
 import java.util.Arrays;
+import java.util.Iterator;
 import java.util.Map;
 import java.util.concurrent.atomic.AtomicLong;
 
@@ -324,7 +325,10 @@ public final class BucketAllocator {
   }
 
   /**
-   * Rebuild the allocator's data structures from a persisted map.
+   * Rebuild the allocator's data structures from a persisted map. Entries that can not have been
+   * allocated together with the ones before them, because they overlap or disagree on the size
+   * of their bucket, are removed from the map; the map may come from an index that was out of
+   * date, and its earlier entries are taken to be the valid ones.
    * @param availableSpace capacity of cache
    * @param map A map stores the block key and BucketEntry(block's meta data
    *          like offset, length)
@@ -337,10 +341,13 @@ public final class BucketAllocator {
 
     // each bucket has an offset, sizeindex. probably the buckets are too big
     // in our default state. so what we do is reconfigure them according to what
-    // we've found. we can only reconfigure each bucket once; if more than once,
-    // we know there's a bug, so we just log the info, throw, and start again...
+    // we've found. we can only reconfigure each bucket once; entries that would
+    // need it reconfigured again are dropped.
     boolean[] reconfigured = new boolean[buckets.length];
-    for (Map.Entry<BlockCacheKey, BucketEntry> entry : map.entrySet()) {
+    int dropped = 0;
+    for (Iterator<Map.Entry<BlockCacheKey, BucketEntry>> it = map.entrySet().iterator();
+        it.hasNext();) {
+      Map.Entry<BlockCacheKey, BucketEntry> entry = it.next();
       long foundOffset = entry.getValue().offset();
       int foundLen = entry.getValue().getLength();
       int bucketSizeIndex = -1;
@@ -361,9 +368,11 @@ public final class BucketAllocator {
             + "; did you shrink the cache?");
       Bucket b = buckets[bucketNo];
       if (reconfigured[bucketNo]) {
-        if (b.sizeIndex() != bucketSizeIndex)
-          throw new BucketAllocatorException(
-              "Inconsistent allocation in bucket map;");
+        if (b.sizeIndex() != bucketSizeIndex) {
+          it.remove();
+          dropped++;
+          continue;
+        }
       } else {
         if (!b.isCompletelyFree())
           throw new BucketAllocatorException("Reconfiguring bucket "
@@ -376,11 +385,21 @@ public final class BucketAllocator {
         bsi.instantiateBucket(b);
         reconfigured[bucketNo] = true;
       }
+      try {
+        buckets[bucketNo].addAllocation(foundOffset);
+      } catch (BucketAllocatorException e) {
+        // Misaligned in its bucket, or its space is taken already
+        it.remove();
+        dropped++;
+        continue;
+      }
       realCacheSize.addAndGet(foundLen);
-      buckets[bucketNo].addAllocation(foundOffset);
       usedSize += buckets[bucketNo].getItemAllocationSize();
       bucketSizeInfos[bucketSizeIndex].blockAllocated(b);
     }
+    if (dropped > 0) {
+      LOG.warn("Dropped " + dropped + " restored blocks that overlap others");
+    }
   }
 
   public String toString() {
@@ -20,18 +20,15 @@
  */
 package org.apache.hadoop.hbase.io.hfile.bucket;
 
-import java.io.File;
-import java.io.FileInputStream;
 import java.io.FileNotFoundException;
-import java.io.FileOutputStream;
 import java.io.IOException;
-import java.io.ObjectInputStream;
-import java.io.ObjectOutputStream;
 import java.io.Serializable;
 import java.nio.ByteBuffer;
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.Comparator;
 import java.util.Iterator;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.PriorityQueue;
@@ -47,13 +44,14 @@ import java.util.concurrent.atomic.AtomicInteger;
 import java.util.concurrent.atomic.AtomicLong;
 import java.util.concurrent.locks.Lock;
 import java.util.concurrent.locks.ReentrantLock;
-import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.zip.CRC32;
 
 import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
 import org.apache.hadoop.hbase.classification.InterfaceAudience;
 import org.apache.hadoop.hbase.io.HeapSize;
 import org.apache.hadoop.hbase.io.hfile.BlockCache;
+import org.apache.hadoop.hbase.io.hfile.BlockCacheAdmissionPolicy;
 import org.apache.hadoop.hbase.io.hfile.BlockCacheKey;
 import org.apache.hadoop.hbase.io.hfile.BlockCacheUtil;
 import org.apache.hadoop.hbase.io.hfile.BlockPriority;
@@ -69,7 +67,6 @@ import org.apache.hadoop.hbase.nio.ByteBuff;
 import org.apache.hadoop.hbase.util.ConcurrentIndex;
 import org.apache.hadoop.hbase.util.EnvironmentEdgeManager;
 import org.apache.hadoop.hbase.util.HasThread;
-import org.apache.hadoop.hbase.util.IdReadWriteLock;
 import org.apache.hadoop.util.StringUtils;
 
 import com.google.common.annotations.VisibleForTesting;
@@ -80,8 +77,8 @@ import com.google.common.util.concurrent.ThreadFactoryBuilder;
  * BucketCache uses {@link BucketAllocator} to allocate/free blocks, and uses
  * {@link BucketCache#ramCache} and {@link BucketCache#backingMap} in order to
  * determine if a given element is in the cache. The bucket cache can use on-heap or
- * off-heap memory {@link ByteBufferIOEngine} or in a file {@link FileIOEngine} to
- * store/read the block data.
+ * off-heap memory {@link ByteBufferIOEngine}, a file {@link FileIOEngine} or a memory mapped
+ * file {@link FileMmapEngine} to store/read the block data.
  *
  * <p>Eviction is via a similar algorithm as used in
  * {@link org.apache.hadoop.hbase.io.hfile.LruBlockCache}
@@ -166,6 +163,20 @@ public class BucketCache implements BlockCache, HeapSize {
   private final BucketCacheStats cacheStats = new BucketCacheStats();
 
   private final String persistencePath;
+  /**
+   * Keeps the backing map on disk when the cache is persistent. Blocks then carry a checksum so
+   * that those restored after a restart can be verified before they are served.
+   */
+  private final BucketIndexPersister persister;
+  /**
+   * HFiles that blocks were restored for and that have not been read or cached since the
+   * restart. Those still here once the reconcile window ends are not open anymore.
+   */
+  private final Set<String> unconfirmedHFiles =
+      Collections.newSetFromMap(new ConcurrentHashMap<String, Boolean>());
+  private volatile boolean reconciling = false;
+  /** Decides which blocks get in once the cache is full, if set */
+  private BlockCacheAdmissionPolicy admissionPolicy = null;
   private final long cacheCapacity;
   /** Approximate block size */
   private final long blockSize;
@@ -174,18 +185,15 @@ public class BucketCache implements BlockCache, HeapSize {
   private final int ioErrorsTolerationDuration;
   // 1 min
   public static final int DEFAULT_ERROR_TOLERATION_DURATION = 60 * 1000;
+  /** How often the index of a persistent cache is checkpointed, 10 sec as default */
+  public static final long DEFAULT_CHECKPOINT_INTERVAL = 10 * 1000;
+  /** How long restored blocks of HFiles nobody uses are kept after a restart, 1 hour as default */
+  public static final long DEFAULT_RECONCILE_WINDOW = 60 * 60 * 1000;
 
   // Start time of first IO error when reading or writing IO Engine, it will be
   // reset after a successful read/write.
   private volatile long ioErrorStartTime = -1;
 
-  /**
-   * A ReentrantReadWriteLock to lock on a particular block identified by offset.
-   * The purpose of this is to avoid freeing the block which is being read.
-   */
-  @VisibleForTesting
-  final IdReadWriteLock offsetLock = new IdReadWriteLock();
-
   private final ConcurrentIndex<String, BlockCacheKey> blocksByHFile =
       new ConcurrentIndex<String, BlockCacheKey>(new Comparator<BlockCacheKey>() {
         @Override
@@ -216,6 +224,20 @@ public class BucketCache implements BlockCache, HeapSize {
   public BucketCache(String ioEngineName, long capacity, int blockSize, int[] bucketSizes,
       int writerThreadNum, int writerQLen, String persistencePath, int ioErrorsTolerationDuration)
       throws FileNotFoundException, IOException {
+    this(ioEngineName, capacity, blockSize, bucketSizes, writerThreadNum, writerQLen,
+      persistencePath, ioErrorsTolerationDuration, DEFAULT_CHECKPOINT_INTERVAL,
+      DEFAULT_RECONCILE_WINDOW);
+  }
+
+  /**
+   * @param checkpointInterval how often, in ms, to checkpoint the index of a persistent cache; if
+   *          not positive, it is only written on shutdown
+   * @param reconcileWindow how long, in ms, after a restart to keep restored blocks of HFiles that
+   *          are neither read nor cached; if not positive, they are kept until evicted as usual
+   */
+  public BucketCache(String ioEngineName, long capacity, int blockSize, int[] bucketSizes,
+      int writerThreadNum, int writerQLen, String persistencePath, int ioErrorsTolerationDuration,
+      long checkpointInterval, long reconcileWindow) throws FileNotFoundException, IOException {
     this.ioEngine = getIOEngineFromName(ioEngineName, capacity);
     this.writerThreads = new WriterThread[writerThreadNum];
     long blockNumCapacity = capacity / blockSize;
@@ -240,14 +262,15 @@ public class BucketCache implements BlockCache, HeapSize {
     this.backingMap = new ConcurrentHashMap<BlockCacheKey, BucketEntry>((int) blockNumCapacity);
 
     if (ioEngine.isPersistent() && persistencePath != null) {
+      this.persister = new BucketIndexPersister(persistencePath, capacity,
+          ioEngine.getClass().getName(), checkpointInterval > 0);
       try {
         retrieveFromFile(bucketSizes);
       } catch (IOException ioex) {
         LOG.error("Can't restore from file because of", ioex);
-      } catch (ClassNotFoundException cnfe) {
-        LOG.error("Can't restore from file in rebuild because can't deserialise",cnfe);
-        throw new RuntimeException(cnfe);
       }
+    } else {
+      this.persister = null;
     }
     final String threadName = Thread.currentThread().getName();
     this.cacheEnabled = true;
@@ -263,6 +286,27 @@ public class BucketCache implements BlockCache, HeapSize {
     // every five minutes.
     this.scheduleThreadPool.scheduleAtFixedRate(new StatisticsThread(this),
         statThreadPeriod, statThreadPeriod, TimeUnit.SECONDS);
+    if (persister != null && checkpointInterval > 0) {
+      this.scheduleThreadPool.scheduleWithFixedDelay(new Runnable() {
+        @Override
+        public void run() {
+          checkpoint();
+        }
+      }, checkpointInterval, checkpointInterval, TimeUnit.MILLISECONDS);
+    }
+    if (reconciling) {
+      if (reconcileWindow > 0) {
+        this.scheduleThreadPool.schedule(new Runnable() {
+          @Override
+          public void run() {
+            evictUnconfirmedHFiles();
+          }
+        }, reconcileWindow, TimeUnit.MILLISECONDS);
+      } else {
+        reconciling = false;
+        unconfirmedHFiles.clear();
+      }
+    }
     LOG.info("Started bucket cache; ioengine=" + ioEngineName +
         ", capacity=" + StringUtils.byteDesc(capacity) +
       ", blockSize=" + StringUtils.byteDesc(blockSize) + ", writerThreadNum=" +
@@ -305,13 +349,15 @@ public class BucketCache implements BlockCache, HeapSize {
       throws IOException {
     if (ioEngineName.startsWith("file:"))
       return new FileIOEngine(ioEngineName.substring(5), capacity);
+    else if (ioEngineName.startsWith("mmap:"))
+      return new FileMmapEngine(ioEngineName.substring(5), capacity);
     else if (ioEngineName.startsWith("offheap"))
       return new ByteBufferIOEngine(capacity, true);
     else if (ioEngineName.startsWith("heap"))
       return new ByteBufferIOEngine(capacity, false);
     else
       throw new IllegalArgumentException(
-          "Don't understand io engine name for cache - prefix with file:, heap or offheap");
+          "Don't understand io engine name for cache - prefix with file:, mmap:, heap or offheap");
   }
 
   /**
@@ -334,6 +380,13 @@ public class BucketCache implements BlockCache, HeapSize {
   @Override
   public void cacheBlock(BlockCacheKey cacheKey, Cacheable cachedItem, boolean inMemory,
       final boolean cacheDataInL1) {
+    // Blocks evicted from an L1 on top of us come in through cacheBlockWithWait, as the L1
+    // admitted them already. Blocks the L1 turned away do come through here, and are weighed
+    // against our own victims; admit() counts nothing, so asking twice skews no frequency.
+    if (admissionPolicy != null && !inMemory && bucketAllocator.getUsedSize() >= minSize()
+        && !admissionPolicy.admit(cacheKey)) {
+      return;
+    }
     cacheBlockWithWait(cacheKey, cachedItem, inMemory, wait_when_cache);
   }
 
@@ -349,6 +402,7 @@ public class BucketCache implements BlockCache, HeapSize {
     if (!cacheEnabled) {
       return;
     }
+    confirmHFile(cacheKey);
 
     if (backingMap.containsKey(cacheKey)) {
       return;
@@ -398,6 +452,10 @@ public class BucketCache implements BlockCache, HeapSize {
     if (!cacheEnabled) {
       return null;
     }
+    confirmHFile(key);
+    if (admissionPolicy != null && !repeat) {
+      admissionPolicy.recordAccess(key);
+    }
     RAMQueueEntry re = ramCache.get(key);
     if (re != null) {
       if (updateCacheMetrics) {
@@ -407,39 +465,52 @@ public class BucketCache implements BlockCache, HeapSize {
       return re.getData();
     }
     BucketEntry bucketEntry = backingMap.get(key);
-    if (bucketEntry != null) {
+    // Pinning the entry keeps its space from being freed, and so overwritten by another block,
+    // while it is read. An entry that could not be pinned has been freed since it was looked up.
+    if (bucketEntry != null && bucketEntry.retain()) {
       long start = System.nanoTime();
-      ReentrantReadWriteLock lock = offsetLock.getLock(bucketEntry.offset());
+      boolean pinned = false;
+      boolean corrupt = false;
       try {
-        lock.readLock().lock();
-        // We can not read here even if backingMap does contain the given key because its offset
-        // maybe changed. If we lock BlockCacheKey instead of offset, then we can only check
-        // existence here.
-        if (bucketEntry.equals(backingMap.get(key))) {
-          // TODO : change this area - should be removed after server cells and
-          // 12295 are available
-          int len = bucketEntry.getLength();
-          Cacheable cachedBlock = ioEngine.read(bucketEntry.offset(), len,
-              bucketEntry.deserializerReference(this.deserialiserMap));
-          long timeTaken = System.nanoTime() - start;
-          if (updateCacheMetrics) {
-            cacheStats.hit(caching, key.isPrimary());
-            cacheStats.ioHit(timeTaken);
-          }
-          if (cachedBlock.getMemoryType() == MemoryType.SHARED) {
-            bucketEntry.refCount.incrementAndGet();
-          }
-          bucketEntry.access(accessCount.incrementAndGet());
-          if (this.ioErrorStartTime > 0) {
-            ioErrorStartTime = -1;
-          }
-          return cachedBlock;
+        int len = bucketEntry.getLength();
+        CacheableDeserializer<Cacheable> deserializer =
+            bucketEntry.deserializerReference(this.deserialiserMap);
+        if (!bucketEntry.isVerified()) {
+          deserializer = new VerifyingDeserializer(deserializer, bucketEntry.getChecksum());
+        }
+        Cacheable cachedBlock = ioEngine.read(bucketEntry.offset(), len, deserializer);
+        if (cachedBlock == null) {
+          // Restored from an index that was out of date; the space has been reused since
+          corrupt = true;
+          return null;
+        }
+        bucketEntry.markVerified();
+        long timeTaken = System.nanoTime() - start;
+        if (updateCacheMetrics) {
+          cacheStats.hit(caching, key.isPrimary());
+          cacheStats.ioHit(timeTaken);
         }
+        // A block sharing the memory of the engine keeps the entry pinned until it is returned
+        pinned = cachedBlock.getMemoryType() == MemoryType.SHARED;
+        bucketEntry.access(accessCount.incrementAndGet());
+        if (this.ioErrorStartTime > 0) {
+          ioErrorStartTime = -1;
+        }
+        return cachedBlock;
       } catch (IOException ioex) {
         LOG.error("Failed reading block " + key + " from bucket cache", ioex);
         checkIOErrorIsTolerated();
       } finally {
-        lock.readLock().unlock();
+        if (!pinned) {
+          release(key, bucketEntry);
+        }
+        if (corrupt) {
+          LOG.debug("Evicting " + key + " restored with contents that do not match its checksum");
+          evictBlock(key, true);
+          if (!repeat && updateCacheMetrics) {
+            cacheStats.miss(caching, key.isPrimary());
+          }
+        }
       }
     }
     if (!repeat && updateCacheMetrics) {
@@ -448,6 +519,85 @@ public class BucketCache implements BlockCache, HeapSize {
     return null;
   }
 
+  /**
+   * Notes that the HFile of the key is in use, so its restored blocks are kept.
+   */
+  private void confirmHFile(BlockCacheKey key) {
+    if (reconciling) {
+      unconfirmedHFiles.remove(key.getHfileName());
+    }
+  }
+
+  /**
+   * Ends the reconcile window: evicts the restored blocks of the HFiles nobody has used since the
+   * restart, as those HFiles have been compacted away or their regions moved elsewhere.
+   */
+  private void evictUnconfirmedHFiles() {
+    reconciling = false;
+    int files = 0;
+    int blocks = 0;
+    for (String hfileName : unconfirmedHFiles) {
+      files++;
+      blocks += evictBlocksByHfileName(hfileName);
+    }
+    unconfirmedHFiles.clear();
+    LOG.info("Evicted " + blocks + " restored blocks of " + files
+        + " HFiles not in use since the restart");
+  }
+
+  /**
+   * Adds the bytes of the buffer up to its limit to the checksum. Engines hand blocks to the
+   * deserializer with the position at either end, so the position is ignored.
+   */
+  static void updateChecksum(CRC32 crc, ByteBuff buf) {
+    if (buf.hasArray()) {
+      crc.update(buf.array(), buf.arrayOffset(), buf.limit());
+      return;
+    }
+    byte[] chunk = new byte[Math.min(buf.limit(), 8 * 1024)];
+    for (int pos = 0; pos < buf.limit(); pos += chunk.length) {
+      int len = Math.min(chunk.length, buf.limit() - pos);
+      buf.get(pos, chunk, 0, len);
+      crc.update(chunk, 0, len);
+    }
+  }
+
+  /**
+   * Deserializes a block only if its bytes match the checksum it was cached with, and returns
+   * null otherwise.
+   */
+  private static class VerifyingDeserializer implements CacheableDeserializer<Cacheable> {
+    private final CacheableDeserializer<Cacheable> delegate;
+    private final int checksum;
+
+    VerifyingDeserializer(CacheableDeserializer<Cacheable> delegate, int checksum) {
+      this.delegate = delegate;
+      this.checksum = checksum;
+    }
+
+    private boolean matches(ByteBuff b) {
+      CRC32 crc = new CRC32();
+      updateChecksum(crc, b);
+      return (int) crc.getValue() == checksum;
+    }
+
+    @Override
+    public Cacheable deserialize(ByteBuff b) throws IOException {
+      return matches(b) ? delegate.deserialize(b) : null;
+    }
+
+    @Override
+    public Cacheable deserialize(ByteBuff b, boolean reuse, MemoryType memType)
+        throws IOException {
+      return matches(b) ? delegate.deserialize(b, reuse, memType) : null;
+    }
+
+    @Override
+    public int getDeserialiserIdentifier() {
+      return delegate.getDeserialiserIdentifier();
+    }
+  }
+
   @VisibleForTesting
   void blockEvicted(BlockCacheKey cacheKey, BucketEntry bucketEntry, boolean decrementBlockNumber) {
     bucketAllocator.freeBlock(bucketEntry.offset());
@@ -456,6 +606,18 @@ public class BucketCache implements BlockCache, HeapSize {
     if (decrementBlockNumber) {
       this.blockNumber.decrementAndGet();
     }
+    if (persister != null) {
+      persister.removed(cacheKey);
+    }
+  }
+
+  /**
+   * Whether the cache contains block with specified cacheKey
+   * @param cacheKey
+   * @return true if contains the block
+   */
+  public boolean containsBlock(BlockCacheKey cacheKey) {
+    return ramCache.containsKey(cacheKey) || backingMap.containsKey(cacheKey);
   }
 
   @Override
@@ -463,37 +625,31 @@ public class BucketCache implements BlockCache, HeapSize {
     return evictBlock(cacheKey, true);
   }
 
-  // does not check for the ref count. Just tries to evict it if found in the
-  // bucket map
-  private boolean forceEvict(BlockCacheKey cacheKey) {
-    if (!cacheEnabled) {
+  /**
+   * Frees the space of an entry and removes it from the backing map, unless a reader still has
+   * the entry pinned. Only one caller ever succeeds in freeing a given entry.
+   * @return true if the entry was freed by this call
+   */
+  private boolean freeEntry(BlockCacheKey cacheKey, BucketEntry bucketEntry,
+      boolean decrementBlockNumber) {
+    if (!bucketEntry.tryFree()) {
       return false;
     }
-    RAMQueueEntry removedBlock = checkRamCache(cacheKey);
-    BucketEntry bucketEntry = backingMap.get(cacheKey);
-    if (bucketEntry == null) {
-      if (removedBlock != null) {
-        cacheStats.evicted(0, cacheKey.isPrimary());
-        return true;
-      } else {
-        return false;
-      }
-    }
-    ReentrantReadWriteLock lock = offsetLock.getLock(bucketEntry.offset());
-    try {
-      lock.writeLock().lock();
-      if (backingMap.remove(cacheKey, bucketEntry)) {
-        blockEvicted(cacheKey, bucketEntry, removedBlock == null);
-      } else {
-        return false;
-      }
-    } finally {
-      lock.writeLock().unlock();
+    if (backingMap.remove(cacheKey, bucketEntry)) {
+      blockEvicted(cacheKey, bucketEntry, decrementBlockNumber);
     }
-    cacheStats.evicted(bucketEntry.getCachedTime(), cacheKey.isPrimary());
     return true;
   }
 
+  /**
+   * Unpins an entry, freeing it if it was evicted while pinned and this was the last reader.
+   */
+  private void release(BlockCacheKey cacheKey, BucketEntry bucketEntry) {
+    if (bucketEntry.release() == 0 && bucketEntry.markedForEvict) {
+      freeEntry(cacheKey, bucketEntry, true);
+    }
+  }
+
   private RAMQueueEntry checkRamCache(BlockCacheKey cacheKey) {
     RAMQueueEntry removedBlock = ramCache.remove(cacheKey);
     if (removedBlock != null) {
@@ -509,7 +665,7 @@ public class BucketCache implements BlockCache, HeapSize {
     }
     RAMQueueEntry removedBlock = checkRamCache(cacheKey);
     BucketEntry bucketEntry = backingMap.get(cacheKey);
-    if (bucketEntry == null) {
+    if (bucketEntry == null || bucketEntry.isFreed()) {
       if (removedBlock != null) {
         cacheStats.evicted(0, cacheKey.isPrimary());
         return true;
@@ -517,34 +673,25 @@ public class BucketCache implements BlockCache, HeapSize {
         return false;
       }
     }
-    ReentrantReadWriteLock lock = offsetLock.getLock(bucketEntry.offset());
-    try {
-      lock.writeLock().lock();
-      int refCount = bucketEntry.refCount.get();
-      if(refCount == 0) {
-        if (backingMap.remove(cacheKey, bucketEntry)) {
-          blockEvicted(cacheKey, bucketEntry, removedBlock == null);
-        } else {
-          return false;
-        }
-      } else {
-        if(!deletedBlock) {
-          if (LOG.isDebugEnabled()) {
-            LOG.debug("This block " + cacheKey + " is still referred by " + refCount
-                + " readers. Can not be freed now");
-          }
-          return false;
-        } else {
-          if (LOG.isDebugEnabled()) {
-            LOG.debug("This block " + cacheKey + " is still referred by " + refCount
-                + " readers. Can not be freed now. Hence will mark this"
-                + " for evicting at a later point");
-          }
-          bucketEntry.markedForEvict = true;
+    if (deletedBlock) {
+      // Marked before trying to free it so that, should a reader have it pinned, the last reader
+      // to release the entry sees the mark and frees it
+      bucketEntry.markedForEvict = true;
+    }
+    if (!freeEntry(cacheKey, bucketEntry, removedBlock == null)) {
+      int refCount = bucketEntry.getRefCount();
+      if (!deletedBlock) {
+        if (LOG.isDebugEnabled()) {
+          LOG.debug("This block " + cacheKey + " is still referred by " + refCount
+              + " readers. Can not be freed now");
         }
+        return false;
+      }
+      if (LOG.isDebugEnabled()) {
+        LOG.debug("This block " + cacheKey + " is still referred by " + refCount
+            + " readers. Can not be freed now. Hence will mark this"
+            + " for evicting at a later point");
       }
-    } finally {
-      lock.writeLock().unlock();
     }
     cacheStats.evicted(bucketEntry.getCachedTime(), cacheKey.isPrimary());
     return true;
@@ -602,6 +749,10 @@ public class BucketCache implements BlockCache, HeapSize {
     return (long) Math.floor(bucketAllocator.getTotalSize() * DEFAULT_ACCEPT_FACTOR);
   }
 
+  private long minSize() {
+    return (long) Math.floor(bucketAllocator.getTotalSize() * DEFAULT_MIN_FACTOR);
+  }
+
   private long singleSize() {
     return (long) Math.floor(bucketAllocator.getTotalSize()
         * DEFAULT_SINGLE_FACTOR * DEFAULT_MIN_FACTOR);
@@ -626,6 +777,7 @@ public class BucketCache implements BlockCache, HeapSize {
   private void freeSpace(final String why) {
     // Ensure only one freeSpace progress at a time
     if (!freeSpaceLock.tryLock()) return;
+    long start = System.nanoTime();
     try {
       freeInProgress = true;
       long bytesToFreeWithoutExtra = 0;
@@ -757,7 +909,7 @@ public class BucketCache implements BlockCache, HeapSize {
     } catch (Throwable t) {
       LOG.warn("Failed freeing space", t);
     } finally {
-      cacheStats.evict();
+      cacheStats.evict(System.nanoTime() - start);
       freeInProgress = false;
       freeSpaceLock.unlock();
     }
@@ -835,7 +987,8 @@ public class BucketCache implements BlockCache, HeapSize {
             continue;
           }
           BucketEntry bucketEntry =
-            re.writeToCache(ioEngine, bucketAllocator, deserialiserMap, realCacheSize);
+            re.writeToCache(ioEngine, bucketAllocator, deserialiserMap, realCacheSize,
+              persister != null);
           // Successfully added.  Up index and add bucketEntry. Clear io exceptions.
           bucketEntries[index] = bucketEntry;
           if (ioErrorStartTime > 0) {
@@ -883,22 +1036,19 @@ public class BucketCache implements BlockCache, HeapSize {
         // Only add if non-null entry.
         if (bucketEntries[i] != null) {
           backingMap.put(key, bucketEntries[i]);
+          if (persister != null) {
+            persister.added(key, bucketEntries[i]);
+          }
         }
         // Always remove from ramCache even if we failed adding it to the block cache above.
         RAMQueueEntry ramCacheEntry = ramCache.remove(key);
         if (ramCacheEntry != null) {
           heapSize.addAndGet(-1 * entries.get(i).getData().heapSize());
         } else if (bucketEntries[i] != null){
-          // Block should have already been evicted. Remove it and free space.
-          ReentrantReadWriteLock lock = offsetLock.getLock(bucketEntries[i].offset());
-          try {
-            lock.writeLock().lock();
-            if (backingMap.remove(key, bucketEntries[i])) {
-              blockEvicted(key, bucketEntries[i], false);
-            }
-          } finally {
-            lock.writeLock().unlock();
-          }
+          // Block should have already been evicted. Remove it and free space, or leave that to
+          // the last reader should one have found it in the backingMap in the meantime.
+          bucketEntries[i].markedForEvict = true;
+          freeEntry(key, bucketEntries[i], false);
         }
       }
 
@@ -930,72 +1080,74 @@ public class BucketCache implements BlockCache, HeapSize {
     return receptacle;
   }
 
-  private void persistToFile() throws IOException {
-    assert !cacheEnabled;
-    FileOutputStream fos = null;
-    ObjectOutputStream oos = null;
+  /**
+   * Makes the changes to the backing map since the last checkpoint durable.
+   */
+  @VisibleForTesting
+  void checkpoint() {
     try {
-      if (!ioEngine.isPersistent())
-        throw new IOException(
-            "Attempt to persist non-persistent cache mappings!");
-      fos = new FileOutputStream(persistencePath, false);
-      oos = new ObjectOutputStream(fos);
-      oos.writeLong(cacheCapacity);
-      oos.writeUTF(ioEngine.getClass().getName());
-      oos.writeUTF(backingMap.getClass().getName());
-      oos.writeObject(deserialiserMap);
-      oos.writeObject(backingMap);
-    } finally {
-      if (oos != null) oos.close();
-      if (fos != null) fos.close();
+      persister.checkpoint(backingMap, deserialiserMap);
+    } catch (IOException ioex) {
+      LOG.warn("Failed checkpointing the bucket cache index to " + persistencePath, ioex);
     }
   }
 
-  @SuppressWarnings("unchecked")
-  private void retrieveFromFile(int[] bucketSizes) throws IOException, BucketAllocatorException,
-      ClassNotFoundException {
-    File persistenceFile = new File(persistencePath);
-    if (!persistenceFile.exists()) {
+  private void persistToFile() throws IOException {
+    assert !cacheEnabled;
+    if (!ioEngine.isPersistent())
+      throw new IOException(
+          "Attempt to persist non-persistent cache mappings!");
+    persister.snapshot(backingMap, deserialiserMap);
+    persister.close();
+  }
+
+  /**
+   * Restores the backing map from the last checkpoint. The restored entries are verified against
+   * their checksum on first access, and dropped if they overlap each other, so an index that is
+   * out of date because of a crash is safe to restore.
+   */
+  private void retrieveFromFile(int[] bucketSizes) throws IOException {
+    assert !cacheEnabled;
+    if (!ioEngine.isPersistent())
+      throw new IOException(
+          "Attempt to restore non-persistent cache mappings!");
+    Map<BlockCacheKey, BucketEntry> restored = persister.restore(deserialiserMap);
+    if (restored == null || restored.isEmpty()) {
       return;
     }
-    assert !cacheEnabled;
-    FileInputStream fis = null;
-    ObjectInputStream ois = null;
-    try {
-      if (!ioEngine.isPersistent())
-        throw new IOException(
-            "Attempt to restore non-persistent cache mappings!");
-      fis = new FileInputStream(persistencePath);
-      ois = new ObjectInputStream(fis);
-      long capacitySize = ois.readLong();
-      if (capacitySize != cacheCapacity)
-        throw new IOException("Mismatched cache capacity:"
-            + StringUtils.byteDesc(capacitySize) + ", expected: "
-            + StringUtils.byteDesc(cacheCapacity));
-      String ioclass = ois.readUTF();
-      String mapclass = ois.readUTF();
-      if (!ioEngine.getClass().getName().equals(ioclass))
-        throw new IOException("Class name for IO engine mismatch: " + ioclass
-            + ", expected:" + ioEngine.getClass().getName());
-      if (!backingMap.getClass().getName().equals(mapclass))
-        throw new IOException("Class name for cache map mismatch: " + mapclass
-            + ", expected:" + backingMap.getClass().getName());
-      UniqueIndexMap<Integer> deserMap = (UniqueIndexMap<Integer>) ois
-          .readObject();
-      BucketAllocator allocator = new BucketAllocator(cacheCapacity, bucketSizes,
-          backingMap, realCacheSize);
-      backingMap = (ConcurrentHashMap<BlockCacheKey, BucketEntry>) ois
-          .readObject();
-      bucketAllocator = allocator;
-      deserialiserMap = deserMap;
-    } finally {
-      if (ois != null) ois.close();
-      if (fis != null) fis.close();
-      if (!persistenceFile.delete()) {
-        throw new IOException("Failed deleting persistence file "
-            + persistenceFile.getAbsolutePath());
+    // Where entries claim the same space, the most recently used one most likely owns it
+    List<Map.Entry<BlockCacheKey, BucketEntry>> byRecency =
+        new ArrayList<Map.Entry<BlockCacheKey, BucketEntry>>(restored.entrySet());
+    Collections.sort(byRecency, new Comparator<Map.Entry<BlockCacheKey, BucketEntry>>() {
+      @Override
+      public int compare(Map.Entry<BlockCacheKey, BucketEntry> a,
+          Map.Entry<BlockCacheKey, BucketEntry> b) {
+        return BucketEntry.COMPARATOR.compare(a.getValue(), b.getValue());
       }
+    });
+    Map<BlockCacheKey, BucketEntry> ordered = new LinkedHashMap<BlockCacheKey, BucketEntry>();
+    for (Map.Entry<BlockCacheKey, BucketEntry> e : byRecency) {
+      ordered.put(e.getKey(), e.getValue());
+    }
+    AtomicLong restoredSize = new AtomicLong(0);
+    bucketAllocator = new BucketAllocator(cacheCapacity, bucketSizes, ordered, restoredSize);
+    long maxAccessCounter = 0;
+    for (Map.Entry<BlockCacheKey, BucketEntry> e : ordered.entrySet()) {
+      backingMap.put(e.getKey(), e.getValue());
+      blocksByHFile.put(e.getKey().getHfileName(), e.getKey());
+      unconfirmedHFiles.add(e.getKey().getHfileName());
+      maxAccessCounter = Math.max(maxAccessCounter, e.getValue().getAccessCounter());
     }
+    realCacheSize.set(restoredSize.get());
+    blockNumber.set(backingMap.size());
+    // New accesses must count as more recent than the restored ones
+    accessCount.set(maxAccessCounter);
+    reconciling = true;
+    LOG.info("Restored " + backingMap.size() + " blocks of " + unconfirmedHFiles.size()
+        + " HFiles, " + StringUtils.byteDesc(realCacheSize.get()) + ", from " + persistencePath
+        + "; dropped " + (restored.size() - ordered.size()) + " overlapping entries");
+    // Start the journal from what was actually restored
+    persister.snapshot(backingMap, deserialiserMap);
   }
 
   /**
@@ -1065,6 +1217,14 @@ public class BucketCache implements BlockCache, HeapSize {
     return this.bucketAllocator;
   }
 
+  /**
+   * Sets the policy deciding which blocks get in once the cache is full. Blocks cached in-memory,
+   * and blocks an L1 evicts into this cache, always get in. Call before using the cache.
+   */
+  public void setAdmissionPolicy(BlockCacheAdmissionPolicy admissionPolicy) {
+    this.admissionPolicy = admissionPolicy;
+  }
+
   @Override
   public long heapSize() {
     return this.heapSize.get();
@@ -1126,6 +1286,7 @@ public class BucketCache implements BlockCache, HeapSize {
    */
   static class BucketEntry implements Serializable {
     private static final long serialVersionUID = -6741504807982257534L;
+    private static final int FREED = -1;
 
     // access counter comparator, descending order
     static final Comparator<BucketEntry> COMPARATOR = new Comparator<BucketCache.BucketEntry>() {
@@ -1146,7 +1307,12 @@ public class BucketCache implements BlockCache, HeapSize {
     private BlockPriority priority;
     // Set this when we were not able to forcefully evict the block
     private volatile boolean markedForEvict;
-    private AtomicInteger refCount = new AtomicInteger(0);
+    /** Number of readers pinning the entry, or {@link #FREED} once its space has been freed */
+    private final AtomicInteger refCount = new AtomicInteger(0);
+    /** CRC32 of the block as written, kept only when the cache is persistent */
+    private int checksum;
+    /** False for entries restored after a restart, until their contents match the checksum */
+    private volatile boolean verified = true;
 
     /**
      * Time this block was cached.  Presumes we are created just before we are added to the cache.
@@ -1164,6 +1330,19 @@ public class BucketCache implements BlockCache, HeapSize {
       }
     }
 
+    /**
+     * Entry restored from a persisted index, to be verified against its checksum on first read.
+     */
+    BucketEntry(long offset, int length, long accessCounter, BlockPriority priority,
+        int checksum) {
+      setOffset(offset);
+      this.length = length;
+      this.accessCounter = accessCounter;
+      this.priority = priority;
+      this.checksum = checksum;
+      this.verified = false;
+    }
+
     long offset() { // Java has no unsigned numbers
       long o = ((long) offsetBase) & 0xFFFFFFFF;
       o += (((long) (offset1)) & 0xFF) << 32;
@@ -1211,6 +1390,65 @@ public class BucketCache implements BlockCache, HeapSize {
     public long getCachedTime() {
       return cachedTime;
     }
+
+    long getAccessCounter() {
+      return accessCounter;
+    }
+
+    int getChecksum() {
+      return checksum;
+    }
+
+    void setChecksum(int checksum) {
+      this.checksum = checksum;
+    }
+
+    boolean isVerified() {
+      return verified;
+    }
+
+    void markVerified() {
+      this.verified = true;
+    }
+
+    /**
+     * Pins the entry so that its space is not freed while a reader uses it.
+     * @return false if the space has already been freed
+     */
+    boolean retain() {
+      while (true) {
+        int count = refCount.get();
+        if (count == FREED) {
+          return false;
+        }
+        if (refCount.compareAndSet(count, count + 1)) {
+          return true;
+        }
+      }
+    }
+
+    /**
+     * @return the number of readers still pinning the entry
+     */
+    int release() {
+      return refCount.decrementAndGet();
+    }
+
+    /**
+     * Claims the space of an entry that no reader has pinned for freeing.
+     * @return true if the caller is now the one to free the space
+     */
+    boolean tryFree() {
+      return refCount.compareAndSet(0, FREED);
+    }
+
+    boolean isFreed() {
+      return refCount.get() == FREED;
+    }
+
+    int getRefCount() {
+      return Math.max(refCount.get(), 0);
+    }
   }
 
   /**
@@ -1244,6 +1482,9 @@ public class BucketCache implements BlockCache, HeapSize {
       while ((entry = queue.pollLast()) != null) {
         if (evictBlock(entry.getKey(), false)) {
           freedBytes += entry.getValue().getLength();
+          if (admissionPolicy != null) {
+            admissionPolicy.recordEviction(entry.getKey());
+          }
         }
         if (freedBytes >= toFree) {
           return freedBytes;
@@ -1307,7 +1548,7 @@ public class BucketCache implements BlockCache, HeapSize {
     public BucketEntry writeToCache(final IOEngine ioEngine,
         final BucketAllocator bucketAllocator,
         final UniqueIndexMap<Integer> deserialiserMap,
-        final AtomicLong realCacheSize) throws CacheFullException, IOException,
+        final AtomicLong realCacheSize, boolean checksum) throws CacheFullException, IOException,
         BucketAllocatorException {
       int len = data.getSerializedLength();
       // This cacheable thing can't be serialized...
@@ -1315,6 +1556,7 @@ public class BucketCache implements BlockCache, HeapSize {
       long offset = bucketAllocator.allocateBlock(len);
       BucketEntry bucketEntry = new BucketEntry(offset, len, accessCounter, inMemory);
       bucketEntry.setDeserialiserReference(data.getDeserializer(), deserialiserMap);
+      CRC32 crc = checksum ? new CRC32() : null;
       try {
         if (data instanceof HFileBlock) {
           HFileBlock block = (HFileBlock) data;
@@ -1324,11 +1566,29 @@ public class BucketCache implements BlockCache, HeapSize {
             len == sliceBuf.limit() + block.headerSize() + HFileBlock.EXTRA_SERIALIZATION_SPACE;
           ByteBuffer extraInfoBuffer = ByteBuffer.allocate(HFileBlock.EXTRA_SERIALIZATION_SPACE);
           block.serializeExtraInfo(extraInfoBuffer);
+          int gap = len - sliceBuf.limit() - HFileBlock.EXTRA_SERIALIZATION_SPACE;
+          if (crc != null) {
+            updateChecksum(crc, sliceBuf);
+          }
           ioEngine.write(sliceBuf, offset);
+          if (crc != null && gap > 0) {
+            // Whatever the space left for the next block header holds is read back with the
+            // block, so give it known contents
+            byte[] zeros = new byte[gap];
+            crc.update(zeros, 0, gap);
+            ioEngine.write(ByteBuffer.wrap(zeros), offset + len - gap
+                - HFileBlock.EXTRA_SERIALIZATION_SPACE);
+          }
+          if (crc != null) {
+            crc.update(extraInfoBuffer.array(), 0, HFileBlock.EXTRA_SERIALIZATION_SPACE);
+          }
           ioEngine.write(extraInfoBuffer, offset + len - HFileBlock.EXTRA_SERIALIZATION_SPACE);
         } else {
           ByteBuffer bb = ByteBuffer.allocate(len);
           data.serialize(bb);
+          if (crc != null) {
+            crc.update(bb.array(), 0, len);
+          }
           ioEngine.write(bb, offset);
         }
       } catch (IOException ioe) {
@@ -1337,6 +1597,9 @@ public class BucketCache implements BlockCache, HeapSize {
         throw ioe;
       }
 
+      if (crc != null) {
+        bucketEntry.setChecksum((int) crc.getValue());
+      }
       realCacheSize.addAndGet(len);
       return bucketEntry;
     }
@@ -1454,10 +1717,7 @@ public class BucketCache implements BlockCache, HeapSize {
     if (block.getMemoryType() == MemoryType.SHARED) {
       BucketEntry bucketEntry = backingMap.get(cacheKey);
       if (bucketEntry != null) {
-        int refCount = bucketEntry.refCount.decrementAndGet();
-        if (bucketEntry.markedForEvict && refCount == 0) {
-          forceEvict(cacheKey);
-        }
+        release(cacheKey, bucketEntry);
       }
     }
   }
@@ -1466,7 +1726,7 @@ public class BucketCache implements BlockCache, HeapSize {
   public int getRefCount(BlockCacheKey cacheKey) {
     BucketEntry bucketEntry = backingMap.get(cacheKey);
     if (bucketEntry != null) {
-      return bucketEntry.refCount.get();
+      return bucketEntry.getRefCount();
     }
     return 0;
   }
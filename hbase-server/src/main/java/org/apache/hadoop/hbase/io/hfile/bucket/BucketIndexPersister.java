@@ -0,0 +1,413 @@
+/**
+ * Copyright The Apache Software Foundation
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements. See the NOTICE file distributed with this
+ * work for additional information regarding copyright ownership. The ASF
+ * licenses this file to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.hadoop.hbase.io.hfile.bucket;
+
+import java.io.BufferedInputStream;
+import java.io.ByteArrayInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.zip.CRC32;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.apache.hadoop.hbase.classification.InterfaceAudience;
+import org.apache.hadoop.hbase.io.ByteArrayOutputStream;
+import org.apache.hadoop.hbase.io.hfile.BlockCacheKey;
+import org.apache.hadoop.hbase.io.hfile.BlockPriority;
+import org.apache.hadoop.hbase.io.hfile.bucket.BucketCache.BucketEntry;
+
+import com.google.common.annotations.VisibleForTesting;
+
+/**
+ * Keeps the index of a persistent {@link BucketCache}, its backing map, on disk, so that a
+ * restarted server finds the blocks it cached before, even after a crash.
+ * <p>
+ * The index is a snapshot of the whole backing map plus a journal of the blocks added and removed
+ * since. A checkpoint appends what changed since the previous checkpoint to the journal; once the
+ * journal holds more records than the snapshot has entries, a new snapshot replaces both, so the
+ * cost of checkpointing stays proportional to the churn of the cache rather than its size.
+ * <p>
+ * A crash at any point leaves a readable index: snapshots are written aside and renamed into
+ * place, a journal names the snapshot it extends, and every journal record carries a checksum so
+ * a torn tail is dropped on restore. The restored index can still be stale: it misses the changes
+ * after the last checkpoint, and changes made concurrently may have been journaled out of order.
+ * Each entry therefore carries the checksum of its block, which the cache verifies before it first
+ * serves the block.
+ * <p>
+ * Without periodic checkpoints, only the full snapshot taken at shutdown is written, so changes
+ * are not recorded at all.
+ */
+@InterfaceAudience.Private
+class BucketIndexPersister {
+  private static final Log LOG = LogFactory.getLog(BucketIndexPersister.class);
+
+  private static final int SNAPSHOT_MAGIC = 0x42434931; // BCI1
+  private static final int JOURNAL_MAGIC = 0x42434A31; // BCJ1
+  private static final byte ADD = 1;
+  private static final byte REMOVE = 2;
+  /** Below this many records the journal is never replaced by a snapshot */
+  @VisibleForTesting
+  static final int MIN_JOURNAL_RECORDS = 10000;
+
+  private final File snapshotFile;
+  private final File journalFile;
+  private final long capacity;
+  private final String ioEngineClass;
+  /** Whether changes are recorded for checkpoints to journal */
+  private final boolean journaled;
+
+  /** Changes to the backing map since the last checkpoint, in the order they were recorded */
+  private final ConcurrentLinkedQueue<Record> pending = new ConcurrentLinkedQueue<Record>();
+
+  // Guarded by this
+  private long generation;
+  private long snapshotEntries;
+  private long journalRecords;
+  private FileOutputStream journalOut;
+  private DataOutputStream journal;
+
+  private static final class Record {
+    final BlockCacheKey key;
+    /** null for a removal */
+    final BucketEntry entry;
+
+    Record(BlockCacheKey key, BucketEntry entry) {
+      this.key = key;
+      this.entry = entry;
+    }
+  }
+
+  /**
+   * @param path where to keep the snapshot; the journal goes next to it
+   * @param capacity capacity of the cache; an index of a cache of another size is not restored
+   * @param ioEngineClass class of the IOEngine; an index of another engine is not restored
+   */
+  BucketIndexPersister(String path, long capacity, String ioEngineClass) {
+    this(path, capacity, ioEngineClass, true);
+  }
+
+  /**
+   * @param path where to keep the snapshot; the journal goes next to it
+   * @param capacity capacity of the cache; an index of a cache of another size is not restored
+   * @param ioEngineClass class of the IOEngine; an index of another engine is not restored
+   * @param journaled false if checkpoints are rare, so that changes are not recorded and every
+   *          checkpoint writes a snapshot
+   */
+  BucketIndexPersister(String path, long capacity, String ioEngineClass, boolean journaled) {
+    this.snapshotFile = new File(path);
+    this.journalFile = new File(path + ".journal");
+    this.capacity = capacity;
+    this.ioEngineClass = ioEngineClass;
+    this.journaled = journaled;
+  }
+
+  /**
+   * Records that the entry was added to the backing map. Call after adding it.
+   */
+  void added(BlockCacheKey key, BucketEntry entry) {
+    if (!journaled) {
+      return;
+    }
+    pending.add(new Record(key, entry));
+  }
+
+  /**
+   * Records that the key was removed from the backing map. Call after removing it.
+   */
+  void removed(BlockCacheKey key) {
+    if (!journaled) {
+      return;
+    }
+    pending.add(new Record(key, null));
+  }
+
+  /**
+   * Makes the changes recorded since the last checkpoint durable, appending them to the journal
+   * or, if the journal has grown larger than the snapshot, writing a new snapshot.
+   */
+  synchronized void checkpoint(Map<BlockCacheKey, BucketEntry> backingMap,
+      UniqueIndexMap<Integer> deserialiserMap) throws IOException {
+    // Without recorded changes, a snapshot is the only way to catch up
+    if (!journaled || journal == null
+        || journalRecords > Math.max(snapshotEntries, MIN_JOURNAL_RECORDS)) {
+      snapshot(backingMap, deserialiserMap);
+      return;
+    }
+    if (pending.isEmpty()) {
+      return;
+    }
+    ByteArrayOutputStream buf = new ByteArrayOutputStream(256);
+    DataOutputStream out = new DataOutputStream(buf);
+    CRC32 crc = new CRC32();
+    Record r;
+    while ((r = pending.poll()) != null) {
+      buf.reset();
+      if (r.entry != null) {
+        out.writeByte(ADD);
+        writeEntry(out, r.key, r.entry, deserialiserMap);
+      } else {
+        out.writeByte(REMOVE);
+        writeKey(out, r.key);
+      }
+      crc.reset();
+      crc.update(buf.getBuffer(), 0, buf.size());
+      journal.writeInt(buf.size());
+      journal.write(buf.getBuffer(), 0, buf.size());
+      journal.writeInt((int) crc.getValue());
+      journalRecords++;
+    }
+    journal.flush();
+    journalOut.getFD().sync();
+  }
+
+  /**
+   * Writes the whole backing map as the new snapshot and starts an empty journal after it.
+   */
+  synchronized void snapshot(Map<BlockCacheKey, BucketEntry> backingMap,
+      UniqueIndexMap<Integer> deserialiserMap) throws IOException {
+    // Changes recorded so far are in the map already, as they are recorded after being made.
+    // Later ones may or may not be seen by the iteration below; they go to the new journal and
+    // replaying them again is harmless.
+    for (int i = pending.size(); i > 0; i--) {
+      pending.poll();
+    }
+    // Without a journal, the next checkpoint retries the snapshot if this one fails
+    closeJournal();
+    long newGeneration = generation + 1;
+    File tmp = new File(snapshotFile.getPath() + ".tmp");
+    long count = 0;
+    FileOutputStream fos = new FileOutputStream(tmp, false);
+    try {
+      DataOutputStream out = new DataOutputStream(new BufferedOutputStream(fos, 64 * 1024));
+      out.writeInt(SNAPSHOT_MAGIC);
+      out.writeLong(newGeneration);
+      out.writeLong(capacity);
+      out.writeUTF(ioEngineClass);
+      for (Map.Entry<BlockCacheKey, BucketEntry> e : backingMap.entrySet()) {
+        out.writeBoolean(true);
+        writeEntry(out, e.getKey(), e.getValue(), deserialiserMap);
+        count++;
+      }
+      out.writeBoolean(false);
+      out.writeLong(count);
+      out.flush();
+      fos.getFD().sync();
+    } finally {
+      fos.close();
+    }
+    // The old journal may be of an index we failed to restore, whose generation says nothing
+    if (journalFile.exists() && !journalFile.delete()) {
+      throw new IOException("Failed deleting " + journalFile);
+    }
+    Files.move(tmp.toPath(), snapshotFile.toPath(), StandardCopyOption.REPLACE_EXISTING,
+      StandardCopyOption.ATOMIC_MOVE);
+    generation = newGeneration;
+    snapshotEntries = count;
+    journalRecords = 0;
+    journalOut = new FileOutputStream(journalFile, false);
+    journal = new DataOutputStream(new BufferedOutputStream(journalOut, 64 * 1024));
+    journal.writeInt(JOURNAL_MAGIC);
+    journal.writeLong(generation);
+    journal.flush();
+    journalOut.getFD().sync();
+  }
+
+  @VisibleForTesting
+  int getPendingCount() {
+    return pending.size();
+  }
+
+  /**
+   * Reads back the index as of the last checkpoint.
+   * @return the restored entries, not verified yet, or null if there is no index
+   * @throws IOException if the index can not be read or belongs to another cache
+   */
+  synchronized Map<BlockCacheKey, BucketEntry> restore(UniqueIndexMap<Integer> deserialiserMap)
+      throws IOException {
+    if (!snapshotFile.exists()) {
+      return null;
+    }
+    Map<BlockCacheKey, BucketEntry> entries = new HashMap<BlockCacheKey, BucketEntry>();
+    DataInputStream in = new DataInputStream(
+        new BufferedInputStream(new FileInputStream(snapshotFile), 64 * 1024));
+    long snapshotGeneration;
+    try {
+      if (in.readInt() != SNAPSHOT_MAGIC) {
+        throw new IOException("Not a bucket cache index: " + snapshotFile);
+      }
+      snapshotGeneration = in.readLong();
+      long capacitySize = in.readLong();
+      if (capacitySize != capacity) {
+        throw new IOException("Mismatched cache capacity: " + capacitySize + ", expected: "
+            + capacity);
+      }
+      String ioclass = in.readUTF();
+      if (!ioEngineClass.equals(ioclass)) {
+        throw new IOException("Class name for IO engine mismatch: " + ioclass + ", expected:"
+            + ioEngineClass);
+      }
+      while (in.readBoolean()) {
+        BlockCacheKey key = readKey(in);
+        entries.put(key, readEntry(in, deserialiserMap));
+      }
+      long count = in.readLong();
+      if (count != entries.size()) {
+        throw new IOException("Snapshot " + snapshotFile + " lists " + entries.size()
+            + " entries, expected " + count);
+      }
+    } finally {
+      in.close();
+    }
+    long replayed = replayJournal(snapshotGeneration, entries, deserialiserMap);
+    LOG.info("Restored " + entries.size() + " bucket cache entries from " + snapshotFile
+        + ", " + replayed + " of them from its journal");
+    generation = snapshotGeneration;
+    return entries;
+  }
+
+  /**
+   * Applies the intact records of the journal of the given snapshot generation.
+   * @return the number of records applied
+   */
+  private long replayJournal(long snapshotGeneration, Map<BlockCacheKey, BucketEntry> entries,
+      UniqueIndexMap<Integer> deserialiserMap) throws IOException {
+    if (!journalFile.exists()) {
+      return 0;
+    }
+    DataInputStream in = new DataInputStream(
+        new BufferedInputStream(new FileInputStream(journalFile), 64 * 1024));
+    long replayed = 0;
+    try {
+      if (in.readInt() != JOURNAL_MAGIC || in.readLong() != snapshotGeneration) {
+        // Left over from before the snapshot was written
+        return 0;
+      }
+      CRC32 crc = new CRC32();
+      while (true) {
+        byte[] record;
+        int checksum;
+        try {
+          int length = in.readInt();
+          if (length <= 0) {
+            break;
+          }
+          record = new byte[length];
+          in.readFully(record);
+          checksum = in.readInt();
+        } catch (EOFException e) {
+          // The checkpoint in progress when we went down
+          break;
+        }
+        crc.reset();
+        crc.update(record, 0, record.length);
+        if ((int) crc.getValue() != checksum) {
+          LOG.warn("Dropping the tail of " + journalFile + " after a corrupt record");
+          break;
+        }
+        DataInputStream recordIn = new DataInputStream(new ByteArrayInputStream(record));
+        byte type = recordIn.readByte();
+        BlockCacheKey key = readKey(recordIn);
+        if (type == ADD) {
+          entries.put(key, readEntry(recordIn, deserialiserMap));
+        } else {
+          entries.remove(key);
+        }
+        replayed++;
+      }
+    } catch (EOFException e) {
+      // Torn header; nothing was journaled
+    } finally {
+      in.close();
+    }
+    return replayed;
+  }
+
+  /**
+   * Closes the journal. A later checkpoint starts with a new snapshot.
+   */
+  synchronized void close() {
+    try {
+      closeJournal();
+    } catch (IOException e) {
+      LOG.warn("Failed closing " + journalFile, e);
+    }
+  }
+
+  private void closeJournal() throws IOException {
+    if (journal != null) {
+      try {
+        journal.close();
+      } finally {
+        journal = null;
+        journalOut = null;
+      }
+    }
+  }
+
+  private static void writeKey(DataOutputStream out, BlockCacheKey key) throws IOException {
+    out.writeUTF(key.getHfileName());
+    out.writeLong(key.getOffset());
+    out.writeBoolean(key.isPrimary());
+  }
+
+  private static BlockCacheKey readKey(DataInputStream in) throws IOException {
+    String hfileName = in.readUTF();
+    long offset = in.readLong();
+    return new BlockCacheKey(hfileName, offset, in.readBoolean());
+  }
+
+  private static void writeEntry(DataOutputStream out, BlockCacheKey key, BucketEntry entry,
+      UniqueIndexMap<Integer> deserialiserMap) throws IOException {
+    writeKey(out, key);
+    out.writeLong(entry.offset());
+    out.writeInt(entry.getLength());
+    // Deserialisers are persisted by their identifier, as indexes are only valid in this process
+    out.writeInt(deserialiserMap.unmap(entry.deserialiserIndex));
+    out.writeLong(entry.getAccessCounter());
+    out.writeByte(entry.getPriority().ordinal());
+    out.writeInt(entry.getChecksum());
+  }
+
+  private static BucketEntry readEntry(DataInputStream in,
+      UniqueIndexMap<Integer> deserialiserMap) throws IOException {
+    long offset = in.readLong();
+    int length = in.readInt();
+    int deserialiserId = in.readInt();
+    long accessCounter = in.readLong();
+    int priority = in.readByte();
+    if (priority < 0 || priority >= BlockPriority.values().length) {
+      throw new IOException("Unknown block priority " + priority);
+    }
+    BucketEntry entry = new BucketEntry(offset, length, accessCounter,
+        BlockPriority.values()[priority], in.readInt());
+    entry.deserialiserIndex = (byte) deserialiserMap.map(deserialiserId);
+    return entry;
+  }
+}
@@ -0,0 +1,197 @@
+/**
+ * Copyright The Apache Software Foundation
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements. See the NOTICE file distributed with this
+ * work for additional information regarding copyright ownership. The ASF
+ * licenses this file to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.hadoop.hbase.io.hfile.bucket;
+
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.apache.hadoop.hbase.classification.InterfaceAudience;
+import org.apache.hadoop.hbase.io.hfile.Cacheable;
+import org.apache.hadoop.hbase.io.hfile.Cacheable.MemoryType;
+import org.apache.hadoop.hbase.io.hfile.CacheableDeserializer;
+import org.apache.hadoop.hbase.nio.ByteBuff;
+import org.apache.hadoop.hbase.util.ByteBufferAllocator;
+import org.apache.hadoop.hbase.util.ByteBufferArray;
+import org.apache.hadoop.util.StringUtils;
+
+/**
+ * IO engine that stores data in a file on the local file system, which it maps into memory in
+ * segments. Blocks are read as slices of the mapped segments instead of being copied out of the
+ * file, so a cache on a fast local device, an SSD or persistent memory, is read nearly as cheaply
+ * as an off-heap one; the OS page cache decides what is actually resident.
+ */
+@InterfaceAudience.Private
+public class FileMmapEngine implements IOEngine {
+  private static final Log LOG = LogFactory.getLog(FileMmapEngine.class);
+
+  /**
+   * Largest segment mapped at once. Every segment is a mapping of its own and the OS caps the
+   * number of mappings of a process, so big files are mapped in big segments.
+   */
+  static final int MAX_SEGMENT_SIZE = 256 * 1024 * 1024;
+  /** Number of segments big files are mapped in, as long as segments stay within the maximum */
+  static final int SEGMENTS = 1024;
+  private static final int SEGMENT_ALIGNMENT = 32 * 1024;
+
+  private final String path;
+  private final long size;
+  private final RandomAccessFile raf;
+  private final FileChannel fileChannel;
+  private final MappedByteBuffer[] segments;
+  private final ByteBufferArray bufferArray;
+
+  public FileMmapEngine(String filePath, final long fileSize) throws IOException {
+    this.path = filePath;
+    this.size = fileSize;
+    try {
+      raf = new RandomAccessFile(filePath, "rw");
+    } catch (java.io.FileNotFoundException fex) {
+      LOG.error("Can't create bucket cache file " + filePath, fex);
+      throw fex;
+    }
+    try {
+      raf.setLength(fileSize);
+    } catch (IOException ioex) {
+      LOG.error("Can't extend bucket cache file; insufficient space for "
+          + StringUtils.byteDesc(fileSize), ioex);
+      raf.close();
+      throw ioex;
+    }
+    fileChannel = raf.getChannel();
+
+    final int segmentSize = segmentSize(fileSize);
+    segments = new MappedByteBuffer[(int) ((fileSize + segmentSize - 1) / segmentSize)];
+    ByteBufferAllocator allocator = new ByteBufferAllocator() {
+      @Override
+      public ByteBuffer allocate(int size, int index) throws IOException {
+        // The last segment only maps what is left of the file, so the file does not grow
+        long position = (long) index * size;
+        MappedByteBuffer segment = fileChannel.map(FileChannel.MapMode.READ_WRITE, position,
+          Math.min(size, fileSize - position));
+        segments[index] = segment;
+        return segment;
+      }
+
+      @Override
+      public String toString() {
+        return "mmap:" + path;
+      }
+    };
+    try {
+      bufferArray = new ByteBufferArray(fileSize, segmentSize, allocator);
+    } catch (IOException ioex) {
+      LOG.error("Can't map bucket cache file " + filePath, ioex);
+      shutdown();
+      throw ioex;
+    }
+    LOG.info("Mapped " + StringUtils.byteDesc(fileSize) + " in " + segments.length
+        + " segment(s), on the path:" + filePath);
+  }
+
+  /**
+   * @return the size of the segments to map a file of the given size in: that of the buffers of
+   *         a {@link ByteBufferArray} of the same capacity, unless the file is so big that this
+   *         would take more than {@link #SEGMENTS} mappings
+   */
+  static int segmentSize(long fileSize) {
+    long segmentSize = (fileSize / SEGMENTS + SEGMENT_ALIGNMENT - 1) / SEGMENT_ALIGNMENT
+        * SEGMENT_ALIGNMENT;
+    return (int) Math.max(ByteBufferArray.defaultBufferSize(fileSize),
+      Math.min(MAX_SEGMENT_SIZE, segmentSize));
+  }
+
+  @Override
+  public String toString() {
+    return "ioengine=" + this.getClass().getSimpleName() + ", path=" + this.path +
+      ", size=" + String.format("%,d", this.size);
+  }
+
+  /**
+   * The mapped file outlives the process, so it supports persistent storage for the cache
+   * @return true
+   */
+  @Override
+  public boolean isPersistent() {
+    return true;
+  }
+
+  @Override
+  public Cacheable read(long offset, int length, CacheableDeserializer<Cacheable> deserializer)
+      throws IOException {
+    ByteBuff dstBuffer = bufferArray.asSubByteBuff(offset, length);
+    // Like ByteBufferIOEngine, the buffer refers to the mapped file itself, so the block has to
+    // stay in the cache until the readers of the cells pointing into it are done
+    return deserializer.deserialize(dstBuffer, true, MemoryType.SHARED);
+  }
+
+  /**
+   * Transfers data from the given byte buffer to the mapped file
+   * @param srcBuffer the given byte buffer from which bytes are to be read
+   * @param offset The offset in the file where the first byte to be written
+   * @throws IOException
+   */
+  @Override
+  public void write(ByteBuffer srcBuffer, long offset) throws IOException {
+    assert srcBuffer.hasArray();
+    bufferArray.putMultiple(offset, srcBuffer.remaining(), srcBuffer.array(),
+        srcBuffer.arrayOffset());
+  }
+
+  @Override
+  public void write(ByteBuff srcBuffer, long offset) throws IOException {
+    // When caching block into BucketCache there will be single buffer backing for this HFileBlock.
+    assert srcBuffer.hasArray();
+    bufferArray.putMultiple(offset, srcBuffer.remaining(), srcBuffer.array(),
+        srcBuffer.arrayOffset());
+  }
+
+  /**
+   * Writes the dirty pages of all segments back to the file
+   */
+  @Override
+  public void sync() throws IOException {
+    for (MappedByteBuffer segment : segments) {
+      if (segment != null) {
+        segment.force();
+      }
+    }
+  }
+
+  /**
+   * Close the file. The segments stay mapped until they are garbage collected.
+   */
+  @Override
+  public void shutdown() {
+    try {
+      fileChannel.close();
+    } catch (IOException ex) {
+      LOG.error("Can't shutdown cleanly", ex);
+    }
+    try {
+      raf.close();
+    } catch (IOException ex) {
+      LOG.error("Can't shutdown cleanly", ex);
+    }
+  }
+}
@@ -0,0 +1,168 @@
+/**
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.hadoop.hbase.ipc;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.apache.hadoop.hbase.Cell;
+import org.apache.hadoop.hbase.CellScanner;
+import org.apache.hadoop.hbase.KeyValue;
+import org.apache.hadoop.hbase.KeyValueUtil;
+import org.apache.hadoop.hbase.OffheapKeyValue;
+import org.apache.hadoop.hbase.classification.InterfaceAudience;
+import org.apache.hadoop.hbase.codec.Codec;
+import org.apache.hadoop.hbase.codec.KeyValueCodec;
+import org.apache.hadoop.hbase.codec.KeyValueCodecWithTags;
+import org.apache.hadoop.hbase.io.ByteBufferOutputStream;
+import org.apache.hadoop.io.compress.CompressionCodec;
+
+/**
+ * Builds the cell block of a response as a sequence of buffers for a gathering write. Cells which
+ * are laid out in the KeyValue format already, like those read from blocks in the block cache,
+ * go in as views over the memory they live in instead of being copied into the cell block. The
+ * length the codec writes ahead of each cell, and cells which are smaller than a threshold or laid
+ * out some other way, are copied into one buffer as usual; gathering many tiny buffers costs more
+ * than copying them.
+ * <p>
+ * The views must match what the codec would have written byte for byte, so only the KeyValue
+ * codecs without compression are supported. They are only valid while the memory they point at
+ * is, so the cells must not be released until the response has been written out.
+ */
+@InterfaceAudience.Private
+class GatheringCellBlockBuilder {
+  private final boolean withTags;
+  private final int minViewSize;
+  private final ByteBufferOutputStream copied;
+  // The views, and where in copied the bytes written before each of them end
+  private final List<ByteBuffer> views = new ArrayList<ByteBuffer>();
+  private final List<Integer> copiedEnds = new ArrayList<Integer>();
+  private ByteBuffer copiedBuffer;
+  private int length = 0;
+
+  /**
+   * @param codec the codec of the connection, see {@link #isSupported(Codec, CompressionCodec)}
+   * @param minViewSize cells shorter than this are copied
+   * @param copied where the copied bytes go
+   */
+  GatheringCellBlockBuilder(Codec codec, int minViewSize, ByteBufferOutputStream copied) {
+    this.withTags = codec.getClass() == KeyValueCodecWithTags.class;
+    this.minViewSize = minViewSize;
+    this.copied = copied;
+  }
+
+  static boolean isSupported(Codec codec, CompressionCodec compressor) {
+    return compressor == null && codec != null
+        && (codec.getClass() == KeyValueCodec.class
+            || codec.getClass() == KeyValueCodecWithTags.class);
+  }
+
+  /**
+   * @return the buffers making up the cell block, in order, or null if there are no cells
+   */
+  ByteBuffer[] build(CellScanner cellScanner) throws IOException {
+    int count = 0;
+    int viewBytes = 0;
+    while (cellScanner.advance()) {
+      Cell cell = cellScanner.current();
+      ByteBuffer view = getSerializedView(cell);
+      if (view != null && view.remaining() >= minViewSize) {
+        copied.writeInt(view.remaining());
+        copiedEnds.add(copied.size());
+        views.add(view);
+        viewBytes += view.remaining();
+      } else {
+        KeyValueUtil.oswrite(cell, copied, withTags);
+      }
+      count++;
+    }
+    if (count == 0) {
+      return null;
+    }
+    ByteBuffer buf = copied.getByteBuffer();
+    copiedBuffer = buf;
+    length = buf.limit() + viewBytes;
+    ByteBuffer[] buffers = new ByteBuffer[2 * views.size() + 1];
+    int start = 0;
+    for (int i = 0; i < views.size(); i++) {
+      int end = copiedEnds.get(i);
+      buffers[2 * i] = slice(buf, start, end);
+      buffers[2 * i + 1] = views.get(i);
+      start = end;
+    }
+    buffers[buffers.length - 1] = slice(buf, start, buf.limit());
+    return buffers;
+  }
+
+  /**
+   * @return the total length of the cell block
+   */
+  int getLength() {
+    return length;
+  }
+
+  /**
+   * @return the buffer the copied bytes ended up in, which is not the one passed in if that had to
+   *         grow, or null if nothing was built
+   */
+  ByteBuffer getCopiedBuffer() {
+    return copiedBuffer;
+  }
+
+  /**
+   * @return how many cells went in without being copied
+   */
+  int getViewCount() {
+    return views.size();
+  }
+
+  /**
+   * @return the bytes {@link KeyValueUtil#oswrite(Cell, java.io.OutputStream, boolean)} writes
+   *         after the length, as a view over the cell, or null if the cell is not laid out that
+   *         way
+   */
+  private ByteBuffer getSerializedView(Cell cell) {
+    if (cell instanceof KeyValue && !(cell instanceof KeyValue.KeyOnlyKeyValue)) {
+      KeyValue kv = (KeyValue) cell;
+      int length = withTags ? kv.getLength()
+          : kv.getKeyLength() + kv.getValueLength() + KeyValue.KEYVALUE_INFRASTRUCTURE_SIZE;
+      return ByteBuffer.wrap(kv.getBuffer(), kv.getOffset(), length);
+    }
+    if (cell instanceof OffheapKeyValue) {
+      OffheapKeyValue kv = (OffheapKeyValue) cell;
+      int start = kv.getRowPosition() - KeyValue.ROW_KEY_OFFSET;
+      int length = KeyValueUtil.length(kv.getRowLength(), kv.getFamilyLength(),
+          kv.getQualifierLength(), kv.getValueLength(), kv.getTagsLength(), withTags);
+      ByteBuffer view = kv.getRowByteBuffer().duplicate();
+      view.limit(start + length);
+      view.position(start);
+      return view;
+    }
+    return null;
+  }
+
+  private static ByteBuffer slice(ByteBuffer buf, int start, int end) {
+    ByteBuffer slice = buf.duplicate();
+    slice.limit(end);
+    slice.position(start);
+    return slice;
+  }
+}
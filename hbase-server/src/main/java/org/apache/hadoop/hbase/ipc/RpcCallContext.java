@@ -68,6 +68,10 @@ public interface RpcCallContext {
   /**
    * Sets a callback which has to be executed at the end of this RPC call. Such a callback is an
    * optional one for any Rpc call.
+   * <p>
+   * Normally the callback runs as soon as the response is created. When the response refers to
+   * cells instead of holding copies of them, it runs only once the response has been written out
+   * or the connection is gone, from a thread other than the handler's.
    *
    * @param callback
    */
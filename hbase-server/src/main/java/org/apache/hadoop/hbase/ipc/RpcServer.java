@@ -264,10 +264,23 @@ public class RpcServer implements RpcServerInterface, ConfigurationObserver {
   private static final int DEFAULT_WARN_RESPONSE_TIME = 10000; // milliseconds
   private static final int DEFAULT_WARN_RESPONSE_SIZE = 100 * 1024 * 1024;
 
+  /**
+   * Whether cells in the KeyValue format, such as those served from the block cache, are written
+   * to the socket from where they are instead of being copied into the cell block first.
+   */
+  static final String ZERO_COPY_CELL_BLOCK_KEY = "hbase.ipc.server.cellblock.zerocopy";
+  /** Cells shorter than this are still copied into the cell block. */
+  static final String ZERO_COPY_MIN_CELL_SIZE_KEY =
+      "hbase.ipc.server.cellblock.zerocopy.min.cell.size";
+  static final int DEFAULT_ZERO_COPY_MIN_CELL_SIZE = 1024;
+
   private static final ObjectMapper MAPPER = new ObjectMapper();
 
   private final int warnResponseTime;
   private final int warnResponseSize;
+  private final boolean zeroCopyCellBlock;
+  private final int zeroCopyMinCellSize;
+  private final int zeroCopyInitialBufferSize;
   private final Server server;
   private final List<BlockingServiceAndInterface> services;
 
@@ -308,6 +321,8 @@ public class RpcServer implements RpcServerInterface, ConfigurationObserver {
     private User user;
     private InetAddress remoteAddress;
     private RpcCallback callback;
+    // Set when the response refers to cells the callback may release, see setResponse
+    private boolean callbackDeferred = false;
 
     private long responseCellSize = 0;
     private long responseBlockSize = 0;
@@ -344,6 +359,7 @@ public class RpcServer implements RpcServerInterface, ConfigurationObserver {
     @edu.umd.cs.findbugs.annotations.SuppressWarnings(value="IS2_INCONSISTENT_SYNC",
         justification="Presume the lock on processing request held by caller is protection enough")
     void done() {
+      runDeferredCallback();
       if (this.cellBlock != null && reservoir != null) {
         // Return buffer to reservoir now we are done with it.
         reservoir.putBuffer(this.cellBlock);
@@ -392,6 +408,7 @@ public class RpcServer implements RpcServerInterface, ConfigurationObserver {
       if (this.isError) return;
       if (t != null) this.isError = true;
       BufferChain bc = null;
+      boolean holdsCells = false;
       try {
         ResponseHeader.Builder headerBuilder = ResponseHeader.newBuilder();
         // Presume it a pb Message.  Could be null.
@@ -414,15 +431,39 @@ public class RpcServer implements RpcServerInterface, ConfigurationObserver {
           // Set the exception as the result of the method invocation.
           headerBuilder.setException(exceptionBuilder.build());
         }
-        // Pass reservoir to buildCellBlock. Keep reference to returne so can add it back to the
-        // reservoir when finished. This is hacky and the hack is not contained but benefits are
-        // high when we can avoid a big buffer allocation on each rpc.
-        this.cellBlock = ipcUtil.buildCellBlock(this.connection.codec,
-          this.connection.compressionCodec, cells, reservoir);
-        if (this.cellBlock != null) {
+        ByteBuffer[] cellBlockBuffers = null;
+        int cellBlockLength = 0;
+        if (zeroCopyCellBlock && cells != null && !this.connection.useWrap
+            && GatheringCellBlockBuilder.isSupported(this.connection.codec,
+                this.connection.compressionCodec)) {
+          ByteBuffer bb = reservoir == null
+              ? ByteBuffer.allocate(zeroCopyInitialBufferSize) : reservoir.getBuffer();
+          GatheringCellBlockBuilder builder = new GatheringCellBlockBuilder(
+              this.connection.codec, zeroCopyMinCellSize, new ByteBufferOutputStream(bb));
+          cellBlockBuffers = builder.build(cells);
+          if (cellBlockBuffers != null) {
+            // The copied parts are sliced from this buffer; it goes back to the reservoir in done()
+            this.cellBlock = reservoir == null ? null : builder.getCopiedBuffer();
+            cellBlockLength = builder.getLength();
+            holdsCells = builder.getViewCount() > 0;
+          } else if (reservoir != null) {
+            reservoir.putBuffer(bb);
+          }
+        } else {
+          // Pass reservoir to buildCellBlock. Keep reference to returne so can add it back to the
+          // reservoir when finished. This is hacky and the hack is not contained but benefits are
+          // high when we can avoid a big buffer allocation on each rpc.
+          this.cellBlock = ipcUtil.buildCellBlock(this.connection.codec,
+            this.connection.compressionCodec, cells, reservoir);
+          if (this.cellBlock != null) {
+            cellBlockBuffers = new ByteBuffer[] { this.cellBlock };
+            // Presumes the cellBlock bytebuffer has been flipped so limit has total size in it.
+            cellBlockLength = this.cellBlock.limit();
+          }
+        }
+        if (cellBlockBuffers != null) {
           CellBlockMeta.Builder cellBlockBuilder = CellBlockMeta.newBuilder();
-          // Presumes the cellBlock bytebuffer has been flipped so limit has total size in it.
-          cellBlockBuilder.setLength(this.cellBlock.limit());
+          cellBlockBuilder.setLength(cellBlockLength);
           headerBuilder.setCellBlockMeta(cellBlockBuilder.build());
         }
         Message header = headerBuilder.build();
@@ -432,28 +473,59 @@ public class RpcServer implements RpcServerInterface, ConfigurationObserver {
         ByteBuffer bbHeader = IPCUtil.getDelimitedMessageAsByteBuffer(header);
         ByteBuffer bbResult = IPCUtil.getDelimitedMessageAsByteBuffer(result);
         int totalSize = bbHeader.capacity() + (bbResult == null? 0: bbResult.limit()) +
-          (this.cellBlock == null? 0: this.cellBlock.limit());
+          cellBlockLength;
         ByteBuffer bbTotalSize = ByteBuffer.wrap(Bytes.toBytes(totalSize));
-        bc = new BufferChain(bbTotalSize, bbHeader, bbResult, this.cellBlock);
+        int cellBlockBufferCount = cellBlockBuffers == null? 0: cellBlockBuffers.length;
+        ByteBuffer[] buffers = new ByteBuffer[3 + cellBlockBufferCount];
+        buffers[0] = bbTotalSize;
+        buffers[1] = bbHeader;
+        buffers[2] = bbResult;
+        if (cellBlockBuffers != null) {
+          System.arraycopy(cellBlockBuffers, 0, buffers, 3, cellBlockBufferCount);
+        }
+        bc = new BufferChain(buffers);
         if (connection.useWrap) {
           bc = wrapWithSasl(bc);
         }
       } catch (IOException e) {
         LOG.warn("Exception while creating response " + e);
+        holdsCells = false;
       }
       this.response = bc;
-      // Once a response message is created and set to this.response, this Call can be treated as
-      // done. The Responder thread will do the n/w write of this message back to client.
       if (this.callback != null) {
-        try {
-          this.callback.run();
-        } catch (Exception e) {
-          // Don't allow any exception here to kill this handler thread.
-          LOG.warn("Exception while running the Rpc Callback.", e);
+        if (holdsCells) {
+          // The callback may release the memory of cells the response refers to, so it has to
+          // wait until the response is written out; see done() and runDeferredCallback().
+          this.callbackDeferred = true;
+        } else {
+          // Once a response message is created and set to this.response, this Call can be
+          // treated as done. The Responder thread will do the n/w write of this message back to
+          // client.
+          runCallback();
         }
       }
     }
 
+    /**
+     * Runs the callback if {@link #setResponse(Object, CellScanner, Throwable, String)} held it
+     * back. Called once the response is written out, or once it never will be.
+     */
+    synchronized void runDeferredCallback() {
+      if (this.callbackDeferred) {
+        this.callbackDeferred = false;
+        runCallback();
+      }
+    }
+
+    private void runCallback() {
+      try {
+        this.callback.run();
+      } catch (Exception e) {
+        // Don't allow any exception here to kill this handler thread.
+        LOG.warn("Exception while running the Rpc Callback.", e);
+      }
+    }
+
     private BufferChain wrapWithSasl(BufferChain bc)
         throws IOException {
       if (!this.connection.useSasl) return bc;
@@ -1099,6 +1171,7 @@ public class RpcServer implements RpcServerInterface, ConfigurationObserver {
         if (error) {
           LOG.debug(getName() + call.toShortString() + ": output error -- closing");
           closeConnection(call.connection);
+          call.runDeferredCallback();
         }
       }
 
@@ -1913,6 +1986,10 @@ public class RpcServer implements RpcServerInterface, ConfigurationObserver {
     }
 
     protected synchronized void close() {
+      // Queued responses will never be written out, so whatever they hold on to can go
+      for (Call call : responseQueue) {
+        call.runDeferredCallback();
+      }
       disposeSasl();
       data = null;
       if (!channel.isOpen())
@@ -2025,6 +2102,11 @@ public class RpcServer implements RpcServerInterface, ConfigurationObserver {
       2 * HConstants.DEFAULT_HBASE_RPC_TIMEOUT);
     this.warnResponseTime = conf.getInt(WARN_RESPONSE_TIME, DEFAULT_WARN_RESPONSE_TIME);
     this.warnResponseSize = conf.getInt(WARN_RESPONSE_SIZE, DEFAULT_WARN_RESPONSE_SIZE);
+    this.zeroCopyCellBlock = conf.getBoolean(ZERO_COPY_CELL_BLOCK_KEY, false);
+    this.zeroCopyMinCellSize =
+        conf.getInt(ZERO_COPY_MIN_CELL_SIZE_KEY, DEFAULT_ZERO_COPY_MIN_CELL_SIZE);
+    this.zeroCopyInitialBufferSize =
+        conf.getInt("hbase.ipc.cellblock.building.initial.buffersize", 16 * 1024);
 
     // Start the listener here and let it bind to the port
     listener = new Listener(name);
@@ -51,6 +51,7 @@ import org.apache.commons.logging.LogFactory;
 import org.apache.hadoop.conf.Configuration;
 import org.apache.hadoop.fs.Path;
 import org.apache.hadoop.hbase.ClusterStatus;
+import org.apache.hadoop.hbase.CompoundConfiguration;
 import org.apache.hadoop.hbase.CoordinatedStateException;
 import org.apache.hadoop.hbase.CoordinatedStateManager;
 import org.apache.hadoop.hbase.DoNotRetryIOException;
@@ -137,6 +138,7 @@ import org.apache.hadoop.hbase.replication.regionserver.Replication;
 import org.apache.hadoop.hbase.security.User;
 import org.apache.hadoop.hbase.security.UserProvider;
 import org.apache.hadoop.hbase.util.Addressing;
+import org.apache.hadoop.hbase.util.BloomFilterUtil;
 import org.apache.hadoop.hbase.util.Bytes;
 import org.apache.hadoop.hbase.util.CompressionTest;
 import org.apache.hadoop.hbase.util.EncryptionTest;
@@ -1609,6 +1611,17 @@ public class HMaster extends HRegionServer implements MasterServices {
         warnOrThrowExceptionForFailure(logWarn, CONF_KEY, message, null);
       }
 
+      // check the row prefix Bloom filters have their prefix length or delimiter
+      try {
+        BloomFilterUtil.getBloomFilterParam(hcd.getBloomFilterType(),
+            new CompoundConfiguration().add(conf).addStringMap(htd.getConfiguration())
+                .addStringMap(hcd.getConfiguration()).addBytesMap(hcd.getValues()));
+      } catch (IllegalArgumentException e) {
+        String message = "Bloom filter for column family " + hcd.getNameAsString()
+            + " is misconfigured: " + e.getMessage();
+        warnOrThrowExceptionForFailure(logWarn, CONF_KEY, message, e);
+      }
+
       // TODO: should we check coprocessors and encryption ?
     }
   }
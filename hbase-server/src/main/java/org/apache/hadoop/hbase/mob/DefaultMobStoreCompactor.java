@@ -75,14 +75,16 @@ public class DefaultMobStoreCompactor extends DefaultCompactor {
    * Creates a writer for a new file in a temporary directory.
    * @param fd The file details.
    * @param shouldDropBehind Should the writer drop behind.
+   * @param cacheDataOnWrite Should the writer cache the data blocks it writes.
    * @return Writer for a new StoreFile in the tmp dir.
    * @throws IOException
    */
   @Override
-  protected Writer createTmpWriter(FileDetails fd, boolean shouldDropBehind) throws IOException {
+  protected Writer createTmpWriter(FileDetails fd, boolean shouldDropBehind,
+      boolean cacheDataOnWrite) throws IOException {
     // make this writer with tags always because of possible new cells with tags.
     StoreFile.Writer writer = store.createWriterInTmp(fd.maxKeyCount, this.compactionCompression,
-      true, true, true, shouldDropBehind);
+      true, true, true, shouldDropBehind, cacheDataOnWrite);
     return writer;
   }
 
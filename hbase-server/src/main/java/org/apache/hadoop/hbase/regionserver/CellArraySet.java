@@ -0,0 +1,527 @@
+/**
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.hadoop.hbase.regionserver;
+
+import java.util.AbstractSet;
+import java.util.BitSet;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.NavigableSet;
+import java.util.NoSuchElementException;
+import java.util.SortedSet;
+
+import org.apache.hadoop.hbase.Cell;
+import org.apache.hadoop.hbase.CellUtil;
+import org.apache.hadoop.hbase.classification.InterfaceAudience;
+import org.apache.hadoop.hbase.util.Bytes;
+import org.apache.hadoop.hbase.util.ClassSize;
+
+/**
+ * An immutable {@link NavigableSet} of {@link Cell}s backed by a single sorted array. Seeks are
+ * binary searches; iteration walks the array.
+ * <p>
+ * Used for memstore Cells that can no longer be written to: the snapshot of a
+ * {@link DefaultMemStore} and the immutable segments of a {@link CompactingMemStore}. Compared to
+ * a {@link CellSkipListSet} each entry costs one array slot instead of a skip list node plus its
+ * index nodes, and scans do not chase pointers.
+ * </p>
+ * <p>
+ * Nothing can be added. {@link #remove(Object)} is supported for memstore rollback only: removed
+ * Cells are masked rather than taken out of the array, so iterators and views over this set,
+ * including those created before the removal, stop returning them.
+ * </p>
+ */
+@InterfaceAudience.Private
+public class CellArraySet extends AbstractSet<Cell> implements NavigableSet<Cell> {
+
+  /** Heap overhead of one entry, the array slot referencing the Cell */
+  public static final long ENTRY_OVERHEAD = ClassSize.REFERENCE;
+
+  /** Heap overhead of the set itself, not counting its entries */
+  public static final long DEEP_OVERHEAD = ClassSize.align(ClassSize.OBJECT
+      + (3 * ClassSize.REFERENCE) + (2 * Bytes.SIZEOF_INT)) + ClassSize.ARRAY
+      + ClassSize.align(ClassSize.OBJECT + ClassSize.REFERENCE);
+
+  private final Comparator<? super Cell> comparator;
+  private final Cell[] cells;
+  // Bounds of this view over cells, minIdx inclusive, maxIdx exclusive
+  private final int minIdx;
+  private final int maxIdx;
+  // Shared by all views over the same array
+  private final Removals removals;
+
+  /**
+   * @param comparator comparator the Cells are sorted by
+   * @param cells Cells sorted by <code>comparator</code>, without duplicates. Not copied.
+   * @param count number of Cells in <code>cells</code>
+   */
+  public CellArraySet(Comparator<? super Cell> comparator, Cell[] cells, int count) {
+    this(comparator, cells, 0, count, new Removals());
+  }
+
+  /**
+   * Copies the passed set, whose iteration order must match <code>comparator</code>.
+   */
+  public CellArraySet(Comparator<? super Cell> comparator, Collection<Cell> sorted) {
+    this(comparator, toArray(sorted), 0, sorted.size(), new Removals());
+  }
+
+  private CellArraySet(Comparator<? super Cell> comparator, Cell[] cells, int minIdx, int maxIdx,
+      Removals removals) {
+    this.comparator = comparator;
+    this.cells = cells;
+    this.minIdx = minIdx;
+    this.maxIdx = Math.max(minIdx, maxIdx);
+    this.removals = removals;
+  }
+
+  private static Cell[] toArray(Collection<Cell> sorted) {
+    // Iterate rather than call toArray(); CellSkipListSet does not implement the latter
+    Cell[] array = new Cell[sorted.size()];
+    int i = 0;
+    for (Cell cell : sorted) {
+      array[i++] = cell;
+    }
+    return array;
+  }
+
+  /**
+   * @return heap size of one entry holding <code>cell</code>
+   */
+  public static long heapSizeOf(Cell cell) {
+    return ClassSize.align(ENTRY_OVERHEAD + CellUtil.estimatedHeapSizeOf(cell));
+  }
+
+  /**
+   * Binary search within the bounds of this view.
+   * @return index of the key if present, otherwise <code>-(insertion point) - 1</code>
+   */
+  private int find(Cell key) {
+    int low = this.minIdx;
+    int high = this.maxIdx - 1;
+    while (low <= high) {
+      int mid = (low + high) >>> 1;
+      int cmp = this.comparator.compare(this.cells[mid], key);
+      if (cmp < 0) {
+        low = mid + 1;
+      } else if (cmp > 0) {
+        high = mid - 1;
+      } else {
+        return mid;
+      }
+    }
+    return -(low + 1);
+  }
+
+  /**
+   * @return index of the lowest entry greater than (or equal to, if inclusive) the key,
+   *         ignoring removals; maxIdx if there is none
+   */
+  private int ceilingIndex(Cell key, boolean inclusive) {
+    int i = find(key);
+    if (i >= 0) {
+      return inclusive ? i : i + 1;
+    }
+    return -(i + 1);
+  }
+
+  /**
+   * @return index of the highest entry lower than (or equal to, if inclusive) the key, ignoring
+   *         removals; minIdx - 1 if there is none
+   */
+  private int floorIndex(Cell key, boolean inclusive) {
+    int i = find(key);
+    if (i >= 0) {
+      return inclusive ? i : i - 1;
+    }
+    return -(i + 1) - 1;
+  }
+
+  private int skipRemovedForward(int i) {
+    while (i < this.maxIdx && this.removals.isRemoved(i)) {
+      i++;
+    }
+    return i;
+  }
+
+  private int skipRemovedBackward(int i) {
+    while (i >= this.minIdx && this.removals.isRemoved(i)) {
+      i--;
+    }
+    return i;
+  }
+
+  private Cell forwardAt(int i) {
+    i = skipRemovedForward(i);
+    return i < this.maxIdx ? this.cells[i] : null;
+  }
+
+  private Cell backwardAt(int i) {
+    i = skipRemovedBackward(i);
+    return i >= this.minIdx ? this.cells[i] : null;
+  }
+
+  @Override
+  public Cell ceiling(Cell e) {
+    return forwardAt(ceilingIndex(e, true));
+  }
+
+  @Override
+  public Cell higher(Cell e) {
+    return forwardAt(ceilingIndex(e, false));
+  }
+
+  @Override
+  public Cell floor(Cell e) {
+    return backwardAt(floorIndex(e, true));
+  }
+
+  @Override
+  public Cell lower(Cell e) {
+    return backwardAt(floorIndex(e, false));
+  }
+
+  @Override
+  public Cell first() {
+    Cell first = forwardAt(this.minIdx);
+    if (first == null) {
+      throw new NoSuchElementException();
+    }
+    return first;
+  }
+
+  @Override
+  public Cell last() {
+    Cell last = backwardAt(this.maxIdx - 1);
+    if (last == null) {
+      throw new NoSuchElementException();
+    }
+    return last;
+  }
+
+  @Override
+  public NavigableSet<Cell> subSet(Cell fromElement, boolean fromInclusive, Cell toElement,
+      boolean toInclusive) {
+    return new CellArraySet(this.comparator, this.cells, ceilingIndex(fromElement, fromInclusive),
+        floorIndex(toElement, toInclusive) + 1, this.removals);
+  }
+
+  @Override
+  public NavigableSet<Cell> headSet(Cell toElement, boolean inclusive) {
+    return new CellArraySet(this.comparator, this.cells, this.minIdx,
+        floorIndex(toElement, inclusive) + 1, this.removals);
+  }
+
+  @Override
+  public NavigableSet<Cell> tailSet(Cell fromElement, boolean inclusive) {
+    return new CellArraySet(this.comparator, this.cells, ceilingIndex(fromElement, inclusive),
+        this.maxIdx, this.removals);
+  }
+
+  @Override
+  public SortedSet<Cell> subSet(Cell fromElement, Cell toElement) {
+    return subSet(fromElement, true, toElement, false);
+  }
+
+  @Override
+  public SortedSet<Cell> headSet(Cell toElement) {
+    return headSet(toElement, false);
+  }
+
+  @Override
+  public SortedSet<Cell> tailSet(Cell fromElement) {
+    return tailSet(fromElement, true);
+  }
+
+  @Override
+  public Comparator<? super Cell> comparator() {
+    return this.comparator;
+  }
+
+  @Override
+  public Iterator<Cell> iterator() {
+    return new Iterator<Cell>() {
+      private int next = skipRemovedForward(minIdx);
+
+      @Override
+      public boolean hasNext() {
+        return this.next < maxIdx;
+      }
+
+      @Override
+      public Cell next() {
+        if (!hasNext()) {
+          throw new NoSuchElementException();
+        }
+        Cell cell = cells[this.next];
+        this.next = skipRemovedForward(this.next + 1);
+        return cell;
+      }
+
+      @Override
+      public void remove() {
+        throw new UnsupportedOperationException("CellArraySet is immutable");
+      }
+    };
+  }
+
+  @Override
+  public Iterator<Cell> descendingIterator() {
+    return new Iterator<Cell>() {
+      private int next = skipRemovedBackward(maxIdx - 1);
+
+      @Override
+      public boolean hasNext() {
+        return this.next >= minIdx;
+      }
+
+      @Override
+      public Cell next() {
+        if (!hasNext()) {
+          throw new NoSuchElementException();
+        }
+        Cell cell = cells[this.next];
+        this.next = skipRemovedBackward(this.next - 1);
+        return cell;
+      }
+
+      @Override
+      public void remove() {
+        throw new UnsupportedOperationException("CellArraySet is immutable");
+      }
+    };
+  }
+
+  @Override
+  public NavigableSet<Cell> descendingSet() {
+    return new DescendingSet(this);
+  }
+
+  @Override
+  public int size() {
+    if (!this.removals.any()) {
+      return this.maxIdx - this.minIdx;
+    }
+    int size = 0;
+    for (int i = this.minIdx; i < this.maxIdx; i++) {
+      if (!this.removals.isRemoved(i)) {
+        size++;
+      }
+    }
+    return size;
+  }
+
+  @Override
+  public boolean isEmpty() {
+    return skipRemovedForward(this.minIdx) >= this.maxIdx;
+  }
+
+  @Override
+  public boolean contains(Object o) {
+    int i = find((Cell) o);
+    return i >= 0 && !this.removals.isRemoved(i);
+  }
+
+  /**
+   * Masks the passed Cell. Only meant for memstore rollback, which is rare.
+   */
+  @Override
+  public boolean remove(Object o) {
+    int i = find((Cell) o);
+    return i >= 0 && this.removals.remove(i);
+  }
+
+  @Override
+  public boolean add(Cell e) {
+    throw new UnsupportedOperationException("CellArraySet is immutable");
+  }
+
+  @Override
+  public boolean addAll(Collection<? extends Cell> c) {
+    throw new UnsupportedOperationException("CellArraySet is immutable");
+  }
+
+  @Override
+  public void clear() {
+    throw new UnsupportedOperationException("CellArraySet is immutable");
+  }
+
+  @Override
+  public Cell pollFirst() {
+    throw new UnsupportedOperationException("CellArraySet is immutable");
+  }
+
+  @Override
+  public Cell pollLast() {
+    throw new UnsupportedOperationException("CellArraySet is immutable");
+  }
+
+  /**
+   * Reverse order view over a set, mapping every call onto its mirror image in the ascending set.
+   */
+  private static class DescendingSet extends AbstractSet<Cell> implements NavigableSet<Cell> {
+    private final NavigableSet<Cell> ascending;
+
+    DescendingSet(NavigableSet<Cell> ascending) {
+      this.ascending = ascending;
+    }
+
+    @Override
+    public Cell ceiling(Cell e) {
+      return this.ascending.floor(e);
+    }
+
+    @Override
+    public Cell higher(Cell e) {
+      return this.ascending.lower(e);
+    }
+
+    @Override
+    public Cell floor(Cell e) {
+      return this.ascending.ceiling(e);
+    }
+
+    @Override
+    public Cell lower(Cell e) {
+      return this.ascending.higher(e);
+    }
+
+    @Override
+    public Cell first() {
+      return this.ascending.last();
+    }
+
+    @Override
+    public Cell last() {
+      return this.ascending.first();
+    }
+
+    @Override
+    public NavigableSet<Cell> subSet(Cell fromElement, boolean fromInclusive, Cell toElement,
+        boolean toInclusive) {
+      return this.ascending.subSet(toElement, toInclusive, fromElement, fromInclusive)
+          .descendingSet();
+    }
+
+    @Override
+    public NavigableSet<Cell> headSet(Cell toElement, boolean inclusive) {
+      return this.ascending.tailSet(toElement, inclusive).descendingSet();
+    }
+
+    @Override
+    public NavigableSet<Cell> tailSet(Cell fromElement, boolean inclusive) {
+      return this.ascending.headSet(fromElement, inclusive).descendingSet();
+    }
+
+    @Override
+    public SortedSet<Cell> subSet(Cell fromElement, Cell toElement) {
+      return subSet(fromElement, true, toElement, false);
+    }
+
+    @Override
+    public SortedSet<Cell> headSet(Cell toElement) {
+      return headSet(toElement, false);
+    }
+
+    @Override
+    public SortedSet<Cell> tailSet(Cell fromElement) {
+      return tailSet(fromElement, true);
+    }
+
+    @Override
+    public Comparator<? super Cell> comparator() {
+      return Collections.reverseOrder(this.ascending.comparator());
+    }
+
+    @Override
+    public Iterator<Cell> iterator() {
+      return this.ascending.descendingIterator();
+    }
+
+    @Override
+    public Iterator<Cell> descendingIterator() {
+      return this.ascending.iterator();
+    }
+
+    @Override
+    public NavigableSet<Cell> descendingSet() {
+      return this.ascending;
+    }
+
+    @Override
+    public int size() {
+      return this.ascending.size();
+    }
+
+    @Override
+    public boolean isEmpty() {
+      return this.ascending.isEmpty();
+    }
+
+    @Override
+    public boolean contains(Object o) {
+      return this.ascending.contains(o);
+    }
+
+    @Override
+    public boolean remove(Object o) {
+      return this.ascending.remove(o);
+    }
+
+    @Override
+    public Cell pollFirst() {
+      throw new UnsupportedOperationException("CellArraySet is immutable");
+    }
+
+    @Override
+    public Cell pollLast() {
+      throw new UnsupportedOperationException("CellArraySet is immutable");
+    }
+  }
+
+  /**
+   * Indexes of removed Cells. Copied on write so that readers never need to lock; removals only
+   * happen on memstore rollback.
+   */
+  private static class Removals {
+    private volatile BitSet removed;
+
+    boolean any() {
+      return this.removed != null;
+    }
+
+    boolean isRemoved(int i) {
+      BitSet current = this.removed;
+      return current != null && current.get(i);
+    }
+
+    synchronized boolean remove(int i) {
+      BitSet current = this.removed;
+      if (current != null && current.get(i)) {
+        return false;
+      }
+      BitSet updated = current == null ? new BitSet() : (BitSet) current.clone();
+      updated.set(i);
+      this.removed = updated;
+      return true;
+    }
+  }
+}
@@ -0,0 +1,537 @@
+/**
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.hadoop.hbase.regionserver;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.SortedSet;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.hbase.Cell;
+import org.apache.hadoop.hbase.CellComparator;
+import org.apache.hadoop.hbase.CellUtil;
+import org.apache.hadoop.hbase.HBaseConfiguration;
+import org.apache.hadoop.hbase.HColumnDescriptor;
+import org.apache.hadoop.hbase.HConstants;
+import org.apache.hadoop.hbase.HTableDescriptor;
+import org.apache.hadoop.hbase.KeyValue;
+import org.apache.hadoop.hbase.KeyValueUtil;
+import org.apache.hadoop.hbase.classification.InterfaceAudience;
+import org.apache.hadoop.hbase.util.Bytes;
+import org.apache.hadoop.hbase.util.ClassSize;
+import org.apache.hadoop.hbase.util.EnvironmentEdgeManager;
+import org.apache.hadoop.hbase.util.Threads;
+
+/**
+ * A MemStore that compacts itself in memory. Writes go to an active {@link Segment}. Once the
+ * active segment grows past a fraction of the region flush size it is sealed and pushed into a
+ * {@link CompactionPipeline}, and a background thread merges the pipeline into a single segment,
+ * dropping Put versions that no scanner can see any more. On update-heavy workloads this keeps
+ * superseded versions from ever reaching an HFile and delays disk flushes. With MSLAB the data
+ * of the dropped Cells keeps its chunks busy until the compacted segment is flushed, so only
+ * their index and object overhead is released; their data bytes stay accounted until then.
+ * <p>
+ * A flush takes the active segment and the whole pipeline as its snapshot, so every edit the WAL
+ * considers flushed really is on disk afterwards.
+ * </p>
+ * <p>
+ * Select it per column family by setting <code>hbase.regionserver.memstore.class</code> to this
+ * class, for example through {@link HColumnDescriptor#setConfiguration(String, String)}.
+ * </p>
+ * <p>
+ * As for {@link DefaultMemStore}, callers must hold the {@link HStore} locks. Additionally the
+ * swap of the active segment into the pipeline is guarded by a lock internal to this class, and
+ * the installation of a compacted segment holds the updates lock of the region, so the memstore
+ * never shrinks while a flush is being prepared.
+ * </p>
+ */
+@InterfaceAudience.Private
+public class CompactingMemStore implements MemStore {
+  private static final Log LOG = LogFactory.getLog(CompactingMemStore.class);
+
+  /** Fraction of the region flush size at which the active segment is pushed into the pipeline */
+  public static final String IN_MEMORY_FLUSH_THRESHOLD_FACTOR_KEY =
+      "hbase.memstore.inmemoryflush.threshold.factor";
+  private static final double IN_MEMORY_FLUSH_THRESHOLD_FACTOR_DEFAULT = 0.25;
+
+  /** Number of threads, per regionserver, running in-memory compactions */
+  public static final String IN_MEMORY_COMPACTION_POOL_SIZE_KEY =
+      "hbase.regionserver.inmemory.compaction.pool.size";
+  private static final int IN_MEMORY_COMPACTION_POOL_SIZE_DEFAULT = 10;
+
+  private static ThreadPoolExecutor pool;
+
+  private final Configuration conf;
+  final CellComparator comparator;
+  // Null when used outside of a region, e.g. in tests
+  private final HStore store;
+
+  // Writers take the read lock; pushing the active segment into the pipeline takes the write lock
+  private final ReentrantReadWriteLock activeLock = new ReentrantReadWriteLock();
+  volatile Segment active;
+  final CompactionPipeline pipeline = new CompactionPipeline();
+  private final MemStoreCompactor compactor;
+  private final long inMemoryFlushSize;
+  private final AtomicBoolean inMemoryFlushInProgress = new AtomicBoolean(false);
+
+  // Snapshot of memstore, newest segment first. Made for flusher.
+  volatile List<Segment> snapshot = Collections.emptyList();
+  private volatile long snapshotSize;
+  volatile long snapshotId;
+
+  // Used to track when to flush
+  volatile long timeOfOldestEdit = Long.MAX_VALUE;
+
+  /**
+   * Default constructor. Used for tests.
+   */
+  public CompactingMemStore() {
+    this(HBaseConfiguration.create(), CellComparator.COMPARATOR);
+  }
+
+  /**
+   * Constructor for a memstore outside of a region. No scanner is assumed to be open, and the
+   * family is assumed to keep {@link HColumnDescriptor#DEFAULT_VERSIONS} versions.
+   * @param c Comparator
+   */
+  public CompactingMemStore(final Configuration conf, final CellComparator c) {
+    this(conf, c, null);
+  }
+
+  /**
+   * @param c Comparator
+   * @param store the store this memstore belongs to
+   */
+  public CompactingMemStore(final Configuration conf, final CellComparator c,
+      final HStore store) {
+    this.conf = conf;
+    this.comparator = c;
+    this.store = store;
+    this.active = Segment.createMutableSegment(conf, c);
+    this.compactor = new MemStoreCompactor(c, store == null ? HColumnDescriptor.DEFAULT_VERSIONS
+        : store.getFamily().getMaxVersions());
+    long flushSize = store == null ? conf.getLong(HConstants.HREGION_MEMSTORE_FLUSH_SIZE,
+        HTableDescriptor.DEFAULT_MEMSTORE_FLUSH_SIZE) : store.getMemstoreFlushSize();
+    this.inMemoryFlushSize = (long) (flushSize
+        * conf.getDouble(IN_MEMORY_FLUSH_THRESHOLD_FACTOR_KEY,
+            IN_MEMORY_FLUSH_THRESHOLD_FACTOR_DEFAULT));
+  }
+
+  private static synchronized ThreadPoolExecutor getPool(Configuration conf) {
+    if (pool == null) {
+      pool = Threads.getBoundedCachedThreadPool(
+          conf.getInt(IN_MEMORY_COMPACTION_POOL_SIZE_KEY, IN_MEMORY_COMPACTION_POOL_SIZE_DEFAULT),
+          60, TimeUnit.SECONDS, Threads.newDaemonThreadFactory("MemStoreInMemoryCompaction"));
+    }
+    return pool;
+  }
+
+  /**
+   * Stops the in-memory compaction pool once the compactions already queued are done. A
+   * memstore scheduling an in-memory flush afterwards starts a new pool.
+   */
+  static synchronized void shutdownPool() {
+    if (pool != null) {
+      pool.shutdown();
+      pool = null;
+    }
+  }
+
+  /**
+   * Creates a snapshot of the current memstore: the active segment and every segment of the
+   * pipeline. Snapshot must be cleared by call to {@link #clearSnapshot(long)}.
+   */
+  @Override
+  public MemStoreSnapshot snapshot() {
+    // If snapshot currently has entries, then flusher failed or didn't call
+    // cleanup.  Log a warning.
+    if (!this.snapshot.isEmpty()) {
+      LOG.warn("Snapshot called again without clearing previous. " +
+          "Doing nothing. Another ongoing flush or did we fail last attempt?");
+    } else {
+      this.snapshotId = EnvironmentEdgeManager.currentTime();
+      this.activeLock.writeLock().lock();
+      try {
+        pushActiveToPipeline();
+        this.snapshot = this.pipeline.drain();
+      } finally {
+        this.activeLock.writeLock().unlock();
+      }
+      this.snapshotSize = getSize(this.snapshot);
+      this.timeOfOldestEdit = Long.MAX_VALUE;
+    }
+    int cellsCount = 0;
+    boolean tagsPresent = false;
+    TimeRangeTracker timeRangeTracker = new TimeRangeTracker();
+    for (Segment segment : this.snapshot) {
+      cellsCount += segment.getCellsCount();
+      tagsPresent |= segment.isTagsPresent();
+      TimeRangeTracker segmentTracker = segment.getTimeRangeTracker();
+      if (segment.getCellsCount() > 0) {
+        timeRangeTracker.includeTimestamp(segmentTracker.getMinimumTimestamp());
+        timeRangeTracker.includeTimestamp(segmentTracker.getMaximumTimestamp());
+      }
+    }
+    return new MemStoreSnapshot(this.snapshotId, cellsCount, this.snapshotSize, timeRangeTracker,
+        createSnapshotScanner(this.snapshot), tagsPresent);
+  }
+
+  private KeyValueScanner createSnapshotScanner(List<Segment> segments) {
+    List<KeyValueScanner> scanners = new ArrayList<KeyValueScanner>(segments.size());
+    for (Segment segment : segments) {
+      SegmentScanner scanner = segment.getScanner(Long.MAX_VALUE);
+      scanner.seek(KeyValue.LOWESTKEY);
+      scanners.add(scanner);
+    }
+    try {
+      return new KeyValueHeap(scanners, this.comparator);
+    } catch (IOException e) {
+      // Segment scanners never throw
+      throw new IllegalStateException(e);
+    }
+  }
+
+  /**
+   * The passed snapshot was successfully persisted; it can be let go.
+   * @param id Id of the snapshot to clean out.
+   * @throws UnexpectedStateException
+   * @see #snapshot()
+   */
+  @Override
+  public void clearSnapshot(long id) throws UnexpectedStateException {
+    if (this.snapshotId != id) {
+      throw new UnexpectedStateException("Current snapshot id is " + this.snapshotId + ",passed "
+          + id);
+    }
+    List<Segment> oldSnapshot = this.snapshot;
+    this.snapshot = Collections.emptyList();
+    this.snapshotSize = 0;
+    this.snapshotId = -1;
+    for (Segment segment : oldSnapshot) {
+      segment.close();
+    }
+  }
+
+  @Override
+  public MemStoreSnapshot flattenSnapshot(MemStoreSnapshot snapshot) {
+    List<Segment> flat = flatten(this.snapshot);
+    this.snapshot = flat;
+    // Scanners of the skip list segments hold on to their MSLABs; release them
+    snapshot.getScanner().close();
+    return new MemStoreSnapshot(snapshot.getId(), snapshot.getCellsCount(), snapshot.getSize(),
+        snapshot.getTimeRangeTracker(), createSnapshotScanner(flat), snapshot.isTagsPresent());
+  }
+
+  @Override
+  public long getFlushableSize() {
+    return this.snapshotSize > 0 ? this.snapshotSize : keySize();
+  }
+
+  @Override
+  public long getSnapshotSize() {
+    return this.snapshotSize;
+  }
+
+  /**
+   * Write an update
+   * @param cell
+   * @return approximate size of the passed Cell.
+   */
+  @Override
+  public long add(Cell cell) {
+    long s;
+    this.activeLock.readLock().lock();
+    try {
+      s = this.active.add(cell);
+      setOldestEditTimeToNow();
+    } finally {
+      this.activeLock.readLock().unlock();
+    }
+    checkActiveSize();
+    return s;
+  }
+
+  @Override
+  public long timeOfOldestEdit() {
+    return timeOfOldestEdit;
+  }
+
+  void setOldestEditTimeToNow() {
+    if (timeOfOldestEdit == Long.MAX_VALUE) {
+      timeOfOldestEdit = EnvironmentEdgeManager.currentTime();
+    }
+  }
+
+  /**
+   * Remove n key from the memstore. Only cells that have the same key and the
+   * same memstoreTS are removed. The Cell may have been pushed into the pipeline, or even
+   * been compacted, since it was added, so all segments are searched.
+   * @param cell
+   */
+  @Override
+  public void rollback(Cell cell) {
+    // If the key is in the snapshot, delete it. The flush of this snapshot to disk has not
+    // yet started because Store.flush() waits for all rwcc transactions to commit before
+    // starting the flush to disk.
+    for (Segment segment : this.snapshot) {
+      this.snapshotSize -= segment.rollback(cell);
+    }
+    this.activeLock.readLock().lock();
+    try {
+      for (Segment segment : this.pipeline.getSegments()) {
+        segment.rollback(cell);
+      }
+      this.active.rollback(cell);
+    } finally {
+      this.activeLock.readLock().unlock();
+    }
+  }
+
+  /**
+   * Write a delete
+   * @param deleteCell
+   * @return approximate size of the passed key and value.
+   */
+  @Override
+  public long delete(Cell deleteCell) {
+    return add(deleteCell);
+  }
+
+  /**
+   * Only used by tests.
+   * @see MemStore#updateColumnValue(byte[], byte[], byte[], long, long)
+   */
+  @Override
+  public long updateColumnValue(byte[] row, byte[] family, byte[] qualifier, long newValue,
+      long now) {
+    Cell firstCell = KeyValueUtil.createFirstOnRow(row, family, qualifier);
+    // Is there a Cell in the snapshot or the pipeline with the same TS? If so, upgrade the
+    // timestamp a bit.
+    List<Segment> older = new ArrayList<Segment>(this.snapshot);
+    older.addAll(this.pipeline.getSegments());
+    for (Segment segment : older) {
+      SortedSet<Cell> ss = segment.tailSet(firstCell);
+      if (!ss.isEmpty()) {
+        Cell c = ss.first();
+        if (CellUtil.matchingRow(c, firstCell) && CellUtil.matchingQualifier(c, firstCell)
+            && c.getTimestamp() == now) {
+          now += 1;
+        }
+      }
+    }
+    // the new ts MUST be at least 'now', and at least the most recent ts in the active segment
+    for (Cell cell : this.active.tailSet(firstCell)) {
+      if (!CellUtil.matchingColumn(cell, family, qualifier)
+          || !CellUtil.matchingRow(cell, firstCell)) {
+        break;
+      }
+      if (cell.getTypeByte() == KeyValue.Type.Put.getCode() && cell.getTimestamp() > now) {
+        now = cell.getTimestamp();
+      }
+    }
+    List<Cell> cells = new ArrayList<Cell>(1);
+    cells.add(new KeyValue(row, family, qualifier, now, Bytes.toBytes(newValue)));
+    return upsert(cells, 1L);
+  }
+
+  /**
+   * Update or insert the specified Cells. Older versions are only removed from the active
+   * segment; those already in the pipeline are left for the in-memory compaction.
+   * @see MemStore#upsert(Iterable, long)
+   */
+  @Override
+  public long upsert(Iterable<Cell> cells, long readpoint) {
+    long size = 0;
+    this.activeLock.readLock().lock();
+    try {
+      for (Cell cell : cells) {
+        size += this.active.upsert(cell, readpoint);
+      }
+      setOldestEditTimeToNow();
+    } finally {
+      this.activeLock.readLock().unlock();
+    }
+    checkActiveSize();
+    return size;
+  }
+
+  /**
+   * @return one scanner per segment: the active segment, the pipeline and the snapshot
+   */
+  @Override
+  public List<KeyValueScanner> getScanners(long readPt) {
+    List<KeyValueScanner> scanners = new ArrayList<KeyValueScanner>();
+    // Under the lock so that a segment being pushed into the pipeline is seen exactly once
+    this.activeLock.readLock().lock();
+    try {
+      scanners.add(this.active.getScanner(readPt));
+      for (Segment segment : this.pipeline.getSegments()) {
+        scanners.add(segment.getScanner(readPt));
+      }
+    } finally {
+      this.activeLock.readLock().unlock();
+    }
+    for (Segment segment : this.snapshot) {
+      scanners.add(segment.getScanner(readPt));
+    }
+    return scanners;
+  }
+
+  /**
+   * Schedules an in-memory flush if the active segment outgrew its threshold and none is
+   * running yet for this memstore.
+   */
+  private void checkActiveSize() {
+    if (this.active.getSize() <= this.inMemoryFlushSize
+        || !this.inMemoryFlushInProgress.compareAndSet(false, true)) {
+      return;
+    }
+    try {
+      getPool(this.conf).execute(new Runnable() {
+        @Override
+        public void run() {
+          try {
+            flushInMemory();
+          } catch (Throwable t) {
+            LOG.warn("In-memory flush failed for " + CompactingMemStore.this, t);
+          } finally {
+            inMemoryFlushInProgress.set(false);
+          }
+        }
+      });
+    } catch (RejectedExecutionException e) {
+      this.inMemoryFlushInProgress.set(false);
+      LOG.warn("Could not schedule in-memory flush", e);
+    }
+  }
+
+  /**
+   * Pushes the active segment into the pipeline and compacts the pipeline. Normally run on the
+   * in-memory compaction pool; tests call it directly.
+   */
+  void flushInMemory() throws IOException {
+    this.activeLock.writeLock().lock();
+    try {
+      pushActiveToPipeline();
+    } finally {
+      this.activeLock.writeLock().unlock();
+    }
+    List<Segment> segments = this.pipeline.getSegments();
+    if (segments.isEmpty()) {
+      return;
+    }
+    long smallestReadPoint = this.store == null ? Long.MAX_VALUE
+        : this.store.getSmallestReadPoint();
+    Segment compacted = this.compactor.compact(segments, smallestReadPoint);
+    long delta = getSize(segments) - compacted.getSize();
+    Lock regionLock = this.store == null ? null : this.store.getHRegion().getUpdatesReadLock();
+    if (regionLock != null) {
+      regionLock.lock();
+    }
+    try {
+      if (this.pipeline.swap(segments, compacted) && this.store != null) {
+        this.store.getHRegion().addAndGetGlobalMemstoreSize(-delta);
+      }
+    } finally {
+      if (regionLock != null) {
+        regionLock.unlock();
+      }
+    }
+    if (LOG.isTraceEnabled()) {
+      LOG.trace("In-memory compaction of " + segments.size() + " segments released " + delta
+          + " bytes; result " + compacted);
+    }
+  }
+
+  /**
+   * Caller must hold the write lock of {@link #activeLock}.
+   */
+  private void pushActiveToPipeline() {
+    if (this.active.isEmpty()) {
+      return;
+    }
+    this.pipeline.pushHead(this.active);
+    this.active = Segment.createMutableSegment(this.conf, this.comparator);
+  }
+
+  /**
+   * Turns the segments still backed by a skip list into flat ones; a snapshot is never written
+   * to, and a flat array is cheaper to hold and faster to scan while it is being flushed.
+   */
+  private static List<Segment> flatten(List<Segment> segments) {
+    List<Segment> flat = new ArrayList<Segment>(segments.size());
+    for (Segment segment : segments) {
+      flat.add(segment.flatten());
+    }
+    return flat;
+  }
+
+  private static long getSize(List<Segment> segments) {
+    long size = 0;
+    for (Segment segment : segments) {
+      size += segment.getSize();
+    }
+    return size;
+  }
+
+  public final static long FIXED_OVERHEAD = ClassSize.align(ClassSize.OBJECT
+      + (9 * ClassSize.REFERENCE) + (4 * Bytes.SIZEOF_LONG));
+
+  public final static long DEEP_OVERHEAD = ClassSize.align(FIXED_OVERHEAD
+      + ClassSize.REENTRANT_LOCK + ClassSize.ATOMIC_BOOLEAN
+      + ClassSize.align(ClassSize.OBJECT + ClassSize.REFERENCE)
+      + ClassSize.align(ClassSize.OBJECT + (5 * ClassSize.REFERENCE) + Bytes.SIZEOF_BOOLEAN)
+      + ClassSize.ATOMIC_LONG + ClassSize.TIMERANGE_TRACKER + ClassSize.CELL_SKIPLIST_SET
+      + ClassSize.CONCURRENT_SKIPLISTMAP);
+
+  private long keySize() {
+    return this.active.getSize() + this.pipeline.getSize();
+  }
+
+  /**
+   * Get the entire heap usage for this MemStore not including keys in the
+   * snapshot.
+   */
+  @Override
+  public long heapSize() {
+    return DEEP_OVERHEAD + keySize();
+  }
+
+  @Override
+  public long size() {
+    return heapSize();
+  }
+
+  @Override
+  public String toString() {
+    return "CompactingMemStore[" + (this.store == null ? "" : this.store.toString())
+        + ", active=" + this.active + ", pipeline=" + this.pipeline.getSegments().size()
+        + " segments]";
+  }
+}
@@ -0,0 +1,98 @@
+/**
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.hadoop.hbase.regionserver;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.apache.hadoop.hbase.classification.InterfaceAudience;
+
+/**
+ * The immutable segments of a {@link CompactingMemStore}, newest first.
+ * <p>
+ * Readers get a consistent, unmodifiable segment list from {@link #getSegments()}. Every change
+ * installs a new list, so an in-memory compaction that ran concurrently with a push or a snapshot
+ * can tell that its result is stale and has to be thrown away.
+ * </p>
+ */
+@InterfaceAudience.Private
+public class CompactionPipeline {
+  private static final Log LOG = LogFactory.getLog(CompactionPipeline.class);
+
+  // Copy on write; never modified in place
+  private volatile List<Segment> segments = Collections.emptyList();
+
+  /**
+   * Adds a sealed segment at the head of the pipeline.
+   */
+  synchronized void pushHead(Segment segment) {
+    List<Segment> newSegments = new ArrayList<Segment>(this.segments.size() + 1);
+    newSegments.add(segment);
+    newSegments.addAll(this.segments);
+    this.segments = Collections.unmodifiableList(newSegments);
+  }
+
+  /**
+   * Empties the pipeline.
+   * @return the segments that were in the pipeline, newest first
+   */
+  synchronized List<Segment> drain() {
+    List<Segment> drained = this.segments;
+    this.segments = Collections.emptyList();
+    return drained;
+  }
+
+  /**
+   * Replaces the passed segments with their compacted form, provided the pipeline still holds
+   * exactly the list <code>expected</code> that was returned by {@link #getSegments()}.
+   * @return true if the swap happened
+   */
+  synchronized boolean swap(List<Segment> expected, Segment compacted) {
+    if (this.segments != expected) {
+      if (LOG.isDebugEnabled()) {
+        LOG.debug("Pipeline changed during in-memory compaction, dropping result " + compacted);
+      }
+      return false;
+    }
+    this.segments = Collections.singletonList(compacted);
+    return true;
+  }
+
+  List<Segment> getSegments() {
+    return this.segments;
+  }
+
+  /**
+   * @return heap size of all the Cells in the pipeline
+   */
+  long getSize() {
+    long size = 0;
+    for (Segment segment : this.segments) {
+      size += segment.getSize();
+    }
+    return size;
+  }
+
+  boolean isEmpty() {
+    return this.segments.isEmpty();
+  }
+}
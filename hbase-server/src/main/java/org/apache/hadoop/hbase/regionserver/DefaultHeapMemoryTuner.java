@@ -29,6 +29,7 @@ import org.apache.commons.logging.LogFactory;
 import org.apache.hadoop.hbase.classification.InterfaceAudience;
 import org.apache.hadoop.conf.Configuration;
 import org.apache.hadoop.hbase.HConstants;
+import org.apache.hadoop.hbase.io.hfile.GhostCache;
 import org.apache.hadoop.hbase.io.util.HeapMemorySizeUtil;
 import org.apache.hadoop.hbase.regionserver.HeapMemoryManager.TunerContext;
 import org.apache.hadoop.hbase.regionserver.HeapMemoryManager.TunerResult;
@@ -66,6 +67,11 @@ import org.apache.hadoop.hbase.util.RollingStatCalculator;
  * When step size gets below a certain threshold then the following tuner operations are
  * considered to be neutral. The minimum step size can be specified  in config by
  * <i>hbase.regionserver.heapmemory.autotuner.step.min</i>.
+ * When the block cache runs a ghost cache, its estimates of the hit ratio at other sizes are
+ * used too: the block cache is considered sufficient when growing it by a step would not raise
+ * its hit ratio by at least <i>hbase.regionserver.heapmemory.autotuner.min.hit.ratio.gain</i>,
+ * it is not shrunk when that would lower its hit ratio by as much unless flushes are blocked,
+ * and it is grown when the statistics are inconclusive but the estimated gain is enough.
  */
 @InterfaceAudience.Private
 class DefaultHeapMemoryTuner implements HeapMemoryTuner {
@@ -77,6 +83,8 @@ class DefaultHeapMemoryTuner implements HeapMemoryTuner {
       "hbase.regionserver.heapmemory.autotuner.lookup.periods";
   public static final String NUM_PERIODS_TO_IGNORE =
       "hbase.regionserver.heapmemory.autotuner.ignored.periods";
+  public static final String MIN_HIT_RATIO_GAIN_KEY =
+      "hbase.regionserver.heapmemory.autotuner.min.hit.ratio.gain";
   // Maximum step size that the tuner can take
   public static final float DEFAULT_MAX_STEP_VALUE = 0.04f; // 4%
   // Minimum step size that the tuner can take
@@ -88,6 +96,11 @@ class DefaultHeapMemoryTuner implements HeapMemoryTuner {
   // If set to zero, all stats will be calculated from the start
   public static final int DEFAULT_LOOKUP_PERIODS = 60;
   public static final int DEFAULT_NUM_PERIODS_IGNORED = 60;
+  // Smallest change in the block cache hit ratio, as estimated by its ghost cache, that makes
+  // a step worth taking
+  public static final float DEFAULT_MIN_HIT_RATIO_GAIN = 0.01f; // 1%
+  // Fewest sampled lookups in a period for the ghost cache estimates to be trusted
+  private static final long MIN_HIT_RATIO_CURVE_LOOKUPS = 100;
   private static final TunerResult NO_OP_TUNER_RESULT = new TunerResult(false);
   // If deviation of tuner step size gets below this value then it means past few periods were
   // NEUTRAL(given that last tuner period was also NEUTRAL).
@@ -101,6 +114,7 @@ class DefaultHeapMemoryTuner implements HeapMemoryTuner {
   private float minimumStepSize = DEFAULT_MIN_STEP_VALUE;
   private int tunerLookupPeriods = DEFAULT_LOOKUP_PERIODS;
   private int numPeriodsToIgnore = DEFAULT_NUM_PERIODS_IGNORED;
+  private float minHitRatioGain = DEFAULT_MIN_HIT_RATIO_GAIN;
   // Counter to ignore few initial periods while cache is still warming up
   // Memory tuner will do no operation for the first "tunerLookupPeriods"
   private int ignoreInitialPeriods = 0;
@@ -225,12 +239,28 @@ class DefaultHeapMemoryTuner implements HeapMemoryTuner {
     float curMemstoreSize = context.getCurMemStoreSize();
     float curBlockCacheSize = context.getCurBlockCacheSize();
     StringBuilder tunerLog = new StringBuilder();
+    // Hit ratio the block cache would gain by growing a step and lose by shrinking one, if its
+    // ghost cache saw enough lookups over the period to tell.
+    GhostCache.Curve hitRatioCurve = context.getBlockCacheHitRatioCurve();
+    boolean hitRatioKnown = hitRatioCurve != null && curBlockCacheSize > 0
+        && hitRatioCurve.getLookupCount() >= MIN_HIT_RATIO_CURVE_LOOKUPS;
+    float hitRatioGain = 0;
+    float hitRatioLoss = 0;
+    if (hitRatioKnown) {
+      float relativeStep = step / curBlockCacheSize;
+      float hitRatio = hitRatioCurve.getHitRatio(1f);
+      hitRatioGain = hitRatioCurve.getHitRatio(1f + relativeStep) - hitRatio;
+      hitRatioLoss = hitRatio - hitRatioCurve.getHitRatio(1f - relativeStep);
+    }
     // We can consider memstore or block cache to be sufficient if
     // we are using only a minor fraction of what have been already provided to it.
     boolean earlyMemstoreSufficientCheck = totalFlushCount == 0
         || context.getCurMemStoreUsed() < curMemstoreSize * sufficientMemoryLevel;
     boolean earlyBlockCacheSufficientCheck = evictCount == 0 ||
-        context.getCurBlockCacheUsed() < curBlockCacheSize * sufficientMemoryLevel;
+        context.getCurBlockCacheUsed() < curBlockCacheSize * sufficientMemoryLevel ||
+        (hitRatioKnown && hitRatioGain < minHitRatioGain);
+    // Boolean indicator to show if we need to revert previous step or not.
+    boolean isReverting = false;
     if (earlyMemstoreSufficientCheck && earlyBlockCacheSufficientCheck) {
       // Both memstore and block cache memory seems to be sufficient. No operation required.
       newTuneDirection = StepDirection.NEUTRAL;
@@ -242,8 +272,6 @@ class DefaultHeapMemoryTuner implements HeapMemoryTuner {
       newTuneDirection = StepDirection.INCREASE_MEMSTORE_SIZE;
     } else {
       // Early checks for sufficient memory failed. Tuning memory based on past statistics.
-      // Boolean indicator to show if we need to revert previous step or not.
-      boolean isReverting = false;
       switch (prevTuneDirection) {
       // Here we are using number of evictions rather than cache misses because it is more
       // strong indicator for deficient cache size. Improving caching is what we
@@ -321,6 +349,12 @@ class DefaultHeapMemoryTuner implements HeapMemoryTuner {
           newTuneDirection = StepDirection.INCREASE_MEMSTORE_SIZE;
           tunerLog.append("Going to increase memstore size due to"
               + blockedFlushCount + " blocked flushes.");
+        } else if (hitRatioKnown && hitRatioGain >= minHitRatioGain
+            && (double)totalFlushCount <= rollingStatsForFlushes.getMean()) {
+          // the ghost cache tells what the misses alone can not: whether more cache would help
+          newTuneDirection = StepDirection.INCREASE_BLOCK_CACHE_SIZE;
+          tunerLog.append("Going to increase block cache size as its ghost cache estimates a "
+              + hitRatioGain + " higher hit ratio.");
         } else {
           // Default. Not enough facts to do tuning.
           tunerLog.append("Going to do nothing because we "
@@ -329,6 +363,19 @@ class DefaultHeapMemoryTuner implements HeapMemoryTuner {
         }
       }
     }
+    if (hitRatioKnown && !isReverting) {
+      if (newTuneDirection == StepDirection.INCREASE_BLOCK_CACHE_SIZE
+          && hitRatioGain < minHitRatioGain) {
+        tunerLog.append(" Not growing the block cache as its ghost cache estimates only a "
+            + hitRatioGain + " higher hit ratio.");
+        newTuneDirection = StepDirection.NEUTRAL;
+      } else if (newTuneDirection == StepDirection.INCREASE_MEMSTORE_SIZE
+          && hitRatioLoss >= minHitRatioGain && blockedFlushCount == 0) {
+        tunerLog.append(" Not shrinking the block cache as its ghost cache estimates a "
+            + hitRatioLoss + " lower hit ratio.");
+        newTuneDirection = StepDirection.NEUTRAL;
+      }
+    }
     if (LOG.isDebugEnabled()) {
       LOG.debug(tunerLog.toString());
     }
@@ -360,6 +407,7 @@ class DefaultHeapMemoryTuner implements HeapMemoryTuner {
     this.sufficientMemoryLevel = conf.getFloat(SUFFICIENT_MEMORY_LEVEL_KEY,
         DEFAULT_SUFFICIENT_MEMORY_LEVEL_VALUE);
     this.tunerLookupPeriods = conf.getInt(LOOKUP_PERIODS_KEY, DEFAULT_LOOKUP_PERIODS);
+    this.minHitRatioGain = conf.getFloat(MIN_HIT_RATIO_GAIN_KEY, DEFAULT_MIN_HIT_RATIO_GAIN);
     this.blockCachePercentMinRange = conf.getFloat(BLOCK_CACHE_SIZE_MIN_RANGE_KEY,
         conf.getFloat(HFILE_BLOCK_CACHE_SIZE_KEY, HConstants.HFILE_BLOCK_CACHE_SIZE_DEFAULT));
     this.blockCachePercentMaxRange = conf.getFloat(BLOCK_CACHE_SIZE_MAX_RANGE_KEY,
@@ -41,7 +41,6 @@ import org.apache.hadoop.hbase.KeyValueUtil;
 import org.apache.hadoop.hbase.classification.InterfaceAudience;
 import org.apache.hadoop.hbase.client.Scan;
 import org.apache.hadoop.hbase.io.TimeRange;
-import org.apache.hadoop.hbase.util.ByteRange;
 import org.apache.hadoop.hbase.util.Bytes;
 import org.apache.hadoop.hbase.util.ClassSize;
 import org.apache.hadoop.hbase.util.CollectionBackedScanner;
@@ -81,8 +80,9 @@ public class DefaultMemStore implements MemStore {
   // reference passed.
   volatile CellSkipListSet cellSet;
 
-  // Snapshot of memstore.  Made for flusher.
-  volatile CellSkipListSet snapshot;
+  // Snapshot of memstore.  Made for flusher.  Nothing writes to it, so the
+  // flusher turns it from a skip list into a CellArraySet; see flattenSnapshot().
+  volatile NavigableSet<Cell> snapshot;
 
   final CellComparator comparator;
 
@@ -117,7 +117,7 @@ public class DefaultMemStore implements MemStore {
     this.conf = conf;
     this.comparator = c;
     this.cellSet = new CellSkipListSet(c);
-    this.snapshot = new CellSkipListSet(c);
+    this.snapshot = new CellArraySet(c, new Cell[0], 0);
     timeRangeTracker = new TimeRangeTracker();
     snapshotTimeRangeTracker = new TimeRangeTracker();
     this.size = new AtomicLong(DEEP_OVERHEAD);
@@ -155,6 +155,8 @@ public class DefaultMemStore implements MemStore {
       this.snapshotId = EnvironmentEdgeManager.currentTime();
       this.snapshotSize = keySize();
       if (!this.cellSet.isEmpty()) {
+        // Hand the skip list over as is; copying it is left to flattenSnapshot()
+        // so that it does not run under the updates lock.
         this.snapshot = this.cellSet;
         this.cellSet = new CellSkipListSet(this.comparator);
         this.snapshotTimeRangeTracker = this.timeRangeTracker;
@@ -194,7 +196,7 @@ public class DefaultMemStore implements MemStore {
     // OK. Passed in snapshot is same as current snapshot. If not-empty,
     // create a new snapshot and let the old one go.
     if (!this.snapshot.isEmpty()) {
-      this.snapshot = new CellSkipListSet(this.comparator);
+      this.snapshot = new CellArraySet(this.comparator, new Cell[0], 0);
       this.snapshotTimeRangeTracker = new TimeRangeTracker();
     }
     this.snapshotSize = 0;
@@ -208,6 +210,24 @@ public class DefaultMemStore implements MemStore {
     }
   }
 
+  /**
+   * snapshotSize still accounts skip list entries; the heap saved by the flat
+   * copy is released when the flush completes.
+   */
+  @Override
+  public MemStoreSnapshot flattenSnapshot(MemStoreSnapshot snapshot) {
+    NavigableSet<Cell> current = this.snapshot;
+    if (current instanceof CellArraySet) {
+      return snapshot;
+    }
+    CellArraySet flat = new CellArraySet(this.comparator, current);
+    this.snapshot = flat;
+    snapshot.getScanner().close();
+    return new MemStoreSnapshot(snapshot.getId(), snapshot.getCellsCount(), snapshot.getSize(),
+        snapshot.getTimeRangeTracker(), new CollectionBackedScanner(flat, this.comparator),
+        snapshot.isTagsPresent());
+  }
+
   @Override
   public long getFlushableSize() {
     return this.snapshotSize > 0 ? this.snapshotSize : keySize();
@@ -276,19 +296,13 @@ public class DefaultMemStore implements MemStore {
     if (allocator == null) {
       return cell;
     }
-
-    int len = KeyValueUtil.length(cell);
-    ByteRange alloc = allocator.allocateBytes(len);
-    if (alloc == null) {
+    Cell newCell = allocator.copyCellInto(cell);
+    if (newCell == null) {
       // The allocation was too large, allocator decided
       // not to do anything with it.
       return cell;
     }
-    assert alloc.getBytes() != null;
-    KeyValueUtil.appendToByteArray(cell, alloc.getBytes(), alloc.getOffset());
-    KeyValue newKv = new KeyValue(alloc.getBytes(), alloc.getOffset(), len);
-    newKv.setSequenceId(cell.getSequenceId());
-    return newKv;
+    return newCell;
   }
 
   /**
@@ -306,14 +320,14 @@ public class DefaultMemStore implements MemStore {
     // not the snapshot. The flush of this snapshot to disk has not
     // yet started because Store.flush() waits for all rwcc transactions to
     // commit before starting the flush to disk.
-    Cell found = this.snapshot.get(cell);
-    if (found != null && found.getSequenceId() == cell.getSequenceId()) {
-      this.snapshot.remove(cell);
+    // The snapshot comparator includes the sequence id, so only the very same
+    // edit is removed.
+    if (this.snapshot.remove(cell)) {
       long sz = heapSizeChange(cell, true);
       this.snapshotSize -= sz;
     }
     // If the key is in the memstore, delete it. Update this.size.
-    found = this.cellSet.get(cell);
+    Cell found = this.cellSet.get(cell);
     if (found != null && found.getSequenceId() == cell.getSequenceId()) {
       removeFromCellSet(cell);
       long s = heapSizeChange(cell, true);
@@ -585,7 +599,7 @@ public class DefaultMemStore implements MemStore {
 
     // The cellSet and snapshot at the time of creating this scanner
     private CellSkipListSet cellSetAtCreation;
-    private CellSkipListSet snapshotAtCreation;
+    private NavigableSet<Cell> snapshotAtCreation;
 
     // the pre-calculated Cell to be returned by peek() or next()
     private Cell theNext;
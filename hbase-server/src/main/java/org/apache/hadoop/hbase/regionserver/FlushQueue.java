@@ -0,0 +1,245 @@
+/**
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.hadoop.hbase.regionserver;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.PriorityQueue;
+import java.util.Queue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+import org.apache.hadoop.hbase.HConstants;
+import org.apache.hadoop.hbase.classification.InterfaceAudience;
+import org.apache.hadoop.hbase.regionserver.MemStoreFlusher.FlushQueueEntry;
+import org.apache.hadoop.hbase.regionserver.MemStoreFlusher.FlushRegionEntry;
+import org.apache.hadoop.hbase.regionserver.MemStoreFlusher.WakeupFlushThread;
+import org.apache.hadoop.hbase.wal.WAL;
+
+/**
+ * The queue {@link MemStoreFlusher} takes its work from. Like a delay queue, an entry only comes
+ * out once its delay has passed, but among the entries that are due it does not go first come
+ * first served. Flushing the region with the oldest unflushed edits first lets the WAL files
+ * pinned by those edits be archived soonest, so that is the normal order; when the server is
+ * above its global memstore low water mark, the biggest memstore goes first instead, as that
+ * frees the most memory. Entries that have been due for longer than the aging threshold go
+ * before either so nothing is starved. Wakeup tokens always come out first.
+ * <p>
+ * Sizes and sequence ids move while entries wait, so due entries are ranked when polled rather
+ * than kept sorted; the queue holds at most one entry per region, which keeps the scan short.
+ */
+@InterfaceAudience.Private
+class FlushQueue implements Iterable<FlushQueueEntry> {
+  /** How long a due entry may wait before it goes ahead of the others, in milliseconds. */
+  static final String AGING_THRESHOLD_KEY = "hbase.regionserver.flush.queue.aging.threshold";
+  static final long DEFAULT_AGING_THRESHOLD = 10000;
+
+  private final long agingThreshold;
+
+  private final ReentrantLock lock = new ReentrantLock();
+  private final Condition available = lock.newCondition();
+
+  private final Queue<FlushQueueEntry> wakeups = new ArrayDeque<FlushQueueEntry>();
+  // Ordered by delay, which shrinks at the same pace for all of them
+  private final PriorityQueue<FlushQueueEntry> delayed = new PriorityQueue<FlushQueueEntry>();
+  private final List<FlushRegionEntry> due = new ArrayList<FlushRegionEntry>();
+
+  FlushQueue(long agingThreshold) {
+    this.agingThreshold = agingThreshold;
+  }
+
+  void add(FlushQueueEntry entry) {
+    lock.lock();
+    try {
+      if (entry instanceof WakeupFlushThread) {
+        wakeups.add(entry);
+      } else if (entry.getDelay(TimeUnit.MILLISECONDS) <= 0) {
+        due.add((FlushRegionEntry) entry);
+      } else {
+        delayed.add(entry);
+      }
+      available.signal();
+    } finally {
+      lock.unlock();
+    }
+  }
+
+  /**
+   * Takes the most urgent due entry, waiting up to <code>timeout</code> for one.
+   * @param aboveLowWaterMark whether the server is under global memstore pressure
+   * @return a wakeup token or a due region entry; null if none came due in time
+   */
+  FlushQueueEntry poll(long timeout, TimeUnit unit, boolean aboveLowWaterMark)
+      throws InterruptedException {
+    long nanos = unit.toNanos(timeout);
+    lock.lockInterruptibly();
+    try {
+      while (true) {
+        moveDueEntries();
+        FlushQueueEntry entry = wakeups.poll();
+        if (entry == null && !due.isEmpty()) {
+          entry = takeMostUrgent(aboveLowWaterMark);
+        }
+        if (entry != null) {
+          if (!wakeups.isEmpty() || !due.isEmpty()) {
+            // Let another handler have a go at the rest
+            available.signal();
+          }
+          return entry;
+        }
+        if (nanos <= 0) {
+          return null;
+        }
+        long wait = nanos;
+        FlushQueueEntry first = delayed.peek();
+        if (first != null) {
+          wait = Math.min(wait, Math.max(1, first.getDelay(TimeUnit.NANOSECONDS)));
+        }
+        nanos -= wait - available.awaitNanos(wait);
+      }
+    } finally {
+      lock.unlock();
+    }
+  }
+
+  boolean remove(FlushQueueEntry entry) {
+    lock.lock();
+    try {
+      return removeInstance(wakeups, entry) || removeInstance(due, entry)
+          || removeInstance(delayed, entry);
+    } finally {
+      lock.unlock();
+    }
+  }
+
+  int size() {
+    lock.lock();
+    try {
+      return wakeups.size() + due.size() + delayed.size();
+    } finally {
+      lock.unlock();
+    }
+  }
+
+  void clear() {
+    lock.lock();
+    try {
+      wakeups.clear();
+      due.clear();
+      delayed.clear();
+    } finally {
+      lock.unlock();
+    }
+  }
+
+  /**
+   * @return an iterator over a snapshot of the queue, in no particular order
+   */
+  @Override
+  public Iterator<FlushQueueEntry> iterator() {
+    lock.lock();
+    try {
+      List<FlushQueueEntry> entries = new ArrayList<FlushQueueEntry>(
+          wakeups.size() + due.size() + delayed.size());
+      entries.addAll(wakeups);
+      entries.addAll(due);
+      entries.addAll(delayed);
+      return entries.iterator();
+    } finally {
+      lock.unlock();
+    }
+  }
+
+  private void moveDueEntries() {
+    FlushQueueEntry first = delayed.peek();
+    while (first != null && first.getDelay(TimeUnit.MILLISECONDS) <= 0) {
+      due.add((FlushRegionEntry) delayed.poll());
+      first = delayed.peek();
+    }
+  }
+
+  private FlushRegionEntry takeMostUrgent(boolean aboveLowWaterMark) {
+    int best = 0;
+    for (int i = 1; i < due.size(); i++) {
+      if (isMoreUrgent(due.get(i), due.get(best), aboveLowWaterMark)) {
+        best = i;
+      }
+    }
+    // Order among the rest does not matter, so fill the hole with the last one
+    FlushRegionEntry entry = due.get(best);
+    FlushRegionEntry last = due.remove(due.size() - 1);
+    if (last != entry) {
+      due.set(best, last);
+    }
+    return entry;
+  }
+
+  private boolean isMoreUrgent(FlushRegionEntry a, FlushRegionEntry b,
+      boolean aboveLowWaterMark) {
+    // getDelay() of a due entry is minus how long it has been due
+    long waitedA = -a.getDelay(TimeUnit.MILLISECONDS);
+    long waitedB = -b.getDelay(TimeUnit.MILLISECONDS);
+    boolean agedA = waitedA >= agingThreshold;
+    boolean agedB = waitedB >= agingThreshold;
+    if (agedA || agedB) {
+      return agedA && (!agedB || waitedA > waitedB);
+    }
+    Region regionA = a.getRegion();
+    Region regionB = b.getRegion();
+    // The region with the oldest unflushed edit holds back the oldest WAL files
+    int bySeqId = Long.compare(getEarliestUnflushedSeqId(regionB),
+        getEarliestUnflushedSeqId(regionA));
+    int bySize = Long.compare(regionA.getMemstoreSize(), regionB.getMemstoreSize());
+    int cmp;
+    if (aboveLowWaterMark) {
+      cmp = bySize != 0 ? bySize : bySeqId;
+    } else {
+      cmp = bySeqId != 0 ? bySeqId : bySize;
+    }
+    return cmp != 0 ? cmp > 0 : waitedA > waitedB;
+  }
+
+  /**
+   * @return the sequence id of the oldest edit of the region its WAL still needs, or
+   *         Long.MAX_VALUE if there is none
+   */
+  @SuppressWarnings("deprecation")
+  private static long getEarliestUnflushedSeqId(Region region) {
+    WAL wal = region instanceof HRegion ? ((HRegion) region).getWAL() : null;
+    if (wal == null) {
+      return Long.MAX_VALUE;
+    }
+    long seqId = wal.getEarliestMemstoreSeqNum(region.getRegionInfo().getEncodedNameAsBytes());
+    return seqId == HConstants.NO_SEQNUM ? Long.MAX_VALUE : seqId;
+  }
+
+  private static boolean removeInstance(Iterable<? extends FlushQueueEntry> entries,
+      FlushQueueEntry entry) {
+    for (Iterator<? extends FlushQueueEntry> it = entries.iterator(); it.hasNext();) {
+      if (it.next() == entry) {
+        it.remove();
+        return true;
+      }
+    }
+    return false;
+  }
+}
@@ -258,13 +258,15 @@ public class HRegion implements HeapSize, PropagatingConfigurationObserver, Regi
   // Members
   //////////////////////////////////////////////////////////////////////////////
 
-  // map from a locked row to the context for that lock including:
-  // - CountDownLatch for threads waiting on that row
-  // - the thread that owns the lock (allow reentrancy)
-  // - reference count of (reentrant) locks held by the thread
-  // - the row itself
-  private final ConcurrentHashMap<HashedBytes, RowLockContext> lockedRows =
-      new ConcurrentHashMap<HashedBytes, RowLockContext>();
+  // Number of stripes of the row lock table; a power of two
+  private static final int ROW_LOCK_STRIPES = 32;
+
+  // The row lock table: maps from a locked row to the context for that lock, which holds the
+  // row's read/write lock and counts the threads holding or waiting for it. Rows are spread
+  // over stripes by hash, each a plain map guarded by its own monitor, so looking a context up
+  // and counting a thread in, or counting it out and dropping the context, is one short
+  // critical section on one stripe, without retries.
+  private final HashMap<HashedBytes, RowLockContext>[] rowLockStripes = newRowLockStripes();
 
   protected final Map<byte[], Store> stores = new ConcurrentSkipListMap<byte[], Store>(
       Bytes.BYTES_RAWCOMPARATOR);
@@ -300,6 +302,9 @@ public class HRegion implements HeapSize, PropagatingConfigurationObserver, Regi
   private final Configuration baseConf;
   private final int rowLockWaitDuration;
   private CompactedHFilesDischarger compactedFileDischarger;
+  // Writes out the stores of a flush in parallel; null if they are flushed one after another.
+  // Its threads go away while the region does not flush.
+  private final ThreadPoolExecutor storeFlusherThreadPool;
   static final int DEFAULT_ROWLOCK_WAIT_DURATION = 30000;
 
   // The internal wait duration to acquire a lock before read/update
@@ -674,6 +679,9 @@ public class HRegion implements HeapSize, PropagatingConfigurationObserver, Regi
                     DEFAULT_ROWLOCK_WAIT_DURATION);
 
     this.maxWaitForSeqId = conf.getInt(MAX_WAIT_FOR_SEQ_ID_KEY, DEFAULT_MAX_WAIT_FOR_SEQ_ID);
+    int flushThreads = conf.getInt(FLUSH_THREADS_MAX, DEFAULT_FLUSH_THREADS_MAX);
+    this.storeFlusherThreadPool = flushThreads <= 1 ? null : getOpenAndCloseThreadPool(
+      flushThreads, "StoreFlusher-" + fs.getRegionInfo().getShortNameToLog());
     this.isLoadingCfsOnDemandDefault = conf.getBoolean(LOAD_CFS_ON_DEMAND_CONFIG_KEY, true);
     this.htableDescriptor = htd;
     this.rsServices = rsServices;
@@ -1127,6 +1135,15 @@ public class HRegion implements HeapSize, PropagatingConfigurationObserver, Regi
     return memstoreSize.get();
   }
 
+  /**
+   * @return the read half of the updates lock. Held by memstore work done off the write path,
+   * such as an in-memory compaction, so that it never changes memstore sizes while a flush is
+   * being prepared under the write half.
+   */
+  Lock getUpdatesReadLock() {
+    return this.updatesLock.readLock();
+  }
+
   @Override
   public long getNumMutationsWithoutWAL() {
     return numMutationsWithoutWAL.get();
@@ -1332,6 +1349,13 @@ public class HRegion implements HeapSize, PropagatingConfigurationObserver, Regi
    */
   public static final long MAX_FLUSH_PER_CHANGES = 1000000000; // 1G
 
+  /**
+   * Conf key for the most stores of one region written out at the same time by a flush. May be
+   * set per table. The default of 1 flushes the stores one after another.
+   */
+  public static final String FLUSH_THREADS_MAX = "hbase.hregion.flush.threads.max";
+  public static final int DEFAULT_FLUSH_THREADS_MAX = 1;
+
   /**
    * Close down this HRegion.  Flush the cache unless abort parameter is true,
    * Shut down each HStore, don't service any more calls.
@@ -1526,6 +1550,7 @@ public class HRegion implements HeapSize, PropagatingConfigurationObserver, Regi
       }
       // stop the Compacted hfile discharger
       if (this.compactedFileDischarger != null) this.compactedFileDischarger.cancel(true);
+      if (this.storeFlusherThreadPool != null) this.storeFlusherThreadPool.shutdownNow();
 
       status.markComplete("Closed");
       LOG.info("Closed " + this);
@@ -2405,6 +2430,59 @@ public class HRegion implements HeapSize, PropagatingConfigurationObserver, Regi
     return false;
   }
 
+  /**
+   * Writes out, or with <code>commit</code> set commits, the snapshot of each of the passed
+   * stores. Stores are handled in parallel on up to {@link #FLUSH_THREADS_MAX} threads.
+   * @return for each store, in iteration order, whether it asks for a compaction; always
+   *         false when not committing
+   */
+  private boolean[] runStoreFlushes(final Collection<StoreFlushContext> flushes,
+      final MonitoredTask status, final boolean commit) throws IOException {
+    boolean[] needsCompaction = new boolean[flushes.size()];
+    if (storeFlusherThreadPool == null || flushes.size() <= 1) {
+      int i = 0;
+      for (StoreFlushContext flush : flushes) {
+        needsCompaction[i++] = runStoreFlush(flush, status, commit);
+      }
+      return needsCompaction;
+    }
+    try {
+      List<Future<Boolean>> futures = new ArrayList<Future<Boolean>>(flushes.size());
+      for (final StoreFlushContext flush : flushes) {
+        futures.add(storeFlusherThreadPool.submit(new Callable<Boolean>() {
+          @Override
+          public Boolean call() throws IOException {
+            return runStoreFlush(flush, status, commit);
+          }
+        }));
+      }
+      // Wait for every store, even once one has failed, so none is still being written when
+      // the caller cleans up after the failure
+      Throwable failure = null;
+      for (int i = 0; i < futures.size(); i++) {
+        try {
+          needsCompaction[i] = futures.get(i).get();
+        } catch (ExecutionException e) {
+          if (failure == null) failure = e.getCause();
+        }
+      }
+      if (failure instanceof IOException) throw (IOException) failure;
+      if (failure != null) throw new IOException(failure);
+      return needsCompaction;
+    } catch (InterruptedException e) {
+      throw (InterruptedIOException) new InterruptedIOException().initCause(e);
+    }
+  }
+
+  private static boolean runStoreFlush(final StoreFlushContext flush,
+      final MonitoredTask status, final boolean commit) throws IOException {
+    if (commit) {
+      return flush.commit(status);
+    }
+    flush.flushCache(status);
+    return false;
+  }
+
   @edu.umd.cs.findbugs.annotations.SuppressWarnings(value="NN_NAKED_NOTIFY",
       justification="Intentional; notify is about completed flush")
   protected FlushResult internalFlushCacheAndCommit(
@@ -2435,17 +2513,18 @@ public class HRegion implements HeapSize, PropagatingConfigurationObserver, Regi
       // just-made new flush store file. The new flushed file is still in the
       // tmp directory.
 
-      for (StoreFlushContext flush : storeFlushCtxs.values()) {
-        flush.flushCache(status);
-      }
+      // All stores are written out before any is committed, so a failure leaves none of
+      // them switched over to the new files.
+      runStoreFlushes(storeFlushCtxs.values(), status, false);
 
       // Switch snapshot (in memstore) -> new hfile (thus causing
       // all the store scanners to reset/reseek).
+      boolean[] needsCompaction = runStoreFlushes(storeFlushCtxs.values(), status, true);
       Iterator<Store> it = storesToFlush.iterator();
+      int storeIndex = 0;
       // stores.values() and storeFlushCtxs have same order
       for (StoreFlushContext flush : storeFlushCtxs.values()) {
-        boolean needsCompaction = flush.commit(status);
-        if (needsCompaction) {
+        if (needsCompaction[storeIndex++]) {
           compactionRequested = true;
         }
         byte[] storeName = it.next().getFamily().getName();
@@ -3056,10 +3135,13 @@ public class HRegion implements HeapSize, PropagatingConfigurationObserver, Regi
         }
 
         // If we haven't got any rows in our batch, we should block to
-        // get the next one.
+        // get the next one. Otherwise only take locks that are free right now; rather than
+        // sit on the locks we hold while waiting for another, go with what we have and leave
+        // the contended row to the next mini batch.
         RowLock rowLock = null;
         try {
-          rowLock = getRowLock(mutation.getRow(), true);
+          // The row was checked above
+          rowLock = getRowLockInternal(mutation.getRow(), true, numReadyToWrite == 0);
         } catch (IOException ioe) {
           LOG.warn("Failed getting lock in batch put, row="
             + Bytes.toStringBinary(mutation.getRow()), ioe);
@@ -5180,7 +5262,20 @@ public class HRegion implements HeapSize, PropagatingConfigurationObserver, Regi
   public RowLock getRowLock(byte[] row, boolean readLock) throws IOException {
     // Make sure the row is inside of this region before getting the lock for it.
     checkRow(row, "row lock");
-    // create an object to use a a key in the row lock map
+    return getRowLockInternal(row, readLock, true);
+  }
+
+  /**
+   * Get a row lock for the specified row, which must already have been checked to be in this
+   * region.
+   * @param waitForLock if true, wait up to <code>hbase.rowlock.wait.duration</code> for the
+   *                    lock; if false, only take it if it is free right away
+   * @return the acquired lock, or null if <code>waitForLock</code> is false and the lock was
+   *         not free
+   */
+  private RowLock getRowLockInternal(byte[] row, boolean readLock, boolean waitForLock)
+      throws IOException {
+    // create an object to use a a key in the row lock table
     HashedBytes rowKey = new HashedBytes(row);
 
     RowLockContext rowLockContext = null;
@@ -5194,30 +5289,18 @@ public class HRegion implements HeapSize, PropagatingConfigurationObserver, Regi
     }
 
     try {
-      // Keep trying until we have a lock or error out.
-      // TODO: do we need to add a time component here?
-      while (result == null) {
-
-        // Try adding a RowLockContext to the lockedRows.
-        // If we can add it then there's no other transactions currently running.
-        rowLockContext = new RowLockContext(rowKey);
-        RowLockContext existingContext = lockedRows.putIfAbsent(rowKey, rowLockContext);
-
-        // if there was a running transaction then there's already a context.
-        if (existingContext != null) {
-          rowLockContext = existingContext;
-        }
-
-        // Now try an get the lock.
-        //
-        // This can fail as
-        if (readLock) {
-          result = rowLockContext.newReadLock();
-        } else {
-          result = rowLockContext.newWriteLock();
+      rowLockContext = joinRowLockContext(rowKey);
+      result = readLock ? rowLockContext.newReadLock() : rowLockContext.newWriteLock();
+      if (!waitForLock) {
+        // Timed, unlike tryLock(), so that the lock stays fair to the threads waiting for it
+        if (!result.getLock().tryLock(0, TimeUnit.MILLISECONDS)) {
+          if (traceScope != null) {
+            traceScope.getSpan().addTimelineAnnotation("Row lock not free");
+          }
+          rowLockContext.cleanUp();
+          return null;
         }
-      }
-      if (!result.getLock().tryLock(this.rowLockWaitDuration, TimeUnit.MILLISECONDS)) {
+      } else if (!result.getLock().tryLock(this.rowLockWaitDuration, TimeUnit.MILLISECONDS)) {
         if (traceScope != null) {
           traceScope.getSpan().addTimelineAnnotation("Failed to get row lock");
         }
@@ -5243,6 +5326,37 @@ public class HRegion implements HeapSize, PropagatingConfigurationObserver, Regi
     }
   }
 
+  @SuppressWarnings("unchecked")
+  private static HashMap<HashedBytes, RowLockContext>[] newRowLockStripes() {
+    HashMap<HashedBytes, RowLockContext>[] stripes = new HashMap[ROW_LOCK_STRIPES];
+    for (int i = 0; i < stripes.length; i++) {
+      stripes[i] = new HashMap<HashedBytes, RowLockContext>();
+    }
+    return stripes;
+  }
+
+  private HashMap<HashedBytes, RowLockContext> getRowLockStripe(HashedBytes row) {
+    int h = row.hashCode();
+    return rowLockStripes[(h ^ (h >>> 16)) & (ROW_LOCK_STRIPES - 1)];
+  }
+
+  /**
+   * Counts the calling thread in on the context of the row, creating the context if the row
+   * has none. The thread must call {@link RowLockContext#cleanUp()} once done with it.
+   */
+  private RowLockContext joinRowLockContext(HashedBytes row) {
+    HashMap<HashedBytes, RowLockContext> stripe = getRowLockStripe(row);
+    synchronized (stripe) {
+      RowLockContext context = stripe.get(row);
+      if (context == null) {
+        context = new RowLockContext(row, stripe);
+        stripe.put(row, context);
+      }
+      context.count++;
+      return context;
+    }
+  }
+
   @Override
   public void releaseRowLocks(List<RowLock> rowLocks) {
     if (rowLocks != null) {
@@ -5256,44 +5370,45 @@ public class HRegion implements HeapSize, PropagatingConfigurationObserver, Regi
   @VisibleForTesting
   class RowLockContext {
     private final HashedBytes row;
+    // The stripe of the row lock table holding this context
+    private final HashMap<HashedBytes, RowLockContext> stripe;
     final ReadWriteLock readWriteLock = new ReentrantReadWriteLock(true);
-    final AtomicBoolean usable = new AtomicBoolean(true);
-    final AtomicInteger count = new AtomicInteger(0);
-    final Object lock = new Object();
-
-    RowLockContext(HashedBytes row) {
+    // Threads holding or waiting for the lock; guarded by the stripe
+    private int count = 0;
+    // A RowLockImpl holds nothing but its context and lock, so all holders of the context
+    // share these two rather than each getting their own
+    private volatile RowLockImpl readLock;
+    private volatile RowLockImpl writeLock;
+
+    RowLockContext(HashedBytes row, HashMap<HashedBytes, RowLockContext> stripe) {
       this.row = row;
+      this.stripe = stripe;
     }
 
     RowLockImpl newWriteLock() {
-      Lock l = readWriteLock.writeLock();
-      return getRowLock(l);
+      RowLockImpl l = writeLock;
+      if (l == null) {
+        l = writeLock = new RowLockImpl(this, readWriteLock.writeLock());
+      }
+      return l;
     }
     RowLockImpl newReadLock() {
-      Lock l = readWriteLock.readLock();
-      return getRowLock(l);
-    }
-
-    private RowLockImpl getRowLock(Lock l) {
-      count.incrementAndGet();
-      synchronized (lock) {
-        if (usable.get()) {
-          return new RowLockImpl(this, l);
-        } else {
-          return null;
-        }
+      RowLockImpl l = readLock;
+      if (l == null) {
+        l = readLock = new RowLockImpl(this, readWriteLock.readLock());
       }
+      return l;
     }
 
+    /**
+     * Counts the calling thread out, and drops the context from the table once no thread
+     * holds or waits for its lock. Threads joining later get a new context.
+     */
     void cleanUp() {
-      long c = count.decrementAndGet();
-      if (c <= 0) {
-        synchronized (lock) {
-          if (count.get() <= 0 ){
-            usable.set(false);
-            RowLockContext removed = lockedRows.remove(row);
-            assert removed == this: "we should never remove a different context";
-          }
+      synchronized (stripe) {
+        if (--count <= 0) {
+          RowLockContext removed = stripe.remove(row);
+          assert removed == this: "we should never remove a different context";
         }
       }
     }
@@ -7588,7 +7703,7 @@ public class HRegion implements HeapSize, PropagatingConfigurationObserver, Regi
   public static final long FIXED_OVERHEAD = ClassSize.align(
       ClassSize.OBJECT +
       ClassSize.ARRAY +
-      44 * ClassSize.REFERENCE + 3 * Bytes.SIZEOF_INT +
+      45 * ClassSize.REFERENCE + 3 * Bytes.SIZEOF_INT +
       (14 * Bytes.SIZEOF_LONG) +
       5 * Bytes.SIZEOF_BOOLEAN);
 
@@ -7606,7 +7721,9 @@ public class HRegion implements HeapSize, PropagatingConfigurationObserver, Regi
       ClassSize.OBJECT + // closeLock
       (2 * ClassSize.ATOMIC_BOOLEAN) + // closed, closing
       (3 * ClassSize.ATOMIC_LONG) + // memStoreSize, numPutsWithoutWAL, dataInMemoryWithoutWAL
-      (2 * ClassSize.CONCURRENT_HASHMAP) +  // lockedRows, scannerReadPoints
+      ClassSize.CONCURRENT_HASHMAP +  // scannerReadPoints
+      ClassSize.align(ClassSize.ARRAY + ROW_LOCK_STRIPES * ClassSize.REFERENCE) +
+      ROW_LOCK_STRIPES * ClassSize.estimateBase(HashMap.class, false) + // rowLockStripes
       WriteState.HEAP_SIZE + // writestate
       ClassSize.CONCURRENT_SKIPLISTMAP + ClassSize.CONCURRENT_SKIPLISTMAP_ENTRY + // stores
       (2 * ClassSize.REENTRANT_LOCK) + // lock, updatesLock
@@ -96,6 +96,7 @@ import org.apache.hadoop.hbase.fs.HFileSystem;
 import org.apache.hadoop.hbase.http.InfoServer;
 import org.apache.hadoop.hbase.io.hfile.CacheConfig;
 import org.apache.hadoop.hbase.io.hfile.HFile;
+import org.apache.hadoop.hbase.io.hfile.PrefetchExecutor;
 import org.apache.hadoop.hbase.ipc.RpcClient;
 import org.apache.hadoop.hbase.ipc.RpcClientFactory;
 import org.apache.hadoop.hbase.ipc.RpcControllerFactory;
@@ -293,6 +294,9 @@ public class HRegionServer extends HasThread implements
   // Instance of the hbase executor service.
   protected ExecutorService service;
 
+  // Seeks store files in parallel, null if disabled
+  private ParallelSeekExecutor parallelSeekExecutor;
+
   // If false, the file system has become unavailable
   protected volatile boolean fsOk;
   protected HFileSystem fs;
@@ -567,9 +571,17 @@ public class HRegionServer extends HasThread implements
     // login the server principal (if using secure Hadoop)
     login(userProvider, hostName);
 
-    regionServerAccounting = new RegionServerAccounting();
+    regionServerAccounting = new RegionServerAccounting(conf);
     cacheConfig = new CacheConfig(conf);
     mobCacheConfig = new MobCacheConfig(conf);
+    // Warm up the regions being read first
+    PrefetchExecutor.setRegionPriority(new PrefetchExecutor.RegionPriority() {
+      @Override
+      public long getPriority(String encodedRegionName) {
+        Region region = getFromOnlineRegions(encodedRegionName);
+        return region == null ? 0 : region.getReadRequestsCount();
+      }
+    });
     uncaughtExceptionHandler = new UncaughtExceptionHandler() {
       @Override
       public void uncaughtException(Thread t, Throwable e) {
@@ -1022,6 +1034,9 @@ public class HRegionServer extends HasThread implements
     // Send cache a shutdown.
     if (cacheConfig != null && cacheConfig.isBlockCacheEnabled()) {
       cacheConfig.getBlockCache().shutdown();
+      if (cacheConfig.getBlockCacheTracer() != null) {
+        cacheConfig.getBlockCacheTracer().close();
+      }
     }
     mobCacheConfig.getMobFileCache().shutdown();
 
@@ -1732,9 +1747,9 @@ public class HRegionServer extends HasThread implements
       conf.getInt("hbase.regionserver.executor.closeregion.threads", 3));
     this.service.startExecutorService(ExecutorType.RS_CLOSE_META,
       conf.getInt("hbase.regionserver.executor.closemeta.threads", 1));
-    if (conf.getBoolean(StoreScanner.STORESCANNER_PARALLEL_SEEK_ENABLE, false)) {
-      this.service.startExecutorService(ExecutorType.RS_PARALLEL_SEEK,
-        conf.getInt("hbase.storescanner.parallel.seek.threads", 10));
+    if (conf.getBoolean(StoreScanner.STORESCANNER_PARALLEL_SEEK_ENABLE,
+        StoreScanner.DEFAULT_STORESCANNER_PARALLEL_SEEK_ENABLE)) {
+      this.parallelSeekExecutor = new ParallelSeekExecutor(conf, getName());
     }
     this.service.startExecutorService(ExecutorType.RS_LOG_REPLAY_OPS, conf.getInt(
        "hbase.regionserver.wal.max.splitters", SplitLogWorkerCoordination.DEFAULT_MAX_SPLITTERS));
@@ -2206,6 +2221,8 @@ public class HRegionServer extends HasThread implements
       this.compactSplitThread.join();
     }
     if (this.service != null) this.service.shutdown();
+    if (this.parallelSeekExecutor != null) this.parallelSeekExecutor.shutdown();
+    CompactingMemStore.shutdownPool();
     if (this.replicationSourceHandler != null &&
         this.replicationSourceHandler == this.replicationSinkHandler) {
       this.replicationSourceHandler.stopReplicationService();
@@ -2621,6 +2638,11 @@ public class HRegionServer extends HasThread implements
     return service;
   }
 
+  @Override
+  public ParallelSeekExecutor getParallelSeekExecutor() {
+    return parallelSeekExecutor;
+  }
+
   @Override
   public ChoreService getChoreService() {
     return choreService;
@@ -3401,8 +3423,13 @@ public class HRegionServer extends HasThread implements
       // return 0 during RS initialization
       return 0.0;
     }
-    return getRegionServerAccounting().getGlobalMemstoreSize() * 1.0
+    double pressure = getRegionServerAccounting().getGlobalMemstoreHeapSize() * 1.0
         / cacheFlusher.globalMemStoreLimitLowMark;
+    if (cacheFlusher.globalMemStoreOffheapLimitLowMark > 0) {
+      pressure = Math.max(pressure, getRegionServerAccounting().getGlobalMemstoreOffheapSize()
+          * 1.0 / cacheFlusher.globalMemStoreOffheapLimitLowMark);
+    }
+    return pressure;
   }
 
   @Override
@@ -39,6 +39,7 @@ import java.util.concurrent.ExecutorCompletionService;
 import java.util.concurrent.Future;
 import java.util.concurrent.ThreadPoolExecutor;
 import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
 import java.util.concurrent.locks.ReentrantReadWriteLock;
 
 import org.apache.commons.logging.Log;
@@ -75,6 +76,7 @@ import org.apache.hadoop.hbase.monitoring.MonitoredTask;
 import org.apache.hadoop.hbase.protobuf.ProtobufUtil;
 import org.apache.hadoop.hbase.protobuf.generated.WALProtos.CompactionDescriptor;
 import org.apache.hadoop.hbase.regionserver.compactions.CompactionContext;
+import org.apache.hadoop.hbase.regionserver.compactions.CompactionOutputCachePolicy;
 import org.apache.hadoop.hbase.regionserver.compactions.CompactionProgress;
 import org.apache.hadoop.hbase.regionserver.compactions.CompactionRequest;
 import org.apache.hadoop.hbase.regionserver.compactions.DefaultCompactor;
@@ -153,6 +155,9 @@ public class HStore implements Store {
   // TODO: ideally, this should be part of storeFileManager, as we keep passing this to it.
   final List<StoreFile> filesCompacting = Lists.newArrayList();
 
+  /** Decides whether compaction outputs are cached, null to keep the static cache settings */
+  private final CompactionOutputCachePolicy compactionOutputCachePolicy;
+
   // All access must be synchronized.
   private final Set<ChangedReadersObserver> changedReaderObservers =
     Collections.newSetFromMap(new ConcurrentHashMap<ChangedReadersObserver, Boolean>());
@@ -186,6 +191,10 @@ public class HStore implements Store {
   private volatile long flushedCellsSize = 0;
   private volatile long compactedCellsSize = 0;
   private volatile long majorCompactedCellsSize = 0;
+  private volatile long flushTime = 0;
+  // Updated by concurrent compactions
+  private final AtomicLong compactionsCachedOnWrite = new AtomicLong();
+  private final AtomicLong compactionsNotCachedOnWrite = new AtomicLong();
 
   /**
    * Constructor
@@ -229,8 +238,13 @@ public class HStore implements Store {
     // to clone it?
     scanInfo = new ScanInfo(conf, family, ttl, timeToPurgeDeletes, this.comparator);
     String className = conf.get(MEMSTORE_CLASS_NAME, DefaultMemStore.class.getName());
-    this.memstore = ReflectionUtils.instantiateWithCustomCtor(className, new Class[] {
-        Configuration.class, CellComparator.class }, new Object[] { conf, this.comparator });
+    if (CompactingMemStore.class.getName().equals(className)) {
+      // Needs the store to learn about versions, read points and the region flush size
+      this.memstore = new CompactingMemStore(conf, this.comparator, this);
+    } else {
+      this.memstore = ReflectionUtils.instantiateWithCustomCtor(className, new Class[] {
+          Configuration.class, CellComparator.class }, new Object[] { conf, this.comparator });
+    }
     this.offPeakHours = OffPeakHours.getInstance(conf);
 
     // Setting up cache configuration for this family
@@ -248,6 +262,8 @@ public class HStore implements Store {
       this.compactionCheckMultiplier = DEFAULT_COMPACTCHECKER_INTERVAL_MULTIPLIER;
     }
 
+    this.compactionOutputCachePolicy = CompactionOutputCachePolicy.create(conf);
+
     if (HStore.closeCheckInterval == 0) {
       HStore.closeCheckInterval = conf.getInt(
           "hbase.hstore.close.check.interval", 10*1000*1000 /* 10 MB */);
@@ -607,8 +623,13 @@ public class HStore implements Store {
 
   private StoreFile createStoreFileAndReader(final StoreFileInfo info)
       throws IOException {
+    return createStoreFileAndReader(info, this.cacheConf);
+  }
+
+  private StoreFile createStoreFileAndReader(final StoreFileInfo info, CacheConfig cacheConf)
+      throws IOException {
     info.setRegionCoprocessorHost(this.region.getCoprocessorHost());
-    StoreFile storeFile = new StoreFile(this.getFileSystem(), info, this.conf, this.cacheConf,
+    StoreFile storeFile = new StoreFile(this.getFileSystem(), info, this.conf, cacheConf,
       this.family.getBloomFilterType());
     StoreFile.Reader r = storeFile.createReader();
     r.setReplicaStoreFile(isPrimaryReplicaStore());
@@ -947,24 +968,34 @@ public class HStore implements Store {
         includesTag, false);
   }
 
+  @Override
+  public StoreFile.Writer createWriterInTmp(long maxKeyCount, Compression.Algorithm compression,
+      boolean isCompaction, boolean includeMVCCReadpoint, boolean includesTag,
+      boolean shouldDropBehind)
+  throws IOException {
+    return createWriterInTmp(maxKeyCount, compression, isCompaction, includeMVCCReadpoint,
+        includesTag, shouldDropBehind, false);
+  }
+
   /*
    * @param maxKeyCount
    * @param compression Compression algorithm to use
    * @param isCompaction whether we are creating a new file in a compaction
    * @param includesMVCCReadPoint - whether to include MVCC or not
    * @param includesTag - includesTag or not
+   * @param cacheDataOnWrite - whether a compaction caches the data blocks it writes
    * @return Writer for a new StoreFile in the tmp dir.
    */
   @Override
   public StoreFile.Writer createWriterInTmp(long maxKeyCount, Compression.Algorithm compression,
       boolean isCompaction, boolean includeMVCCReadpoint, boolean includesTag,
-      boolean shouldDropBehind)
+      boolean shouldDropBehind, boolean cacheDataOnWrite)
   throws IOException {
     final CacheConfig writerCacheConf;
     if (isCompaction) {
-      // Don't cache data on write on compactions.
+      // Don't cache data on write on compactions, unless compact() found the inputs hot.
       writerCacheConf = new CacheConfig(cacheConf);
-      writerCacheConf.setCacheDataOnWrite(false);
+      writerCacheConf.setCacheDataOnWrite(cacheDataOnWrite);
     } else {
       writerCacheConf = cacheConf;
     }
@@ -1207,6 +1238,26 @@ public class HStore implements Store {
           + " into tmpdir=" + fs.getTempDir() + ", totalSize="
           + TraditionalBinaryPrefix.long2String(cr.getSize(), "", 1));
 
+      // Decide once for the whole compaction whether its output goes into the block cache. Hot
+      // output is cached as it is written, so it needs no prefetch once opened; cold output is
+      // neither cached nor prefetched.
+      CacheConfig outputCacheConf = cacheConf;
+      if (compactionOutputCachePolicy != null && cacheConf != null) {
+        boolean cacheOutput = compactionOutputCachePolicy.shouldCacheOutput(filesToCompact);
+        cr.setCacheOutput(cacheOutput);
+        outputCacheConf = new CacheConfig(cacheConf);
+        outputCacheConf.setPrefetchOnOpen(false);
+        if (cacheOutput) {
+          compactionsCachedOnWrite.incrementAndGet();
+        } else {
+          compactionsNotCachedOnWrite.incrementAndGet();
+        }
+        if (LOG.isDebugEnabled()) {
+          LOG.debug("Output of compaction in " + this + (cacheOutput ? " will" : " won't")
+              + " be cached on write");
+        }
+      }
+
       // Commence the compaction.
       List<Path> newFiles = compaction.compact(throughputController, user);
 
@@ -1225,7 +1276,7 @@ public class HStore implements Store {
         return sfs;
       }
       // Do the steps necessary to complete the compaction.
-      sfs = moveCompatedFilesIntoPlace(cr, newFiles, user);
+      sfs = moveCompatedFilesIntoPlace(cr, newFiles, user, outputCacheConf);
       writeCompactionWalRecord(filesToCompact, sfs);
       replaceStoreFiles(filesToCompact, sfs);
       if (cr.isMajor()) {
@@ -1245,12 +1296,12 @@ public class HStore implements Store {
     }
   }
 
-  private List<StoreFile> moveCompatedFilesIntoPlace(
-      final CompactionRequest cr, List<Path> newFiles, User user) throws IOException {
+  private List<StoreFile> moveCompatedFilesIntoPlace(final CompactionRequest cr,
+      List<Path> newFiles, User user, CacheConfig outputCacheConf) throws IOException {
     List<StoreFile> sfs = new ArrayList<StoreFile>(newFiles.size());
     for (Path newFile : newFiles) {
       assert newFile != null;
-      final StoreFile sf = moveFileIntoPlace(newFile);
+      final StoreFile sf = moveFileIntoPlace(newFile, outputCacheConf);
       if (this.getCoprocessorHost() != null) {
         final Store thisStore = this;
         if (user == null) {
@@ -1279,10 +1330,16 @@ public class HStore implements Store {
 
   // Package-visible for tests
   StoreFile moveFileIntoPlace(final Path newFile) throws IOException {
+    return moveFileIntoPlace(newFile, this.cacheConf);
+  }
+
+  private StoreFile moveFileIntoPlace(final Path newFile, CacheConfig cacheConf)
+      throws IOException {
     validateStoreFile(newFile);
     // Move the file into the right spot
     Path destPath = fs.commitStoreFile(getColumnFamilyName(), newFile);
-    return createStoreFileAndReader(destPath);
+    return createStoreFileAndReader(new StoreFileInfo(conf, this.getFileSystem(), destPath),
+      cacheConf);
   }
 
   /**
@@ -2066,7 +2123,17 @@ public class HStore implements Store {
       RegionServerServices rsService = region.getRegionServerServices();
       ThroughputController throughputController =
           rsService == null ? null : rsService.getFlushThroughputController();
-      tempFiles = HStore.this.flushCache(cacheFlushSeqNum, snapshot, status, throughputController);
+      long start = EnvironmentEdgeManager.currentTime();
+      try {
+        // Out of prepare(), which runs under the region updates lock; the flush then reads
+        // the flat copy
+        snapshot = memstore.flattenSnapshot(snapshot);
+        tempFiles =
+            HStore.this.flushCache(cacheFlushSeqNum, snapshot, status, throughputController);
+      } finally {
+        // Flushes of one store never overlap, the region serializes them
+        HStore.this.flushTime += EnvironmentEdgeManager.currentTime() - start;
+      }
     }
 
     @Override
@@ -2074,6 +2141,7 @@ public class HStore implements Store {
       if (this.tempFiles == null || this.tempFiles.isEmpty()) {
         return false;
       }
+      long commitStart = EnvironmentEdgeManager.currentTime();
       List<StoreFile> storeFiles = new ArrayList<StoreFile>(this.tempFiles.size());
       for (Path storeFilePath : tempFiles) {
         try {
@@ -2103,6 +2171,7 @@ public class HStore implements Store {
 
       HStore.this.flushedCellsCount += cacheFlushCount;
       HStore.this.flushedCellsSize += cacheFlushSize;
+      HStore.this.flushTime += EnvironmentEdgeManager.currentTime() - commitStart;
 
       // Add new file to store files.  Clear snapshot too while we have the Store write lock.
       return HStore.this.updateStorefiles(storeFiles, snapshot.getId());
@@ -2171,14 +2240,14 @@ public class HStore implements Store {
   }
 
   public static final long FIXED_OVERHEAD =
-      ClassSize.align(ClassSize.OBJECT + (16 * ClassSize.REFERENCE) + (10 * Bytes.SIZEOF_LONG)
+      ClassSize.align(ClassSize.OBJECT + (19 * ClassSize.REFERENCE) + (11 * Bytes.SIZEOF_LONG)
               + (5 * Bytes.SIZEOF_INT) + (2 * Bytes.SIZEOF_BOOLEAN));
 
   public static final long DEEP_OVERHEAD = ClassSize.align(FIXED_OVERHEAD
       + ClassSize.OBJECT + ClassSize.REENTRANT_LOCK
       + ClassSize.CONCURRENT_SKIPLISTMAP
       + ClassSize.CONCURRENT_SKIPLISTMAP_ENTRY + ClassSize.OBJECT
-      + ScanInfo.FIXED_OVERHEAD);
+      + ScanInfo.FIXED_OVERHEAD + 2 * ClassSize.ATOMIC_LONG);
 
   @Override
   public long heapSize() {
@@ -2218,6 +2287,11 @@ public class HStore implements Store {
     return flushedCellsSize;
   }
 
+  @Override
+  public long getFlushTime() {
+    return flushTime;
+  }
+
   @Override
   public long getCompactedCellsCount() {
     return compactedCellsCount;
@@ -2238,6 +2312,16 @@ public class HStore implements Store {
     return majorCompactedCellsSize;
   }
 
+  @Override
+  public long getCompactionsCachedOnWrite() {
+    return compactionsCachedOnWrite.get();
+  }
+
+  @Override
+  public long getCompactionsNotCachedOnWrite() {
+    return compactionsNotCachedOnWrite.get();
+  }
+
   /**
    * Returns the StoreEngine that is backing this concrete implementation of Store.
    * @return Returns the {@link StoreEngine} object used internally inside this HStore object.
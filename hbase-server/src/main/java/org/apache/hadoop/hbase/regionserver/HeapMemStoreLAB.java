@@ -18,14 +18,21 @@
  */
 package org.apache.hadoop.hbase.regionserver;
 
+import java.nio.ByteBuffer;
 import java.util.concurrent.BlockingQueue;
 import java.util.concurrent.LinkedBlockingQueue;
 import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
 import java.util.concurrent.atomic.AtomicReference;
 
 import org.apache.hadoop.hbase.classification.InterfaceAudience;
 import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.hbase.Cell;
+import org.apache.hadoop.hbase.KeyValue;
+import org.apache.hadoop.hbase.KeyValueUtil;
+import org.apache.hadoop.hbase.OffheapKeyValue;
+import org.apache.hadoop.hbase.io.util.HeapMemorySizeUtil;
 import org.apache.hadoop.hbase.util.ByteRange;
 import org.apache.hadoop.hbase.util.SimpleMutableByteRange;
 
@@ -47,6 +54,13 @@ import com.google.common.base.Preconditions;
  * interleaved throughout the heap, and the old generation gets progressively
  * more fragmented until a stop-the-world compacting collection occurs.
  * <p>
+ * When {@link HeapMemorySizeUtil#MEMSTORE_OFFHEAP_SIZE_KEY} is set, the chunks are direct
+ * ByteBuffers instead and {@link #copyCellInto(Cell)} returns {@link OffheapKeyValue}s, so the
+ * data of the memstore does not live on the heap at all. The bytes copied are counted in
+ * {@link #getGlobalOffheapDataSize()} until the MemStoreLAB is closed. {@link #allocateBytes(int)}
+ * always returns null in that mode, since a {@link ByteRange} needs a backing array; as for any
+ * allocation the MemStoreLAB does not satisfy, the caller keeps the bytes on the heap.
+ * <p>
  * TODO: we should probably benchmark whether word-aligning the allocations
  * would provide a performance improvement - probably would speed up the
  * Bytes.toLong/Bytes.toInt calls in KeyValue, but some of those are cached
@@ -66,6 +80,13 @@ public class HeapMemStoreLAB implements MemStoreLAB {
   private BlockingQueue<Chunk> chunkQueue = new LinkedBlockingQueue<Chunk>();
   final int chunkSize;
   final int maxAlloc;
+  // Whether the chunks are direct ByteBuffers
+  final boolean offheap;
+  // Bytes copied into off-heap chunks by all the MemStoreLABs of this JVM not closed yet. Static
+  // like the MemStoreChunkPool the chunks come from.
+  private static final AtomicLong GLOBAL_OFFHEAP_DATA_SIZE = new AtomicLong();
+  // Share of GLOBAL_OFFHEAP_DATA_SIZE copied in by this instance
+  private final AtomicLong offheapDataSize = new AtomicLong();
   private final MemStoreChunkPool chunkPool;
 
   // This flag is for closing this instance, its set when clearing snapshot of
@@ -85,7 +106,10 @@ public class HeapMemStoreLAB implements MemStoreLAB {
   public HeapMemStoreLAB(Configuration conf) {
     chunkSize = conf.getInt(CHUNK_SIZE_KEY, CHUNK_SIZE_DEFAULT);
     maxAlloc = conf.getInt(MAX_ALLOC_KEY, MAX_ALLOC_DEFAULT);
-    this.chunkPool = MemStoreChunkPool.getPool(conf);
+    offheap = HeapMemorySizeUtil.getOffheapGlobalMemstoreSize(conf) > 0;
+    MemStoreChunkPool pool = MemStoreChunkPool.getPool(conf);
+    // Only reuse chunks of the kind this MemStoreLAB allocates
+    this.chunkPool = (pool != null && pool.isOffheap() == offheap) ? pool : null;
 
     // if we don't exclude allocations >CHUNK_SIZE, we'd infiniteloop on one!
     Preconditions.checkArgument(
@@ -102,6 +126,9 @@ public class HeapMemStoreLAB implements MemStoreLAB {
   @Override
   public ByteRange allocateBytes(int size) {
     Preconditions.checkArgument(size >= 0, "negative size");
+    if (offheap) {
+      return null;
+    }
 
     // Callers should satisfy large allocations directly from JVM since they
     // don't cause fragmentation as badly.
@@ -117,7 +144,7 @@ public class HeapMemStoreLAB implements MemStoreLAB {
       if (allocOffset != -1) {
         // We succeeded - this is the common case - small alloc
         // from a big buffer
-        return new SimpleMutableByteRange(c.data, allocOffset, size);
+        return new SimpleMutableByteRange(c.getData().array(), allocOffset, size);
       }
 
       // not enough space!
@@ -126,6 +153,40 @@ public class HeapMemStoreLAB implements MemStoreLAB {
     }
   }
 
+  /**
+   * Copy the given cell into a slice of a chunk. Returns a {@link KeyValue} over the slice for
+   * on-heap chunks and an {@link OffheapKeyValue} for off-heap ones.
+   *
+   * If the cell is larger than the maximum size specified for this
+   * allocator, returns null.
+   */
+  @Override
+  public Cell copyCellInto(Cell cell) {
+    int size = KeyValueUtil.length(cell);
+    if (size > maxAlloc) {
+      return null;
+    }
+    while (true) {
+      Chunk c = getOrMakeChunk();
+      int allocOffset = c.alloc(size);
+      if (allocOffset != -1) {
+        if (offheap) {
+          this.offheapDataSize.addAndGet(size);
+          GLOBAL_OFFHEAP_DATA_SIZE.addAndGet(size);
+        }
+        return c.copyCellInto(cell, allocOffset, size);
+      }
+      tryRetireChunk(c);
+    }
+  }
+
+  /**
+   * @return bytes of Cell data held in the off-heap chunks of all MemStoreLABs not closed yet
+   */
+  static long getGlobalOffheapDataSize() {
+    return GLOBAL_OFFHEAP_DATA_SIZE.get();
+  }
+
   /**
    * Close this instance since it won't be used any more, try to put the chunks
    * back to pool
@@ -133,6 +194,9 @@ public class HeapMemStoreLAB implements MemStoreLAB {
   @Override
   public void close() {
     this.closed = true;
+    // The data stops counting against the off-heap budget once its memstore has been flushed,
+    // even if scanners still read it; like on-heap snapshots held by scanners
+    GLOBAL_OFFHEAP_DATA_SIZE.addAndGet(-this.offheapDataSize.getAndSet(0));
     // We could put back the chunks to pool for reusing only when there is no
     // opening scanner which will read their data
     if (chunkPool != null && openScannerCount.get() == 0
@@ -191,7 +255,7 @@ public class HeapMemStoreLAB implements MemStoreLAB {
       // No current chunk, so we want to allocate one. We race
       // against other allocators to CAS in an uninitialized chunk
       // (which is cheap to allocate)
-      c = (chunkPool != null) ? chunkPool.getChunk() : new Chunk(chunkSize);
+      c = (chunkPool != null) ? chunkPool.getChunk() : new Chunk(chunkSize, offheap);
       if (curChunk.compareAndSet(null, c)) {
         // we won race - now we need to actually do the expensive
         // allocation step
@@ -210,8 +274,8 @@ public class HeapMemStoreLAB implements MemStoreLAB {
    * A chunk of memory out of which allocations are sliced.
    */
   static class Chunk {
-    /** Actual underlying data */
-    private byte[] data;
+    /** Actual underlying data, a direct buffer for off-heap chunks */
+    private ByteBuffer data;
 
     private static final int UNINITIALIZED = -1;
     private static final int OOM = -2;
@@ -227,13 +291,17 @@ public class HeapMemStoreLAB implements MemStoreLAB {
     /** Size of chunk in bytes */
     private final int size;
 
+    private final boolean offheap;
+
     /**
      * Create an uninitialized chunk. Note that memory is not allocated yet, so
      * this is cheap.
      * @param size in bytes
+     * @param offheap whether to allocate a direct ByteBuffer rather than a heap one
      */
-    Chunk(int size) {
+    Chunk(int size, boolean offheap) {
       this.size = size;
+      this.offheap = offheap;
     }
 
     /**
@@ -245,7 +313,7 @@ public class HeapMemStoreLAB implements MemStoreLAB {
       assert nextFreeOffset.get() == UNINITIALIZED;
       try {
         if (data == null) {
-          data = new byte[size];
+          data = offheap ? ByteBuffer.allocateDirect(size) : ByteBuffer.allocate(size);
         }
       } catch (OutOfMemoryError e) {
         boolean failInit = nextFreeOffset.compareAndSet(UNINITIALIZED, OOM);
@@ -291,7 +359,7 @@ public class HeapMemStoreLAB implements MemStoreLAB {
           return -1;
         }
 
-        if (oldOffset + size > data.length) {
+        if (oldOffset + size > this.size) {
           return -1; // alloc doesn't fit
         }
 
@@ -305,11 +373,31 @@ public class HeapMemStoreLAB implements MemStoreLAB {
       }
     }
 
+    /**
+     * Copy the given cell into the slice at <code>offset</code>, which must have been allocated
+     * through {@link #alloc(int)} with the serialized length of the cell.
+     */
+    Cell copyCellInto(Cell cell, int offset, int len) {
+      if (offheap) {
+        KeyValueUtil.appendToByteBuffer(cell, data, offset);
+        return new OffheapKeyValue(data, offset, len, cell.getTagsLength() > 0,
+            cell.getSequenceId());
+      }
+      KeyValueUtil.appendToByteArray(cell, data.array(), offset);
+      KeyValue newKv = new KeyValue(data.array(), offset, len);
+      newKv.setSequenceId(cell.getSequenceId());
+      return newKv;
+    }
+
+    ByteBuffer getData() {
+      return data;
+    }
+
     @Override
     public String toString() {
       return "Chunk@" + System.identityHashCode(this) +
         " allocs=" + allocCount.get() + "waste=" +
-        (data.length - nextFreeOffset.get());
+        (size - nextFreeOffset.get());
     }
   }
 }
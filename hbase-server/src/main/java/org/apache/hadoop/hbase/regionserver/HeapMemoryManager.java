@@ -34,6 +34,7 @@ import org.apache.hadoop.hbase.Server;
 import org.apache.hadoop.hbase.classification.InterfaceAudience;
 import org.apache.hadoop.hbase.io.hfile.BlockCache;
 import org.apache.hadoop.hbase.io.hfile.CacheConfig;
+import org.apache.hadoop.hbase.io.hfile.GhostCache;
 import org.apache.hadoop.hbase.io.hfile.ResizableBlockCache;
 import org.apache.hadoop.hbase.io.util.HeapMemorySizeUtil;
 import org.apache.hadoop.util.ReflectionUtils;
@@ -222,6 +223,7 @@ public class HeapMemoryManager {
     private AtomicLong unblockedFlushCount = new AtomicLong();
     private long evictCount = 0L;
     private long cacheMissCount = 0L;
+    private GhostCache.Curve hitRatioCurve = null;
     private TunerContext tunerContext = new TunerContext();
     private boolean alarming = false;
 
@@ -279,11 +281,18 @@ public class HeapMemoryManager {
       curCacheMisCount = blockCache.getStats().getMissCachingCount();
       tunerContext.setCacheMissCount(curCacheMisCount-cacheMissCount);
       cacheMissCount = curCacheMisCount;
+      GhostCache ghostCache = blockCache.getGhostCache();
+      if (ghostCache != null) {
+        GhostCache.Curve curHitRatioCurve = ghostCache.getCurve();
+        tunerContext.setBlockCacheHitRatioCurve(hitRatioCurve == null ? curHitRatioCurve
+            : curHitRatioCurve.since(hitRatioCurve));
+        hitRatioCurve = curHitRatioCurve;
+      }
       tunerContext.setBlockedFlushCount(blockedFlushCount.getAndSet(0));
       tunerContext.setUnblockedFlushCount(unblockedFlushCount.getAndSet(0));
       tunerContext.setCurBlockCacheUsed((float)blockCache.getCurrentSize() / maxHeapSize);
       tunerContext.setCurMemStoreUsed(
-                 (float)regionServerAccounting.getGlobalMemstoreSize() / maxHeapSize);
+                 (float)regionServerAccounting.getGlobalMemstoreHeapSize() / maxHeapSize);
       tunerContext.setCurBlockCacheSize(blockCachePercent);
       tunerContext.setCurMemStoreSize(globalMemStorePercent);
       TunerResult result = null;
@@ -360,7 +369,8 @@ public class HeapMemoryManager {
   /**
    * POJO to pass all the relevant information required to do the heap memory tuning. It holds the
    * flush counts and block cache evictions happened within the interval. Also holds the current
-   * heap percentage allocated for memstore and block cache.
+   * heap percentage allocated for memstore and block cache, and, if the block cache runs a ghost
+   * cache, its hit ratios estimated at other sizes over the interval.
    */
   public static final class TunerContext {
     private long blockedFlushCount;
@@ -371,6 +381,7 @@ public class HeapMemoryManager {
     private float curMemStoreUsed;
     private float curMemStoreSize;
     private float curBlockCacheSize;
+    private GhostCache.Curve blockCacheHitRatioCurve;
 
     public long getBlockedFlushCount() {
       return blockedFlushCount;
@@ -435,6 +446,17 @@ public class HeapMemoryManager {
     public void setCurMemStoreUsed(float d) {
         this.curMemStoreUsed = d;
     }
+
+    /**
+     * @return hit ratios of the block cache estimated at other sizes, or null if not known
+     */
+    public GhostCache.Curve getBlockCacheHitRatioCurve() {
+      return blockCacheHitRatioCurve;
+    }
+
+    public void setBlockCacheHitRatioCurve(GhostCache.Curve blockCacheHitRatioCurve) {
+      this.blockCacheHitRatioCurve = blockCacheHitRatioCurve;
+    }
   }
 
   /**
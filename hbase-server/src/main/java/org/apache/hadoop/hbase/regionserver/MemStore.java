@@ -48,6 +48,16 @@ public interface MemStore extends HeapSize {
    */
   void clearSnapshot(long id) throws UnexpectedStateException;
 
+  /**
+   * Converts the current snapshot into a form that is cheaper to hold and to scan. Called by the
+   * flusher once the region updates lock has been released, since the conversion is linear in
+   * the number of Cells; readers see the snapshot in either form.
+   * @param snapshot the snapshot returned by {@link #snapshot()}; its scanner is closed if a
+   *          flat copy is made
+   * @return the snapshot to flush, with a scanner over the flat copy
+   */
+  MemStoreSnapshot flattenSnapshot(MemStoreSnapshot snapshot);
+
   /**
    * On flush, how much memory we will clear.
    * Flush will first clear out the data in snapshot if any (It will take a second flush
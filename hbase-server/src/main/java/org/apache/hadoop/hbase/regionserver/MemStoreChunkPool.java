@@ -49,6 +49,10 @@ import com.google.common.util.concurrent.ThreadFactoryBuilder;
  * {@link MemStoreChunkPool#getChunk()} is called when MemStoreLAB allocating
  * bytes, and {@link MemStoreChunkPool#putbackChunks(BlockingQueue)} is called
  * when MemStore clearing snapshot for flush
+ *
+ * When the memstores are off heap the pooled chunks are direct ByteBuffers. Direct memory is only
+ * given back to the OS once the buffer gets garbage collected, so in that mode the pool is enabled
+ * by default and sized to hold the whole off-heap budget.
  */
 @SuppressWarnings("javadoc")
 @InterfaceAudience.Private
@@ -69,6 +73,7 @@ public class MemStoreChunkPool {
   // A queue of reclaimed chunks
   private final BlockingQueue<Chunk> reclaimedChunks;
   private final int chunkSize;
+  private final boolean offheap;
 
   /** Statistics thread schedule pool */
   private final ScheduledExecutorService scheduleThreadPool;
@@ -78,12 +83,13 @@ public class MemStoreChunkPool {
   private AtomicLong reusedChunkCount = new AtomicLong();
 
   MemStoreChunkPool(Configuration conf, int chunkSize, int maxCount,
-      int initialCount) {
+      int initialCount, boolean offheap) {
     this.maxCount = maxCount;
     this.chunkSize = chunkSize;
+    this.offheap = offheap;
     this.reclaimedChunks = new LinkedBlockingQueue<Chunk>();
     for (int i = 0; i < initialCount; i++) {
-      Chunk chunk = new Chunk(chunkSize);
+      Chunk chunk = new Chunk(chunkSize, offheap);
       chunk.init();
       reclaimedChunks.add(chunk);
     }
@@ -103,7 +109,7 @@ public class MemStoreChunkPool {
   Chunk getChunk() {
     Chunk chunk = reclaimedChunks.poll();
     if (chunk == null) {
-      chunk = new Chunk(chunkSize);
+      chunk = new Chunk(chunkSize, offheap);
       createdChunkCount.incrementAndGet();
     } else {
       chunk.reset();
@@ -137,6 +143,10 @@ public class MemStoreChunkPool {
     reclaimedChunks.add(chunk);
   }
 
+  boolean isOffheap() {
+    return this.offheap;
+  }
+
   int getPoolSize() {
     return this.reclaimedChunks.size();
   }
@@ -187,7 +197,10 @@ public class MemStoreChunkPool {
     synchronized (MemStoreChunkPool.class) {
       if (chunkPoolDisabled) return null;
       if (GLOBAL_INSTANCE != null) return GLOBAL_INSTANCE;
-      float poolSizePercentage = conf.getFloat(CHUNK_POOL_MAXSIZE_KEY, POOL_MAX_SIZE_DEFAULT);
+      long offheapMemStoreSize = HeapMemorySizeUtil.getOffheapGlobalMemstoreSize(conf);
+      boolean offheap = offheapMemStoreSize > 0;
+      float poolSizePercentage = conf.getFloat(CHUNK_POOL_MAXSIZE_KEY,
+          offheap ? 1.0f : POOL_MAX_SIZE_DEFAULT);
       if (poolSizePercentage <= 0) {
         chunkPoolDisabled = true;
         return null;
@@ -195,9 +208,14 @@ public class MemStoreChunkPool {
       if (poolSizePercentage > 1.0) {
         throw new IllegalArgumentException(CHUNK_POOL_MAXSIZE_KEY + " must be between 0.0 and 1.0");
       }
-      long heapMax = ManagementFactory.getMemoryMXBean().getHeapMemoryUsage().getMax();
-      long globalMemStoreLimit = (long) (heapMax * HeapMemorySizeUtil.getGlobalMemStorePercent(conf,
-          false));
+      long globalMemStoreLimit;
+      if (offheap) {
+        globalMemStoreLimit = offheapMemStoreSize;
+      } else {
+        long heapMax = ManagementFactory.getMemoryMXBean().getHeapMemoryUsage().getMax();
+        globalMemStoreLimit = (long) (heapMax * HeapMemorySizeUtil.getGlobalMemStorePercent(conf,
+            false));
+      }
       int chunkSize = conf.getInt(HeapMemStoreLAB.CHUNK_SIZE_KEY,
           HeapMemStoreLAB.CHUNK_SIZE_DEFAULT);
       int maxCount = (int) (globalMemStoreLimit * poolSizePercentage / chunkSize);
@@ -210,9 +228,10 @@ public class MemStoreChunkPool {
       }
 
       int initialCount = (int) (initialCountPercentage * maxCount);
-      LOG.info("Allocating MemStoreChunkPool with chunk size " + StringUtils.byteDesc(chunkSize)
+      LOG.info("Allocating " + (offheap ? "off-heap" : "on-heap")
+          + " MemStoreChunkPool with chunk size " + StringUtils.byteDesc(chunkSize)
           + ", max count " + maxCount + ", initial count " + initialCount);
-      GLOBAL_INSTANCE = new MemStoreChunkPool(conf, chunkSize, maxCount, initialCount);
+      GLOBAL_INSTANCE = new MemStoreChunkPool(conf, chunkSize, maxCount, initialCount, offheap);
       return GLOBAL_INSTANCE;
     }
   }
@@ -0,0 +1,122 @@
+/**
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.hadoop.hbase.regionserver;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.apache.hadoop.hbase.Cell;
+import org.apache.hadoop.hbase.CellComparator;
+import org.apache.hadoop.hbase.CellUtil;
+import org.apache.hadoop.hbase.KeyValue;
+import org.apache.hadoop.hbase.KeyValueUtil;
+import org.apache.hadoop.hbase.classification.InterfaceAudience;
+
+/**
+ * Merges the segments of a {@link CompactionPipeline} into a single flat segment, backed by a
+ * {@link CellArraySet}, dropping the Put versions that no current or future scanner can see.
+ * <p>
+ * A Put is dropped only when all of the following hold:
+ * <ul>
+ * <li>its sequence id is at or below the smallest read point of the region, so every scanner
+ * sees it;</li>
+ * <li>at least <code>maxVersions</code> newer Puts of the same column that every scanner sees
+ * are kept ahead of it;</li>
+ * <li>no delete marker has been seen so far in its row, since a delete could mask one of the
+ * newer versions and make this one visible again.</li>
+ * </ul>
+ * Delete markers themselves are always kept; they may mask Cells that are already on disk.
+ * </p>
+ */
+@InterfaceAudience.Private
+public class MemStoreCompactor {
+
+  private final CellComparator comparator;
+  private final int maxVersions;
+
+  public MemStoreCompactor(CellComparator comparator, int maxVersions) {
+    this.comparator = comparator;
+    this.maxVersions = maxVersions;
+  }
+
+  /**
+   * @param segments the segments to merge, none of which may be written to any more
+   * @param smallestReadPoint smallest read point of any open scanner of the region
+   * @return a segment holding the surviving Cells of all the passed segments, charged also for
+   *         the data of the dropped Cells if they may sit in inherited MSLAB chunks
+   */
+  public Segment compact(List<Segment> segments, long smallestReadPoint) throws IOException {
+    List<KeyValueScanner> scanners = new ArrayList<KeyValueScanner>(segments.size());
+    for (Segment segment : segments) {
+      SegmentScanner scanner = segment.getScanner(Long.MAX_VALUE);
+      scanner.seek(KeyValue.LOWESTKEY);
+      scanners.add(scanner);
+    }
+    List<Cell> cells = new ArrayList<Cell>();
+    TimeRangeTracker timeRangeTracker = new TimeRangeTracker();
+    long size = 0;
+    // Bytes the dropped Cells may still take in the MSLAB chunks of the sources
+    long droppedDataSize = 0;
+    KeyValueHeap heap = new KeyValueHeap(scanners, this.comparator);
+    try {
+      Cell prev = null;
+      int versionsVisible = 0;
+      boolean rowHasDeletes = false;
+      for (Cell cell = heap.next(); cell != null; cell = heap.next()) {
+        if (prev != null && this.comparator.compare(prev, cell) == 0) {
+          // The same edit in two segments; a flat segment holds no duplicates
+          droppedDataSize += KeyValueUtil.length(cell);
+          continue;
+        }
+        if (prev == null || !CellUtil.matchingRow(cell, prev)) {
+          rowHasDeletes = false;
+          versionsVisible = 0;
+        } else if (!CellUtil.matchingQualifier(cell, prev)) {
+          versionsVisible = 0;
+        }
+        prev = cell;
+        if (CellUtil.isDelete(cell)) {
+          rowHasDeletes = true;
+        } else if (!rowHasDeletes && cell.getTypeByte() == KeyValue.Type.Put.getCode()
+            && cell.getSequenceId() <= smallestReadPoint) {
+          if (versionsVisible >= this.maxVersions) {
+            droppedDataSize += KeyValueUtil.length(cell);
+            continue;
+          }
+          versionsVisible++;
+        }
+        cells.add(cell);
+        timeRangeTracker.includeTimestamp(cell);
+        size += CellArraySet.heapSizeOf(cell);
+      }
+    } finally {
+      heap.close();
+    }
+    // The heap yields the Cells in order, so they can go straight into a flat array
+    CellArraySet cellSet = new CellArraySet(this.comparator,
+        cells.toArray(new Cell[cells.size()]), cells.size());
+    Segment compacted = Segment.createImmutableSegment(cellSet, this.comparator, segments,
+        timeRangeTracker, size);
+    if (compacted.hasAllocators()) {
+      compacted.retainDroppedSize(droppedDataSize);
+    }
+    return compacted;
+  }
+}
@@ -31,8 +31,6 @@ import java.util.List;
 import java.util.Map;
 import java.util.Set;
 import java.util.SortedMap;
-import java.util.concurrent.BlockingQueue;
-import java.util.concurrent.DelayQueue;
 import java.util.concurrent.Delayed;
 import java.util.concurrent.ThreadFactory;
 import java.util.concurrent.TimeUnit;
@@ -69,6 +67,10 @@ import com.google.common.base.Preconditions;
  * can be interrupted when there is something to do, rather than the Chore
  * sleep time which is invariant.
  *
+ * <p>Requests are served from a {@link FlushQueue} by <code>hbase.hstore.flusher.count</code>
+ * handlers. Up to <code>hbase.hstore.flusher.count.max</code> handlers in total run while the
+ * global memstore is above its low water mark, the extra ones going back to idle once it is not.
+ *
  * @see FlushRequester
  */
 @InterfaceAudience.Private
@@ -78,25 +80,33 @@ class MemStoreFlusher implements FlushRequester {
   private Configuration conf;
   // These two data members go together.  Any entry in the one must have
   // a corresponding entry in the other.
-  private final BlockingQueue<FlushQueueEntry> flushQueue =
-    new DelayQueue<FlushQueueEntry>();
+  private final FlushQueue flushQueue;
   private final Map<Region, FlushRegionEntry> regionsInQueue =
     new HashMap<Region, FlushRegionEntry>();
+  // Regions a handler has picked for a global pressure flush; guarded by regionsInQueue
+  private final Set<Region> regionsInPressureFlush = new HashSet<Region>();
   private AtomicBoolean wakeupPending = new AtomicBoolean();
 
   private final long threadWakeFrequency;
   private final HRegionServer server;
   private final ReentrantReadWriteLock lock = new ReentrantReadWriteLock();
   private final Object blockSignal = new Object();
+  // Notified when memory goes above the low water mark, for the handlers only started then
+  private final Object pressureSignal = new Object();
 
   protected long globalMemStoreLimit;
   protected float globalMemStoreLimitLowMarkPercent;
   protected long globalMemStoreLimitLowMark;
+  // 0 when the memstores are on heap
+  protected final long globalMemStoreOffheapLimit;
+  protected final long globalMemStoreOffheapLimitLowMark;
 
   private long blockingWaitTime;
   private final Counter updatesBlockedMsHighWater = new Counter();
 
   private final FlushHandler[] flushHandlers;
+  // Handlers beyond this many only work while above the low water mark
+  private final int coreHandlerCount;
   private List<FlushRequestListener> flushRequestListeners = new ArrayList<FlushRequestListener>(1);
 
   /**
@@ -117,11 +127,21 @@ class MemStoreFlusher implements FlushRequester {
         HeapMemorySizeUtil.getGlobalMemStoreLowerMark(conf, globalMemStorePercent);
     this.globalMemStoreLimitLowMark =
         (long) (this.globalMemStoreLimit * this.globalMemStoreLimitLowMarkPercent);
+    // With off-heap memstores the Cell data has its own budget next to the heap limit above
+    RegionServerAccounting accounting = server.getRegionServerAccounting();
+    this.globalMemStoreOffheapLimit =
+        accounting == null ? 0 : accounting.getGlobalMemstoreOffheapLimit();
+    this.globalMemStoreOffheapLimitLowMark =
+        (long) (this.globalMemStoreOffheapLimit * this.globalMemStoreLimitLowMarkPercent);
 
     this.blockingWaitTime = conf.getInt("hbase.hstore.blockingWaitTime",
       90000);
-    int handlerCount = conf.getInt("hbase.hstore.flusher.count", 2);
-    this.flushHandlers = new FlushHandler[handlerCount];
+    this.flushQueue = new FlushQueue(conf.getLong(FlushQueue.AGING_THRESHOLD_KEY,
+      FlushQueue.DEFAULT_AGING_THRESHOLD));
+    this.coreHandlerCount = conf.getInt("hbase.hstore.flusher.count", 2);
+    int maxHandlerCount = Math.max(this.coreHandlerCount,
+      conf.getInt("hbase.hstore.flusher.count.max", 2 * this.coreHandlerCount));
+    this.flushHandlers = new FlushHandler[maxHandlerCount];
     LOG.info("globalMemStoreLimit="
         + TraditionalBinaryPrefix.long2String(this.globalMemStoreLimit, "", 1)
         + ", globalMemStoreLimitLowMark="
@@ -136,8 +156,8 @@ class MemStoreFlusher implements FlushRequester {
   /**
    * The memstore across all regions has exceeded the low water mark. Pick
    * one region to flush and flush it synchronously (this is called from the
-   * flush thread)
-   * @return true if successful
+   * flush thread). Regions another handler is already flushing are not picked.
+   * @return true if successful, false if no region could be flushed
    */
   private boolean flushOneForGlobalPressure() {
     SortedMap<Long, Region> regionsBySize = server.getCopyOfOnlineRegionsSortedBySize();
@@ -159,7 +179,15 @@ class MemStoreFlusher implements FlushRequester {
         excludedRegions);
 
       if (bestAnyRegion == null && bestRegionReplica == null) {
-        LOG.error("Above memory mark but there are no flushable regions!");
+        boolean othersFlushing;
+        synchronized (regionsInQueue) {
+          othersFlushing = !regionsInPressureFlush.isEmpty();
+        }
+        if (othersFlushing) {
+          LOG.debug("Above memory mark but the flushable regions are already being flushed");
+        } else {
+          LOG.error("Above memory mark but there are no flushable regions!");
+        }
         return false;
       }
 
@@ -212,7 +240,20 @@ class MemStoreFlusher implements FlushRequester {
             + humanReadableInt(server.getRegionServerAccounting().getGlobalMemstoreSize())
             + ", Region memstore size="
             + humanReadableInt(regionToFlush.getMemstoreSize()));
-        flushedOne = flushRegion(regionToFlush, true, true);
+        synchronized (regionsInQueue) {
+          if (!regionsInPressureFlush.add(regionToFlush)) {
+            // Another handler picked it between our selection and now
+            excludedRegions.add(regionToFlush);
+            continue;
+          }
+        }
+        try {
+          flushedOne = flushRegion(regionToFlush, true, true);
+        } finally {
+          synchronized (regionsInQueue) {
+            regionsInPressureFlush.remove(regionToFlush);
+          }
+        }
 
         if (!flushedOne) {
           LOG.info("Excluding unflushable region " + regionToFlush +
@@ -225,9 +266,11 @@ class MemStoreFlusher implements FlushRequester {
   }
 
   private class FlushHandler extends HasThread {
+    private final boolean core;
 
-    private FlushHandler(String name) {
+    private FlushHandler(String name, boolean core) {
       super(name);
+      this.core = core;
     }
 
     @Override
@@ -235,13 +278,32 @@ class MemStoreFlusher implements FlushRequester {
       while (!server.isStopped()) {
         FlushQueueEntry fqe = null;
         try {
+          boolean aboveLowWaterMark = isAboveLowWaterMark();
+          if (!core && !aboveLowWaterMark) {
+            // Extra handlers sit out until memory pressure calls for them
+            synchronized (pressureSignal) {
+              pressureSignal.wait(threadWakeFrequency);
+            }
+            continue;
+          }
           wakeupPending.set(false); // allow someone to wake us up again
-          fqe = flushQueue.poll(threadWakeFrequency, TimeUnit.MILLISECONDS);
+          // Under pressure the extra handlers do not wait for a token; there is always a
+          // biggest region to flush
+          fqe = flushQueue.poll(core ? threadWakeFrequency : 0, TimeUnit.MILLISECONDS,
+            aboveLowWaterMark);
           if (fqe == null || fqe instanceof WakeupFlushThread) {
             if (isAboveLowWaterMark()) {
               LOG.debug("Flush thread woke up because memory above low water="
                   + TraditionalBinaryPrefix.long2String(globalMemStoreLimitLowMark, "", 1));
               if (!flushOneForGlobalPressure()) {
+                if (!core) {
+                  // Every region worth flushing is already being flushed by another handler.
+                  // Wait for one of those flushes to finish rather than spin.
+                  synchronized (blockSignal) {
+                    blockSignal.wait(threadWakeFrequency);
+                  }
+                  continue;
+                }
                 // Wasn't able to flush any region, but we're above low water mark
                 // This is unlikely to happen, but might happen when closing the
                 // entire server - another thread is flushing regions. We'll just
@@ -256,6 +318,8 @@ class MemStoreFlusher implements FlushRequester {
             continue;
           }
           FlushRegionEntry fre = (FlushRegionEntry) fqe;
+          server.metricsRegionServer.updateFlushQueueWaitTime(
+            Math.max(0, -fre.getDelay(TimeUnit.MILLISECONDS)));
           if (!flushRegion(fre)) {
             break;
           }
@@ -285,6 +349,11 @@ class MemStoreFlusher implements FlushRequester {
   private void wakeupFlushThread() {
     if (wakeupPending.compareAndSet(false, true)) {
       flushQueue.add(new WakeupFlushThread());
+      if (flushHandlers.length > coreHandlerCount) {
+        synchronized (pressureSignal) {
+          pressureSignal.notifyAll();
+        }
+      }
     }
   }
 
@@ -294,7 +363,7 @@ class MemStoreFlusher implements FlushRequester {
       boolean checkStoreFileCount) {
     synchronized (regionsInQueue) {
       for (Region region : regionsBySize.values()) {
-        if (excludedRegions.contains(region)) {
+        if (excludedRegions.contains(region) || regionsInPressureFlush.contains(region)) {
           continue;
         }
 
@@ -316,7 +385,7 @@ class MemStoreFlusher implements FlushRequester {
       Set<Region> excludedRegions) {
     synchronized (regionsInQueue) {
       for (Region region : regionsBySize.values()) {
-        if (excludedRegions.contains(region)) {
+        if (excludedRegions.contains(region) || regionsInPressureFlush.contains(region)) {
           continue;
         }
 
@@ -343,16 +412,20 @@ class MemStoreFlusher implements FlushRequester {
    * Return true if global memory usage is above the high watermark
    */
   private boolean isAboveHighWaterMark() {
-    return server.getRegionServerAccounting().
-      getGlobalMemstoreSize() >= globalMemStoreLimit;
+    RegionServerAccounting accounting = server.getRegionServerAccounting();
+    return accounting.getGlobalMemstoreHeapSize() >= globalMemStoreLimit
+        || (globalMemStoreOffheapLimit > 0
+            && accounting.getGlobalMemstoreOffheapSize() >= globalMemStoreOffheapLimit);
   }
 
   /**
    * Return true if we're above the high watermark
    */
   private boolean isAboveLowWaterMark() {
-    return server.getRegionServerAccounting().
-      getGlobalMemstoreSize() >= globalMemStoreLimitLowMark;
+    RegionServerAccounting accounting = server.getRegionServerAccounting();
+    return accounting.getGlobalMemstoreHeapSize() >= globalMemStoreLimitLowMark
+        || (globalMemStoreOffheapLimit > 0
+            && accounting.getGlobalMemstoreOffheapSize() >= globalMemStoreOffheapLimitLowMark);
   }
 
   @Override
@@ -403,7 +476,7 @@ class MemStoreFlusher implements FlushRequester {
     ThreadFactory flusherThreadFactory = Threads.newDaemonThreadFactory(
         server.getServerName().toShortString() + "-MemStoreFlusher", eh);
     for (int i = 0; i < flushHandlers.length; i++) {
-      flushHandlers[i] = new FlushHandler("MemStoreFlusher." + i);
+      flushHandlers[i] = new FlushHandler("MemStoreFlusher." + i, i < coreHandlerCount);
       flusherThreadFactory.newThread(flushHandlers[i]);
       flushHandlers[i].start();
     }
@@ -482,7 +555,9 @@ class MemStoreFlusher implements FlushRequester {
    * @param forceFlushAllStores whether we want to flush all store.
    * @return true if the region was successfully flushed, false otherwise. If
    * false, there will be accompanying log messages explaining why the region was
-   * not flushed.
+   * not flushed. An emergency flush the region declined to do (it was closing or
+   * already flushing, or had nothing to flush) also returns false, so the caller
+   * picks another region.
    */
   private boolean flushRegion(final Region region, final boolean emergencyFlush,
       boolean forceFlushAllStores) {
@@ -521,6 +596,8 @@ class MemStoreFlusher implements FlushRequester {
       if (flushResult.isFlushSucceeded()) {
         long endTime = EnvironmentEdgeManager.currentTime();
         server.metricsRegionServer.updateFlushTime(endTime - startTime);
+      } else if (emergencyFlush) {
+        return false;
       }
     } catch (DroppedSnapshotException ex) {
       // Cache flush can fail in a few places. If it fails in a critical
@@ -595,10 +672,15 @@ class MemStoreFlusher implements FlushRequester {
               startTime = EnvironmentEdgeManager.currentTime();
               LOG.info("Blocking updates on "
                   + server.toString()
-                  + ": the global memstore size "
+                  + ": the global memstore heap size "
+                  + TraditionalBinaryPrefix.long2String(server.getRegionServerAccounting()
+                      .getGlobalMemstoreHeapSize(), "", 1) + " (blocking at "
+                  + TraditionalBinaryPrefix.long2String(globalMemStoreLimit, "", 1)
+                  + ") or off-heap size "
                   + TraditionalBinaryPrefix.long2String(server.getRegionServerAccounting()
-                      .getGlobalMemstoreSize(), "", 1) + " is >= than blocking "
-                  + TraditionalBinaryPrefix.long2String(globalMemStoreLimit, "", 1) + " size");
+                      .getGlobalMemstoreOffheapSize(), "", 1) + " (blocking at "
+                  + TraditionalBinaryPrefix.long2String(globalMemStoreOffheapLimit, "", 1)
+                  + ") is too large");
             }
             blocked = true;
             wakeupFlushThread();
@@ -750,6 +832,10 @@ class MemStoreFlusher implements FlushRequester {
       return this.requeueCount;
     }
 
+    Region getRegion() {
+      return this.region;
+    }
+
     /**
      * @return whether we need to flush all stores.
      */
@@ -17,6 +17,7 @@
  */
 package org.apache.hadoop.hbase.regionserver;
 
+import org.apache.hadoop.hbase.Cell;
 import org.apache.hadoop.hbase.classification.InterfaceAudience;
 import org.apache.hadoop.hbase.util.ByteRange;
 
@@ -46,6 +47,14 @@ public interface MemStoreLAB {
    */
   ByteRange allocateBytes(int size);
 
+  /**
+   * Copy the given cell into a slice of this MemStoreLAB, in KeyValue format. If the cell is larger
+   * than the maximum size specified for this allocator, returns null.
+   * @param cell
+   * @return the cell over the copied bytes, with the sequence id of the passed one
+   */
+  Cell copyCellInto(Cell cell);
+
   /**
    * Close instance since it won't be used any more, try to put the chunks back to pool
    */
@@ -116,4 +116,8 @@ public class MetricsRegionServer {
   public void updateFlushTime(long t) {
     serverSource.updateFlushTime(t);
   }
+
+  public void updateFlushQueueWaitTime(long t) {
+    serverSource.updateFlushQueueWaitTime(t);
+  }
 }
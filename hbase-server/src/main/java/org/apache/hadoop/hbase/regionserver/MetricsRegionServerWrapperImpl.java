@@ -19,7 +19,10 @@ package org.apache.hadoop.hbase.regionserver;
 
 import java.io.IOException;
 import java.util.Collection;
+import java.util.Collections;
 import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
 import java.util.concurrent.ScheduledExecutorService;
 import java.util.concurrent.TimeUnit;
 
@@ -35,6 +38,8 @@ import org.apache.hadoop.hbase.ServerName;
 import org.apache.hadoop.hbase.io.hfile.BlockCache;
 import org.apache.hadoop.hbase.io.hfile.CacheConfig;
 import org.apache.hadoop.hbase.io.hfile.CacheStats;
+import org.apache.hadoop.hbase.io.hfile.GhostCache;
+import org.apache.hadoop.hbase.io.hfile.ResizableBlockCache;
 import org.apache.hadoop.hbase.mob.MobCacheConfig;
 import org.apache.hadoop.hbase.mob.MobFileCache;
 import org.apache.hadoop.hbase.regionserver.wal.MetricsWALSource;
@@ -84,6 +89,8 @@ class MetricsRegionServerWrapperImpl
   private volatile long flushedCellsSize = 0;
   private volatile long compactedCellsSize = 0;
   private volatile long majorCompactedCellsSize = 0;
+  private volatile long compactionsCachedOnWrite = 0;
+  private volatile long compactionsNotCachedOnWrite = 0;
   private volatile long cellsCountCompactedToMob = 0;
   private volatile long cellsCountCompactedFromMob = 0;
   private volatile long cellsSizeCompactedToMob = 0;
@@ -328,6 +335,14 @@ class MetricsRegionServerWrapperImpl
     return this.cacheStats.getPrimaryEvictedCount();
   }
 
+  @Override
+  public long getBlockCacheEvictionTime() {
+    if (this.cacheStats == null) {
+      return 0;
+    }
+    return this.cacheStats.getEvictionTime();
+  }
+
   @Override
   public double getBlockCacheHitPercent() {
     if (this.cacheStats == null) {
@@ -359,6 +374,39 @@ class MetricsRegionServerWrapperImpl
     return this.cacheStats.getFailedInserts();
   }
 
+  @Override
+  public long getBlockCacheDecompressCount() {
+    if (this.cacheStats == null) {
+      return 0;
+    }
+    return this.cacheStats.getDecompressCount();
+  }
+
+  @Override
+  public long getBlockCacheDecompressTime() {
+    if (this.cacheStats == null) {
+      return 0;
+    }
+    return this.cacheStats.getDecompressTime();
+  }
+
+  @Override
+  public Map<Integer, Float> getBlockCacheEstimatedHitRatios() {
+    if (!(this.blockCache instanceof ResizableBlockCache)) {
+      return Collections.emptyMap();
+    }
+    GhostCache ghostCache = ((ResizableBlockCache) this.blockCache).getGhostCache();
+    if (ghostCache == null) {
+      return Collections.emptyMap();
+    }
+    GhostCache.Curve curve = ghostCache.getCurve();
+    Map<Integer, Float> hitRatios = new TreeMap<Integer, Float>();
+    for (int i = 0; i < curve.getPointCount(); i++) {
+      hitRatios.put(Math.round(curve.getSize(i) * 100), curve.getHitRatio(i));
+    }
+    return hitRatios;
+  }
+
   @Override public void forceRecompute() {
     this.runnable.run();
   }
@@ -495,6 +543,16 @@ class MetricsRegionServerWrapperImpl
     return majorCompactedCellsSize;
   }
 
+  @Override
+  public long getCompactionsCachedOnWrite() {
+    return compactionsCachedOnWrite;
+  }
+
+  @Override
+  public long getCompactionsNotCachedOnWrite() {
+    return compactionsNotCachedOnWrite;
+  }
+
   @Override
   public long getCellsCountCompactedFromMob() {
     return cellsCountCompactedFromMob;
@@ -604,6 +662,8 @@ class MetricsRegionServerWrapperImpl
         long tempFlushedCellsSize = 0;
         long tempCompactedCellsSize = 0;
         long tempMajorCompactedCellsSize = 0;
+        long tempCompactionsCachedOnWrite = 0;
+        long tempCompactionsNotCachedOnWrite = 0;
         long tempCellsCountCompactedToMob = 0;
         long tempCellsCountCompactedFromMob = 0;
         long tempCellsSizeCompactedToMob = 0;
@@ -638,6 +698,8 @@ class MetricsRegionServerWrapperImpl
             tempFlushedCellsSize += store.getFlushedCellsSize();
             tempCompactedCellsSize += store.getCompactedCellsSize();
             tempMajorCompactedCellsSize += store.getMajorCompactedCellsSize();
+            tempCompactionsCachedOnWrite += store.getCompactionsCachedOnWrite();
+            tempCompactionsNotCachedOnWrite += store.getCompactionsNotCachedOnWrite();
             if (store instanceof HMobStore) {
               HMobStore mobStore = (HMobStore) store;
               tempCellsCountCompactedToMob += mobStore.getCellsCountCompactedToMob();
@@ -712,6 +774,8 @@ class MetricsRegionServerWrapperImpl
         flushedCellsSize = tempFlushedCellsSize;
         compactedCellsSize = tempCompactedCellsSize;
         majorCompactedCellsSize = tempMajorCompactedCellsSize;
+        compactionsCachedOnWrite = tempCompactionsCachedOnWrite;
+        compactionsNotCachedOnWrite = tempCompactionsNotCachedOnWrite;
         cellsCountCompactedToMob = tempCellsCountCompactedToMob;
         cellsCountCompactedFromMob = tempCellsCountCompactedFromMob;
         cellsSizeCompactedToMob = tempCellsSizeCompactedToMob;
@@ -744,6 +808,36 @@ class MetricsRegionServerWrapperImpl
     return this.dfsHedgedReadMetrics == null? 0: this.dfsHedgedReadMetrics.getHedgedReadWins();
   }
 
+  @Override
+  public long getParallelSeekCount() {
+    return this.regionServer.getParallelSeekExecutor() == null? 0:
+        this.regionServer.getParallelSeekExecutor().getParallelSeekCount();
+  }
+
+  @Override
+  public long getParallelSeekTime() {
+    return this.regionServer.getParallelSeekExecutor() == null? 0:
+        this.regionServer.getParallelSeekExecutor().getParallelSeekTime();
+  }
+
+  @Override
+  public long getParallelSeekFileCount() {
+    return this.regionServer.getParallelSeekExecutor() == null? 0:
+        this.regionServer.getParallelSeekExecutor().getParallelSeekFileCount();
+  }
+
+  @Override
+  public long getSerialSeekCount() {
+    return this.regionServer.getParallelSeekExecutor() == null? 0:
+        this.regionServer.getParallelSeekExecutor().getSerialSeekCount();
+  }
+
+  @Override
+  public long getSerialSeekTime() {
+    return this.regionServer.getParallelSeekExecutor() == null? 0:
+        this.regionServer.getParallelSeekExecutor().getSerialSeekTime();
+  }
+
   @Override
   public long getBlockedRequestsCount() {
     return blockedRequestsCount;
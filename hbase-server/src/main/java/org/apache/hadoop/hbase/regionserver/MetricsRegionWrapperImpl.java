@@ -29,6 +29,7 @@ import org.apache.hadoop.hbase.classification.InterfaceAudience;
 import org.apache.hadoop.hbase.CompatibilitySingletonFactory;
 import org.apache.hadoop.hbase.HRegionInfo;
 import org.apache.hadoop.hbase.HTableDescriptor;
+import org.apache.hadoop.hbase.io.hfile.PrefetchExecutor;
 import org.apache.hadoop.metrics2.MetricsExecutor;
 
 @InterfaceAudience.Private
@@ -43,6 +44,7 @@ public class MetricsRegionWrapperImpl implements MetricsRegionWrapper, Closeable
   private long numStoreFiles;
   private long memstoreSize;
   private long storeFileSize;
+  private long storeFlushTime;
 
   private ScheduledFuture<?> regionMetricsUpdateTask;
 
@@ -106,6 +108,11 @@ public class MetricsRegionWrapperImpl implements MetricsRegionWrapper, Closeable
     return storeFileSize;
   }
 
+  @Override
+  public long getStoreFlushTime() {
+    return storeFlushTime;
+  }
+
   @Override
   public long getReadRequestCount() {
     return this.region.getReadRequestsCount();
@@ -143,18 +150,21 @@ public class MetricsRegionWrapperImpl implements MetricsRegionWrapper, Closeable
       long tempNumStoreFiles = 0;
       long tempMemstoreSize = 0;
       long tempStoreFileSize = 0;
+      long tempStoreFlushTime = 0;
 
       if (region.stores != null) {
         for (Store store : region.stores.values()) {
           tempNumStoreFiles += store.getStorefilesCount();
           tempMemstoreSize += store.getMemStoreSize();
           tempStoreFileSize += store.getStorefilesSize();
+          tempStoreFlushTime += store.getFlushTime();
         }
       }
 
       numStoreFiles = tempNumStoreFiles;
       memstoreSize = tempMemstoreSize;
       storeFileSize = tempStoreFileSize;
+      storeFlushTime = tempStoreFlushTime;
     }
   }
 
@@ -171,4 +181,9 @@ public class MetricsRegionWrapperImpl implements MetricsRegionWrapper, Closeable
     return region.getRegionInfo().getReplicaId();
   }
 
+  @Override
+  public long getPrefetchRemainingSize() {
+    return PrefetchExecutor.getRemainingBytes(region.getRegionInfo().getEncodedName());
+  }
+
 }
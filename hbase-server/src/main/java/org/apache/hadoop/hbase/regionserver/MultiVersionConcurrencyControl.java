@@ -18,8 +18,10 @@
  */
 package org.apache.hadoop.hbase.regionserver;
 
-import java.util.LinkedList;
+import java.util.concurrent.atomic.AtomicInteger;
 import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.atomic.AtomicReferenceFieldUpdater;
 
 import com.google.common.annotations.VisibleForTesting;
 
@@ -27,7 +29,6 @@ import com.google.common.base.Objects;
 import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
 import org.apache.hadoop.hbase.classification.InterfaceAudience;
-import org.apache.hadoop.hbase.util.Bytes;
 import org.apache.hadoop.hbase.util.ClassSize;
 
 
@@ -35,35 +36,44 @@ import org.apache.hadoop.hbase.util.ClassSize;
  * Manages the read/write consistency. This provides an interface for readers to determine what
  * entries to ignore, and a mechanism for writers to obtain new write numbers, then "commit"
  * the new writes for readers to read (thus forming atomic transactions).
+ * <p>
+ * Outstanding writes are kept in a lock-free linked queue. A new write links itself behind the
+ * tail, taking the next write number as it does, so queue order is write number order. The head
+ * is the last write that readers can see; completing a write moves the head along for as long
+ * as the write after it is complete too, and whichever thread completes the write that was
+ * holding things up does the moving.
  */
 @InterfaceAudience.Private
 public class MultiVersionConcurrencyControl {
   private static final Log LOG = LogFactory.getLog(MultiVersionConcurrencyControl.class);
 
   final AtomicLong readPoint = new AtomicLong(0);
-  final AtomicLong writePoint = new AtomicLong(0);
   private final Object readWaiters = new Object();
+  // Threads in waitForRead; completions only notify when there is someone to notify
+  private final AtomicInteger readWaiterCount = new AtomicInteger();
   /**
    * Represents no value, or not set.
    */
   public static final long NONE = -1;
 
-  // This is the pending queue of writes.
-  //
-  // TODO(eclark): Should this be an array of fixed size to
-  // reduce the number of allocations on the write path?
-  // This could be equal to the number of handlers + a small number.
-  // TODO: St.Ack 20150903 Sounds good to me.
-  private final LinkedList<WriteEntry> writeQueue = new LinkedList<WriteEntry>();
+  // The pending queue of writes. head is the last write visible to readers, so never pending
+  // itself; the writes after it are, and tail is the last of those, or head if there are none.
+  // tail may lag the real end of the queue by a write while that write is being linked in.
+  private final AtomicReference<WriteEntry> head;
+  private final AtomicReference<WriteEntry> tail;
 
   public MultiVersionConcurrencyControl() {
     super();
+    WriteEntry start = WriteEntry.completed(0);
+    this.head = new AtomicReference<WriteEntry>(start);
+    this.tail = new AtomicReference<WriteEntry>(start);
   }
 
   /**
    * Construct and set read point. Write point is uninitialized.
    */
   public MultiVersionConcurrencyControl(long startPoint) {
+    this();
     tryAdvanceTo(startPoint, NONE);
   }
 
@@ -88,13 +98,15 @@ public class MultiVersionConcurrencyControl {
    * <code>readPoint</code>
    */
   boolean tryAdvanceTo(long newStartPoint, long expected) {
-    synchronized (writeQueue) {
-      long currentRead = this.readPoint.get();
-      long currentWrite = this.writePoint.get();
-      if (currentRead != currentWrite) {
-        throw new RuntimeException("Already used this mvcc; currentRead=" + currentRead +
-          ", currentWrite=" + currentWrite + "; too late to tryAdvanceTo");
+    while (true) {
+      WriteEntry last = lastEntry();
+      WriteEntry first = this.head.get();
+      if (first != last) {
+        throw new RuntimeException("Already used this mvcc; currentRead=" +
+          first.getWriteNumber() + ", currentWrite=" + last.getWriteNumber() +
+          "; too late to tryAdvanceTo");
       }
+      long currentRead = last.getWriteNumber();
       if (expected != NONE && expected != currentRead) {
         return false;
       }
@@ -103,10 +115,15 @@ public class MultiVersionConcurrencyControl {
         return false;
       }
 
-      readPoint.set(newStartPoint);
-      writePoint.set(newStartPoint);
+      // Link in an already completed entry carrying the new start point; doing it the way
+      // begin() links writes in orders it against any begin() racing with us
+      WriteEntry start = WriteEntry.completed(newStartPoint);
+      if (last.casNext(null, start)) {
+        this.tail.compareAndSet(last, start);
+        advanceReadPoint();
+        return true;
+      }
     }
-    return true;
   }
 
   /**
@@ -120,11 +137,19 @@ public class MultiVersionConcurrencyControl {
    * @see #completeAndWait(WriteEntry)
    */
   public WriteEntry begin() {
-    synchronized (writeQueue) {
-      long nextWriteNumber = writePoint.incrementAndGet();
-      WriteEntry e = new WriteEntry(nextWriteNumber);
-      writeQueue.add(e);
-      return e;
+    while (true) {
+      WriteEntry last = this.tail.get();
+      WriteEntry next = last.next;
+      if (next != null) {
+        // Someone is in the middle of linking in a write; help them along
+        this.tail.compareAndSet(last, next);
+        continue;
+      }
+      WriteEntry e = new WriteEntry(last.getWriteNumber() + 1);
+      if (last.casNext(null, e)) {
+        this.tail.compareAndSet(last, e);
+        return e;
+      }
     }
   }
 
@@ -145,8 +170,9 @@ public class MultiVersionConcurrencyControl {
    * of the passed in WriteEntry.  Thus, the write is visible to MVCC readers.
    */
   public void completeAndWait(WriteEntry e) {
-    complete(e);
-    waitForRead(e);
+    if (!complete(e)) {
+      waitForRead(e);
+    }
   }
 
   /**
@@ -164,40 +190,45 @@ public class MultiVersionConcurrencyControl {
    * @return true if e is visible to MVCC readers (that is, readpoint >= e.writeNumber)
    */
   public boolean complete(WriteEntry writeEntry) {
-    synchronized (writeQueue) {
-      writeEntry.markCompleted();
-      long nextReadValue = NONE;
-      boolean ranOnce = false;
-      while (!writeQueue.isEmpty()) {
-        ranOnce = true;
-        WriteEntry queueFirst = writeQueue.getFirst();
-
-        if (nextReadValue > 0) {
-          if (nextReadValue + 1 != queueFirst.getWriteNumber()) {
-            throw new RuntimeException("Invariant in complete violated, nextReadValue="
-                + nextReadValue + ", writeNumber=" + queueFirst.getWriteNumber());
-          }
-        }
+    writeEntry.markCompleted();
+    // Either we see the completion of every write ahead of ours here, or the thread completing
+    // the last of them sees ours, as each marks its own before looking at the others
+    advanceReadPoint();
+    return readPoint.get() >= writeEntry.getWriteNumber();
+  }
 
-        if (queueFirst.isCompleted()) {
-          nextReadValue = queueFirst.getWriteNumber();
-          writeQueue.removeFirst();
-        } else {
-          break;
-        }
+  /**
+   * Moves the head past the completed writes right behind it, and the read point to the last
+   * of them.
+   */
+  private void advanceReadPoint() {
+    WriteEntry first = this.head.get();
+    WriteEntry next = first.next;
+    if (next == null || !next.isCompleted()) {
+      return;
+    }
+    while (true) {
+      if (this.head.compareAndSet(first, next)) {
+        first = next;
+      } else {
+        // Another thread is advancing as well; carry on from wherever it got to
+        first = this.head.get();
       }
-
-      if (!ranOnce) {
-        throw new RuntimeException("There is no first!");
+      next = first.next;
+      if (next == null || !next.isCompleted()) {
+        break;
       }
-
-      if (nextReadValue > 0) {
-        synchronized (readWaiters) {
-          readPoint.set(nextReadValue);
-          readWaiters.notifyAll();
-        }
+    }
+    // Threads finishing their advance out of order must not move the read point back
+    long nextReadValue = first.getWriteNumber();
+    long currentRead = readPoint.get();
+    while (currentRead < nextReadValue && !readPoint.compareAndSet(currentRead, nextReadValue)) {
+      currentRead = readPoint.get();
+    }
+    if (readWaiterCount.get() > 0) {
+      synchronized (readWaiters) {
+        readWaiters.notifyAll();
       }
-      return readPoint.get() >= writeEntry.getWriteNumber();
     }
   }
 
@@ -207,31 +238,47 @@ public class MultiVersionConcurrencyControl {
   void waitForRead(WriteEntry e) {
     boolean interrupted = false;
     int count = 0;
-    synchronized (readWaiters) {
-      while (readPoint.get() < e.getWriteNumber()) {
-        if (count % 100 == 0 && count > 0) {
-          LOG.warn("STUCK: " + this);
-        }
-        count++;
-        try {
-          readWaiters.wait(10);
-        } catch (InterruptedException ie) {
-          // We were interrupted... finish the loop -- i.e. cleanup --and then
-          // on our way out, reset the interrupt flag.
-          interrupted = true;
+    readWaiterCount.incrementAndGet();
+    try {
+      synchronized (readWaiters) {
+        while (readPoint.get() < e.getWriteNumber()) {
+          if (count % 100 == 0 && count > 0) {
+            LOG.warn("STUCK: " + this);
+          }
+          count++;
+          try {
+            readWaiters.wait(10);
+          } catch (InterruptedException ie) {
+            // We were interrupted... finish the loop -- i.e. cleanup --and then
+            // on our way out, reset the interrupt flag.
+            interrupted = true;
+          }
         }
       }
+    } finally {
+      readWaiterCount.decrementAndGet();
     }
     if (interrupted) {
       Thread.currentThread().interrupt();
     }
   }
 
+  /**
+   * @return the last entry linked into the queue
+   */
+  private WriteEntry lastEntry() {
+    WriteEntry last = this.tail.get();
+    for (WriteEntry next = last.next; next != null; next = last.next) {
+      last = next;
+    }
+    return last;
+  }
+
   @VisibleForTesting
   public String toString() {
     return Objects.toStringHelper(this)
         .add("readPoint", readPoint)
-        .add("writePoint", writePoint).toString();
+        .add("writePoint", getWritePoint()).toString();
   }
 
   public long getReadPoint() {
@@ -240,7 +287,7 @@ public class MultiVersionConcurrencyControl {
 
   @VisibleForTesting
   public long getWritePoint() {
-    return writePoint.get();
+    return lastEntry().getWriteNumber();
   }
 
   /**
@@ -249,13 +296,28 @@ public class MultiVersionConcurrencyControl {
    */
   @InterfaceAudience.Private
   public static class WriteEntry {
+    private static final AtomicReferenceFieldUpdater<WriteEntry, WriteEntry> NEXT_UPDATER =
+        AtomicReferenceFieldUpdater.newUpdater(WriteEntry.class, WriteEntry.class, "next");
+
     private final long writeNumber;
-    private boolean completed = false;
+    private volatile boolean completed = false;
+    // The write begun right after this one
+    private volatile WriteEntry next;
 
     WriteEntry(long writeNumber) {
       this.writeNumber = writeNumber;
     }
 
+    static WriteEntry completed(long writeNumber) {
+      WriteEntry e = new WriteEntry(writeNumber);
+      e.completed = true;
+      return e;
+    }
+
+    boolean casNext(WriteEntry expect, WriteEntry update) {
+      return NEXT_UPDATER.compareAndSet(this, expect, update);
+    }
+
     void markCompleted() {
       this.completed = true;
     }
@@ -276,6 +338,5 @@ public class MultiVersionConcurrencyControl {
 
   public static final long FIXED_SIZE = ClassSize.align(
       ClassSize.OBJECT +
-      2 * Bytes.SIZEOF_LONG +
-      2 * ClassSize.REFERENCE);
+      5 * ClassSize.REFERENCE);
 }
@@ -0,0 +1,195 @@
+/**
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.hadoop.hbase.regionserver;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.hbase.Cell;
+import org.apache.hadoop.hbase.classification.InterfaceAudience;
+import org.apache.hadoop.hbase.util.Counter;
+import org.apache.hadoop.hbase.util.Threads;
+
+/**
+ * Seeks the StoreFileScanners of a StoreScanner in parallel, so that a cold read on a store with
+ * many files waits for the slowest file rather than for all of them in turn. Only the files
+ * whose blocks for the key are not in the block cache are handed to the pool, and only when
+ * there are enough of them for that to pay off; the others are sought in the calling thread while
+ * the pool works. When the pool is saturated, seeks it cannot queue run in the calling thread
+ * too.
+ */
+@InterfaceAudience.Private
+public class ParallelSeekExecutor {
+
+  /** Number of threads seeking files for all the stores of the server */
+  public static final String THREADS_KEY = "hbase.storescanner.parallel.seek.threads";
+  public static final int DEFAULT_THREADS = 10;
+
+  /** Number of seeks that may wait for a thread */
+  public static final String QUEUE_SIZE_KEY = "hbase.storescanner.parallel.seek.queue.size";
+  public static final int DEFAULT_QUEUE_SIZE = 100;
+
+  /** Fewest files not in the block cache for which a seek goes parallel */
+  public static final String MIN_UNCACHED_FILES_KEY =
+      "hbase.storescanner.parallel.seek.min.uncached.files";
+  public static final int DEFAULT_MIN_UNCACHED_FILES = 2;
+
+  private final ThreadPoolExecutor pool;
+  private final int minUncachedFiles;
+
+  private final Counter parallelSeekCount = new Counter();
+  private final Counter parallelSeekTime = new Counter();
+  private final Counter parallelSeekFileCount = new Counter();
+  private final Counter serialSeekCount = new Counter();
+  private final Counter serialSeekTime = new Counter();
+
+  public ParallelSeekExecutor(Configuration conf, String name) {
+    int threads = conf.getInt(THREADS_KEY, DEFAULT_THREADS);
+    this.pool = new ThreadPoolExecutor(threads, threads, 60, TimeUnit.SECONDS,
+        new ArrayBlockingQueue<Runnable>(Math.max(1, conf.getInt(QUEUE_SIZE_KEY,
+            DEFAULT_QUEUE_SIZE))),
+        Threads.newDaemonThreadFactory(name + "-parallelSeek"));
+    this.pool.allowCoreThreadTimeOut(true);
+    this.minUncachedFiles = Math.max(1, conf.getInt(MIN_UNCACHED_FILES_KEY,
+        DEFAULT_MIN_UNCACHED_FILES));
+  }
+
+  /**
+   * Seeks the scanners to the key, unless too few of them would read from the file system for
+   * seeking in parallel to be worth it.
+   * @return true if the scanners were sought, false if none were and the caller has to
+   */
+  public boolean seek(List<? extends KeyValueScanner> scanners, final Cell key)
+      throws IOException {
+    List<KeyValueScanner> uncached = new ArrayList<KeyValueScanner>();
+    List<KeyValueScanner> others = new ArrayList<KeyValueScanner>();
+    for (KeyValueScanner scanner : scanners) {
+      if (scanner instanceof StoreFileScanner
+          && !((StoreFileScanner) scanner).isSeekCached(key)) {
+        uncached.add(scanner);
+      } else {
+        others.add(scanner);
+      }
+    }
+    if (uncached.size() < minUncachedFiles) {
+      return false;
+    }
+    long start = System.nanoTime();
+    List<Future<Boolean>> futures = new ArrayList<Future<Boolean>>(uncached.size());
+    for (final KeyValueScanner scanner : uncached) {
+      try {
+        futures.add(pool.submit(new Callable<Boolean>() {
+          @Override
+          public Boolean call() throws IOException {
+            return scanner.seek(key);
+          }
+        }));
+      } catch (RejectedExecutionException e) {
+        others.add(scanner);
+      }
+    }
+    IOException error = null;
+    try {
+      for (KeyValueScanner scanner : others) {
+        scanner.seek(key);
+      }
+    } catch (IOException e) {
+      error = e;
+    }
+    // Wait for all the seeks even after a failure, so none is still running when the caller
+    // closes the scanners
+    for (Future<Boolean> future : futures) {
+      try {
+        future.get();
+      } catch (InterruptedException e) {
+        throw (InterruptedIOException) new InterruptedIOException().initCause(e);
+      } catch (ExecutionException e) {
+        if (error == null) {
+          error = e.getCause() instanceof IOException ? (IOException) e.getCause()
+              : new IOException(e.getCause());
+        }
+      }
+    }
+    if (error != null) {
+      throw error;
+    }
+    parallelSeekCount.increment();
+    parallelSeekTime.add(System.nanoTime() - start);
+    parallelSeekFileCount.add(futures.size());
+    return true;
+  }
+
+  /**
+   * Records a seek which {@link #seek(List, Cell)} left to the caller.
+   * @param nanos how long the caller took for it
+   */
+  public void serialSeekDone(long nanos) {
+    serialSeekCount.increment();
+    serialSeekTime.add(nanos);
+  }
+
+  /**
+   * @return the number of seeks which went parallel
+   */
+  public long getParallelSeekCount() {
+    return parallelSeekCount.get();
+  }
+
+  /**
+   * @return the time in ms the seeks which went parallel took
+   */
+  public long getParallelSeekTime() {
+    return TimeUnit.NANOSECONDS.toMillis(parallelSeekTime.get());
+  }
+
+  /**
+   * @return the number of files the pool sought
+   */
+  public long getParallelSeekFileCount() {
+    return parallelSeekFileCount.get();
+  }
+
+  /**
+   * @return the number of seeks which were left to the caller because their blocks were cached
+   */
+  public long getSerialSeekCount() {
+    return serialSeekCount.get();
+  }
+
+  /**
+   * @return the time in ms the seeks left to the caller took
+   */
+  public long getSerialSeekTime() {
+    return TimeUnit.NANOSECONDS.toMillis(serialSeekTime.get());
+  }
+
+  public void shutdown() {
+    pool.shutdownNow();
+  }
+}
@@ -266,23 +266,20 @@ public class RSRpcServices implements HBaseRPCErrorHandler,
   }
 
   /**
-   * An Rpc callback for doing shipped() call on a RegionScanner.
+   * An Rpc callback for adding back the lease of a RegionScanner once it is shipped.
    */
-  private class RegionScannerShippedCallBack implements RpcCallback {
+  private class RegionScannerLeaseCallBack implements RpcCallback {
 
     private final String scannerName;
-    private final RegionScanner scanner;
     private final Lease lease;
 
-    public RegionScannerShippedCallBack(String scannerName, RegionScanner scanner, Lease lease) {
+    public RegionScannerLeaseCallBack(String scannerName, Lease lease) {
       this.scannerName = scannerName;
-      this.scanner = scanner;
       this.lease = lease;
     }
 
     @Override
     public void run() throws IOException {
-      this.scanner.shipped();
       // We're done. On way out re-add the above removed lease. The lease was temp removed for this
       // Rpc call and we are at end of the call now. Time to add it back.
       if (scanners.containsKey(scannerName)) {
@@ -321,15 +318,12 @@ public class RSRpcServices implements HBaseRPCErrorHandler,
     private AtomicLong nextCallSeq = new AtomicLong(0);
     private RegionScanner s;
     private Region r;
-    final RpcCallback closeCallBack;
-    final RpcCallback shippedCallback;
+    final RegionScannerShipper shipper;
 
-    public RegionScannerHolder(RegionScanner s, Region r, RpcCallback closeCallBack,
-        RpcCallback shippedCallback) {
+    public RegionScannerHolder(RegionScanner s, Region r, RegionScannerShipper shipper) {
       this.s = s;
       this.r = r;
-      this.closeCallBack = closeCallBack;
-      this.shippedCallback = shippedCallback;
+      this.shipper = shipper;
     }
 
     private long getNextCallSeq() {
@@ -1124,14 +1118,15 @@ public class RSRpcServices implements HBaseRPCErrorHandler,
       throws LeaseStillHeldException {
     Lease lease = regionServer.leases.createLease(scannerName, this.scannerLeaseTimeoutPeriod,
         new ScannerListener(scannerName));
-    RpcCallback shippedCallback = new RegionScannerShippedCallBack(scannerName, s, lease);
     RpcCallback closeCallback;
     if (s instanceof RpcCallback) {
       closeCallback = (RpcCallback) s;
     } else {
       closeCallback = new RegionScannerCloseCallBack(s);
     }
-    RegionScannerHolder rsh = new RegionScannerHolder(s, r, closeCallback, shippedCallback);
+    RegionScannerShipper shipper = new RegionScannerShipper(s,
+        new RegionScannerLeaseCallBack(scannerName, lease), closeCallback);
+    RegionScannerHolder rsh = new RegionScannerHolder(s, r, shipper);
     RegionScannerHolder existing = scanners.putIfAbsent(scannerName, rsh);
     assert existing == null : "scannerId must be unique within regionserver's whole lifecycle!";
     return rsh;
@@ -2558,6 +2553,9 @@ public class RSRpcServices implements HBaseRPCErrorHandler,
           }
         }
         try {
+          if (context != null) {
+            rsh.shipper.callStarted();
+          }
           // Remove lease while its being processed in server; protects against case
           // where processing of request takes > lease expiration time.
           lease = regionServer.leases.removeLease(scannerName);
@@ -2759,7 +2757,7 @@ public class RSRpcServices implements HBaseRPCErrorHandler,
           throw e;
         } finally {
           if (context != null) {
-            context.setCallBack(rsh.shippedCallback);
+            context.setCallBack(rsh.shipper.callEnded());
           }
           // Adding resets expiration time on lease.
           if (scanners.containsKey(scannerName)) {
@@ -2782,11 +2780,8 @@ public class RSRpcServices implements HBaseRPCErrorHandler,
         }
         rsh = scanners.remove(scannerName);
         if (rsh != null) {
-          if (context != null) {
-            context.setCallBack(rsh.closeCallBack);
-          } else {
-            rsh.s.close();
-          }
+          // Waits for the responses still referring to the scanner's cells, this one included
+          rsh.shipper.close();
           try {
             regionServer.leases.cancelLease(scannerName);
           } catch (LeaseException le) {
@@ -2812,9 +2807,8 @@ public class RSRpcServices implements HBaseRPCErrorHandler,
         RegionScannerHolder rsh = scanners.remove(scannerName);
         if (rsh != null) {
           try {
-            RegionScanner scanner = rsh.s;
             LOG.warn(scannerName + " encountered " + ie.getMessage() + ", closing ...");
-            scanner.close();
+            rsh.shipper.close();
             regionServer.leases.cancelLease(scannerName);
           } catch (IOException e) {
            LOG.warn("Getting exception closing " + scannerName, e);
@@ -0,0 +1,126 @@
+/**
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.hadoop.hbase.regionserver;
+
+import java.io.IOException;
+
+import org.apache.hadoop.hbase.classification.InterfaceAudience;
+import org.apache.hadoop.hbase.ipc.RpcCallback;
+
+/**
+ * Calls shipped() on a RegionScanner once no response of a scan call on it refers to its cells
+ * any more. The rpc server may hold back the callback of a call whose response refers to cells
+ * until that response is written out, which can be after the next call on the scanner has
+ * started or even ended. So each call gets a callback of its own, and the scanner is shipped only
+ * once the callbacks of all the calls that ended have run and no call is in progress.
+ * <p>
+ * The scanner lease, removed while a call is in progress, is given back when the scanner is
+ * shipped, or when the next call starts while an earlier response is still being written.
+ * <p>
+ * Closing goes through here too, so that the scanner is never closed under a call in progress
+ * or a response still being written, and never shipped after it was closed.
+ */
+@InterfaceAudience.Private
+class RegionScannerShipper {
+  private final RegionScanner scanner;
+  private final RpcCallback leaseReturner;
+  private final RpcCallback closer;
+  private int callsInProgress = 0;
+  // Calls which ended but whose callback has not run yet
+  private int unshippedCalls = 0;
+  private boolean leaseOut = false;
+  private boolean closeRequested = false;
+  private boolean closed = false;
+
+  /**
+   * @param scanner the scanner to ship
+   * @param leaseReturner gives the scanner lease back
+   * @param closer closes the scanner
+   */
+  RegionScannerShipper(RegionScanner scanner, RpcCallback leaseReturner, RpcCallback closer) {
+    this.scanner = scanner;
+    this.leaseReturner = leaseReturner;
+    this.closer = closer;
+  }
+
+  /**
+   * Called when a scan call on the scanner starts, before it takes the lease.
+   */
+  synchronized void callStarted() throws IOException {
+    callsInProgress++;
+    returnLease();
+  }
+
+  /**
+   * Called when a scan call on the scanner ends.
+   * @return the callback to set on the call
+   */
+  synchronized RpcCallback callEnded() {
+    callsInProgress--;
+    unshippedCalls++;
+    leaseOut = true;
+    return new RpcCallback() {
+      private boolean ran = false;
+
+      @Override
+      public void run() throws IOException {
+        synchronized (RegionScannerShipper.this) {
+          if (ran) {
+            return;
+          }
+          ran = true;
+          unshippedCalls--;
+          if (unshippedCalls == 0 && callsInProgress == 0) {
+            if (closeRequested) {
+              closeScanner();
+            } else {
+              scanner.shipped();
+              returnLease();
+            }
+          }
+        }
+      }
+    };
+  }
+
+  /**
+   * Closes the scanner, right away if no call is in progress and all callbacks have run,
+   * otherwise in place of the shipped() of the last of them.
+   */
+  synchronized void close() throws IOException {
+    closeRequested = true;
+    if (unshippedCalls == 0 && callsInProgress == 0) {
+      closeScanner();
+    }
+  }
+
+  private void closeScanner() throws IOException {
+    if (!closed) {
+      closed = true;
+      closer.run();
+    }
+  }
+
+  private void returnLease() throws IOException {
+    if (leaseOut) {
+      leaseOut = false;
+      leaseReturner.run();
+    }
+  }
+}
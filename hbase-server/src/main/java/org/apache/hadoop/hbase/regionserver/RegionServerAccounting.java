@@ -22,12 +22,19 @@ import java.util.concurrent.ConcurrentMap;
 import java.util.concurrent.ConcurrentSkipListMap;
 import java.util.concurrent.atomic.AtomicLong;
 
+import org.apache.hadoop.conf.Configuration;
 import org.apache.hadoop.hbase.classification.InterfaceAudience;
+import org.apache.hadoop.hbase.io.util.HeapMemorySizeUtil;
 import org.apache.hadoop.hbase.util.Bytes;
 
 /**
  * RegionServerAccounting keeps record of some basic real time information about
  * the Region Server. Currently, it only keeps record the global memstore size. 
+ * <p>
+ * When the memstores are off heap (see {@link HeapMemorySizeUtil#MEMSTORE_OFFHEAP_SIZE_KEY}), the
+ * global memstore size also counts the Cell data kept in direct memory. It is then split into
+ * {@link #getGlobalMemstoreHeapSize()}, bounded by the heap share of the memstores, and
+ * {@link #getGlobalMemstoreOffheapSize()}, bounded by the off-heap budget.
  */
 @InterfaceAudience.Private
 public class RegionServerAccounting {
@@ -39,6 +46,46 @@ public class RegionServerAccounting {
   private final ConcurrentMap<byte[], AtomicLong> replayEditsPerRegion = 
     new ConcurrentSkipListMap<byte[], AtomicLong>(Bytes.BYTES_COMPARATOR);
 
+  // Off-heap budget of the memstores in bytes, 0 when they are on heap
+  private final long globalMemstoreOffheapLimit;
+
+  public RegionServerAccounting() {
+    this.globalMemstoreOffheapLimit = 0;
+  }
+
+  public RegionServerAccounting(Configuration conf) {
+    this.globalMemstoreOffheapLimit = HeapMemorySizeUtil.getOffheapGlobalMemstoreSize(conf);
+  }
+
+  /**
+   * @return true if the memstore data is kept in off-heap MSLAB chunks
+   */
+  public boolean isMemstoreOffheap() {
+    return this.globalMemstoreOffheapLimit > 0;
+  }
+
+  /**
+   * @return the off-heap budget of the memstores in bytes, 0 when they are on heap
+   */
+  public long getGlobalMemstoreOffheapLimit() {
+    return this.globalMemstoreOffheapLimit;
+  }
+
+  /**
+   * @return the Cell data the memstores keep in off-heap MSLAB chunks, 0 when they are on heap
+   */
+  public long getGlobalMemstoreOffheapSize() {
+    return isMemstoreOffheap() ? HeapMemStoreLAB.getGlobalOffheapDataSize() : 0;
+  }
+
+  /**
+   * @return the part of the global memstore size that is on the heap: the Cells and the memstore
+   *         indexes, without the Cell data kept off heap
+   */
+  public long getGlobalMemstoreHeapSize() {
+    return Math.max(0, getGlobalMemstoreSize() - getGlobalMemstoreOffheapSize());
+  }
+
   /**
    * @return the global Memstore size in the RegionServer
    */
@@ -195,6 +195,11 @@ public interface RegionServerServices extends OnlineRegions, FavoredNodesForRegi
    */
   ExecutorService getExecutorService();
 
+  /**
+   * @return the executor seeking store files in parallel, or null if that is disabled
+   */
+  ParallelSeekExecutor getParallelSeekExecutor();
+
   /**
    * @return set of recovering regions on the hosting region server
    */
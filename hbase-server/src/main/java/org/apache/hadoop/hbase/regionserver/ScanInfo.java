@@ -98,7 +98,8 @@ public class ScanInfo {
     this.cellsPerTimeoutCheck = perHeartbeat > 0?
         perHeartbeat: StoreScanner.DEFAULT_HBASE_CELLS_SCANNED_PER_HEARTBEAT_CHECK;
     this.parallelSeekEnabled =
-      conf.getBoolean(StoreScanner.STORESCANNER_PARALLEL_SEEK_ENABLE, false);
+      conf.getBoolean(StoreScanner.STORESCANNER_PARALLEL_SEEK_ENABLE,
+        StoreScanner.DEFAULT_STORESCANNER_PARALLEL_SEEK_ENABLE);
     this.conf = conf;
   }
 
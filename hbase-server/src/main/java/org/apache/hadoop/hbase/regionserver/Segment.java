@@ -0,0 +1,340 @@
+/**
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.hadoop.hbase.regionserver;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NavigableSet;
+import java.util.SortedSet;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.hbase.Cell;
+import org.apache.hadoop.hbase.CellComparator;
+import org.apache.hadoop.hbase.CellUtil;
+import org.apache.hadoop.hbase.KeyValue;
+import org.apache.hadoop.hbase.KeyValueUtil;
+import org.apache.hadoop.hbase.classification.InterfaceAudience;
+import org.apache.hadoop.hbase.client.Scan;
+import org.apache.hadoop.hbase.io.TimeRange;
+import org.apache.hadoop.hbase.util.ClassSize;
+import org.apache.hadoop.hbase.util.ReflectionUtils;
+
+/**
+ * A sorted run of Cells held by a {@link CompactingMemStore}, together with its time range, its
+ * heap size and the MemStoreLABs its Cells were copied into.
+ * <p>
+ * The memstore only writes to its active segment. Once a segment has been pushed into the
+ * {@link CompactionPipeline} it is immutable; the only exception is {@link #rollback(Cell)},
+ * which is an error recovery path.
+ * </p>
+ */
+@InterfaceAudience.Private
+public class Segment {
+
+  private final NavigableSet<Cell> cellSet;
+  private final CellComparator comparator;
+  // Heap overhead charged per Cell by the size accounting of this segment
+  private final long entryOverhead;
+  private final TimeRangeTracker timeRangeTracker;
+  // Heap size of the Cells in this segment, including the per-entry overhead of the cell set
+  private final AtomicLong size;
+  // Only set on the active segment; Cells added through add() are cloned into it
+  private final MemStoreLAB memStoreLAB;
+  // Every MemStoreLAB holding chunks referenced by Cells of this segment. A segment built by an
+  // in-memory compaction inherits the allocators of all the segments it was merged from.
+  private final List<MemStoreLAB> allocators;
+  private volatile boolean tagsPresent;
+
+  Segment(NavigableSet<Cell> cellSet, CellComparator comparator, long entryOverhead,
+      MemStoreLAB memStoreLAB, List<MemStoreLAB> allocators, TimeRangeTracker timeRangeTracker,
+      long size, boolean tagsPresent) {
+    this.cellSet = cellSet;
+    this.comparator = comparator;
+    this.entryOverhead = entryOverhead;
+    this.memStoreLAB = memStoreLAB;
+    this.allocators = allocators;
+    this.timeRangeTracker = timeRangeTracker;
+    this.size = new AtomicLong(size);
+    this.tagsPresent = tagsPresent;
+  }
+
+  /**
+   * Creates an empty segment that can be written to, backed by a {@link CellSkipListSet} and,
+   * if enabled in the configuration, a fresh MemStoreLAB.
+   */
+  static Segment createMutableSegment(Configuration conf, CellComparator comparator) {
+    MemStoreLAB memStoreLAB = null;
+    List<MemStoreLAB> allocators = Collections.emptyList();
+    if (conf.getBoolean(DefaultMemStore.USEMSLAB_KEY, true)) {
+      String className = conf.get(DefaultMemStore.MSLAB_CLASS_NAME,
+          HeapMemStoreLAB.class.getName());
+      memStoreLAB = ReflectionUtils.instantiateWithCustomCtor(className,
+          new Class[] { Configuration.class }, new Object[] { conf });
+      allocators = Collections.singletonList(memStoreLAB);
+    }
+    return new Segment(new CellSkipListSet(comparator), comparator,
+        ClassSize.CONCURRENT_SKIPLISTMAP_ENTRY, memStoreLAB, allocators, new TimeRangeTracker(),
+        0, false);
+  }
+
+  /**
+   * Creates an immutable segment over a flat array of Cells.
+   * @param cellSet Cells of the new segment, sorted by <code>comparator</code>
+   * @param sources segments the Cells were taken from; their allocators are inherited
+   * @param size heap size of <code>cellSet</code>, as given by
+   *          {@link CellArraySet#heapSizeOf(Cell)}
+   */
+  static Segment createImmutableSegment(CellArraySet cellSet, CellComparator comparator,
+      List<Segment> sources, TimeRangeTracker timeRangeTracker, long size) {
+    List<MemStoreLAB> allocators = new ArrayList<MemStoreLAB>();
+    boolean tagsPresent = false;
+    for (Segment source : sources) {
+      allocators.addAll(source.allocators);
+      tagsPresent |= source.isTagsPresent();
+    }
+    return new Segment(cellSet, comparator, CellArraySet.ENTRY_OVERHEAD, null, allocators,
+        timeRangeTracker, size, tagsPresent);
+  }
+
+  /**
+   * Returns this segment with its Cells copied into a {@link CellArraySet}, or this segment if
+   * already flat. The copy keeps the size this segment was accounted with, so the memstore size
+   * reported to the region does not change; the heap saved shows once the segment is flushed.
+   * The caller must make sure nothing writes to this segment any more.
+   */
+  Segment flatten() {
+    if (this.cellSet instanceof CellArraySet) {
+      return this;
+    }
+    return new Segment(new CellArraySet(this.comparator, this.cellSet), this.comparator,
+        this.entryOverhead, null, this.allocators, this.timeRangeTracker, getSize(),
+        this.tagsPresent);
+  }
+
+  /**
+   * @return heap size charged for <code>cell</code> in this segment
+   */
+  private long heapSizeOf(Cell cell) {
+    return ClassSize.align(this.entryOverhead + CellUtil.estimatedHeapSizeOf(cell));
+  }
+
+  /**
+   * Adds the passed Cell, cloning it into this segment's MemStoreLAB if there is one.
+   * @return change in heap size of this segment
+   */
+  long add(Cell cell) {
+    return internalAdd(maybeCloneWithAllocator(cell));
+  }
+
+  /**
+   * Adds the passed Cell as is, without cloning it.
+   * @return change in heap size of this segment
+   */
+  long internalAdd(Cell cell) {
+    long s = this.cellSet.add(cell) ? heapSizeOf(cell) : 0;
+    // In no tags case this NoTagsKeyValue.getTagsLength() is a cheap call.
+    if (cell.getTagsLength() > 0) {
+      this.tagsPresent = true;
+    }
+    this.timeRangeTracker.includeTimestamp(cell);
+    this.size.addAndGet(s);
+    return s;
+  }
+
+  private Cell maybeCloneWithAllocator(Cell cell) {
+    if (this.memStoreLAB == null) {
+      return cell;
+    }
+    Cell newCell = this.memStoreLAB.copyCellInto(cell);
+    if (newCell == null) {
+      // The allocation was too large, allocator decided
+      // not to do anything with it.
+      return cell;
+    }
+    return newCell;
+  }
+
+  /**
+   * Inserts the passed Cell and removes the versions of the same row/family/qualifier that no
+   * scanner at or above <code>readpoint</code> can see. See {@link MemStore#upsert(Iterable, long)}.
+   * @return change in heap size of this segment
+   */
+  long upsert(Cell cell, long readpoint) {
+    // Do not clone into the MemStoreLAB; see DefaultMemStore#upsert for the reason
+    long addedSize = internalAdd(cell);
+    Cell firstCell = KeyValueUtil.createFirstOnRow(
+        cell.getRowArray(), cell.getRowOffset(), cell.getRowLength(),
+        cell.getFamilyArray(), cell.getFamilyOffset(), cell.getFamilyLength(),
+        cell.getQualifierArray(), cell.getQualifierOffset(), cell.getQualifierLength());
+    Iterator<Cell> it = this.cellSet.tailSet(firstCell).iterator();
+    // Versions visible to oldest scanner.
+    int versionsVisible = 0;
+    while (it.hasNext()) {
+      Cell cur = it.next();
+      if (cell == cur) {
+        // ignore the one just put in
+        continue;
+      }
+      // check that this is the row and column we are interested in, otherwise bail
+      if (CellUtil.matchingRow(cell, cur) && CellUtil.matchingQualifier(cell, cur)) {
+        // only remove Puts that concurrent scanners cannot possibly see
+        if (cur.getTypeByte() == KeyValue.Type.Put.getCode() &&
+            cur.getSequenceId() <= readpoint) {
+          if (versionsVisible >= 1) {
+            long delta = heapSizeOf(cur);
+            addedSize -= delta;
+            this.size.addAndGet(-delta);
+            it.remove();
+          } else {
+            versionsVisible++;
+          }
+        }
+      } else {
+        // past the row or column, done
+        break;
+      }
+    }
+    return addedSize;
+  }
+
+  /**
+   * Removes the passed Cell if this segment holds it with the same sequence id.
+   * @return heap size released, 0 if the Cell was not found
+   */
+  long rollback(Cell cell) {
+    // The comparator includes the sequence id, so only the very same edit is removed
+    if (!this.cellSet.remove(cell)) {
+      return 0;
+    }
+    long s = heapSizeOf(cell);
+    this.size.addAndGet(-s);
+    return s;
+  }
+
+  /**
+   * @return a scanner over this segment that only returns Cells visible at <code>readPoint</code>
+   */
+  SegmentScanner getScanner(long readPoint) {
+    return new SegmentScanner(this, readPoint);
+  }
+
+  /**
+   * @return False if the passed scan definitely does not need any Cell of this segment
+   */
+  boolean shouldSeek(Scan scan, Store store, long oldestUnexpiredTS) {
+    byte[] cf = store.getFamily().getName();
+    TimeRange timeRange = scan.getColumnFamilyTimeRange().get(cf);
+    if (timeRange == null) {
+      timeRange = scan.getTimeRange();
+    }
+    return this.timeRangeTracker.includesTimeRange(timeRange)
+        && this.timeRangeTracker.getMaximumTimestamp() >= oldestUnexpiredTS;
+  }
+
+  SortedSet<Cell> tailSet(Cell firstCell) {
+    return this.cellSet.tailSet(firstCell);
+  }
+
+  SortedSet<Cell> headSet(Cell firstKeyOnRow) {
+    return this.cellSet.headSet(firstKeyOnRow);
+  }
+
+  Cell last() {
+    return this.cellSet.isEmpty() ? null : this.cellSet.last();
+  }
+
+  NavigableSet<Cell> getCellSet() {
+    return this.cellSet;
+  }
+
+  CellComparator getComparator() {
+    return this.comparator;
+  }
+
+  TimeRangeTracker getTimeRangeTracker() {
+    return this.timeRangeTracker;
+  }
+
+  /**
+   * @return heap size of the Cells in this segment
+   */
+  long getSize() {
+    return this.size.get();
+  }
+
+  int getCellsCount() {
+    return this.cellSet.size();
+  }
+
+  boolean isEmpty() {
+    return this.cellSet.isEmpty();
+  }
+
+  boolean isTagsPresent() {
+    return this.tagsPresent;
+  }
+
+  void incScannerCount() {
+    for (MemStoreLAB allocator : this.allocators) {
+      allocator.incScannerCount();
+    }
+  }
+
+  void decScannerCount() {
+    for (MemStoreLAB allocator : this.allocators) {
+      allocator.decScannerCount();
+    }
+  }
+
+  /**
+   * @return true if Cells of this segment live in the chunks of a MemStoreLAB
+   */
+  boolean hasAllocators() {
+    return !this.allocators.isEmpty();
+  }
+
+  /**
+   * Keeps charging this segment for <code>droppedSize</code> data bytes of Cells that an
+   * in-memory compaction dropped but whose MemStoreLAB chunks this segment still holds. Their
+   * index entries and Cell objects are gone, so only the data is retained. The bytes are
+   * released with the rest of the segment size once it is flushed and its chunks are freed.
+   */
+  void retainDroppedSize(long droppedSize) {
+    this.size.addAndGet(droppedSize);
+  }
+
+  /**
+   * Closes the allocators of this segment. Only call this once no other segment shares them,
+   * that is once the segment has been flushed.
+   */
+  void close() {
+    for (MemStoreLAB allocator : this.allocators) {
+      allocator.close();
+    }
+  }
+
+  @Override
+  public String toString() {
+    return "cellsCount=" + getCellsCount() + ", size=" + getSize() + ", timeRange="
+        + this.timeRangeTracker;
+  }
+}
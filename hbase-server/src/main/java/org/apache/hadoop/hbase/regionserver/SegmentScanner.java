@@ -0,0 +1,195 @@
+/**
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.hadoop.hbase.regionserver;
+
+import java.util.Iterator;
+import java.util.SortedSet;
+
+import org.apache.hadoop.hbase.Cell;
+import org.apache.hadoop.hbase.CellComparator;
+import org.apache.hadoop.hbase.CellUtil;
+import org.apache.hadoop.hbase.classification.InterfaceAudience;
+import org.apache.hadoop.hbase.client.Scan;
+
+/**
+ * A scanner over a single {@link Segment} of a {@link CompactingMemStore}. Only Cells whose
+ * sequence id is at or below the read point are returned.
+ * <p>
+ * Like DefaultMemStore.MemStoreScanner this does not hold a position in the underlying set; after
+ * a reseek it restores its iterator from the last Cell it iterated to.
+ * </p>
+ */
+@InterfaceAudience.Private
+public class SegmentScanner extends NonLazyKeyValueScanner {
+
+  private final Segment segment;
+  private final CellComparator comparator;
+  private final long readPoint;
+
+  private Iterator<Cell> iter;
+  // the pre-calculated Cell to be returned by peek() or next()
+  private Cell current;
+  // last iterated Cell, to restore the iterator state after reseek
+  private Cell last;
+  // A flag represents whether could stop skipping Cells for MVCC
+  // if have encountered the next row. Only used for reversed scan
+  private boolean stopSkippingCellsIfNextRow = false;
+  private boolean closed = false;
+
+  SegmentScanner(Segment segment, long readPoint) {
+    this.segment = segment;
+    this.comparator = segment.getComparator();
+    this.readPoint = readPoint;
+    this.segment.incScannerCount();
+  }
+
+  /**
+   * @param startCell Cell we are moving on from; bounds the skipping of invisible Cells when
+   *          seeking backwards
+   * @return the next Cell visible at our read point, or null
+   */
+  private Cell getNext(Cell startCell) {
+    Cell next = null;
+    try {
+      while (this.iter.hasNext()) {
+        next = this.iter.next();
+        if (next.getSequenceId() <= this.readPoint) {
+          return next;
+        }
+        if (this.stopSkippingCellsIfNextRow && startCell != null
+            && this.comparator.compareRows(next, startCell) > 0) {
+          return null;
+        }
+      }
+      return null;
+    } finally {
+      if (next != null) {
+        this.last = next;
+      }
+    }
+  }
+
+  @Override
+  public synchronized Cell peek() {
+    return this.current;
+  }
+
+  @Override
+  public synchronized Cell next() {
+    if (this.current == null) {
+      return null;
+    }
+    Cell ret = this.current;
+    this.current = getNext(ret);
+    return ret;
+  }
+
+  @Override
+  public synchronized boolean seek(Cell key) {
+    if (key == null) {
+      close();
+      return false;
+    }
+    this.iter = this.segment.tailSet(key).iterator();
+    this.last = null;
+    this.current = getNext(key);
+    return this.current != null;
+  }
+
+  @Override
+  public synchronized boolean reseek(Cell key) {
+    // See DefaultMemStore.MemStoreScanner#reseek: the iterator cannot be moved forward, so restart
+    // from the highest of the key and the last Cell we iterated to.
+    Cell from = this.last == null || this.comparator.compare(key, this.last) > 0 ? key : this.last;
+    this.iter = this.segment.tailSet(from).iterator();
+    this.current = getNext(key);
+    return this.current != null;
+  }
+
+  /**
+   * Segments are always newer than any store file, so return max value as sequence id.
+   */
+  @Override
+  public long getSequenceID() {
+    return Long.MAX_VALUE;
+  }
+
+  @Override
+  public synchronized void close() {
+    if (this.closed) {
+      return;
+    }
+    this.iter = null;
+    this.current = null;
+    this.last = null;
+    this.segment.decScannerCount();
+    this.closed = true;
+  }
+
+  @Override
+  public boolean shouldUseScanner(Scan scan, Store store, long oldestUnexpiredTS) {
+    return this.segment.shouldSeek(scan, store, oldestUnexpiredTS);
+  }
+
+  @Override
+  public synchronized boolean backwardSeek(Cell key) {
+    seek(key);
+    if (peek() == null || this.comparator.compareRows(peek(), key) > 0) {
+      return seekToPreviousRow(key);
+    }
+    return true;
+  }
+
+  @Override
+  public synchronized boolean seekToPreviousRow(Cell originalKey) {
+    Cell key = originalKey;
+    while (true) {
+      SortedSet<Cell> head = this.segment.headSet(CellUtil.createFirstOnRow(key));
+      if (head.isEmpty()) {
+        this.current = null;
+        return false;
+      }
+      Cell firstKeyOnPreviousRow = CellUtil.createFirstOnRow(head.last());
+      this.stopSkippingCellsIfNextRow = true;
+      seek(firstKeyOnPreviousRow);
+      this.stopSkippingCellsIfNextRow = false;
+      if (peek() != null && this.comparator.compareRows(peek(), firstKeyOnPreviousRow) <= 0) {
+        return true;
+      }
+      key = firstKeyOnPreviousRow;
+    }
+  }
+
+  @Override
+  public synchronized boolean seekToLastRow() {
+    Cell lastCell = this.segment.last();
+    if (lastCell == null) {
+      return false;
+    }
+    if (seek(CellUtil.createFirstOnRow(lastCell))) {
+      return true;
+    }
+    return seekToPreviousRow(lastCell);
+  }
+
+  @Override
+  public String toString() {
+    return "SegmentScanner[" + this.segment + ", readPoint=" + this.readPoint + "]";
+  }
+}
@@ -197,6 +197,26 @@ public interface Store extends HeapSize, StoreConfigInformation, PropagatingConf
     boolean shouldDropBehind
   ) throws IOException;
 
+  /**
+   * @param maxKeyCount
+   * @param compression Compression algorithm to use
+   * @param isCompaction whether we are creating a new file in a compaction
+   * @param includeMVCCReadpoint whether we should out the MVCC readpoint
+   * @param shouldDropBehind should the writer drop caches behind writes
+   * @param cacheDataOnWrite whether a compaction caches the data blocks it writes; ignored
+   *          when not compacting
+   * @return Writer for a new StoreFile in the tmp dir.
+   */
+  StoreFile.Writer createWriterInTmp(
+    long maxKeyCount,
+    Compression.Algorithm compression,
+    boolean isCompaction,
+    boolean includeMVCCReadpoint,
+    boolean includesTags,
+    boolean shouldDropBehind,
+    boolean cacheDataOnWrite
+  ) throws IOException;
+
 
 
 
@@ -413,6 +433,12 @@ public interface Store extends HeapSize, StoreConfigInformation, PropagatingConf
    */
   long getFlushedCellsSize();
 
+  /**
+   * @return The total time spent writing out and committing flushes of this store, in
+   *         milliseconds
+   */
+  long getFlushTime();
+
   /**
    * @return The number of cells processed during minor compactions
    */
@@ -433,6 +459,18 @@ public interface Store extends HeapSize, StoreConfigInformation, PropagatingConf
    */
   long getMajorCompactedCellsSize();
 
+  /**
+   * @return The number of compactions whose output was cached on write and prefetched, as the
+   *         files compacted were hot
+   */
+  long getCompactionsCachedOnWrite();
+
+  /**
+   * @return The number of compactions whose output was not cached, as the files compacted were
+   *         cold
+   */
+  long getCompactionsNotCachedOnWrite();
+
   /*
    * @param o Observer who wants to know about changes in set of Readers
    */
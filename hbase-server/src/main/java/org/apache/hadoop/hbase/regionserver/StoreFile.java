@@ -57,6 +57,7 @@ import org.apache.hadoop.hbase.nio.ByteBuff;
 import org.apache.hadoop.hbase.regionserver.compactions.Compactor;
 import org.apache.hadoop.hbase.util.BloomFilter;
 import org.apache.hadoop.hbase.util.BloomFilterFactory;
+import org.apache.hadoop.hbase.util.BloomFilterUtil;
 import org.apache.hadoop.hbase.util.BloomFilterWriter;
 import org.apache.hadoop.hbase.util.Bytes;
 import org.apache.hadoop.hbase.util.Writables;
@@ -102,6 +103,10 @@ public class StoreFile {
   public static final byte[] BLOOM_FILTER_TYPE_KEY =
       Bytes.toBytes("BLOOM_FILTER_TYPE");
 
+  /** Bloom filter parameter in FileInfo: the row prefix length or delimiter */
+  public static final byte[] BLOOM_FILTER_PARAM_KEY =
+      Bytes.toBytes("BLOOM_FILTER_PARAM");
+
   /** Delete Family Count in FileInfo */
   public static final byte[] DELETE_FAMILY_COUNT =
       Bytes.toBytes("DELETE_FAMILY_COUNT");
@@ -800,6 +805,7 @@ public class StoreFile {
     private final BloomFilterWriter generalBloomFilterWriter;
     private final BloomFilterWriter deleteFamilyBloomFilterWriter;
     private final BloomType bloomType;
+    private final byte[] bloomParam;
     private byte[] lastBloomKey;
     private int lastBloomKeyOffset, lastBloomKeyLen;
     private Cell lastCell = null;
@@ -845,6 +851,14 @@ public class StoreFile {
           .withFileContext(fileContext)
           .create();
 
+      byte[] bloomParam = null;
+      try {
+        bloomParam = BloomFilterUtil.getBloomFilterParam(bloomType, conf);
+      } catch (IllegalArgumentException e) {
+        LOG.warn("Not writing a Bloom filter for " + path + ": " + e.getMessage());
+        bloomType = BloomType.NONE;
+      }
+      this.bloomParam = bloomParam;
       generalBloomFilterWriter = BloomFilterFactory.createGeneralBloomAtWrite(
           conf, cacheConf, bloomType,
           (int) Math.min(maxKeys, Integer.MAX_VALUE), writer);
@@ -952,6 +966,13 @@ public class StoreFile {
           case ROWCOL:
             newKey = ! CellUtil.matchingRowColumn(cell, lastCell);
             break;
+          case ROWPREFIX_FIXED_LENGTH:
+          case ROWPREFIX_DELIMITED:
+            newKey = ! Bytes.equals(cell.getRowArray(), cell.getRowOffset(),
+                BloomFilterUtil.getRowPrefixLength(cell.getRowArray(), cell.getRowOffset(),
+                    cell.getRowLength(), bloomType, bloomParam),
+                lastBloomKey, lastBloomKeyOffset, lastBloomKeyLen);
+            break;
           case NONE:
             newKey = false;
             break;
@@ -965,9 +986,10 @@ public class StoreFile {
            * http://2.bp.blogspot.com/_Cib_A77V54U/StZMrzaKufI/AAAAAAAAADo/ZhK7bGoJdMQ/s400/KeyValue.png
            * Key = RowLen + Row + FamilyLen + Column [Family + Qualifier] + TimeStamp
            *
-           * 2 Types of Filtering:
+           * 3 Types of Filtering:
            *  1. Row = Row
            *  2. RowCol = Row + Qualifier
+           *  3. RowPrefix = leading part of Row
            */
           byte[] bloomKey = null;
           // Used with ROW_COL bloom
@@ -994,6 +1016,13 @@ public class StoreFile {
             bloomKeyOffset = bloomKeyKV.getKeyOffset();
             bloomKeyLen = bloomKeyKV.getKeyLength();
             break;
+          case ROWPREFIX_FIXED_LENGTH:
+          case ROWPREFIX_DELIMITED:
+            bloomKey = cell.getRowArray();
+            bloomKeyOffset = cell.getRowOffset();
+            bloomKeyLen = BloomFilterUtil.getRowPrefixLength(bloomKey, bloomKeyOffset,
+                cell.getRowLength(), bloomType, bloomParam);
+            break;
           default:
             throw new IOException("Invalid Bloom filter type: " + bloomType +
                 " (ROW or ROWCOL expected)");
@@ -1003,7 +1032,7 @@ public class StoreFile {
             int res = 0;
             // hbase:meta does not have blooms. So we need not have special interpretation
             // of the hbase:meta cells.  We can safely use Bytes.BYTES_RAWCOMPARATOR for ROW Bloom
-            if (bloomType == BloomType.ROW) {
+            if (bloomType != BloomType.ROWCOL) {
               res = Bytes.BYTES_RAWCOMPARATOR.compare(bloomKey, bloomKeyOffset, bloomKeyLen,
                   lastBloomKey, lastBloomKeyOffset, lastBloomKeyLen);
             } else {
@@ -1090,6 +1119,9 @@ public class StoreFile {
         writer.addGeneralBloomFilter(generalBloomFilterWriter);
         writer.appendFileInfo(BLOOM_FILTER_TYPE_KEY,
             Bytes.toBytes(bloomType.toString()));
+        if (bloomParam != null) {
+          writer.appendFileInfo(BLOOM_FILTER_PARAM_KEY, bloomParam);
+        }
         if (lastBloomKey != null) {
           writer.appendFileInfo(LAST_BLOOM_KEY, Arrays.copyOfRange(
               lastBloomKey, lastBloomKeyOffset, lastBloomKeyOffset
@@ -1151,6 +1183,7 @@ public class StoreFile {
     protected BloomFilter generalBloomFilter = null;
     protected BloomFilter deleteFamilyBloomFilter = null;
     protected BloomType bloomFilterType;
+    private byte[] bloomFilterParam;
     private final HFile.Reader reader;
     protected TimeRangeTracker timeRangeTracker = null;
     protected long sequenceID = -1;
@@ -1312,7 +1345,8 @@ public class StoreFile {
 
     /**
      * Checks whether the given scan passes the Bloom filter (if present). Only
-     * checks Bloom filters for single-row or single-row-column scans. Bloom
+     * checks Bloom filters for single-row or single-row-column scans, and for
+     * row prefix Bloom filters scans within one prefix. Bloom
      * filter checking for multi-gets is implemented as part of the store
      * scanner system (see {@link StoreFileScanner#seekExactly}) and uses
      * the lower-level API {@link #passesGeneralRowBloomFilter(byte[], int, int)}
@@ -1328,18 +1362,20 @@ public class StoreFile {
      */
      boolean passesBloomFilter(Scan scan,
         final SortedSet<byte[]> columns) {
-      // Multi-column non-get scans will use Bloom filters through the
-      // lower-level API function that this function calls.
-      if (!scan.isGetScan()) {
-        return true;
-      }
-
       byte[] row = scan.getStartRow();
       switch (this.bloomFilterType) {
         case ROW:
+          // Multi-column non-get scans will use Bloom filters through the
+          // lower-level API function that this function calls.
+          if (!scan.isGetScan()) {
+            return true;
+          }
           return passesGeneralRowBloomFilter(row, 0, row.length);
 
         case ROWCOL:
+          if (!scan.isGetScan()) {
+            return true;
+          }
           if (columns != null && columns.size() == 1) {
             byte[] column = columns.first();
             // create the required fake key
@@ -1353,11 +1389,62 @@ public class StoreFile {
           // seekExact operation.
           return true;
 
+        case ROWPREFIX_FIXED_LENGTH:
+        case ROWPREFIX_DELIMITED:
+          return passesGeneralRowPrefixBloomFilter(scan);
+
         default:
           return true;
       }
     }
 
+    /**
+     * Checks a row prefix Bloom filter for the prefix of the scanned rows. Gets are checked for
+     * the prefix of their row, other scans only if all the rows they cover share one prefix.
+     */
+    private boolean passesGeneralRowPrefixBloomFilter(Scan scan) {
+      BloomFilter bloomFilter = this.generalBloomFilter;
+      byte[] param = this.bloomFilterParam;
+      if (bloomFilter == null || param == null) {
+        return true;
+      }
+      byte[] row = scan.getStartRow();
+      int prefixLength = BloomFilterUtil.getRowPrefixLength(row, 0, row.length,
+          bloomFilterType, param);
+      byte[] prefix = Arrays.copyOf(row, prefixLength);
+      if (!scan.isGetScan()) {
+        byte[] stopRow = scan.getStopRow();
+        if (stopRow.length == 0
+            || !BloomFilterUtil.isCompleteRowPrefix(row, 0, prefixLength, bloomFilterType, param)) {
+          return true;
+        }
+        // The rows between the start row and the stop row all start with the prefix of the
+        // start row if the stop row does not go past the prefix
+        if (scan.isReversed()) {
+          if (Bytes.compareTo(stopRow, prefix) < 0) {
+            return true;
+          }
+        } else {
+          int last = prefixLength - 1;
+          while (last >= 0 && prefix[last] == (byte) 0xff) {
+            last--;
+          }
+          if (last < 0) {
+            if (!Bytes.startsWith(stopRow, prefix)) {
+              return true;
+            }
+          } else {
+            byte[] nextPrefix = Arrays.copyOf(prefix, last + 1);
+            nextPrefix[last]++;
+            if (Bytes.compareTo(stopRow, nextPrefix) > 0) {
+              return true;
+            }
+          }
+        }
+      }
+      return checkGeneralBloomFilter(prefix, null, bloomFilter);
+    }
+
     public boolean passesDeleteFamilyBloomFilter(byte[] row, int rowOffset,
         int rowLen) {
       // Cache Bloom filter as a local variable in case it is set to null by
@@ -1463,7 +1550,7 @@ public class StoreFile {
           // hbase:meta does not have blooms. So we need not have special interpretation
           // of the hbase:meta cells.  We can safely use Bytes.BYTES_RAWCOMPARATOR for ROW Bloom
           if (keyIsAfterLast) {
-            if (bloomFilterType == BloomType.ROW) {
+            if (bloomFilterType != BloomType.ROWCOL) {
               keyIsAfterLast = (Bytes.BYTES_RAWCOMPARATOR.compare(key, lastBloomKey) > 0);
             } else {
               keyIsAfterLast = (CellComparator.COMPARATOR.compare(kvKey, lastBloomKeyOnlyKV)) > 0;
@@ -1541,6 +1628,7 @@ public class StoreFile {
       if (b != null) {
         bloomFilterType = BloomType.valueOf(Bytes.toString(b));
       }
+      bloomFilterParam = fi.get(BLOOM_FILTER_PARAM_KEY);
 
       lastBloomKey = fi.get(LAST_BLOOM_KEY);
       if(bloomFilterType == BloomType.ROWCOL) {
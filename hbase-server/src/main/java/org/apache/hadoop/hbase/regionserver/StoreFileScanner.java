@@ -190,6 +190,14 @@ public class StoreFileScanner implements KeyValueScanner {
     }
   }
 
+  /**
+   * @return whether seeking to the key would probably find the blocks it needs in the block cache
+   * @see org.apache.hadoop.hbase.io.hfile.HFile.Reader#isSeekCached(Cell)
+   */
+  boolean isSeekCached(Cell key) {
+    return reader.getHFileReader().isSeekCached(key);
+  }
+
   public boolean reseek(Cell key) throws IOException {
     if (seekCount != null) seekCount.incrementAndGet();
 
@@ -20,13 +20,11 @@
 package org.apache.hadoop.hbase.regionserver;
 
 import java.io.IOException;
-import java.io.InterruptedIOException;
 import java.util.ArrayList;
 import java.util.HashSet;
 import java.util.List;
 import java.util.NavigableSet;
 import java.util.Set;
-import java.util.concurrent.CountDownLatch;
 import java.util.concurrent.locks.ReentrantLock;
 
 import org.apache.commons.logging.Log;
@@ -40,12 +38,10 @@ import org.apache.hadoop.hbase.KeyValue;
 import org.apache.hadoop.hbase.classification.InterfaceAudience;
 import org.apache.hadoop.hbase.client.IsolationLevel;
 import org.apache.hadoop.hbase.client.Scan;
-import org.apache.hadoop.hbase.executor.ExecutorService;
 import org.apache.hadoop.hbase.filter.Filter;
 import org.apache.hadoop.hbase.regionserver.ScanQueryMatcher.MatchCode;
 import org.apache.hadoop.hbase.regionserver.ScannerContext.LimitScope;
 import org.apache.hadoop.hbase.regionserver.ScannerContext.NextState;
-import org.apache.hadoop.hbase.regionserver.handler.ParallelSeekHandler;
 import org.apache.hadoop.hbase.util.EnvironmentEdgeManager;
 
 import com.google.common.annotations.VisibleForTesting;
@@ -78,7 +74,7 @@ public class StoreScanner extends NonReversedNonLazyKeyValueScanner
    * A flag that enables StoreFileScanner parallel-seeking
    */
   protected boolean parallelSeekEnabled = false;
-  protected ExecutorService executor;
+  protected ParallelSeekExecutor parallelSeeker;
   protected final Scan scan;
   protected final NavigableSet<byte[]> columns;
   protected final long oldestUnexpiredTS;
@@ -102,6 +98,7 @@ public class StoreScanner extends NonReversedNonLazyKeyValueScanner
   static final boolean LAZY_SEEK_ENABLED_BY_DEFAULT = true;
   public static final String STORESCANNER_PARALLEL_SEEK_ENABLE =
       "hbase.storescanner.parallel.seek.enable";
+  public static final boolean DEFAULT_STORESCANNER_PARALLEL_SEEK_ENABLE = true;
 
   /** Used during unit testing to ensure that lazy seek does save seek ops */
   protected static boolean lazySeekEnabledGlobally =
@@ -170,9 +167,10 @@ public class StoreScanner extends NonReversedNonLazyKeyValueScanner
      // Parallel seeking is on if the config allows and more there is more than one store file.
      if (this.store != null && this.store.getStorefilesCount() > 1) {
        RegionServerServices rsService = ((HStore)store).getHRegion().getRegionServerServices();
-       if (rsService != null && scanInfo.isParallelSeekEnabled()) {
+       if (rsService != null && scanInfo.isParallelSeekEnabled()
+           && rsService.getParallelSeekExecutor() != null) {
          this.parallelSeekEnabled = true;
-         this.executor = rsService.getExecutorService();
+         this.parallelSeeker = rsService.getParallelSeekExecutor();
        }
      }
   }
@@ -348,7 +346,8 @@ public class StoreScanner extends NonReversedNonLazyKeyValueScanner
         scanner.requestSeek(seekKey, false, true);
       }
     } else {
-      if (!isParallelSeek) {
+      if (!isParallelSeek || !parallelSeeker.seek(scanners, seekKey)) {
+        long start = isParallelSeek ? System.nanoTime() : 0;
         long totalScannersSoughtBytes = 0;
         for (KeyValueScanner scanner : scanners) {
           if (totalScannersSoughtBytes >= maxRowSize) {
@@ -361,8 +360,9 @@ public class StoreScanner extends NonReversedNonLazyKeyValueScanner
             totalScannersSoughtBytes += CellUtil.estimatedSerializedSizeOf(c);
           }
         }
-      } else {
-        parallelSeek(scanners, seekKey);
+        if (isParallelSeek) {
+          parallelSeeker.serialSeekDone(System.nanoTime() - start);
+        }
       }
     }
   }
@@ -831,44 +831,6 @@ public class StoreScanner extends NonReversedNonLazyKeyValueScanner
     return 0;
   }
 
-  /**
-   * Seek storefiles in parallel to optimize IO latency as much as possible
-   * @param scanners the list {@link KeyValueScanner}s to be read from
-   * @param kv the KeyValue on which the operation is being requested
-   * @throws IOException
-   */
-  private void parallelSeek(final List<? extends KeyValueScanner>
-      scanners, final Cell kv) throws IOException {
-    if (scanners.isEmpty()) return;
-    int storeFileScannerCount = scanners.size();
-    CountDownLatch latch = new CountDownLatch(storeFileScannerCount);
-    List<ParallelSeekHandler> handlers = 
-        new ArrayList<ParallelSeekHandler>(storeFileScannerCount);
-    for (KeyValueScanner scanner : scanners) {
-      if (scanner instanceof StoreFileScanner) {
-        ParallelSeekHandler seekHandler = new ParallelSeekHandler(scanner, kv,
-          this.readPt, latch);
-        executor.submit(seekHandler);
-        handlers.add(seekHandler);
-      } else {
-        scanner.seek(kv);
-        latch.countDown();
-      }
-    }
-
-    try {
-      latch.await();
-    } catch (InterruptedException ie) {
-      throw (InterruptedIOException)new InterruptedIOException().initCause(ie);
-    }
-
-    for (ParallelSeekHandler handler : handlers) {
-      if (handler.getErr() != null) {
-        throw new IOException(handler.getErr());
-      }
-    }
-  }
-
   /**
    * Used in testing.
    * @return all scanners in no particular order
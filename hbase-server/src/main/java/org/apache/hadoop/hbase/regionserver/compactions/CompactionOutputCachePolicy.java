@@ -0,0 +1,88 @@
+/**
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.hadoop.hbase.regionserver.compactions;
+
+import java.util.Collection;
+
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.hbase.classification.InterfaceAudience;
+import org.apache.hadoop.hbase.io.hfile.HFile;
+import org.apache.hadoop.hbase.regionserver.StoreFile;
+
+/**
+ * Decides whether the files written by a compaction are worth having in the block cache, from
+ * how well the block cache served the reads of the files being compacted. Caching the output of
+ * hot files spares their readers a burst of misses once the compaction completes, while caching
+ * the output of cold files only pushes hotter blocks out of the cache.
+ * <p>
+ * The files are hot when reads looked up at least {@link #MIN_LOOKUPS_KEY} of their data blocks
+ * in the block cache over the last five to ten minutes, and found at least a
+ * {@link #MIN_HIT_RATIO_KEY} fraction of them there. The output of hot files is cached as it is
+ * written; that of cold files is not, whatever the family configures. Neither is prefetched.
+ */
+@InterfaceAudience.Private
+public class CompactionOutputCachePolicy {
+
+  public static final String ENABLED_KEY = "hbase.rs.compaction.cacheonwrite.adaptive";
+  public static final boolean DEFAULT_ENABLED = false;
+
+  public static final String MIN_HIT_RATIO_KEY =
+      "hbase.rs.compaction.cacheonwrite.adaptive.min.hit.ratio";
+  public static final float DEFAULT_MIN_HIT_RATIO = 0.5f;
+
+  public static final String MIN_LOOKUPS_KEY =
+      "hbase.rs.compaction.cacheonwrite.adaptive.min.lookups";
+  public static final long DEFAULT_MIN_LOOKUPS = 1000;
+
+  private final float minHitRatio;
+  private final long minLookups;
+
+  public CompactionOutputCachePolicy(Configuration conf) {
+    this.minHitRatio = conf.getFloat(MIN_HIT_RATIO_KEY, DEFAULT_MIN_HIT_RATIO);
+    this.minLookups = conf.getLong(MIN_LOOKUPS_KEY, DEFAULT_MIN_LOOKUPS);
+  }
+
+  /**
+   * @return the policy configured, or null if compactions should keep the static cache settings
+   */
+  public static CompactionOutputCachePolicy create(Configuration conf) {
+    return conf.getBoolean(ENABLED_KEY, DEFAULT_ENABLED) ? new CompactionOutputCachePolicy(conf)
+        : null;
+  }
+
+  /**
+   * @param filesToCompact the files being compacted
+   * @return true if the files written by compacting them should be cached
+   */
+  public boolean shouldCacheOutput(Collection<StoreFile> filesToCompact) {
+    long hits = 0;
+    long lookups = 0;
+    for (StoreFile file : filesToCompact) {
+      StoreFile.Reader reader = file.getReader();
+      if (reader == null) {
+        continue;
+      }
+      HFile.Reader hfileReader = reader.getHFileReader();
+      hits += hfileReader.getDataBlockCacheHits();
+      lookups += hfileReader.getDataBlockCacheHits() + hfileReader.getDataBlockCacheMisses();
+    }
+    return lookups > 0 && lookups >= minLookups && hits >= minHitRatio * lookups;
+  }
+}
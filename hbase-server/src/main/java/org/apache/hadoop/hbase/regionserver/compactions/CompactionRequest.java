@@ -60,6 +60,8 @@ public class CompactionRequest implements Comparable<CompactionRequest> {
   private long totalSize = -1L;
 
   private Boolean retainDeleteMarkers = null;
+  // Whether the files written are cached as they are written
+  private boolean cacheOutput = false;
 
   /**
    * This ctor should be used by coprocessors that want to subclass CompactionRequest.
@@ -219,6 +221,17 @@ public class CompactionRequest implements Comparable<CompactionRequest> {
         : !isAllFiles();
   }
 
+  /**
+   * @return whether the files written by this compaction should be cached on write
+   */
+  public boolean shouldCacheOutput() {
+    return this.cacheOutput;
+  }
+
+  public void setCacheOutput(boolean cacheOutput) {
+    this.cacheOutput = cacheOutput;
+  }
+
   @Override
   public String toString() {
     String fsList = Joiner.on(", ").join(
@@ -107,7 +107,8 @@ public class DefaultCompactor extends Compactor {
         }
 
 
-        writer = createTmpWriter(fd, store.throttleCompaction(request.getSize()));
+        writer = createTmpWriter(fd, store.throttleCompaction(request.getSize()),
+          request.shouldCacheOutput());
         boolean finished = performCompaction(fd, scanner, writer, smallestReadPoint, cleanSeqId,
           throughputController, request.isAllFiles());
 
@@ -156,11 +157,12 @@ public class DefaultCompactor extends Compactor {
   /**
    * Creates a writer for a new file in a temporary directory.
    * @param fd The file details.
+   * @param cacheDataOnWrite Should the writer cache the data blocks it writes.
    * @return Writer for a new StoreFile in the tmp dir.
    * @throws IOException
    */
-  protected StoreFile.Writer createTmpWriter(FileDetails fd, boolean shouldDropBehind)
-    throws IOException {
+  protected StoreFile.Writer createTmpWriter(FileDetails fd, boolean shouldDropBehind,
+      boolean cacheDataOnWrite) throws IOException {
 
       // When all MVCC readpoints are 0, don't write them.
       // See HBASE-8166, HBASE-12600, and HBASE-13389.
@@ -169,7 +171,8 @@ public class DefaultCompactor extends Compactor {
             /* isCompaction = */ true,
             /* includeMVCCReadpoint = */ fd.maxMVCCReadpoint > 0,
             /* includesTags = */ fd.maxTagsLength > 0,
-            /* shouldDropBehind = */ shouldDropBehind);
+            /* shouldDropBehind = */ shouldDropBehind,
+            /* cacheDataOnWrite = */ cacheDataOnWrite);
   }
 
 
@@ -142,7 +142,7 @@ public class StripeCompactor extends Compactor {
         public Writer createWriter() throws IOException {
           return store.createWriterInTmp(
               fd.maxKeyCount, compression, true, needMvcc, fd.maxTagsLength > 0,
-              store.throttleCompaction(request.getSize()));
+              store.throttleCompaction(request.getSize()), request.shouldCacheOutput());
         }
       };
 
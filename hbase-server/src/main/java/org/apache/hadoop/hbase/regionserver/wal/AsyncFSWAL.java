@@ -0,0 +1,72 @@
+/**
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.hadoop.hbase.regionserver.wal;
+
+import java.io.IOException;
+import java.util.List;
+
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.fs.FileSystem;
+import org.apache.hadoop.fs.Path;
+import org.apache.hadoop.hbase.HConstants;
+import org.apache.hadoop.hbase.classification.InterfaceAudience;
+import org.apache.hadoop.hbase.wal.WALProvider.Writer;
+
+/**
+ * An {@link FSHLog} that writes through {@link AsyncProtobufLogWriter}s. The ring buffer
+ * consumer hands each batch of syncs to the writer and moves on; the futures of the batch are
+ * completed from the writer's I/O callback, so the SyncRunners sit idle. Syncs that arrive
+ * while the filesystem is busy are folded into the next write.
+ */
+@InterfaceAudience.Private
+public class AsyncFSWAL extends FSHLog {
+
+  /**
+   * Arguments are as for
+   * {@link FSHLog#FSHLog(FileSystem, Path, String, String, Configuration, List, boolean, String,
+   * String)}.
+   */
+  public AsyncFSWAL(final FileSystem fs, final Path rootDir, final String logDir,
+      final String archiveDir, final Configuration conf,
+      final List<WALActionsListener> listeners,
+      final boolean failIfWALExists, final String prefix, final String suffix)
+      throws IOException {
+    super(fs, rootDir, logDir, archiveDir, conf, listeners, failIfWALExists, prefix, suffix);
+  }
+
+  /**
+   * A sync only goes to a SyncRunner if the current writer is not asynchronous, e.g. one put
+   * in by a subclass overriding {@link #createWriterInstance(Path)}; one runner is plenty.
+   */
+  @Override
+  protected int getSyncRunnerCount() {
+    return 1;
+  }
+
+  @Override
+  protected Writer createWriterInstance(final Path path) throws IOException {
+    if (conf.getBoolean(HConstants.ENABLE_WAL_ENCRYPTION, false)) {
+      throw new IOException("WAL encryption is not supported by " +
+        getClass().getSimpleName());
+    }
+    AsyncProtobufLogWriter writer = new AsyncProtobufLogWriter();
+    writer.init(fs, path, conf, false);
+    return writer;
+  }
+}
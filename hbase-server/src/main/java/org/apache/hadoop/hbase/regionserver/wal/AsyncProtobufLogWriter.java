@@ -0,0 +1,91 @@
+/**
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.hadoop.hbase.regionserver.wal;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.channels.CompletionHandler;
+
+import org.apache.hadoop.fs.FSDataOutputStream;
+import org.apache.hadoop.fs.FileSystem;
+import org.apache.hadoop.fs.Path;
+import org.apache.hadoop.hbase.classification.InterfaceAudience;
+import org.apache.hadoop.hbase.io.asyncfs.AsyncFSOutput;
+import org.apache.hadoop.hbase.io.asyncfs.AsyncFSOutputHelper;
+import org.apache.hadoop.hbase.wal.WALProvider.AsyncWriter;
+
+/**
+ * Protobuf WAL writer whose syncs do not block. Produces exactly the same files as
+ * {@link ProtobufLogWriter}; appends are only buffered in memory, and each sync sends whatever
+ * accumulated since the last one to an {@link AsyncFSOutput}.
+ */
+@InterfaceAudience.Private
+public class AsyncProtobufLogWriter extends ProtobufLogWriter implements AsyncWriter {
+
+  private AsyncFSOutput asyncOutput;
+
+  /**
+   * Feeds the protobuf and cell encoders into the async output buffer. Only used from the
+   * single WAL appending thread.
+   */
+  private static final class OutputStreamAdaptor extends OutputStream {
+    private final AsyncFSOutput out;
+    private final byte[] oneByte = new byte[1];
+
+    OutputStreamAdaptor(AsyncFSOutput out) {
+      this.out = out;
+    }
+
+    @Override
+    public void write(int b) {
+      this.oneByte[0] = (byte) b;
+      this.out.write(this.oneByte, 0, 1);
+    }
+
+    @Override
+    public void write(byte[] b, int off, int len) {
+      this.out.write(b, off, len);
+    }
+
+    @Override
+    public void close() throws IOException {
+      this.out.close();
+    }
+  }
+
+  @Override
+  protected FSDataOutputStream createOutput(FileSystem fs, Path path, boolean overwritable,
+      int bufferSize, short replication, long blockSize) throws IOException {
+    this.asyncOutput = AsyncFSOutputHelper.createOutput(fs, path, overwritable, bufferSize,
+      replication, blockSize);
+    // The wrapping stream keeps track of the position for getLength()
+    return new FSDataOutputStream(new OutputStreamAdaptor(this.asyncOutput), null);
+  }
+
+  @Override
+  public <A> void sync(A attachment, CompletionHandler<Long, ? super A> handler) {
+    this.asyncOutput.flush(attachment, handler, true);
+  }
+
+  @Override
+  public void sync() throws IOException {
+    if (this.output == null) return; // Presume closed
+    AsyncFSOutputHelper.flushAndWait(this.asyncOutput, true);
+  }
+}
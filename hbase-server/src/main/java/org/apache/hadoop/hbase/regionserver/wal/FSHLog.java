@@ -27,6 +27,7 @@ import java.lang.management.ManagementFactory;
 import java.lang.management.MemoryUsage;
 import java.lang.reflect.InvocationTargetException;
 import java.net.URLEncoder;
+import java.nio.channels.CompletionHandler;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Comparator;
@@ -47,6 +48,7 @@ import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.concurrent.atomic.AtomicInteger;
 import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
 import java.util.concurrent.locks.ReentrantLock;
 
 import org.apache.commons.logging.Log;
@@ -77,6 +79,7 @@ import org.apache.hadoop.hbase.wal.WAL;
 import org.apache.hadoop.hbase.wal.WALFactory;
 import org.apache.hadoop.hbase.wal.WALKey;
 import org.apache.hadoop.hbase.wal.WALPrettyPrinter;
+import org.apache.hadoop.hbase.wal.WALProvider.AsyncWriter;
 import org.apache.hadoop.hbase.wal.WALProvider.Writer;
 import org.apache.hadoop.hbase.wal.WALSplitter;
 import org.apache.hadoop.hdfs.DFSOutputStream;
@@ -556,8 +559,7 @@ public class FSHLog implements WAL {
     // because SyncFuture.NOT_DONE = 0.
     this.disruptor.getRingBuffer().next();
     this.ringBufferEventHandler =
-      new RingBufferEventHandler(conf.getInt("hbase.regionserver.hlog.syncer.count", 5),
-        maxHandlersCount);
+      new RingBufferEventHandler(getSyncRunnerCount(), maxHandlersCount);
     this.disruptor.handleExceptionsWith(new RingBufferExceptionHandler());
     this.disruptor.handleEventsWith(new RingBufferEventHandler [] {this.ringBufferEventHandler});
     // Presize our map of SyncFutures by handler objects.
@@ -714,6 +716,14 @@ public class FSHLog implements WAL {
     }
   }
 
+  /**
+   * Number of {@link SyncRunner} threads to run syncs on; must be at least one. Subclasses whose
+   * writers are {@link AsyncWriter}s need only one. Called from the constructor.
+   */
+  protected int getSyncRunnerCount() {
+    return conf.getInt("hbase.regionserver.hlog.syncer.count", 5);
+  }
+
   /**
    * This method allows subclasses to inject different writers without having to
    * extend other methods like rollWriter().
@@ -1127,6 +1137,9 @@ public class FSHLog implements WAL {
     private volatile long sequence;
     // Keep around last exception thrown. Clear on successful sync.
     private final BlockingQueue<SyncFuture> syncFutures;
+    private final GroupCommitWindow groupCommitWindow;
+    // Set while this thread holds its sync back for the group commit window
+    private volatile boolean inWindow;
 
     /**
      * UPDATE!
@@ -1138,7 +1151,8 @@ public class FSHLog implements WAL {
      * futures will return the exception to their clients; some of the edits may have made it out
      * to data nodes but we will report all that were part of this session as failed.
      */
-    SyncRunner(final String name, final int maxHandlersCount) {
+    SyncRunner(final String name, final int maxHandlersCount,
+        final GroupCommitWindow groupCommitWindow) {
       super(name);
       // LinkedBlockingQueue because of
       // http://www.javacodegeeks.com/2010/09/java-best-practices-queue-battle-and.html
@@ -1154,6 +1168,14 @@ public class FSHLog implements WAL {
       // much fewer in number than the user-space handlers so Q-size should be user handlers plus
       // some space for these other handlers.  Lets multiply by 3 for good-measure.
       this.syncFutures = new LinkedBlockingQueue<SyncFuture>(maxHandlersCount * 3);
+      this.groupCommitWindow = groupCommitWindow;
+    }
+
+    /**
+     * @return true if this thread is waiting for more syncs to join its next filesystem sync
+     */
+    boolean isInWindow() {
+      return this.inWindow;
     }
 
     void offer(final long sequence, final SyncFuture [] syncFutures, final int syncFutureCount) {
@@ -1197,25 +1219,6 @@ public class FSHLog implements WAL {
       return syncCount;
     }
 
-    /**
-     * @param sequence The sequence we ran the filesystem sync against.
-     * @return Current highest synced sequence.
-     */
-    private long updateHighestSyncedSequence(long sequence) {
-      long currentHighestSyncedSequence;
-      // Set the highestSyncedSequence IFF our current sequence id is the 'highest'.
-      do {
-        currentHighestSyncedSequence = highestSyncedSequence.get();
-        if (currentHighestSyncedSequence >= sequence) {
-          // Set the sync number to current highwater mark; might be able to let go more
-          // queued sync futures
-          sequence = currentHighestSyncedSequence;
-          break;
-        }
-      } while (!highestSyncedSequence.compareAndSet(currentHighestSyncedSequence, sequence));
-      return sequence;
-    }
-
     public void run() {
       long currentSequence;
       while (!isInterrupted()) {
@@ -1240,8 +1243,23 @@ public class FSHLog implements WAL {
             }
             break;
           }
-          // I got something.  Lets run.  Save off current sequence number in case it changes
-          // while we run.
+          // I got something.  If more syncs are likely to turn up shortly, give them the chance
+          // to ride along on this one; appends keep going to the writer while we wait.
+          long batchStart = System.nanoTime();
+          long window = this.groupCommitWindow.getWindowNanos();
+          if (window > 0) {
+            // The ring buffer handler keeps offering us syncs while we wait; we sync up to the
+            // highest of them and release them all below
+            this.inWindow = true;
+            try {
+              LockSupport.parkNanos(window);
+            } finally {
+              this.inWindow = false;
+            }
+            currentSequence = this.sequence;
+            postGroupCommitWait(System.nanoTime() - batchStart);
+          }
+          // Lets run.  Save off current sequence number in case it changes while we run.
           TraceScope scope = Trace.continueSpan(takeSyncFuture.getSpan());
           long start = System.nanoTime();
           Throwable lastException = null;
@@ -1266,7 +1284,9 @@ public class FSHLog implements WAL {
             if (lastException != null) requestLogRoll();
             else checkLogRoll();
           }
-          postSync(System.nanoTime() - start, syncCount);
+          long syncTime = System.nanoTime() - start;
+          this.groupCommitWindow.update(batchStart, syncCount, syncTime);
+          postSync(syncTime, syncCount);
         } catch (InterruptedException e) {
           // Presume legit interrupt.
           Thread.currentThread().interrupt();
@@ -1277,6 +1297,60 @@ public class FSHLog implements WAL {
     }
   }
 
+  /**
+   * @param sequence The sequence we ran the filesystem sync against.
+   * @return Current highest synced sequence.
+   */
+  private long updateHighestSyncedSequence(long sequence) {
+    long currentHighestSyncedSequence;
+    // Set the highestSyncedSequence IFF our current sequence id is the 'highest'.
+    do {
+      currentHighestSyncedSequence = highestSyncedSequence.get();
+      if (currentHighestSyncedSequence >= sequence) {
+        // Set the sync number to current highwater mark; might be able to let go more
+        // queued sync futures
+        sequence = currentHighestSyncedSequence;
+        break;
+      }
+    } while (!highestSyncedSequence.compareAndSet(currentHighestSyncedSequence, sequence));
+    return sequence;
+  }
+
+  /**
+   * Completes a batch of SyncFutures from the I/O callback of an {@link AsyncWriter}. Takes
+   * the place of a {@link SyncRunner} parked in a blocking sync.
+   */
+  private class AsyncSyncCompletion implements CompletionHandler<Long, Void> {
+    private final long sequence;
+    private final SyncFuture [] syncFutures;
+    private final long start = System.nanoTime();
+
+    AsyncSyncCompletion(final long sequence, final SyncFuture [] syncFutures) {
+      this.sequence = sequence;
+      this.syncFutures = syncFutures;
+    }
+
+    @Override
+    public void completed(Long length, Void attachment) {
+      release(updateHighestSyncedSequence(this.sequence), null);
+      checkLogRoll();
+    }
+
+    @Override
+    public void failed(Throwable t, Void attachment) {
+      LOG.error("Error syncing, request close of WAL", t);
+      release(this.sequence, t);
+      requestLogRoll();
+    }
+
+    private void release(final long currentSequence, final Throwable t) {
+      for (SyncFuture syncFuture : this.syncFutures) {
+        syncFuture.done(currentSequence, t);
+      }
+      postSync(System.nanoTime() - this.start, this.syncFutures.length);
+    }
+  }
+
   /**
    * Schedule a log roll if needed.
    */
@@ -1414,6 +1488,14 @@ public class FSHLog implements WAL {
     }
   }
 
+  private void postGroupCommitWait(final long timeInNanos) {
+    if (!listeners.isEmpty()) {
+      for (WALActionsListener listener : listeners) {
+        listener.postGroupCommitWait(timeInNanos);
+      }
+    }
+  }
+
   private long postAppend(final Entry e, final long elapsedTime) {
     long len = 0;
     if (!listeners.isEmpty()) {
@@ -1710,8 +1792,9 @@ public class FSHLog implements WAL {
     RingBufferEventHandler(final int syncRunnerCount, final int maxHandlersCount) {
       this.syncFutures = new SyncFuture[maxHandlersCount];
       this.syncRunners = new SyncRunner[syncRunnerCount];
+      GroupCommitWindow groupCommitWindow = new GroupCommitWindow(conf);
       for (int i = 0; i < syncRunnerCount; i++) {
-        this.syncRunners[i] = new SyncRunner("sync." + i, maxHandlersCount);
+        this.syncRunners[i] = new SyncRunner("sync." + i, maxHandlersCount, groupCommitWindow);
       }
     }
 
@@ -1787,11 +1870,23 @@ public class FSHLog implements WAL {
           // we want to get up a batch of syncs and appends before we go do a filesystem sync.
           if (!endOfBatch || this.syncFuturesCount <= 0) return;
           // Below expects that the offer 'transfers' responsibility for the outstanding syncs to
-          // the syncRunner. We should never get an exception in here.
-          this.syncRunnerIndex = (this.syncRunnerIndex + 1) % this.syncRunners.length;
+          // the syncRunner, or to the callback of an async writer. We should never get an
+          // exception in here.
           try {
-            this.syncRunners[this.syncRunnerIndex].offer(sequence, this.syncFutures,
-              this.syncFuturesCount);
+            Writer currentWriter = writer;
+            if (currentWriter instanceof AsyncWriter) {
+              // The writer calls back when the batch is out; copy it as our array gets reused
+              ((AsyncWriter) currentWriter).sync(null, new AsyncSyncCompletion(sequence,
+                Arrays.copyOf(this.syncFutures, this.syncFuturesCount)));
+            } else {
+              // Stay with a runner holding its sync back for the group commit window, so that
+              // syncs arriving meanwhile join its batch instead of starting batches of their own
+              if (!this.syncRunners[this.syncRunnerIndex].isInWindow()) {
+                this.syncRunnerIndex = (this.syncRunnerIndex + 1) % this.syncRunners.length;
+              }
+              this.syncRunners[this.syncRunnerIndex].offer(sequence, this.syncFutures,
+                this.syncFuturesCount);
+            }
           } catch (Exception e) {
             // Should NEVER get here.
             requestLogRoll();
@@ -0,0 +1,113 @@
+/**
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.hadoop.hbase.regionserver.wal;
+
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.hbase.classification.InterfaceAudience;
+
+/**
+ * Decides how long a sync thread holds a filesystem sync back so that more handler syncs can
+ * join it. Waiting only pays off when other syncs are likely to arrive meanwhile, so the window
+ * follows two moving averages: the time a filesystem sync takes, and the time between handler
+ * syncs. When syncs come in less often than a sync takes, the window closes and syncs go out
+ * right away; as they come in faster it opens, up to a fraction of the sync time so the wait
+ * never dominates the latency a handler sees, and never beyond a configured maximum.
+ * <p>
+ * One window is shared by all the sync threads of a WAL. Handler syncs go to the thread waiting
+ * out its window, if any, and are otherwise spread over the threads in turn, so only the syncs
+ * of all of them together give the rate at which handlers sync.
+ */
+@InterfaceAudience.Private
+class GroupCommitWindow {
+  /** Upper bound on the window, in microseconds. 0 disables waiting altogether. */
+  static final String MAX_WINDOW_KEY = "hbase.regionserver.wal.groupcommit.max.window.us";
+  static final long DEFAULT_MAX_WINDOW_US = 1000;
+
+  /** Largest share of the average sync time a sync may be held back for. */
+  static final String LATENCY_FRACTION_KEY =
+      "hbase.regionserver.wal.groupcommit.latency.fraction";
+  static final float DEFAULT_LATENCY_FRACTION = 0.2f;
+
+  // Weight of the newest sample in the moving averages
+  private static final double ALPHA = 0.2;
+
+  private final long maxWindowNanos;
+  private final double latencyFraction;
+
+  private double syncNanosAvg = -1;
+  private double interArrivalNanosAvg = -1;
+  private long lastBatchNanos = -1;
+  // Handler syncs of batches picked up before lastBatchNanos but reported after it
+  private int unaccountedSyncs;
+
+  GroupCommitWindow(Configuration conf) {
+    this(conf.getLong(MAX_WINDOW_KEY, DEFAULT_MAX_WINDOW_US) * 1000,
+        conf.getFloat(LATENCY_FRACTION_KEY, DEFAULT_LATENCY_FRACTION));
+  }
+
+  GroupCommitWindow(long maxWindowNanos, double latencyFraction) {
+    this.maxWindowNanos = maxWindowNanos;
+    this.latencyFraction = latencyFraction;
+  }
+
+  /**
+   * @return how long to wait before the next filesystem sync, in nanoseconds; 0 to go now
+   */
+  synchronized long getWindowNanos() {
+    if (this.maxWindowNanos <= 0 || this.syncNanosAvg < 0 || this.interArrivalNanosAvg < 0) {
+      return 0;
+    }
+    double target = this.syncNanosAvg * this.latencyFraction;
+    // Not worth waiting unless at least one more sync is expected to turn up meanwhile
+    if (this.interArrivalNanosAvg >= target) return 0;
+    return (long) Math.min(this.maxWindowNanos, target);
+  }
+
+  /**
+   * Records a completed filesystem sync. The syncs of the different sync threads may be reported
+   * in another order than their batches were picked up in.
+   * @param batchNanos when the sync thread picked up the batch, from {@link System#nanoTime()}
+   * @param handlerSyncs handler syncs the filesystem sync released
+   * @param syncNanos how long the filesystem sync itself took
+   */
+  synchronized void update(long batchNanos, int handlerSyncs, long syncNanos) {
+    this.syncNanosAvg = average(this.syncNanosAvg, syncNanos);
+    if (this.lastBatchNanos < 0) {
+      this.lastBatchNanos = batchNanos;
+      return;
+    }
+    this.unaccountedSyncs += handlerSyncs;
+    if (batchNanos <= this.lastBatchNanos) {
+      // Picked up before the latest batch we know of; its syncs arrived within a gap already
+      // measured, so they count towards the next one
+      return;
+    }
+    if (this.unaccountedSyncs > 0) {
+      // These syncs arrived since the previous batch was picked up
+      this.interArrivalNanosAvg = average(this.interArrivalNanosAvg,
+        (double) (batchNanos - this.lastBatchNanos) / this.unaccountedSyncs);
+      this.unaccountedSyncs = 0;
+    }
+    this.lastBatchNanos = batchNanos;
+  }
+
+  private static double average(double avg, double sample) {
+    return avg < 0 ? sample : avg + ALPHA * (sample - avg);
+  }
+}
@@ -48,6 +48,15 @@ public class MetricsWAL extends WALActionsListener.Base {
   @Override
   public void postSync(final long timeInNanos, final int handlerSyncs) {
     source.incrementSyncTime(timeInNanos/1000000L);
+    // Syncs run to set up a new writer release no handlers; leave them out of the batch sizes
+    if (handlerSyncs > 0) {
+      source.incrementSyncBatchSize(handlerSyncs);
+    }
+  }
+
+  @Override
+  public void postGroupCommitWait(final long timeInNanos) {
+    source.incrementGroupCommitWaitTime(timeInNanos/1000L);
   }
 
   @Override
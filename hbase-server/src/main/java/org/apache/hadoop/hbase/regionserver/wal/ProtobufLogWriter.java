@@ -75,7 +75,6 @@ public class ProtobufLogWriter extends WriterBase {
   }
 
   @Override
-  @SuppressWarnings("deprecation")
   public void init(FileSystem fs, Path path, Configuration conf, boolean overwritable)
   throws IOException {
     super.init(fs, path, conf, overwritable);
@@ -87,7 +86,7 @@ public class ProtobufLogWriter extends WriterBase {
         "hbase.regionserver.hlog.replication", FSUtils.getDefaultReplication(fs, path));
     long blockSize = conf.getLong("hbase.regionserver.hlog.blocksize",
         FSUtils.getDefaultBlockSize(fs, path));
-    output = fs.createNonRecursive(path, overwritable, bufferSize, replication, blockSize, null);
+    output = createOutput(fs, path, overwritable, bufferSize, replication, blockSize);
     output.write(ProtobufLogReader.PB_WAL_MAGIC);
     boolean doTagCompress = doCompress
         && conf.getBoolean(CompressionContext.ENABLE_WAL_TAGS_COMPRESSION, true);
@@ -104,6 +103,16 @@ public class ProtobufLogWriter extends WriterBase {
     }
   }
 
+  /**
+   * Opens the stream the WAL is written to. Subclasses may write somewhere other than a plain
+   * filesystem stream, as long as what ends up in the file is the same.
+   */
+  @SuppressWarnings("deprecation")
+  protected FSDataOutputStream createOutput(FileSystem fs, Path path, boolean overwritable,
+      int bufferSize, short replication, long blockSize) throws IOException {
+    return fs.createNonRecursive(path, overwritable, bufferSize, replication, blockSize, null);
+  }
+
   protected void initAfterHeader(boolean doCompress) throws IOException {
     WALCellCodec codec = getCodec(conf, this.compressionContext);
     this.cellEncoder = codec.getEncoder(this.output);
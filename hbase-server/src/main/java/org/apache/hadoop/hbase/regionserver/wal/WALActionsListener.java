@@ -112,6 +112,13 @@ public interface WALActionsListener {
    */
   void postSync(final long timeInNanos, final int handlerSyncs);
 
+  /**
+   * For notification that a filesystem sync was held back to let more handler syncs join it.
+   * Used by metrics system at least.
+   * @param timeInNanos How long the sync was held back in nanoseconds.
+   */
+  void postGroupCommitWait(final long timeInNanos);
+
   static class Base implements WALActionsListener {
     @Override
     public void preLogRoll(Path oldPath, Path newPath) throws IOException {}
@@ -144,5 +151,8 @@ public interface WALActionsListener {
 
     @Override
     public void postSync(final long timeInNanos, final int handlerSyncs) {}
+
+    @Override
+    public void postGroupCommitWait(final long timeInNanos) {}
   }
 }
@@ -40,6 +40,11 @@ public class BloomFilterChunk implements BloomFilterBase {
   protected final int hashType;
   /** Hash Function */
   protected final Hash hash;
+  /**
+   * Whether all the bits of a key are in one block of
+   * {@link BloomFilterUtil#BLOOM_BLOCK_BYTES}
+   */
+  protected final boolean blocked;
   /** Keys currently in the bloom */
   protected int keyCount;
   /** Max Keys expected for the bloom */
@@ -59,6 +64,7 @@ public class BloomFilterChunk implements BloomFilterBase {
     this.hashType = meta.readInt();
     this.keyCount = meta.readInt();
     this.maxKeys = this.keyCount;
+    this.blocked = false;
 
     this.hash = Hash.getInstance(this.hashType);
     if (hash == null) {
@@ -77,12 +83,20 @@ public class BloomFilterChunk implements BloomFilterBase {
    * @return error rate for this particular Bloom filter
    */
   public double actualErrorRate() {
+    if (blocked) {
+      return BloomFilterUtil.actualBlockedErrorRate(keyCount, byteSize * 8, hashCount);
+    }
     return BloomFilterUtil.actualErrorRate(keyCount, byteSize * 8, hashCount);
   }
 
   public BloomFilterChunk(int hashType) {
+    this(hashType, false);
+  }
+
+  public BloomFilterChunk(int hashType, boolean blocked) {
     this.hashType = hashType;
     this.hash = Hash.getInstance(hashType);
+    this.blocked = blocked;
   }
 
   /**
@@ -121,7 +135,7 @@ public class BloomFilterChunk implements BloomFilterBase {
    * @return a Bloom filter with the same configuration as this
    */
   public BloomFilterChunk createAnother() {
-    BloomFilterChunk bbf = new BloomFilterChunk(hashType);
+    BloomFilterChunk bbf = new BloomFilterChunk(hashType, blocked);
     bbf.byteSize = byteSize;
     bbf.hashCount = hashCount;
     bbf.maxKeys = maxKeys;
@@ -152,6 +166,12 @@ public class BloomFilterChunk implements BloomFilterBase {
     if (this.keyCount < 0) {
       throw new IllegalArgumentException("must have positive keyCount");
     }
+
+    if (this.blocked && this.byteSize % BloomFilterUtil.BLOOM_BLOCK_BYTES != 0) {
+      throw new IllegalArgumentException("byteSize " + this.byteSize
+          + " of a blocked Bloom filter is not a multiple of "
+          + BloomFilterUtil.BLOOM_BLOCK_BYTES);
+    }
   }
 
   void bloomCheck(ByteBuffer bloom)  throws IllegalArgumentException {
@@ -173,9 +193,21 @@ public class BloomFilterChunk implements BloomFilterBase {
     int hash1 = this.hash.hash(buf, offset, len, 0);
     int hash2 = this.hash.hash(buf, offset, len, hash1);
 
-    for (int i = 0; i < this.hashCount; i++) {
-      long hashLoc = Math.abs((hash1 + i * hash2) % (this.byteSize * 8));
-      set(hashLoc);
+    if (this.blocked) {
+      // Must be consistent with BloomFilterUtil#containsBlocked
+      int blockBitOffset = BloomFilterUtil.getBlockBitOffset(hash1,
+          (int) (this.byteSize / BloomFilterUtil.BLOOM_BLOCK_BYTES));
+      int compositeHash = hash2;
+      int step = BloomFilterUtil.getBlockHashStep(hash2);
+      for (int i = 0; i < this.hashCount; i++) {
+        set(blockBitOffset + (compositeHash & (BloomFilterUtil.BLOOM_BLOCK_BITS - 1)));
+        compositeHash += step;
+      }
+    } else {
+      for (int i = 0; i < this.hashCount; i++) {
+        long hashLoc = Math.abs((hash1 + i * hash2) % (this.byteSize * 8));
+        set(hashLoc);
+      }
     }
 
     ++this.keyCount;
@@ -231,15 +263,21 @@ public class BloomFilterChunk implements BloomFilterBase {
     return hashType;
   }
 
+  public boolean isBlocked() {
+    return blocked;
+  }
+
   public void compactBloom() {
     // see if the actual size is exponentially smaller than expected.
     if (this.keyCount > 0 && this.bloom.hasArray()) {
       int pieces = 1;
       int newByteSize = (int)this.byteSize;
       int newMaxKeys = this.maxKeys;
+      // a blocked Bloom filter only folds into whole blocks
+      int foldUnit = this.blocked ? BloomFilterUtil.BLOOM_BLOCK_BYTES * 2 : 2;
 
       // while exponentially smaller & folding is lossless
-      while ((newByteSize & 1) == 0 && newMaxKeys > (this.keyCount<<1)) {
+      while (newByteSize % foldUnit == 0 && newMaxKeys > (this.keyCount<<1)) {
         pieces <<= 1;
         newByteSize >>= 1;
         newMaxKeys >>= 1;
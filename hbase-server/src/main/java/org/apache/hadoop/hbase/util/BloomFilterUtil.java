@@ -20,8 +20,10 @@ package org.apache.hadoop.hbase.util;
 import java.text.NumberFormat;
 import java.util.Random;
 
+import org.apache.hadoop.conf.Configuration;
 import org.apache.hadoop.hbase.classification.InterfaceAudience;
 import org.apache.hadoop.hbase.nio.ByteBuff;
+import org.apache.hadoop.hbase.regionserver.BloomType;
 
 /**
  * Utility methods related to BloomFilters
@@ -31,11 +33,27 @@ public final class BloomFilterUtil {
 
   /** Record separator for the Bloom filter statistics human-readable string */
   public static final String STATS_RECORD_SEP = "; ";
+
+  /** Column family setting for the row prefix length of ROWPREFIX_FIXED_LENGTH Bloom filters */
+  public static final String PREFIX_LENGTH_KEY = "RowPrefixBloomFilter.prefix_length";
+
+  /** Column family setting for the row delimiter of ROWPREFIX_DELIMITED Bloom filters */
+  public static final String DELIMITER_KEY = "RowPrefixDelimitedBloomFilter.delimiter";
+
   /**
    * Used in computing the optimal Bloom filter size. This approximately equals
    * 0.480453.
    */
   public static final double LOG2_SQUARED = Math.log(2) * Math.log(2);
+
+  /**
+   * Bytes in a block of a blocked Bloom filter chunk, the size of a cache line. All the bits of a
+   * key are in one block, so a lookup touches one cache line instead of one per hash function.
+   */
+  public static final int BLOOM_BLOCK_BYTES = 64;
+
+  /** Bits in a block of a blocked Bloom filter chunk */
+  static final int BLOOM_BLOCK_BITS = BLOOM_BLOCK_BYTES * 8;
   
   /**
    * A random number generator to use for "fake lookups" when testing to
@@ -133,6 +151,54 @@ public final class BloomFilterUtil {
         / bitSize)) * functionCount);
   }
 
+  /**
+   * Computes the actual error rate of a blocked Bloom filter. The keys are spread over the blocks
+   * unevenly, so that the error rate is higher than that of a classic Bloom filter of the same
+   * size: it is the error rate of one block averaged over the Poisson distributed number of keys
+   * in a block.
+   *
+   * @param maxKeys
+   * @param bitSize
+   * @param functionCount
+   * @return the actual error rate
+   */
+  public static double actualBlockedErrorRate(long maxKeys, long bitSize,
+      int functionCount) {
+    double keysPerBlock = maxKeys * 1.0 * BLOOM_BLOCK_BITS / bitSize;
+    int maxKeysPerBlock = (int) (keysPerBlock + 10 * Math.sqrt(keysPerBlock)) + 10;
+    double keysProbability = Math.exp(-keysPerBlock);
+    double errorRate = 0;
+    for (int keys = 1; keys <= maxKeysPerBlock; keys++) {
+      keysProbability *= keysPerBlock / keys;
+      errorRate += keysProbability * actualErrorRate(keys, BLOOM_BLOCK_BITS, functionCount);
+    }
+    return errorRate;
+  }
+
+  /**
+   * The maximum number of keys we can put into a blocked Bloom filter of a certain size to
+   * maintain the given error rate with the given number of hash functions.
+   *
+   * @param bitSize
+   * @param errorRate
+   * @param hashCount
+   * @return the maximum number of keys that can be inserted
+   */
+  public static long computeBlockedMaxKeys(long bitSize, double errorRate, int hashCount) {
+    // A blocked Bloom filter never holds more keys than a classic one
+    long low = 0;
+    long high = computeMaxKeys(bitSize, errorRate, hashCount);
+    while (low < high) {
+      long mid = (low + high + 1) >>> 1;
+      if (actualBlockedErrorRate(mid, bitSize, hashCount) <= errorRate) {
+        low = mid;
+      } else {
+        high = mid - 1;
+      }
+    }
+    return low;
+  }
+
   /**
    * Increases the given byte size of a Bloom filter until it can be folded by
    * the given factor.
@@ -177,9 +243,30 @@ public final class BloomFilterUtil {
    */
   public static BloomFilterChunk createBySize(int byteSizeHint,
       double errorRate, int hashType, int foldFactor) {
-    BloomFilterChunk bbf = new BloomFilterChunk(hashType);
+    return createBySize(byteSizeHint, errorRate, hashType, foldFactor, false);
+  }
+
+  /**
+   * Creates a Bloom filter chunk of the given size.
+   *
+   * @param byteSizeHint the desired number of bytes for the Bloom filter bit
+   *          array. Will be increased so that folding is possible.
+   * @param errorRate target false positive rate of the Bloom filter
+   * @param hashType Bloom filter hash function type
+   * @param foldFactor
+   * @param blocked whether to keep the bits of each key in one block of
+   *          {@link #BLOOM_BLOCK_BYTES}
+   * @return the new Bloom filter of the desired size
+   */
+  public static BloomFilterChunk createBySize(int byteSizeHint,
+      double errorRate, int hashType, int foldFactor, boolean blocked) {
+    BloomFilterChunk bbf = new BloomFilterChunk(hashType, blocked);
 
     bbf.byteSize = computeFoldableByteSize(byteSizeHint * 8L, foldFactor);
+    if (blocked) {
+      // A blocked chunk holds whole blocks, and only folds into whole blocks
+      bbf.byteSize = (bbf.byteSize + BLOOM_BLOCK_BYTES - 1) / BLOOM_BLOCK_BYTES * BLOOM_BLOCK_BYTES;
+    }
     long bitSize = bbf.byteSize * 8;
     bbf.maxKeys = (int) idealMaxKeys(bitSize, errorRate);
     bbf.hashCount = optimalFunctionCount(bbf.maxKeys, bitSize);
@@ -187,7 +274,11 @@ public final class BloomFilterUtil {
     // Adjust max keys to bring error rate closer to what was requested,
     // because byteSize was adjusted to allow for folding, and hashCount was
     // rounded.
-    bbf.maxKeys = (int) computeMaxKeys(bitSize, errorRate, bbf.hashCount);
+    if (blocked) {
+      bbf.maxKeys = (int) computeBlockedMaxKeys(bitSize, errorRate, bbf.hashCount);
+    } else {
+      bbf.maxKeys = (int) computeMaxKeys(bitSize, errorRate, bbf.hashCount);
+    }
 
     return bbf;
   }
@@ -222,6 +313,62 @@ public final class BloomFilterUtil {
     return true;
   }
 
+  /**
+   * Checks a key against a blocked Bloom filter chunk, where all the bits of
+   * the key are in one block of {@link #BLOOM_BLOCK_BYTES}.
+   */
+  public static boolean containsBlocked(byte[] buf, int offset, int length,
+      ByteBuff bloomBuf, int bloomOffset, int bloomSize, Hash hash,
+      int hashCount) {
+    int numBlocks = bloomSize / BLOOM_BLOCK_BYTES;
+
+    if (randomGeneratorForTest == null) {
+      // Production mode.
+      int hash1 = hash.hash(buf, offset, length, 0);
+      int hash2 = hash.hash(buf, offset, length, hash1);
+      int blockBitOffset = getBlockBitOffset(hash1, numBlocks);
+      int compositeHash = hash2;
+      int step = getBlockHashStep(hash2);
+      for (int i = 0; i < hashCount; i++) {
+        int hashLoc = blockBitOffset + (compositeHash & (BLOOM_BLOCK_BITS - 1));
+        compositeHash += step;
+        if (!checkBit(hashLoc, bloomBuf, bloomOffset)) {
+          return false;
+        }
+      }
+    } else {
+      // Test mode with "fake lookups" to estimate "ideal false positive rate".
+      int blockBitOffset = randomGeneratorForTest.nextInt(numBlocks) * BLOOM_BLOCK_BITS;
+      for (int i = 0; i < hashCount; i++) {
+        int hashLoc = blockBitOffset + randomGeneratorForTest.nextInt(BLOOM_BLOCK_BITS);
+        if (!checkBit(hashLoc, bloomBuf, bloomOffset)) {
+          return false;
+        }
+      }
+    }
+    return true;
+  }
+
+  /**
+   * @param hash1 the first hash of a key
+   * @param numBlocks the number of blocks in a blocked Bloom filter chunk
+   * @return the index of the first bit of the block holding the bits of the
+   *         key. Folding a chunk keeps the block of each key, because the
+   *         number of blocks only ever gets divided by a power of two.
+   */
+  static int getBlockBitOffset(int hash1, int numBlocks) {
+    return ((hash1 & Integer.MAX_VALUE) % numBlocks) * BLOOM_BLOCK_BITS;
+  }
+
+  /**
+   * @param hash2 the second hash of a key
+   * @return the step between the bits of the key within its block. It is
+   *         odd so that the bits of a key do not repeat within a block.
+   */
+  static int getBlockHashStep(int hash2) {
+    return Integer.rotateRight(hash2, 17) | 1;
+  }
+
   /**
    * Check if bit at specified index is 1.
    *
@@ -262,4 +409,78 @@ public final class BloomFilterUtil {
     return formatStats(bloomFilter) + STATS_RECORD_SEP + "Actual error rate: "
         + String.format("%.8f", bloomFilter.actualErrorRate());
   }
+
+  /**
+   * @param bloomType the general Bloom filter type
+   * @param conf the column family configuration
+   * @return the parameter the Bloom filter type is keyed with, to keep in the file info: the
+   *         prefix length or the delimiter of row prefix Bloom filters, null for other types
+   * @throws IllegalArgumentException if the configuration lacks a valid parameter
+   */
+  public static byte[] getBloomFilterParam(BloomType bloomType, Configuration conf) {
+    switch (bloomType) {
+    case ROWPREFIX_FIXED_LENGTH:
+      String length = conf.get(PREFIX_LENGTH_KEY);
+      if (length == null) {
+        throw new IllegalArgumentException(PREFIX_LENGTH_KEY + " is not set for a "
+            + bloomType + " Bloom filter");
+      }
+      int prefixLength;
+      try {
+        prefixLength = Integer.parseInt(length.trim());
+      } catch (NumberFormatException e) {
+        prefixLength = -1;
+      }
+      if (prefixLength <= 0) {
+        throw new IllegalArgumentException(PREFIX_LENGTH_KEY + " must be a positive integer, not "
+            + length);
+      }
+      return Bytes.toBytes(prefixLength);
+    case ROWPREFIX_DELIMITED:
+      String delimiter = conf.get(DELIMITER_KEY);
+      if (delimiter == null || delimiter.isEmpty()) {
+        throw new IllegalArgumentException(DELIMITER_KEY + " is not set for a "
+            + bloomType + " Bloom filter");
+      }
+      return Bytes.toBytesBinary(delimiter);
+    default:
+      return null;
+    }
+  }
+
+  /**
+   * Gets the length of the row prefix a row prefix Bloom filter is keyed on: the fixed length,
+   * or up to and including the first delimiter. Rows too short or without the delimiter are keyed
+   * whole. Keeping the delimiter keeps the prefixes of sorted rows sorted.
+   * @param bloomType ROWPREFIX_FIXED_LENGTH or ROWPREFIX_DELIMITED
+   * @param bloomParam the parameter from {@link #getBloomFilterParam(BloomType, Configuration)}
+   */
+  public static int getRowPrefixLength(byte[] row, int offset, int length, BloomType bloomType,
+      byte[] bloomParam) {
+    if (bloomType == BloomType.ROWPREFIX_FIXED_LENGTH) {
+      return Math.min(length, Bytes.toInt(bloomParam));
+    }
+    for (int i = offset, end = offset + length - bloomParam.length; i <= end; i++) {
+      if (Bytes.equals(row, i, bloomParam.length, bloomParam, 0, bloomParam.length)) {
+        return i - offset + bloomParam.length;
+      }
+    }
+    return length;
+  }
+
+  /**
+   * @param prefixLength as returned by
+   *          {@link #getRowPrefixLength(byte[], int, int, BloomType, byte[])} for the row
+   * @return true if the row has a whole prefix, which all rows keyed on it start with; false if
+   *         the row is keyed whole as it is too short or lacks the delimiter
+   */
+  public static boolean isCompleteRowPrefix(byte[] row, int offset, int prefixLength,
+      BloomType bloomType, byte[] bloomParam) {
+    if (bloomType == BloomType.ROWPREFIX_FIXED_LENGTH) {
+      return prefixLength == Bytes.toInt(bloomParam);
+    }
+    return prefixLength >= bloomParam.length && Bytes.equals(row,
+        offset + prefixLength - bloomParam.length, bloomParam.length, bloomParam, 0,
+        bloomParam.length);
+  }
 }
\ No newline at end of file
@@ -124,7 +124,7 @@ public class DefaultWALProvider implements WALProvider {
       // creating hlog on fs is time consuming
       synchronized (walCreateLock) {
         if (log == null) {
-          log = new FSHLog(FileSystem.get(conf), FSUtils.getRootDir(conf),
+          log = createWAL(FileSystem.get(conf), FSUtils.getRootDir(conf),
               getWALDirectoryName(factory.factoryId), HConstants.HREGION_OLDLOGDIR_NAME, conf,
               listeners, true, logPrefix,
               META_WAL_PROVIDER_ID.equals(providerId) ? META_WAL_PROVIDER_ID : null);
@@ -134,6 +134,18 @@ public class DefaultWALProvider implements WALProvider {
     return log;
   }
 
+  /**
+   * Creates the one WAL this provider hands out. Arguments are as for the {@link FSHLog}
+   * constructor.
+   */
+  protected FSHLog createWAL(final FileSystem fs, final Path rootDir, final String logDir,
+      final String archiveDir, final Configuration conf, final List<WALActionsListener> listeners,
+      final boolean failIfWALExists, final String prefix, final String suffix)
+      throws IOException {
+    return new FSHLog(fs, rootDir, logDir, archiveDir, conf, listeners, failIfWALExists, prefix,
+        suffix);
+  }
+
   @Override
   public void close() throws IOException {
     if (log != null) log.close();
@@ -20,6 +20,7 @@ package org.apache.hadoop.hbase.wal;
 
 import java.io.Closeable;
 import java.io.IOException;
+import java.nio.channels.CompletionHandler;
 import java.util.List;
 
 import org.apache.hadoop.hbase.classification.InterfaceAudience;
@@ -80,6 +81,18 @@ public interface WALProvider {
     long getLength() throws IOException;
   }
 
+  /**
+   * A Writer that can sync without blocking the caller. Used by WALs that complete their
+   * pending syncs from I/O callbacks rather than from threads parked on {@link Writer#sync()}.
+   */
+  interface AsyncWriter extends Writer {
+    /**
+     * Makes everything appended so far durable. The handler gets the length of the file once
+     * it is, or the reason it could not be. Handlers are called in the order of the syncs.
+     */
+    <A> void sync(A attachment, CompletionHandler<Long, ? super A> handler);
+  }
+
   /**
    * Get number of the log files this provider is managing
    */
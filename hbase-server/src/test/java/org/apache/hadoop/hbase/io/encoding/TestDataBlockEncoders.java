@@ -245,6 +245,82 @@ public class TestDataBlockEncoders {
     LOG.info("Done");
   }
 
+  /**
+   * Test that the row index of ROW_INDEX_V1 lands seeks on the same cells, with the same result,
+   * as the linear seek of FAST_DIFF, both for fresh seeks and for forward reseeks.
+   */
+  @Test
+  public void testRowIndexSeeking() throws IOException {
+    List<KeyValue> kvs = new ArrayList<KeyValue>();
+    List<Cell> seekKeys = new ArrayList<Cell>();
+    byte[] family = Bytes.toBytes("f");
+    for (int r = 0; r < 100; r++) {
+      byte[] row = Bytes.toBytes(String.format("row%03d", r));
+      seekKeys.add(KeyValueUtil.createFirstOnRow(row));
+      // Only even rows exist, with a varying number of columns
+      for (int c = 0; r % 2 == 0 && c < r % 7 + 1; c++) {
+        byte[] qualifier = Bytes.toBytes("q" + c);
+        byte[] value = Bytes.toBytes(r * 10 + c);
+        KeyValue kv;
+        if (includesTags) {
+          kv = new KeyValue(row, family, qualifier, 1L, value,
+              new Tag[] { new ArrayBackedTag((byte) 1, "tag" + c) });
+        } else {
+          kv = new KeyValue(row, family, qualifier, 1L, Type.Put, value);
+        }
+        kvs.add(kv);
+        seekKeys.add(kv);
+      }
+      seekKeys.add(KeyValueUtil.createLastOnRow(row));
+    }
+    DataBlockEncoder.EncodedSeeker linear = createSeeker(DataBlockEncoding.FAST_DIFF, kvs);
+    DataBlockEncoder.EncodedSeeker indexed = createSeeker(DataBlockEncoding.ROW_INDEX_V1, kvs);
+    for (boolean seekBefore : new boolean[] { false, true }) {
+      for (Cell key : seekKeys) {
+        if (seekBefore && CellComparator.COMPARATOR.compare(key, kvs.get(0)) <= 0) {
+          continue;
+        }
+        linear.rewind();
+        indexed.rewind();
+        checkSameSeek(linear, indexed, key, seekBefore);
+      }
+    }
+    linear.rewind();
+    indexed.rewind();
+    for (Cell key : seekKeys) {
+      checkSameSeek(linear, indexed, key, false);
+    }
+  }
+
+  private DataBlockEncoder.EncodedSeeker createSeeker(DataBlockEncoding encoding,
+      List<KeyValue> kvs) throws IOException {
+    DataBlockEncoder encoder = encoding.getEncoder();
+    ByteBuffer encodedBuffer = encodeKeyValues(encoding, kvs,
+        getEncodingContext(Compression.Algorithm.NONE, encoding), this.useOffheapData);
+    HFileContext meta = new HFileContextBuilder()
+                        .withHBaseCheckSum(false)
+                        .withIncludesMvcc(includesMemstoreTS)
+                        .withIncludesTags(includesTags)
+                        .withCompression(Compression.Algorithm.NONE)
+                        .build();
+    DataBlockEncoder.EncodedSeeker seeker = encoder.createSeeker(CellComparator.COMPARATOR,
+        encoder.newDataBlockDecodingContext(meta));
+    seeker.setCurrentBuffer(new SingleByteBuff(encodedBuffer));
+    return seeker;
+  }
+
+  private void checkSameSeek(DataBlockEncoder.EncodedSeeker expected,
+      DataBlockEncoder.EncodedSeeker actual, Cell key, boolean seekBefore) {
+    assertEquals(expected.seekToKeyInBlock(key, seekBefore),
+        actual.seekToKeyInBlock(key, seekBefore));
+    assertTrue(CellUtil.equals(expected.getCell(), actual.getCell()));
+    assertEquals(expected.getValueShallowCopy(), actual.getValueShallowCopy());
+    if (includesTags) {
+      assertTrue(Bytes.equals(CellUtil.cloneTags(expected.getCell()),
+          CellUtil.cloneTags(actual.getCell())));
+    }
+  }
+
   static ByteBuffer encodeKeyValues(DataBlockEncoding encoding, List<KeyValue> kvs,
       HFileBlockEncodingContext encodingContext, boolean useOffheapData) throws IOException {
     DataBlockEncoder encoder = encoding.getEncoder();
@@ -0,0 +1,156 @@
+/**
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.hadoop.hbase.io.hfile;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.util.Collections;
+import java.util.List;
+
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.hbase.HBaseConfiguration;
+import org.apache.hadoop.hbase.io.hfile.BlockCacheTraceReplayer.Result;
+import org.apache.hadoop.hbase.io.hfile.BlockCacheTracer.Access;
+import org.apache.hadoop.hbase.testclassification.IOTests;
+import org.apache.hadoop.hbase.testclassification.SmallTests;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.experimental.categories.Category;
+
+/**
+ * Tests for {@link BlockCacheTracer} and {@link BlockCacheTraceReplayer}
+ */
+@Category({IOTests.class, SmallTests.class})
+public class TestBlockCacheTrace {
+  private static final String PATH = "testBlockCacheTrace";
+  private static final int BLOCKS = 50;
+  private static final int PASSES = 10;
+  private static final int BLOCK_SIZE = 1000;
+
+  private final List<String> traces = Collections.singletonList(PATH);
+
+  @Before
+  @After
+  public void deleteTrace() {
+    new File(PATH).delete();
+  }
+
+  @Test
+  public void testRecordAndRead() throws IOException {
+    BlockCacheTracer tracer = new BlockCacheTracer(PATH, Long.MAX_VALUE);
+    tracer.record(new BlockCacheKey("hfile1", 0), BlockType.DATA, 1000, false, true);
+    tracer.record(new BlockCacheKey("hfile2", 1L << 40), BlockType.LEAF_INDEX, 70000, true,
+      false);
+    tracer.record(new BlockCacheKey("hfile1", 1000), BlockType.ENCODED_DATA, 1, true, true);
+    tracer.close();
+    // Closing twice, or recording after, does nothing
+    tracer.record(new BlockCacheKey("hfile1", 2000), BlockType.DATA, 1000, false, true);
+    tracer.close();
+
+    BlockCacheTracer.Reader reader = new BlockCacheTracer.Reader(PATH);
+    Access access = new Access();
+    assertTrue(reader.next(access));
+    assertAccess(access, "hfile1", 0, BlockType.DATA, 1000, false, true);
+    assertTrue(reader.next(access));
+    assertAccess(access, "hfile2", 1L << 40, BlockType.LEAF_INDEX, 70000, true, false);
+    assertTrue(reader.next(access));
+    assertAccess(access, "hfile1", 1000, BlockType.ENCODED_DATA, 1, true, true);
+    assertFalse(reader.next(access));
+    reader.close();
+
+    // A trace cut short reads up to its last whole record
+    RandomAccessFile file = new RandomAccessFile(PATH, "rw");
+    file.setLength(file.length() - 1);
+    file.close();
+    reader = new BlockCacheTracer.Reader(PATH);
+    assertTrue(reader.next(access));
+    assertTrue(reader.next(access));
+    assertFalse(reader.next(access));
+    reader.close();
+  }
+
+  private static void assertAccess(Access access, String hfileName, long offset,
+      BlockType blockType, long size, boolean hit, boolean caching) {
+    assertEquals(hfileName, access.getHfileName());
+    assertEquals(offset, access.getOffset());
+    assertEquals(blockType, access.getBlockType());
+    assertEquals(size, access.getSize());
+    assertEquals(hit, access.isHit());
+    assertEquals(caching, access.isCaching());
+  }
+
+  @Test
+  public void testStopsAtMaxSize() throws IOException {
+    BlockCacheTracer tracer = new BlockCacheTracer(PATH, 1000);
+    for (int i = 0; i < 1000; i++) {
+      tracer.record(new BlockCacheKey("hfile", i * 1000L), BlockType.DATA, 1000, false, true);
+    }
+    tracer.close();
+    Result result = BlockCacheTraceReplayer.replay(traces, null);
+    assertTrue(result.getLookups() > 0);
+    assertTrue(result.getLookups() < 1000);
+  }
+
+  @Test
+  public void testReplay() throws IOException {
+    // Reads a working set of BLOCKS over and over, each block hitting after the first pass
+    BlockCacheTracer tracer = new BlockCacheTracer(PATH, Long.MAX_VALUE);
+    for (int pass = 0; pass < PASSES; pass++) {
+      for (int i = 0; i < BLOCKS; i++) {
+        tracer.record(new BlockCacheKey("hfile", i * (long) BLOCK_SIZE), BlockType.DATA,
+          BLOCK_SIZE, pass > 0, true);
+      }
+    }
+    tracer.close();
+    int lookups = BLOCKS * PASSES;
+    int hits = BLOCKS * (PASSES - 1);
+
+    Result traced = BlockCacheTraceReplayer.replay(traces, null);
+    assertEquals(lookups, traced.getLookups());
+    assertEquals(hits, traced.getHits());
+    assertEquals((double) hits / lookups, traced.getByteHitRatio(), 0.0001);
+
+    // The working set fits
+    assertEquals(hits, replay("lru", 1024 * 1024).getHits());
+    assertEquals(hits, replay("bucket", 32 * 1024 * 1024).getHits());
+    assertEquals(hits, replay("combined", 64 * 1024 * 1024).getHits());
+    // LRU over a loop that does not fit evicts every block before it is read again
+    assertEquals(0, replay("lru", BLOCKS * BLOCK_SIZE / 2).getHits());
+  }
+
+  private Result replay(String cache, long size) throws IOException {
+    Configuration conf = HBaseConfiguration.create();
+    conf.setInt(CacheConfig.BLOCKCACHE_BLOCKSIZE_KEY, BLOCK_SIZE);
+    BlockCache blockCache =
+        BlockCacheTraceReplayer.createCache(conf, cache, "none", size, 0.1f, "heap");
+    try {
+      Result result = BlockCacheTraceReplayer.replay(traces, blockCache);
+      assertEquals(BLOCKS * PASSES, result.getLookups());
+      return result;
+    } finally {
+      blockCache.shutdown();
+    }
+  }
+}
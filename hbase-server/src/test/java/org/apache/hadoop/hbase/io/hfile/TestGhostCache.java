@@ -0,0 +1,113 @@
+/**
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.hadoop.hbase.io.hfile;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.hbase.HBaseConfiguration;
+import org.apache.hadoop.hbase.testclassification.IOTests;
+import org.apache.hadoop.hbase.testclassification.SmallTests;
+import org.junit.Test;
+import org.junit.experimental.categories.Category;
+
+@Category({IOTests.class, SmallTests.class})
+public class TestGhostCache {
+
+  @Test
+  public void testDisabledByDefault() {
+    Configuration conf = HBaseConfiguration.create();
+    assertNull(GhostCache.create(conf, 1000));
+    conf.setFloat(GhostCache.SAMPLE_RATE_KEY, 0.1f);
+    assertEquals(9, GhostCache.create(conf, 1000).getCurve().getPointCount());
+  }
+
+  @Test
+  public void testCyclicScan() {
+    // Estimates at 80% to 120% of 100 blocks; a loop over 90 blocks only hits from 90% up
+    GhostCache ghost = new GhostCache(100, 1f, 0.05f, 4);
+    BlockCacheKey[] keys = keys(90);
+    for (BlockCacheKey key : keys) {
+      ghost.miss(key);
+      ghost.cached(key, 1);
+    }
+    for (int round = 1; round < 10; round++) {
+      for (BlockCacheKey key : keys) {
+        ghost.miss(key);
+      }
+    }
+    GhostCache.Curve curve = ghost.getCurve();
+    assertEquals(900, curve.getLookupCount());
+    assertEquals(0.8f, curve.getSize(0), 0.0001f);
+    assertEquals(1.2f, curve.getSize(8), 0.0001f);
+    assertEquals(0f, curve.getHitRatio(0.85f), 0.0001f);
+    assertEquals(0.9f, curve.getHitRatio(0.9f), 0.0001f);
+    assertEquals(0.9f, curve.getHitRatio(1.5f), 0.0001f);
+    // Half way between the two
+    assertEquals(0.45f, curve.getHitRatio(0.875f), 0.0001f);
+
+    // Only the lookups since the earlier curve
+    for (BlockCacheKey key : keys) {
+      ghost.hit(key, 1);
+    }
+    GhostCache.Curve recent = ghost.getCurve().since(curve);
+    assertEquals(90, recent.getLookupCount());
+    assertEquals(1f, recent.getHitRatio(1f), 0.0001f);
+  }
+
+  @Test
+  public void testSetCapacity() {
+    GhostCache ghost = new GhostCache(100, 1f, 0.05f, 4);
+    BlockCacheKey[] keys = keys(150);
+    for (BlockCacheKey key : keys) {
+      ghost.cached(key, 1);
+    }
+    // The stack reaches to 120% of the cache size
+    assertEquals(120, ghost.getTrackedCount());
+    ghost.setCapacity(40);
+    assertEquals(48, ghost.getTrackedCount());
+    // The most recent keys are kept, at the top of the stack
+    ghost.miss(keys[149]);
+    assertEquals(1f, ghost.getCurve().getHitRatio(0.8f), 0.0001f);
+    ghost.evicted(keys[149]);
+    assertEquals(47, ghost.getTrackedCount());
+  }
+
+  @Test
+  public void testSampling() {
+    GhostCache ghost = new GhostCache(1000000, 0.25f, 0.05f, 4);
+    for (BlockCacheKey key : keys(10000)) {
+      ghost.miss(key);
+      ghost.cached(key, 1);
+    }
+    long lookups = ghost.getCurve().getLookupCount();
+    assertTrue("lookups=" + lookups, lookups > 2000 && lookups < 3000);
+    assertEquals(lookups, ghost.getTrackedCount());
+  }
+
+  private static BlockCacheKey[] keys(int count) {
+    BlockCacheKey[] keys = new BlockCacheKey[count];
+    for (int i = 0; i < count; i++) {
+      keys[i] = new BlockCacheKey("file", i * 65536L);
+    }
+    return keys;
+  }
+}
@@ -29,6 +29,8 @@ import org.apache.hadoop.hbase.HConstants;
 import org.apache.hadoop.hbase.KeyValue;
 import org.apache.hadoop.hbase.io.FSDataInputStreamWrapper;
 import org.apache.hadoop.hbase.io.compress.Compression;
+import org.apache.hadoop.hbase.io.hfile.BlockType.BlockCategory;
+import org.apache.hadoop.hbase.io.hfile.bucket.BucketCache;
 import org.apache.hadoop.hbase.testclassification.IOTests;
 import org.apache.hadoop.hbase.testclassification.SmallTests;
 import org.apache.hadoop.hbase.util.Bytes;
@@ -228,4 +230,77 @@ public class TestLazyDataBlockDecompression {
       "disabledEvictedCount=" + disabledEvictedCount + ", enabledEvictedCount=" +
       enabledEvictedCount, enabledEvictedCount < disabledEvictedCount);
   }
+
+  @Test
+  public void testCompressedBucketCacheUnpacksIntoPooledBuffers() throws Exception {
+    Path hfilePath = new Path(TEST_UTIL.getDataTestDir(),
+      "testCompressedBucketCacheUnpacksIntoPooledBuffers");
+    HFileContext context = new HFileContextBuilder()
+      .withCompression(Compression.Algorithm.GZ)
+      .build();
+    Configuration conf = HBaseConfiguration.create(TEST_UTIL.getConfiguration());
+    conf.setBoolean(CacheConfig.CACHE_BLOCKS_ON_WRITE_KEY, cacheOnWrite);
+    conf.setBoolean(CacheConfig.BUCKET_CACHE_COMPRESSED_KEY, true);
+    BucketCache bucketCache = new BucketCache("offheap", 32 * 1024 * 1024,
+      HConstants.DEFAULT_BLOCKSIZE, null, 1, 64, null);
+    CacheConfig.GLOBAL_BLOCK_CACHE_INSTANCE = new CombinedBlockCache(
+      new LruBlockCache(8 * 1024 * 1024, HConstants.DEFAULT_BLOCKSIZE, false, conf), bucketCache);
+    try {
+      CacheConfig cc = new CacheConfig(conf);
+      assertFalse(cc.shouldCacheDataCompressed());
+      assertTrue(cc.shouldCacheCompressed(BlockCategory.DATA));
+      DecompressionBufferPool pool = cc.getDecompressionBufferPool();
+      assertNotNull(pool);
+      CacheConfig l1Conf = new CacheConfig(cc);
+      l1Conf.setCacheDataInL1(true);
+      assertFalse("data blocks cached in L1 must stay unpacked",
+        l1Conf.shouldCacheCompressed(BlockCategory.DATA));
+
+      writeHFile(conf, cc, fs, hfilePath, context, 2000);
+      HFile.Reader reader = HFile.createReader(fs, hfilePath, cc, conf);
+      try {
+        // The first pass caches the blocks if they were not on write, the second one hits them
+        readDataBlocks(reader, false);
+        CacheStats stats = cc.getBlockCache().getStats();
+        long decompressed = stats.getDecompressCount();
+        int blocks = readDataBlocks(reader, true);
+        assertEquals(decompressed + blocks, stats.getDecompressCount());
+        assertTrue("decompression buffers were not given back", pool.size() > 0);
+
+        long offset = reader.getTrailer().getFirstDataBlockOffset();
+        BlockCacheKey key = new BlockCacheKey(reader.getName(), offset);
+        HFileBlock cached = (HFileBlock) bucketCache.getBlock(key, false, false, false);
+        assertNotNull(cached);
+        assertFalse("found an unpacked block in the bucket cache", cached.isUnpacked());
+        bucketCache.returnBlock(key, cached);
+      } finally {
+        reader.close();
+      }
+    } finally {
+      bucketCache.shutdown();
+    }
+  }
+
+  /**
+   * Reads all data blocks of the file, giving each back once read.
+   * @return the number of blocks read
+   */
+  private static int readDataBlocks(HFile.Reader reader, boolean expectPooled)
+      throws IOException {
+    long offset = reader.getTrailer().getFirstDataBlockOffset();
+    long max = reader.getTrailer().getLastDataBlockOffset();
+    int blocks = 0;
+    while (offset <= max) {
+      HFileBlock block = reader.readBlock(offset, -1, /* cacheBlock */ true, /* pread */ false,
+        /* isCompaction */ false, /* updateCacheMetrics */ true, null, null);
+      assertTrue("found a packed block, block=" + block, block.isUnpacked());
+      if (expectPooled) {
+        assertTrue(block.usesSharedMemory());
+      }
+      offset += block.getOnDiskSizeWithHeader();
+      reader.returnBlock(block);
+      blocks++;
+    }
+    return blocks;
+  }
 }
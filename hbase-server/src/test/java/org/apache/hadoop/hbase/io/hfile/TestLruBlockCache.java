@@ -735,6 +735,114 @@ public class TestLruBlockCache {
     assertEquals(0.5, stats.getHitCachingRatioPastNPeriods(), delta);
   }
 
+  @Test
+  public void testSegmentCount() {
+    // Small caches keep an exact LRU order
+    assertEquals(1, LruBlockCache.segmentCount(100000, 10000, 32));
+    assertEquals(4, LruBlockCache.segmentCount(4 * LruBlockCache.MIN_SEGMENT_BLOCKS * 100, 100,
+      32));
+    assertEquals(4, LruBlockCache.segmentCount(6 * LruBlockCache.MIN_SEGMENT_BLOCKS * 100, 100,
+      32));
+    assertEquals(2, LruBlockCache.segmentCount(4 * LruBlockCache.MIN_SEGMENT_BLOCKS * 100, 100,
+      2));
+  }
+
+  @Test
+  public void testSegmentedEviction() throws Exception {
+    int numBlocks = 4 * LruBlockCache.MIN_SEGMENT_BLOCKS;
+    long blockSize = 1000;
+    LruBlockCache cache = new LruBlockCache(numBlocks * blockSize, blockSize, false);
+    assertEquals(4, cache.getSegmentCount());
+
+    // A quarter of the cache is read twice, then three times the cache is scanned through
+    CachedItem[] multiBlocks = generateFixedBlocks(numBlocks / 4, 700, "multi");
+    CachedItem[] singleBlocks = generateFixedBlocks(3 * numBlocks, 700, "single");
+    for (CachedItem block : multiBlocks) {
+      cache.cacheBlock(block.cacheKey, block);
+    }
+    for (CachedItem block : multiBlocks) {
+      assertEquals(block, cache.getBlock(block.cacheKey, true, false, true));
+    }
+    for (CachedItem block : singleBlocks) {
+      cache.cacheBlock(block.cacheKey, block);
+    }
+
+    assertTrue(cache.getStats().getEvictionCount() > 0);
+    assertTrue(cache.heapSize() <= cache.acceptableSize());
+    for (CachedItem block : multiBlocks) {
+      assertEquals(block, cache.getBlock(block.cacheKey, true, false, true));
+    }
+    for (int i = 0; i < 100; i++) {
+      assertNull(cache.getBlock(singleBlocks[i].cacheKey, true, false, true));
+      CachedItem newest = singleBlocks[singleBlocks.length - 1 - i];
+      assertEquals(newest, cache.getBlock(newest.cacheKey, true, false, true));
+    }
+    cache.shutdown();
+  }
+
+  @Test
+  public void testConcurrentEvictionKeepsAccounting() throws Exception {
+    final int numBlocks = 4 * LruBlockCache.MIN_SEGMENT_BLOCKS;
+    long blockSize = 1000;
+    final LruBlockCache cache = new LruBlockCache(numBlocks * blockSize, blockSize, false);
+    final CachedItem[] blocks = generateFixedBlocks(4 * numBlocks, 700, "block");
+    Thread[] threads = new Thread[8];
+    for (int t = 0; t < threads.length; t++) {
+      final Random random = new Random(t);
+      threads[t] = new Thread() {
+        @Override
+        public void run() {
+          for (int i = 0; i < 20000; i++) {
+            CachedItem block = blocks[random.nextInt(blocks.length)];
+            if (cache.getBlock(block.cacheKey, true, false, true) == null) {
+              cache.cacheBlock(block.cacheKey, block);
+            } else if (random.nextInt(10) == 0) {
+              cache.evictBlock(block.cacheKey);
+            }
+          }
+        }
+      };
+      threads[t].start();
+    }
+    for (Thread thread : threads) {
+      thread.join();
+    }
+
+    long expectedSize = LruBlockCache.calculateOverhead(numBlocks * blockSize, blockSize,
+      LruBlockCache.DEFAULT_CONCURRENCY_LEVEL);
+    for (LruCachedBlock cb : cache.getMapForTests().values()) {
+      expectedSize += cb.heapSize();
+    }
+    assertEquals(cache.getMapForTests().size(), cache.getBlockCount());
+    assertEquals(expectedSize, cache.heapSize());
+    assertTrue(cache.heapSize() < cache.getMaxSize());
+    cache.shutdown();
+  }
+
+  @Test
+  public void testGhostCacheFollowsLookups() throws Exception {
+    long blockSize = 1000;
+    LruBlockCache cache = new LruBlockCache(100 * blockSize, blockSize, false);
+    cache.setGhostCache(new GhostCache(100 * blockSize, 1f, 0.05f, 4));
+    CachedItem[] blocks = generateFixedBlocks(10, 700, "block");
+    for (CachedItem block : blocks) {
+      assertNull(cache.getBlock(block.cacheKey, true, false, true));
+      cache.cacheBlock(block.cacheKey, block);
+    }
+    for (CachedItem block : blocks) {
+      assertEquals(block, cache.getBlock(block.cacheKey, true, false, true));
+    }
+    GhostCache.Curve curve = cache.getGhostCache().getCurve();
+    assertEquals(20, curve.getLookupCount());
+    assertEquals(0.5f, curve.getHitRatio(0.8f), 0.001f);
+    assertEquals(0.5f, curve.getHitRatio(1.2f), 0.001f);
+
+    // Blocks evicted other than to make room are dropped
+    cache.evictBlock(blocks[0].cacheKey);
+    assertEquals(9, cache.getGhostCache().getTrackedCount());
+    cache.shutdown();
+  }
+
   private CachedItem [] generateFixedBlocks(int numBlocks, int size, String pfx) {
     CachedItem [] blocks = new CachedItem[numBlocks];
     for(int i=0;i<numBlocks;i++) {
@@ -21,6 +21,7 @@ import static org.junit.Assert.*;
 
 import java.io.IOException;
 import java.util.Random;
+import java.util.concurrent.TimeUnit;
 
 import org.apache.hadoop.conf.Configuration;
 import org.apache.hadoop.fs.FileSystem;
@@ -66,6 +67,31 @@ public class TestPrefetch {
     readStoreFile(storeFile);
   }
 
+  @Test(timeout=60000)
+  public void testPrefetchRanges() throws Exception {
+    // Small ranges split the file so that its blocks are read in parallel
+    conf.setLong(PrefetchExecutor.PREFETCH_RANGE_SIZE_KEY, DATA_BLOCK_SIZE * 4);
+    try {
+      Path regionDir = new Path(TEST_UTIL.getDataTestDir(), "testPrefetchRanges");
+      Path storeFile = writeStoreFile(new Path(regionDir, "family"));
+      readStoreFile(storeFile);
+      assertEquals(0, PrefetchExecutor.getRemainingBytes(regionDir.getName()));
+    } finally {
+      conf.unset(PrefetchExecutor.PREFETCH_RANGE_SIZE_KEY);
+    }
+  }
+
+  @Test
+  public void testThrottle() {
+    assertEquals(0, new PrefetchExecutor.Throttle(0).reserve(Long.MAX_VALUE));
+    PrefetchExecutor.Throttle throttle = new PrefetchExecutor.Throttle(1000);
+    assertEquals(0, throttle.reserve(1000));
+    // The second read must wait for the first one's second of budget to pass
+    long wait = throttle.reserve(1000);
+    assertTrue(wait > TimeUnit.MILLISECONDS.toNanos(500));
+    assertTrue(wait <= TimeUnit.SECONDS.toNanos(1));
+  }
+
   private void readStoreFile(Path storeFilePath) throws Exception {
     // Open the file
     HFile.Reader reader = HFile.createReader(fs, storeFilePath, cacheConf, conf);
@@ -99,7 +125,10 @@ public class TestPrefetch {
   }
 
   private Path writeStoreFile() throws IOException {
-    Path storeFileParentDir = new Path(TEST_UTIL.getDataTestDir(), "TestPrefetch");
+    return writeStoreFile(new Path(TEST_UTIL.getDataTestDir(), "TestPrefetch"));
+  }
+
+  private Path writeStoreFile(Path storeFileParentDir) throws IOException {
     HFileContext meta = new HFileContextBuilder()
       .withBlockSize(DATA_BLOCK_SIZE)
       .build();
@@ -0,0 +1,160 @@
+/**
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.hadoop.hbase.io.hfile;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import org.apache.hadoop.hbase.testclassification.IOTests;
+import org.apache.hadoop.hbase.testclassification.SmallTests;
+import org.junit.Test;
+import org.junit.experimental.categories.Category;
+
+/**
+ * Tests the frequency sketch of {@link TinyLfuAdmissionPolicy}, and that the policy keeps the
+ * blocks of a random read workload in an {@link LruBlockCache} through scans.
+ */
+@Category({IOTests.class, SmallTests.class})
+public class TestTinyLfuAdmissionPolicy {
+  private static final long BLOCK_SIZE = 1200;
+  private static final int CACHE_BLOCKS = 300;
+  private static final int HOT_BLOCKS = 100;
+  private static final int SCAN_BLOCKS = 1000;
+  private static final int ROUNDS = 6;
+
+  @Test
+  public void testFrequencySketch() {
+    FrequencySketch sketch = new FrequencySketch(1000);
+    for (int i = 0; i < 5; i++) {
+      sketch.increment(42);
+    }
+    assertEquals(5, sketch.frequency(42));
+    for (int i = 0; i < 100; i++) {
+      sketch.increment(42);
+    }
+    assertEquals(FrequencySketch.MAX_FREQUENCY, sketch.frequency(42));
+    for (int i = 1000; i < 2000; i++) {
+      assertEquals(0, sketch.frequency(i));
+    }
+  }
+
+  @Test
+  public void testFrequencySketchAges() {
+    FrequencySketch sketch = new FrequencySketch(16);
+    for (int i = 0; i < FrequencySketch.MAX_FREQUENCY; i++) {
+      assertFalse(sketch.increment(42));
+    }
+    boolean aged = false;
+    for (int i = 0; i < 10000 && !aged; i++) {
+      aged = sketch.increment(1000 + i);
+    }
+    assertTrue(aged);
+    assertEquals(FrequencySketch.MAX_FREQUENCY / 2, sketch.frequency(42));
+  }
+
+  @Test
+  public void testFrequencySketchConcurrentIncrements() throws InterruptedException {
+    final FrequencySketch sketch = new FrequencySketch(1000);
+    Thread[] threads = new Thread[8];
+    for (int t = 0; t < threads.length; t++) {
+      threads[t] = new Thread() {
+        @Override
+        public void run() {
+          for (int i = 0; i < 100000; i++) {
+            sketch.increment(42);
+          }
+        }
+      };
+      threads[t].start();
+    }
+    for (Thread thread : threads) {
+      thread.join();
+    }
+    assertEquals(FrequencySketch.MAX_FREQUENCY, sketch.frequency(42));
+    // Two threads incrementing a counter at 14 at once would have carried into its neighbour.
+    // The item has four distinct counters, so nothing but them may be set.
+    assertEquals(4 * FrequencySketch.MAX_FREQUENCY, sketch.sumOfCounters());
+  }
+
+  @Test
+  public void testAdmitsOnlyMoreFrequentThanVictims() {
+    TinyLfuAdmissionPolicy policy = new TinyLfuAdmissionPolicy(1000);
+    BlockCacheKey once = new BlockCacheKey("file", 0);
+    BlockCacheKey twice = new BlockCacheKey("file", 1);
+    policy.recordAccess(once);
+    policy.recordAccess(twice);
+    policy.recordAccess(twice);
+    // Nothing evicted yet
+    assertTrue(policy.admit(once));
+    for (int i = 0; i < 100; i++) {
+      BlockCacheKey victim = new BlockCacheKey("victim", i);
+      policy.recordAccess(victim);
+      policy.recordEviction(victim);
+    }
+    assertFalse(policy.admit(once));
+    assertTrue(policy.admit(twice));
+  }
+
+  @Test
+  public void testHotBlocksSurviveScans() {
+    // Without the policy, every scan pushes all of the hot blocks out
+    assertEquals(0, hotHitsAfterWarmup(null));
+    TinyLfuAdmissionPolicy policy = new TinyLfuAdmissionPolicy(CACHE_BLOCKS);
+    int hits = hotHitsAfterWarmup(policy);
+    assertTrue("Only " + hits + " hits", hits >= (ROUNDS - 2) * HOT_BLOCKS * 9 / 10);
+  }
+
+  /**
+   * Reads a set of hot blocks, then scans blocks never read before, over and over.
+   * @return how many of the reads of the hot blocks hit, not counting the first two rounds
+   */
+  private static int hotHitsAfterWarmup(BlockCacheAdmissionPolicy policy) {
+    LruBlockCache cache = new LruBlockCache(CACHE_BLOCKS * BLOCK_SIZE, BLOCK_SIZE, false);
+    cache.setAdmissionPolicy(policy);
+    int hits = 0;
+    try {
+      for (int round = 0; round < ROUNDS; round++) {
+        for (int i = 0; i < HOT_BLOCKS; i++) {
+          if (read(cache, new BlockCacheKey("hot", i)) && round >= 2) {
+            hits++;
+          }
+        }
+        for (int i = 0; i < SCAN_BLOCKS; i++) {
+          read(cache, new BlockCacheKey("scan" + round, i));
+        }
+      }
+    } finally {
+      cache.shutdown();
+    }
+    return hits;
+  }
+
+  /**
+   * Reads a block through the cache the way a reader does, caching it on a miss.
+   * @return true on a hit
+   */
+  private static boolean read(LruBlockCache cache, BlockCacheKey key) {
+    if (cache.getBlock(key, true, false, true) != null) {
+      return true;
+    }
+    cache.cacheBlock(key, new CacheTestUtils.ByteArrayCacheable(new byte[1000]));
+    return false;
+  }
+}
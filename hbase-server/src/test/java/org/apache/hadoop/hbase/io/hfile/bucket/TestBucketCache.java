@@ -19,7 +19,11 @@
 package org.apache.hadoop.hbase.io.hfile.bucket;
 
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
 import static org.junit.Assert.assertTrue;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
 
 import java.io.FileNotFoundException;
 import java.io.IOException;
@@ -27,13 +31,14 @@ import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.List;
 import java.util.Random;
-import java.util.concurrent.locks.ReentrantReadWriteLock;
 
 import org.apache.hadoop.hbase.io.hfile.BlockCacheKey;
 import org.apache.hadoop.hbase.io.hfile.CacheTestUtils;
 import org.apache.hadoop.hbase.io.hfile.Cacheable;
+import org.apache.hadoop.hbase.io.hfile.Cacheable.MemoryType;
 import org.apache.hadoop.hbase.io.hfile.bucket.BucketAllocator.BucketSizeInfo;
 import org.apache.hadoop.hbase.io.hfile.bucket.BucketAllocator.IndexStatistics;
+import org.apache.hadoop.hbase.io.hfile.bucket.BucketCache.BucketEntry;
 import org.apache.hadoop.hbase.testclassification.IOTests;
 import org.apache.hadoop.hbase.testclassification.SmallTests;
 import org.junit.After;
@@ -198,26 +203,42 @@ public class TestBucketCache {
     final BlockCacheKey cacheKey = new BlockCacheKey("dummy", 1L);
     cacheAndWaitUntilFlushedToBucket(cache, cacheKey, new CacheTestUtils.ByteArrayCacheable(
         new byte[10]));
-    long lockId = cache.backingMap.get(cacheKey).offset();
-    ReentrantReadWriteLock lock = cache.offsetLock.getLock(lockId);
-    lock.writeLock().lock();
-    Thread evictThread = new Thread("evict-block") {
-
-      @Override
-      public void run() {
-        cache.evictBlock(cacheKey);
-      }
-
-    };
-    evictThread.start();
-    cache.offsetLock.waitForWaiters(lockId, 1);
-    cache.blockEvicted(cacheKey, cache.backingMap.remove(cacheKey), true);
+    BucketEntry staleEntry = cache.backingMap.get(cacheKey);
+    assertTrue(cache.evictBlock(cacheKey));
     cacheAndWaitUntilFlushedToBucket(cache, cacheKey, new CacheTestUtils.ByteArrayCacheable(
         new byte[10]));
-    lock.writeLock().unlock();
-    evictThread.join();
+    // An evictor still holding the entry it looked up before the block was cached again
+    assertFalse(staleEntry.retain());
+    assertFalse(staleEntry.tryFree());
     assertEquals(1L, cache.getBlockCount());
     assertTrue(cache.getCurrentSize() > 0L);
     assertTrue("We should have a block!", cache.iterator().hasNext());
   }
+
+  @Test
+  public void testEvictPinnedBlock() throws Exception {
+    BlockCacheKey cacheKey = new BlockCacheKey("dummy", 1L);
+    cacheAndWaitUntilFlushedToBucket(cache, cacheKey, new CacheTestUtils.ByteArrayCacheable(
+        new byte[10]));
+    BucketEntry entry = cache.backingMap.get(cacheKey);
+    long usedSize = cache.getAllocator().getUsedSize();
+    // What a reader serving the block straight out of the engine memory does
+    assertTrue(entry.retain());
+    assertEquals(1, cache.getRefCount(cacheKey));
+
+    // Eviction to make room skips the pinned block, that of a deleted HFile defers freeing it
+    assertFalse(cache.evictBlock(cacheKey, false));
+    assertTrue(cache.evictBlock(cacheKey));
+    assertEquals(entry, cache.backingMap.get(cacheKey));
+    assertEquals(usedSize, cache.getAllocator().getUsedSize());
+
+    Cacheable sharedBlock = mock(Cacheable.class);
+    when(sharedBlock.getMemoryType()).thenReturn(MemoryType.SHARED);
+    cache.returnBlock(cacheKey, sharedBlock);
+    assertNull(cache.backingMap.get(cacheKey));
+    assertEquals(0, cache.getRefCount(cacheKey));
+    assertEquals(0L, cache.getBlockCount());
+    assertTrue(cache.getAllocator().getUsedSize() < usedSize);
+    assertFalse(entry.retain());
+  }
 }
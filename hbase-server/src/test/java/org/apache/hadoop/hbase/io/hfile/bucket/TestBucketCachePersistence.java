@@ -0,0 +1,207 @@
+/**
+ * Copyright The Apache Software Foundation
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements. See the NOTICE file distributed with this
+ * work for additional information regarding copyright ownership. The ASF
+ * licenses this file to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.hadoop.hbase.io.hfile.bucket;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.Random;
+
+import org.apache.hadoop.hbase.io.hfile.BlockCacheKey;
+import org.apache.hadoop.hbase.io.hfile.CacheTestUtils;
+import org.apache.hadoop.hbase.io.hfile.Cacheable;
+import org.apache.hadoop.hbase.io.hfile.bucket.BucketCache.BucketEntry;
+import org.apache.hadoop.hbase.testclassification.IOTests;
+import org.apache.hadoop.hbase.testclassification.SmallTests;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.experimental.categories.Category;
+
+/**
+ * Restarting a {@link BucketCache} that persists its index, after a clean shutdown and after a
+ * crash.
+ */
+@Category({IOTests.class, SmallTests.class})
+public class TestBucketCachePersistence {
+  private static final String DATA_PATH = "testBucketCachePersistence.data";
+  private static final String INDEX_PATH = "testBucketCachePersistence.index";
+  private static final long CAPACITY = 32 * 1024 * 1024;
+  private static final int BLOCK_SIZE = 8192;
+
+  private final Random random = new Random(12345);
+
+  @Before
+  public void setUp() {
+    deleteFiles();
+  }
+
+  @After
+  public void tearDown() {
+    deleteFiles();
+  }
+
+  private static void deleteFiles() {
+    for (String path : new String[] { DATA_PATH, INDEX_PATH, INDEX_PATH + ".journal",
+        INDEX_PATH + ".tmp" }) {
+      File file = new File(path);
+      if (file.exists()) {
+        file.delete();
+      }
+    }
+  }
+
+  private static BucketCache newCache(long reconcileWindow) throws IOException {
+    // Checkpoints are taken by the tests themselves
+    return new BucketCache("mmap:" + DATA_PATH, CAPACITY, BLOCK_SIZE, null,
+        BucketCache.DEFAULT_WRITER_THREADS, BucketCache.DEFAULT_WRITER_QUEUE_ITEMS, INDEX_PATH,
+        BucketCache.DEFAULT_ERROR_TOLERATION_DURATION, 0, reconcileWindow);
+  }
+
+  private Cacheable[] cacheBlocks(BucketCache cache, BlockCacheKey[] keys)
+      throws InterruptedException {
+    Cacheable[] blocks = new Cacheable[keys.length];
+    for (int i = 0; i < keys.length; i++) {
+      byte[] bytes = new byte[1000 + random.nextInt(4000)];
+      random.nextBytes(bytes);
+      blocks[i] = new CacheTestUtils.ByteArrayCacheable(bytes);
+      cache.cacheBlock(keys[i], blocks[i]);
+    }
+    // Blocks leave the RAM cache once they are in the backing map and recorded for the index
+    for (BlockCacheKey key : keys) {
+      while (!cache.backingMap.containsKey(key) || cache.ramCache.containsKey(key)) {
+        Thread.sleep(10);
+      }
+    }
+    return blocks;
+  }
+
+  private static BlockCacheKey[] keys(String hfileName, int count) {
+    BlockCacheKey[] keys = new BlockCacheKey[count];
+    for (int i = 0; i < count; i++) {
+      keys[i] = new BlockCacheKey(hfileName, i * 10000L);
+    }
+    return keys;
+  }
+
+  private static byte[] serialize(Cacheable block) {
+    ByteBuffer buf = ByteBuffer.allocate(block.getSerializedLength());
+    block.serialize(buf);
+    return buf.array();
+  }
+
+  private static void assertCached(BucketCache cache, BlockCacheKey key, Cacheable expected) {
+    Cacheable actual = cache.getBlock(key, false, false, true);
+    assertNotNull("Lost " + key, actual);
+    assertArrayEquals(serialize(expected), serialize(actual));
+    cache.returnBlock(key, actual);
+  }
+
+  @Test
+  public void testRestoreAfterShutdown() throws Exception {
+    BucketCache cache = newCache(0);
+    BlockCacheKey[] keys = keys("hfile", 20);
+    Cacheable[] blocks = cacheBlocks(cache, keys);
+    cache.shutdown();
+
+    cache = newCache(0);
+    try {
+      assertEquals(keys.length, cache.getBlockCount());
+      for (int i = 0; i < keys.length; i++) {
+        assertCached(cache, keys[i], blocks[i]);
+      }
+      // The restored blocks keep their space in the cache
+      BlockCacheKey[] moreKeys = keys("hfile2", 20);
+      Cacheable[] moreBlocks = cacheBlocks(cache, moreKeys);
+      for (int i = 0; i < keys.length; i++) {
+        assertCached(cache, keys[i], blocks[i]);
+        assertCached(cache, moreKeys[i], moreBlocks[i]);
+      }
+    } finally {
+      cache.shutdown();
+    }
+  }
+
+  @Test
+  public void testRestoreAfterCrash() throws Exception {
+    BucketCache crashed = newCache(0);
+    BlockCacheKey[] keys = keys("hfile", 10);
+    Cacheable[] blocks = cacheBlocks(crashed, keys);
+    crashed.checkpoint();
+    // Cached after the last checkpoint, so lost
+    BlockCacheKey[] lostKeys = keys("hfile2", 10);
+    cacheBlocks(crashed, lostKeys);
+    // Evicted after the last checkpoint, and its space taken by other contents
+    BucketEntry overwritten = crashed.backingMap.get(keys[0]);
+    byte[] garbage = new byte[overwritten.getLength()];
+    Arrays.fill(garbage, (byte) 0x5A);
+    assertTrue(crashed.evictBlock(keys[0]));
+    crashed.ioEngine.write(ByteBuffer.wrap(garbage), overwritten.offset());
+    crashed.stopWriterThreads();
+
+    BucketCache cache = newCache(0);
+    try {
+      assertEquals(keys.length, cache.getBlockCount());
+      assertNull(cache.getBlock(keys[0], false, false, true));
+      assertFalse(cache.backingMap.containsKey(keys[0]));
+      for (int i = 1; i < keys.length; i++) {
+        assertCached(cache, keys[i], blocks[i]);
+      }
+      for (BlockCacheKey key : lostKeys) {
+        assertNull(cache.getBlock(key, false, false, true));
+      }
+    } finally {
+      cache.shutdown();
+    }
+  }
+
+  @Test
+  public void testBlocksOfUnusedHFilesEvictedAfterRestart() throws Exception {
+    BucketCache cache = newCache(0);
+    BlockCacheKey[] usedKeys = keys("used", 5);
+    Cacheable[] usedBlocks = cacheBlocks(cache, usedKeys);
+    BlockCacheKey[] unusedKeys = keys("unused", 5);
+    cacheBlocks(cache, unusedKeys);
+    cache.shutdown();
+
+    cache = newCache(500);
+    try {
+      assertCached(cache, usedKeys[0], usedBlocks[0]);
+      while (cache.backingMap.containsKey(unusedKeys[0])) {
+        Thread.sleep(50);
+      }
+      for (BlockCacheKey key : unusedKeys) {
+        assertFalse(cache.backingMap.containsKey(key));
+      }
+      for (int i = 0; i < usedKeys.length; i++) {
+        assertCached(cache, usedKeys[i], usedBlocks[i]);
+      }
+    } finally {
+      cache.shutdown();
+    }
+  }
+}
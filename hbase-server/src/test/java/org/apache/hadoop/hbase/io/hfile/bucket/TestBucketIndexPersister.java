@@ -0,0 +1,250 @@
+/**
+ * Copyright The Apache Software Foundation
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements. See the NOTICE file distributed with this
+ * work for additional information regarding copyright ownership. The ASF
+ * licenses this file to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.hadoop.hbase.io.hfile.bucket;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.file.Files;
+import java.util.HashMap;
+import java.util.Map;
+
+import org.apache.hadoop.hbase.io.hfile.BlockCacheKey;
+import org.apache.hadoop.hbase.io.hfile.BlockPriority;
+import org.apache.hadoop.hbase.io.hfile.bucket.BucketCache.BucketEntry;
+import org.apache.hadoop.hbase.testclassification.IOTests;
+import org.apache.hadoop.hbase.testclassification.SmallTests;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.experimental.categories.Category;
+
+/**
+ * Tests for {@link BucketIndexPersister}
+ */
+@Category({IOTests.class, SmallTests.class})
+public class TestBucketIndexPersister {
+  private static final String PATH = "testBucketIndexPersister";
+  private static final long CAPACITY = 32 * 1024 * 1024;
+  private static final String ENGINE = FileIOEngine.class.getName();
+  private static final int DESERIALISER_ID = 42;
+
+  private UniqueIndexMap<Integer> deserialiserMap;
+  private Map<BlockCacheKey, BucketEntry> backingMap;
+  private final BlockCacheKey key1 = new BlockCacheKey("hfile1", 0);
+  private final BlockCacheKey key2 = new BlockCacheKey("hfile1", 4096);
+  private final BlockCacheKey key3 = new BlockCacheKey("hfile2", 0);
+
+  @Before
+  public void setUp() {
+    deleteFiles();
+    deserialiserMap = new UniqueIndexMap<Integer>();
+    backingMap = new HashMap<BlockCacheKey, BucketEntry>();
+  }
+
+  @After
+  public void tearDown() {
+    deleteFiles();
+  }
+
+  private static void deleteFiles() {
+    for (String suffix : new String[] { "", ".journal", ".tmp" }) {
+      File file = new File(PATH + suffix);
+      if (file.exists()) {
+        file.delete();
+      }
+    }
+  }
+
+  private BucketEntry entry(long offset, int length, long accessCounter, int checksum) {
+    BucketEntry entry = new BucketEntry(offset, length, accessCounter, false);
+    entry.deserialiserIndex = (byte) deserialiserMap.map(DESERIALISER_ID);
+    entry.setChecksum(checksum);
+    return entry;
+  }
+
+  private void put(BucketIndexPersister persister, BlockCacheKey key, BucketEntry entry) {
+    backingMap.put(key, entry);
+    persister.added(key, entry);
+  }
+
+  private void remove(BucketIndexPersister persister, BlockCacheKey key) {
+    backingMap.remove(key);
+    persister.removed(key);
+  }
+
+  private Map<BlockCacheKey, BucketEntry> restore() throws IOException {
+    // As after a restart, where deserialisers may be indexed differently
+    UniqueIndexMap<Integer> restartedMap = new UniqueIndexMap<Integer>();
+    restartedMap.map(7);
+    Map<BlockCacheKey, BucketEntry> restored =
+        new BucketIndexPersister(PATH, CAPACITY, ENGINE).restore(restartedMap);
+    if (restored != null) {
+      for (BucketEntry entry : restored.values()) {
+        assertEquals(DESERIALISER_ID, (int) restartedMap.unmap(entry.deserialiserIndex));
+      }
+    }
+    return restored;
+  }
+
+  private static void assertRestored(BucketEntry expected, BucketEntry actual) {
+    assertEquals(expected.offset(), actual.offset());
+    assertEquals(expected.getLength(), actual.getLength());
+    assertEquals(expected.getAccessCounter(), actual.getAccessCounter());
+    assertEquals(expected.getPriority(), actual.getPriority());
+    assertEquals(expected.getChecksum(), actual.getChecksum());
+    assertFalse(actual.isVerified());
+  }
+
+  @Test
+  public void testNothingToRestore() throws IOException {
+    assertNull(restore());
+  }
+
+  @Test
+  public void testSnapshotAndJournal() throws IOException {
+    BucketIndexPersister persister = new BucketIndexPersister(PATH, CAPACITY, ENGINE);
+    BucketEntry entry1 = entry(0, 1000, 1, 11);
+    BucketEntry entry2 = entry(8192, 2000, 2, 22);
+    entry2.access(5);
+    put(persister, key1, entry1);
+    put(persister, key2, entry2);
+    // The first checkpoint writes a snapshot
+    persister.checkpoint(backingMap, deserialiserMap);
+    assertTrue(new File(PATH).exists());
+
+    BucketEntry entry3 = entry(16384, 3000, 3, 33);
+    put(persister, key3, entry3);
+    remove(persister, key1);
+    // Later ones go to the journal
+    persister.checkpoint(backingMap, deserialiserMap);
+    persister.close();
+
+    Map<BlockCacheKey, BucketEntry> restored = restore();
+    assertEquals(2, restored.size());
+    assertRestored(entry2, restored.get(key2));
+    assertEquals(BlockPriority.MULTI, restored.get(key2).getPriority());
+    assertRestored(entry3, restored.get(key3));
+  }
+
+  @Test
+  public void testNotJournaled() throws IOException {
+    BucketIndexPersister persister = new BucketIndexPersister(PATH, CAPACITY, ENGINE, false);
+    BucketEntry entry1 = entry(0, 1000, 1, 11);
+    put(persister, key1, entry1);
+    put(persister, key2, entry(8192, 2000, 2, 22));
+    remove(persister, key2);
+    // Nothing will checkpoint the changes, so they must not pile up
+    assertEquals(0, persister.getPendingCount());
+    persister.snapshot(backingMap, deserialiserMap);
+    persister.close();
+
+    Map<BlockCacheKey, BucketEntry> restored = restore();
+    assertEquals(1, restored.size());
+    assertRestored(entry1, restored.get(key1));
+  }
+
+  @Test
+  public void testTornJournalTail() throws IOException {
+    BucketIndexPersister persister = new BucketIndexPersister(PATH, CAPACITY, ENGINE);
+    put(persister, key1, entry(0, 1000, 1, 11));
+    persister.checkpoint(backingMap, deserialiserMap);
+    put(persister, key2, entry(8192, 2000, 2, 22));
+    persister.checkpoint(backingMap, deserialiserMap);
+    put(persister, key3, entry(16384, 3000, 3, 33));
+    persister.checkpoint(backingMap, deserialiserMap);
+    persister.close();
+
+    // Crashed while writing the record of key3
+    RandomAccessFile journal = new RandomAccessFile(PATH + ".journal", "rw");
+    try {
+      journal.setLength(journal.length() - 3);
+    } finally {
+      journal.close();
+    }
+    Map<BlockCacheKey, BucketEntry> restored = restore();
+    assertEquals(2, restored.size());
+    assertTrue(restored.containsKey(key1));
+    assertTrue(restored.containsKey(key2));
+
+    // A record with garbage in it ends the replay too. The record of key2 follows the header
+    // of the journal, its magic and generation, and starts with its length.
+    journal = new RandomAccessFile(PATH + ".journal", "rw");
+    try {
+      long pos = 4 + 8 + 4 + 2;
+      journal.seek(pos);
+      byte b = journal.readByte();
+      journal.seek(pos);
+      journal.writeByte(b ^ 0xFF);
+    } finally {
+      journal.close();
+    }
+    restored = restore();
+    assertEquals(1, restored.size());
+    assertTrue(restored.containsKey(key1));
+  }
+
+  @Test
+  public void testJournalOfOlderSnapshotIgnored() throws IOException {
+    BucketIndexPersister persister = new BucketIndexPersister(PATH, CAPACITY, ENGINE);
+    put(persister, key1, entry(0, 1000, 1, 11));
+    persister.checkpoint(backingMap, deserialiserMap);
+    put(persister, key2, entry(8192, 2000, 2, 22));
+    persister.checkpoint(backingMap, deserialiserMap);
+    File journal = new File(PATH + ".journal");
+    byte[] oldJournal = Files.readAllBytes(journal.toPath());
+
+    remove(persister, key2);
+    persister.snapshot(backingMap, deserialiserMap);
+    persister.close();
+    // Crashed before the new snapshot got its journal, leaving the one of the previous snapshot
+    Files.write(journal.toPath(), oldJournal);
+
+    Map<BlockCacheKey, BucketEntry> restored = restore();
+    assertEquals(1, restored.size());
+    assertTrue(restored.containsKey(key1));
+  }
+
+  @Test
+  public void testIndexOfOtherCacheNotRestored() throws IOException {
+    BucketIndexPersister persister = new BucketIndexPersister(PATH, CAPACITY, ENGINE);
+    put(persister, key1, entry(0, 1000, 1, 11));
+    persister.snapshot(backingMap, deserialiserMap);
+    persister.close();
+    try {
+      new BucketIndexPersister(PATH, CAPACITY * 2, ENGINE).restore(deserialiserMap);
+      fail("Restored the index of a cache of another size");
+    } catch (IOException e) {
+      // expected
+    }
+    try {
+      new BucketIndexPersister(PATH, CAPACITY, ByteBufferIOEngine.class.getName())
+          .restore(deserialiserMap);
+      fail("Restored the index of a cache with another engine");
+    } catch (IOException e) {
+      // expected
+    }
+  }
+}
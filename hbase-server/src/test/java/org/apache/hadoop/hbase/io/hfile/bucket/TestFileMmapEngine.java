@@ -0,0 +1,141 @@
+/**
+ * Copyright The Apache Software Foundation
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements. See the NOTICE file distributed with this
+ * work for additional information regarding copyright ownership. The ASF
+ * licenses this file to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.hadoop.hbase.io.hfile.bucket;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.Random;
+
+import org.apache.hadoop.hbase.io.hfile.bucket.TestByteBufferIOEngine.BufferGrabbingDeserializer;
+import org.apache.hadoop.hbase.nio.ByteBuff;
+import org.apache.hadoop.hbase.nio.MultiByteBuff;
+import org.apache.hadoop.hbase.testclassification.IOTests;
+import org.apache.hadoop.hbase.testclassification.SmallTests;
+import org.apache.hadoop.hbase.util.ByteBufferArray;
+import org.junit.After;
+import org.junit.Test;
+import org.junit.experimental.categories.Category;
+
+/**
+ * Basic test for {@link FileMmapEngine}
+ */
+@Category({IOTests.class, SmallTests.class})
+public class TestFileMmapEngine {
+  private static final String FILE_PATH = "testFileMmapEngine";
+
+  @After
+  public void tearDown() {
+    File file = new File(FILE_PATH);
+    if (file.exists()) {
+      file.delete();
+    }
+  }
+
+  @Test
+  public void testFileMmapEngine() throws IOException {
+    int size = 2 * 1024 * 1024; // 2 MB
+    FileMmapEngine engine = new FileMmapEngine(FILE_PATH, size);
+    try {
+      for (int i = 0; i < 50; i++) {
+        int len = (int) Math.floor(Math.random() * 100);
+        long offset = (long) Math.floor(Math.random() * size % (size - len));
+        byte[] data1 = new byte[len];
+        for (int j = 0; j < data1.length; ++j) {
+          data1[j] = (byte) (Math.random() * 255);
+        }
+        engine.write(ByteBuffer.wrap(data1), offset);
+        BufferGrabbingDeserializer deserializer = new BufferGrabbingDeserializer();
+        engine.read(offset, len, deserializer);
+        ByteBuff data2 = deserializer.getDeserializedByteBuff();
+        for (int j = 0; j < data1.length; ++j) {
+          assertTrue(data1[j] == data2.get(j));
+        }
+      }
+    } finally {
+      engine.shutdown();
+    }
+  }
+
+  @Test
+  public void testReadAcrossSegments() throws IOException {
+    int size = 2 * 1024 * 1024;
+    int segmentSize = FileMmapEngine.segmentSize(size);
+    assertTrue(segmentSize < size);
+    FileMmapEngine engine = new FileMmapEngine(FILE_PATH, size);
+    try {
+      byte[] data = new byte[1000];
+      new Random(1).nextBytes(data);
+      long offset = segmentSize - data.length / 2;
+      engine.write(ByteBuffer.wrap(data), offset);
+      BufferGrabbingDeserializer deserializer = new BufferGrabbingDeserializer();
+      engine.read(offset, data.length, deserializer);
+      ByteBuff read = deserializer.getDeserializedByteBuff();
+      assertTrue(read instanceof MultiByteBuff);
+      for (int j = 0; j < data.length; ++j) {
+        assertEquals(data[j], read.get(j));
+      }
+    } finally {
+      engine.shutdown();
+    }
+  }
+
+  @Test
+  public void testContentsSurviveReopen() throws IOException {
+    int size = 1024 * 1024;
+    byte[] data = new byte[4096];
+    new Random(2).nextBytes(data);
+    long offset = size - data.length;
+    FileMmapEngine engine = new FileMmapEngine(FILE_PATH, size);
+    try {
+      engine.write(ByteBuffer.wrap(data), offset);
+      engine.sync();
+    } finally {
+      engine.shutdown();
+    }
+    assertEquals(size, new File(FILE_PATH).length());
+
+    engine = new FileMmapEngine(FILE_PATH, size);
+    try {
+      BufferGrabbingDeserializer deserializer = new BufferGrabbingDeserializer();
+      engine.read(offset, data.length, deserializer);
+      ByteBuff read = deserializer.getDeserializedByteBuff();
+      for (int j = 0; j < data.length; ++j) {
+        assertEquals(data[j], read.get(j));
+      }
+    } finally {
+      engine.shutdown();
+    }
+  }
+
+  @Test
+  public void testSegmentSize() {
+    long mb = 1024 * 1024;
+    // Small files are split like a ByteBufferArray of the same capacity
+    assertEquals(ByteBufferArray.defaultBufferSize(2 * mb), FileMmapEngine.segmentSize(2 * mb));
+    assertEquals(ByteBufferArray.defaultBufferSize(1024 * mb),
+      FileMmapEngine.segmentSize(1024 * mb));
+    // Big ones in a bounded number of mappings, of bounded size
+    assertEquals(64 * mb, FileMmapEngine.segmentSize(64 * 1024 * mb));
+    assertEquals(FileMmapEngine.MAX_SEGMENT_SIZE, FileMmapEngine.segmentSize(1024 * 1024 * mb));
+  }
+}
@@ -0,0 +1,118 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.hadoop.hbase.ipc;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.hbase.ArrayBackedTag;
+import org.apache.hadoop.hbase.Cell;
+import org.apache.hadoop.hbase.CellUtil;
+import org.apache.hadoop.hbase.HBaseConfiguration;
+import org.apache.hadoop.hbase.KeyValue;
+import org.apache.hadoop.hbase.OffheapKeyValue;
+import org.apache.hadoop.hbase.Tag;
+import org.apache.hadoop.hbase.codec.Codec;
+import org.apache.hadoop.hbase.codec.KeyValueCodec;
+import org.apache.hadoop.hbase.codec.KeyValueCodecWithTags;
+import org.apache.hadoop.hbase.io.ByteBufferOutputStream;
+import org.apache.hadoop.hbase.testclassification.RPCTests;
+import org.apache.hadoop.hbase.testclassification.SmallTests;
+import org.apache.hadoop.hbase.util.Bytes;
+import org.apache.hadoop.io.compress.GzipCodec;
+import org.junit.Test;
+import org.junit.experimental.categories.Category;
+
+@Category({RPCTests.class, SmallTests.class})
+public class TestGatheringCellBlockBuilder {
+  private static final byte[] FAMILY = Bytes.toBytes("f");
+  private static final byte[] QUALIFIER = Bytes.toBytes("q");
+  private static final int MIN_VIEW_SIZE = 100;
+
+  private final IPCUtil ipcUtil = new IPCUtil(HBaseConfiguration.create());
+
+  @Test
+  public void testIsSupported() {
+    assertTrue(GatheringCellBlockBuilder.isSupported(new KeyValueCodec(), null));
+    assertTrue(GatheringCellBlockBuilder.isSupported(new KeyValueCodecWithTags(), null));
+    assertFalse(GatheringCellBlockBuilder.isSupported(new KeyValueCodec(), new GzipCodec()));
+    assertFalse(GatheringCellBlockBuilder.isSupported(null, null));
+  }
+
+  @Test
+  public void testMatchesCodec() throws IOException {
+    checkMatchesCodec(new KeyValueCodec());
+    checkMatchesCodec(new KeyValueCodecWithTags());
+  }
+
+  @Test
+  public void testNoCells() throws IOException {
+    GatheringCellBlockBuilder builder = new GatheringCellBlockBuilder(new KeyValueCodec(),
+        MIN_VIEW_SIZE, new ByteBufferOutputStream(16));
+    assertNull(builder.build(CellUtil.createCellScanner(new ArrayList<Cell>())));
+  }
+
+  private void checkMatchesCodec(Codec codec) throws IOException {
+    List<Cell> cells = createCells();
+    ByteBuffer expected =
+        ipcUtil.buildCellBlock(codec, null, CellUtil.createCellScanner(cells), null);
+    GatheringCellBlockBuilder builder =
+        new GatheringCellBlockBuilder(codec, MIN_VIEW_SIZE, new ByteBufferOutputStream(16));
+    ByteBuffer[] buffers = builder.build(CellUtil.createCellScanner(cells));
+    // The small cells are copied, the large on and off heap ones with and without tags are not
+    assertEquals(4, builder.getViewCount());
+    assertEquals(expected.remaining(), builder.getLength());
+    ByteBuffer actual = ByteBuffer.allocate(builder.getLength());
+    for (ByteBuffer buffer : buffers) {
+      actual.put(buffer.duplicate());
+    }
+    assertArrayEquals(Bytes.toBytes(expected), actual.array());
+  }
+
+  private static List<Cell> createCells() {
+    Tag[] tags = new Tag[] { new ArrayBackedTag((byte) 1, "tag") };
+    byte[] large = new byte[2 * MIN_VIEW_SIZE];
+    Bytes.random(large);
+    List<Cell> cells = new ArrayList<Cell>();
+    for (int i = 0; i < 2; i++) {
+      byte[] row = Bytes.toBytes("row" + i);
+      cells.add(new KeyValue(row, FAMILY, QUALIFIER, i, Bytes.toBytes("small")));
+      cells.add(new KeyValue(row, FAMILY, QUALIFIER, i, large, i == 0 ? null : tags));
+      cells.add(offheap(new KeyValue(row, FAMILY, QUALIFIER, i, large, i == 0 ? null : tags)));
+      cells.add(offheap(new KeyValue(row, FAMILY, QUALIFIER, i, Bytes.toBytes("small"), tags)));
+    }
+    return cells;
+  }
+
+  private static Cell offheap(KeyValue kv) {
+    // Put the cell in the middle of a larger buffer, as it would be in a block
+    ByteBuffer buf = ByteBuffer.allocateDirect(kv.getLength() + 20);
+    buf.position(10);
+    buf.put(kv.getBuffer(), kv.getOffset(), kv.getLength());
+    return new OffheapKeyValue(buf, 10, kv.getLength(), kv.getTagsLength() > 0, 0);
+  }
+}
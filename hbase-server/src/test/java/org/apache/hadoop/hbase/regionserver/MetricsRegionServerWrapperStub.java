@@ -18,6 +18,9 @@
 
 package org.apache.hadoop.hbase.regionserver;
 
+import java.util.Collections;
+import java.util.Map;
+
 public class MetricsRegionServerWrapperStub implements MetricsRegionServerWrapper {
 
   @Override
@@ -200,6 +203,11 @@ public class MetricsRegionServerWrapperStub implements MetricsRegionServerWrappe
     return 420;
   }
 
+  @Override
+  public long getBlockCacheEvictionTime() {
+    return 0;
+  }
+
   @Override
   public double getBlockCacheHitPercent() {
     return 98;
@@ -215,6 +223,21 @@ public class MetricsRegionServerWrapperStub implements MetricsRegionServerWrappe
     return 36;
   }
 
+  @Override
+  public long getBlockCacheDecompressCount() {
+    return 37;
+  }
+
+  @Override
+  public long getBlockCacheDecompressTime() {
+    return 38;
+  }
+
+  @Override
+  public Map<Integer, Float> getBlockCacheEstimatedHitRatios() {
+    return Collections.singletonMap(100, 0.5f);
+  }
+
   @Override
   public long getUpdatesBlockedTime() {
     return 419;
@@ -270,6 +293,16 @@ public class MetricsRegionServerWrapperStub implements MetricsRegionServerWrappe
     return 10240000;
   }
 
+  @Override
+  public long getCompactionsCachedOnWrite() {
+    return 2;
+  }
+
+  @Override
+  public long getCompactionsNotCachedOnWrite() {
+    return 3;
+  }
+
   @Override
   public long getHedgedReadOps() {
     return 100;
@@ -280,6 +313,31 @@ public class MetricsRegionServerWrapperStub implements MetricsRegionServerWrappe
     return 10;
   }
 
+  @Override
+  public long getParallelSeekCount() {
+    return 420;
+  }
+
+  @Override
+  public long getParallelSeekTime() {
+    return 421;
+  }
+
+  @Override
+  public long getParallelSeekFileCount() {
+    return 422;
+  }
+
+  @Override
+  public long getSerialSeekCount() {
+    return 423;
+  }
+
+  @Override
+  public long getSerialSeekTime() {
+    return 424;
+  }
+
   @Override
   public long getBlockedRequestsCount() {
     return 0;
@@ -107,4 +107,14 @@ public class MetricsRegionWrapperStub implements MetricsRegionWrapper {
   public int getReplicaId() {
     return replicaid;
   }
+
+  @Override
+  public long getPrefetchRemainingSize() {
+    return 0;
+  }
+
+  @Override
+  public long getStoreFlushTime() {
+    return 107;
+  }
 }
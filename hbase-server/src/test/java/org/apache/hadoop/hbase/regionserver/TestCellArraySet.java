@@ -0,0 +1,148 @@
+/**
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.hadoop.hbase.regionserver;
+
+import java.util.Iterator;
+import java.util.NavigableSet;
+import java.util.SortedSet;
+
+import junit.framework.TestCase;
+
+import org.apache.hadoop.hbase.Cell;
+import org.apache.hadoop.hbase.CellComparator;
+import org.apache.hadoop.hbase.KeyValue;
+import org.apache.hadoop.hbase.testclassification.RegionServerTests;
+import org.apache.hadoop.hbase.testclassification.SmallTests;
+import org.apache.hadoop.hbase.util.Bytes;
+import org.junit.experimental.categories.Category;
+
+@Category({RegionServerTests.class, SmallTests.class})
+public class TestCellArraySet extends TestCase {
+  private static final int TOTAL = 10;
+  private final byte [] bytes = Bytes.toBytes("row");
+  private KeyValue [] kvs;
+  private CellArraySet set;
+
+  protected void setUp() throws Exception {
+    super.setUp();
+    CellSkipListSet source = new CellSkipListSet(CellComparator.COMPARATOR);
+    this.kvs = new KeyValue[TOTAL];
+    for (int i = 0; i < TOTAL; i++) {
+      // Even qualifiers only, so there is always something between two entries
+      this.kvs[i] = new KeyValue(bytes, bytes, qualifier(2 * i), bytes);
+      source.add(this.kvs[i]);
+    }
+    this.set = new CellArraySet(CellComparator.COMPARATOR, source);
+  }
+
+  private static byte [] qualifier(int i) {
+    return Bytes.toBytes(String.format("q%02d", i));
+  }
+
+  private KeyValue between(int i) {
+    return new KeyValue(bytes, bytes, qualifier(2 * i + 1), bytes);
+  }
+
+  public void testIterationOrder() throws Exception {
+    assertEquals(TOTAL, this.set.size());
+    int count = 0;
+    for (Cell cell : this.set) {
+      assertTrue(this.kvs[count++].equals(cell));
+    }
+    assertEquals(TOTAL, count);
+    Iterator<Cell> it = this.set.descendingIterator();
+    while (it.hasNext()) {
+      assertTrue(this.kvs[--count].equals(it.next()));
+    }
+    assertEquals(0, count);
+  }
+
+  public void testSeeks() throws Exception {
+    assertTrue(this.kvs[3].equals(this.set.ceiling(this.kvs[3])));
+    assertTrue(this.kvs[4].equals(this.set.ceiling(between(3))));
+    assertTrue(this.kvs[4].equals(this.set.higher(this.kvs[3])));
+    assertTrue(this.kvs[3].equals(this.set.floor(between(3))));
+    assertTrue(this.kvs[2].equals(this.set.lower(this.kvs[3])));
+    assertNull(this.set.higher(this.kvs[TOTAL - 1]));
+    assertNull(this.set.lower(this.kvs[0]));
+  }
+
+  public void testViews() throws Exception {
+    SortedSet<Cell> tail = this.set.tailSet(between(5));
+    assertEquals(TOTAL - 6, tail.size());
+    assertTrue(this.kvs[6].equals(tail.first()));
+    SortedSet<Cell> head = this.set.headSet(this.kvs[5]);
+    assertEquals(5, head.size());
+    assertTrue(this.kvs[4].equals(head.last()));
+    // Views of views keep the bounds of their parent
+    assertTrue(this.set.tailSet(this.kvs[8]).headSet(this.kvs[2]).isEmpty());
+    assertEquals(2, this.set.subSet(this.kvs[2], this.kvs[4]).size());
+  }
+
+  public void testDescendingSet() throws Exception {
+    NavigableSet<Cell> descending = this.set.descendingSet();
+    assertEquals(TOTAL, descending.size());
+    int count = TOTAL;
+    for (Cell cell : descending) {
+      assertTrue(this.kvs[--count].equals(cell));
+    }
+    assertEquals(0, count);
+    assertTrue(this.kvs[TOTAL - 1].equals(descending.first()));
+    assertTrue(this.kvs[3].equals(descending.ceiling(between(3))));
+    assertTrue(this.kvs[2].equals(descending.higher(this.kvs[3])));
+    assertTrue(this.kvs[4].equals(descending.floor(between(3))));
+    SortedSet<Cell> tail = descending.tailSet(this.kvs[5]);
+    assertEquals(6, tail.size());
+    assertTrue(this.kvs[5].equals(tail.first()));
+    assertTrue(this.kvs[0].equals(tail.last()));
+    assertEquals(2, descending.subSet(this.kvs[4], this.kvs[2]).size());
+    assertSame(this.set, descending.descendingSet());
+    // Removals through the ascending set show in the view
+    this.set.remove(this.kvs[TOTAL - 1]);
+    assertTrue(this.kvs[TOTAL - 2].equals(descending.first()));
+  }
+
+  public void testRemoveMasksCell() throws Exception {
+    SortedSet<Cell> tail = this.set.tailSet(this.kvs[4]);
+    Iterator<Cell> it = this.set.iterator();
+    assertTrue(this.set.remove(this.kvs[5]));
+    assertFalse(this.set.remove(this.kvs[5]));
+    assertFalse(this.set.contains(this.kvs[5]));
+    assertEquals(TOTAL - 1, this.set.size());
+    // Views and iterators created before the removal do not see it either
+    assertEquals(TOTAL - 5, tail.size());
+    int count = 0;
+    while (it.hasNext()) {
+      assertFalse(this.kvs[5].equals(it.next()));
+      count++;
+    }
+    assertEquals(TOTAL - 1, count);
+    assertTrue(this.kvs[6].equals(this.set.ceiling(this.kvs[5])));
+    assertTrue(this.kvs[4].equals(this.set.floor(this.kvs[5])));
+  }
+
+  public void testAddNotSupported() throws Exception {
+    try {
+      this.set.add(between(0));
+      fail("CellArraySet should be immutable");
+    } catch (UnsupportedOperationException e) {
+      // expected
+    }
+  }
+}
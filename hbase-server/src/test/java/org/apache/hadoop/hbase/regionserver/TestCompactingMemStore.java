@@ -0,0 +1,186 @@
+/**
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.hadoop.hbase.regionserver;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.hbase.Cell;
+import org.apache.hadoop.hbase.CellComparator;
+import org.apache.hadoop.hbase.CellUtil;
+import org.apache.hadoop.hbase.HBaseConfiguration;
+import org.apache.hadoop.hbase.KeyValue;
+import org.apache.hadoop.hbase.KeyValueUtil;
+import org.apache.hadoop.hbase.testclassification.RegionServerTests;
+import org.apache.hadoop.hbase.testclassification.SmallTests;
+import org.apache.hadoop.hbase.util.Bytes;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.experimental.categories.Category;
+
+/**
+ * Test the {@link CompactingMemStore} class
+ */
+@Category({RegionServerTests.class, SmallTests.class})
+public class TestCompactingMemStore {
+  private static final byte[] FAMILY = Bytes.toBytes("f");
+  private static final byte[] QUALIFIER = Bytes.toBytes("q");
+
+  private CompactingMemStore memstore;
+  private long seqId;
+
+  @Before
+  public void setUp() {
+    this.memstore = new CompactingMemStore();
+    this.seqId = 0;
+  }
+
+  private KeyValue put(String row, long ts) {
+    KeyValue kv = new KeyValue(Bytes.toBytes(row), FAMILY, QUALIFIER, ts,
+        Bytes.toBytes("v" + ts));
+    kv.setSequenceId(++this.seqId);
+    return kv;
+  }
+
+  private List<Cell> scanAll(List<KeyValueScanner> scanners) throws IOException {
+    for (KeyValueScanner scanner : scanners) {
+      scanner.seek(KeyValue.LOWESTKEY);
+    }
+    List<Cell> cells = new ArrayList<Cell>();
+    KeyValueHeap heap = new KeyValueHeap(scanners, CellComparator.COMPARATOR);
+    for (Cell cell = heap.next(); cell != null; cell = heap.next()) {
+      cells.add(cell);
+    }
+    heap.close();
+    return cells;
+  }
+
+  @Test
+  public void testInMemoryCompactionDropsSupersededVersions() throws IOException {
+    for (int ts = 1; ts <= 5; ts++) {
+      this.memstore.add(put("row", ts));
+    }
+    this.memstore.add(put("other", 1));
+    long sizeBefore = this.memstore.size();
+
+    this.memstore.flushInMemory();
+
+    assertEquals(1, this.memstore.pipeline.getSegments().size());
+    assertTrue(this.memstore.active.isEmpty());
+    List<Cell> cells = scanAll(this.memstore.getScanners(Long.MAX_VALUE));
+    assertEquals(2, cells.size());
+    assertEquals(5, cells.get(1).getTimestamp());
+    // The index entries and Cell objects of the dropped versions are released...
+    assertTrue(this.memstore.size() < sizeBefore);
+    // ...but their data still sits in the MSLAB chunks of the compacted segment
+    long survivorsSize = 0;
+    for (Cell cell : cells) {
+      survivorsSize += CellArraySet.heapSizeOf(cell);
+    }
+    assertEquals(survivorsSize + 4 * KeyValueUtil.length(put("row", 1)),
+        this.memstore.pipeline.getSegments().get(0).getSize());
+  }
+
+  @Test
+  public void testInMemoryCompactionWithoutMSLABReleasesSize() throws IOException {
+    Configuration conf = HBaseConfiguration.create();
+    conf.setBoolean(DefaultMemStore.USEMSLAB_KEY, false);
+    this.memstore = new CompactingMemStore(conf, CellComparator.COMPARATOR);
+    for (int ts = 1; ts <= 5; ts++) {
+      this.memstore.add(put("row", ts));
+    }
+    long sizeBefore = this.memstore.size();
+
+    this.memstore.flushInMemory();
+
+    assertEquals(1, scanAll(this.memstore.getScanners(Long.MAX_VALUE)).size());
+    assertTrue(this.memstore.size() < sizeBefore);
+  }
+
+  @Test
+  public void testInMemoryCompactionMergesSegments() throws IOException {
+    this.memstore.add(put("row", 1));
+    this.memstore.flushInMemory();
+    this.memstore.add(put("row", 2));
+    this.memstore.add(put("row2", 2));
+    this.memstore.flushInMemory();
+
+    assertEquals(1, this.memstore.pipeline.getSegments().size());
+    List<Cell> cells = scanAll(this.memstore.getScanners(Long.MAX_VALUE));
+    assertEquals(2, cells.size());
+    assertEquals(2, cells.get(0).getTimestamp());
+  }
+
+  @Test
+  public void testInMemoryCompactionKeepsVersionsInRowsWithDeletes() throws IOException {
+    this.memstore.add(put("row", 1));
+    this.memstore.add(put("row", 2));
+    KeyValue delete = new KeyValue(Bytes.toBytes("row"), FAMILY, QUALIFIER, 2,
+        KeyValue.Type.Delete);
+    delete.setSequenceId(++this.seqId);
+    this.memstore.delete(delete);
+
+    this.memstore.flushInMemory();
+
+    // The delete masks the newest put, so the oldest one must survive
+    assertEquals(3, scanAll(this.memstore.getScanners(Long.MAX_VALUE)).size());
+  }
+
+  @Test
+  public void testScannersRespectReadPoint() throws IOException {
+    this.memstore.add(put("row", 1));
+    this.memstore.flushInMemory();
+    this.memstore.add(put("row2", 1));
+
+    assertEquals(1, scanAll(this.memstore.getScanners(1)).size());
+    assertEquals(2, scanAll(this.memstore.getScanners(2)).size());
+  }
+
+  @Test
+  public void testSnapshotTakesActiveAndPipeline() throws IOException {
+    this.memstore.add(put("row", 1));
+    this.memstore.flushInMemory();
+    this.memstore.add(put("row2", 1));
+    long flushableSize = this.memstore.getFlushableSize();
+
+    MemStoreSnapshot snapshot = this.memstore.snapshot();
+
+    assertEquals(2, snapshot.getCellsCount());
+    assertEquals(flushableSize, snapshot.getSize());
+    assertEquals(flushableSize, this.memstore.getFlushableSize());
+    assertTrue(this.memstore.pipeline.isEmpty());
+    assertEquals(CompactingMemStore.DEEP_OVERHEAD, this.memstore.size());
+    KeyValueScanner scanner = snapshot.getScanner();
+    scanner.seek(KeyValue.LOWESTKEY);
+    assertEquals("row", Bytes.toString(CellUtil.cloneRow(scanner.next())));
+    assertEquals("row2", Bytes.toString(CellUtil.cloneRow(scanner.next())));
+    assertNull(scanner.next());
+    scanner.close();
+
+    this.memstore.clearSnapshot(snapshot.getId());
+    assertEquals(0, this.memstore.getSnapshotSize());
+    assertEquals(0, scanAll(this.memstore.getScanners(Long.MAX_VALUE)).size());
+  }
+}
@@ -466,6 +466,34 @@ public class TestDefaultMemStore extends TestCase {
     }
   }
 
+  /**
+   * The flusher flattens the snapshot outside of the updates lock and reads the flat copy.
+   * @throws IOException
+   */
+  public void testFlattenSnapshot() throws IOException {
+    int rowCount = addRows(this.memstore);
+    MemStoreSnapshot snapshot = this.memstore.snapshot();
+    assertFalse(this.memstore.snapshot instanceof CellArraySet);
+
+    MemStoreSnapshot flat = this.memstore.flattenSnapshot(snapshot);
+
+    assertTrue(this.memstore.snapshot instanceof CellArraySet);
+    assertEquals(snapshot.getId(), flat.getId());
+    assertEquals(snapshot.getSize(), flat.getSize());
+    KeyValueScanner scanner = flat.getScanner();
+    scanner.seek(KeyValue.LOWESTKEY);
+    int count = 0;
+    for (Cell cell = scanner.next(); cell != null; cell = scanner.next()) {
+      assertTrue(this.memstore.snapshot.contains(cell));
+      count++;
+    }
+    scanner.close();
+    assertEquals(rowCount * QUALIFIER_COUNT, count);
+    // Already flat; nothing more to copy
+    assertSame(flat, this.memstore.flattenSnapshot(flat));
+    this.memstore.clearSnapshot(flat.getId());
+  }
+
   /**
    * Test memstore snapshots
    * @throws IOException
@@ -0,0 +1,159 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one or more contributor license
+ * agreements. See the NOTICE file distributed with this work for additional information regarding
+ * copyright ownership. The ASF licenses this file to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance with the License. You may obtain a
+ * copy of the License at http://www.apache.org/licenses/LICENSE-2.0 Unless required by applicable
+ * law or agreed to in writing, software distributed under the License is distributed on an "AS IS"
+ * BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the License
+ * for the specific language governing permissions and limitations under the License.
+ */
+package org.apache.hadoop.hbase.regionserver;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.Matchers.any;
+import static org.mockito.Mockito.doReturn;
+import static org.mockito.Mockito.mock;
+
+import java.util.concurrent.TimeUnit;
+
+import org.apache.hadoop.hbase.HConstants;
+import org.apache.hadoop.hbase.HRegionInfo;
+import org.apache.hadoop.hbase.TableName;
+import org.apache.hadoop.hbase.regionserver.MemStoreFlusher.FlushRegionEntry;
+import org.apache.hadoop.hbase.regionserver.MemStoreFlusher.WakeupFlushThread;
+import org.apache.hadoop.hbase.testclassification.RegionServerTests;
+import org.apache.hadoop.hbase.testclassification.SmallTests;
+import org.apache.hadoop.hbase.util.EnvironmentEdgeManager;
+import org.apache.hadoop.hbase.util.ManualEnvironmentEdge;
+import org.apache.hadoop.hbase.wal.WAL;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.experimental.categories.Category;
+
+@Category({RegionServerTests.class, SmallTests.class})
+public class TestFlushQueue {
+
+  private static final long AGING_THRESHOLD = 1000;
+
+  private ManualEnvironmentEdge edge;
+  private FlushQueue queue;
+
+  @Before
+  public void setUp() {
+    edge = new ManualEnvironmentEdge();
+    edge.setValue(12345);
+    EnvironmentEdgeManager.injectEdge(edge);
+    queue = new FlushQueue(AGING_THRESHOLD);
+  }
+
+  @After
+  public void tearDown() {
+    EnvironmentEdgeManager.reset();
+  }
+
+  private static Region region(long earliestUnflushedSeqId, long memstoreSize) {
+    return region(0, earliestUnflushedSeqId, memstoreSize);
+  }
+
+  @SuppressWarnings("deprecation")
+  private static Region region(long maxFlushedSeqId, long earliestUnflushedSeqId,
+      long memstoreSize) {
+    WAL wal = mock(WAL.class);
+    doReturn(earliestUnflushedSeqId).when(wal).getEarliestMemstoreSeqNum(any(byte[].class));
+    HRegion r = mock(HRegion.class);
+    doReturn(new HRegionInfo(TableName.valueOf("test"))).when(r).getRegionInfo();
+    doReturn(wal).when(r).getWAL();
+    doReturn(maxFlushedSeqId).when(r).getMaxFlushedSeqId();
+    doReturn(memstoreSize).when(r).getMemstoreSize();
+    return r;
+  }
+
+  private FlushRegionEntry enqueue(Region r) {
+    FlushRegionEntry entry = new FlushRegionEntry(r, false);
+    queue.add(entry);
+    return entry;
+  }
+
+  private FlushRegionEntry poll(boolean aboveLowWaterMark) throws InterruptedException {
+    return (FlushRegionEntry) queue.poll(0, TimeUnit.MILLISECONDS, aboveLowWaterMark);
+  }
+
+  @Test
+  public void testOldestUnflushedEditsFirst() throws Exception {
+    FlushRegionEntry small = enqueue(region(100, 1));
+    FlushRegionEntry big = enqueue(region(300, 1000));
+    FlushRegionEntry oldest = enqueue(region(50, 10));
+    assertEquals(3, queue.size());
+    assertSame(oldest, poll(false));
+    assertSame(small, poll(false));
+    assertSame(big, poll(false));
+    assertNull(poll(false));
+    assertEquals(0, queue.size());
+  }
+
+  @Test
+  public void testOldestUnflushedEditRatherThanLastFlush() throws Exception {
+    // Flushed long ago, but everything it holds now was written recently
+    FlushRegionEntry recentEdits = enqueue(region(10, 500, 1));
+    // Flushed more recently, but has held on to an edit since shortly after
+    FlushRegionEntry oldEdit = enqueue(region(100, 150, 1));
+    FlushRegionEntry nothingInWal = enqueue(region(0, HConstants.NO_SEQNUM, 1));
+    assertSame(oldEdit, poll(false));
+    assertSame(recentEdits, poll(false));
+    assertSame(nothingInWal, poll(false));
+  }
+
+  @Test
+  public void testBiggestFirstUnderPressure() throws Exception {
+    FlushRegionEntry small = enqueue(region(100, 1));
+    FlushRegionEntry big = enqueue(region(300, 1000));
+    FlushRegionEntry medium = enqueue(region(50, 10));
+    assertSame(big, poll(true));
+    assertSame(medium, poll(true));
+    assertSame(small, poll(true));
+  }
+
+  @Test
+  public void testAgedEntriesFirst() throws Exception {
+    FlushRegionEntry aged = enqueue(region(300, 1));
+    edge.incValue(AGING_THRESHOLD);
+    FlushRegionEntry fresh = enqueue(region(50, 1000));
+    assertSame(aged, poll(false));
+    assertSame(fresh, poll(false));
+  }
+
+  @Test
+  public void testDelayedEntriesWait() throws Exception {
+    FlushRegionEntry delayed = new FlushRegionEntry(region(50, 1000), false);
+    delayed.requeue(100);
+    queue.add(delayed);
+    FlushRegionEntry due = enqueue(region(300, 1));
+    assertSame(due, poll(true));
+    assertNull(poll(true));
+    edge.incValue(100);
+    assertSame(delayed, poll(true));
+  }
+
+  @Test
+  public void testWakeupTokensFirst() throws Exception {
+    enqueue(region(50, 1000));
+    WakeupFlushThread token = new WakeupFlushThread();
+    queue.add(token);
+    assertSame(token, queue.poll(0, TimeUnit.MILLISECONDS, false));
+    assertTrue(queue.poll(0, TimeUnit.MILLISECONDS, false) instanceof FlushRegionEntry);
+  }
+
+  @Test
+  public void testRemove() throws Exception {
+    FlushRegionEntry first = enqueue(region(50, 1));
+    FlushRegionEntry second = enqueue(region(100, 1));
+    assertTrue(queue.remove(first));
+    assertEquals(1, queue.size());
+    assertSame(second, poll(false));
+  }
+}
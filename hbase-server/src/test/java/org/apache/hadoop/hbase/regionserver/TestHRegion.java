@@ -30,7 +30,9 @@ import static org.junit.Assert.assertArrayEquals;
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNotSame;
 import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
 import static org.junit.Assert.assertTrue;
 import static org.junit.Assert.fail;
 import static org.mockito.Matchers.any;
@@ -133,6 +135,7 @@ import org.apache.hadoop.hbase.protobuf.generated.WALProtos.FlushDescriptor.Stor
 import org.apache.hadoop.hbase.protobuf.generated.WALProtos.RegionEventDescriptor;
 import org.apache.hadoop.hbase.protobuf.generated.WALProtos.StoreDescriptor;
 import org.apache.hadoop.hbase.regionserver.HRegion.RegionScannerImpl;
+import org.apache.hadoop.hbase.regionserver.HRegion.RowLockImpl;
 import org.apache.hadoop.hbase.regionserver.Region.RowLock;
 import org.apache.hadoop.hbase.regionserver.TestStore.FaultyFileSystem;
 import org.apache.hadoop.hbase.regionserver.handler.FinishRegionRecoveringHandler;
@@ -416,6 +419,40 @@ public class TestHRegion {
     HBaseTestingUtility.closeRegionAndWAL(region);
   }
 
+  @Test
+  public void testParallelFlushOfMultipleFamilies() throws IOException {
+    Configuration conf = new Configuration(CONF);
+    conf.setInt(HRegion.FLUSH_THREADS_MAX, 4);
+    byte[][] families = new byte[8][];
+    for (int i = 0; i < families.length; i++) {
+      families[i] = Bytes.toBytes("family" + i);
+    }
+    HRegion region = initHRegion(tableName, name.getMethodName(), conf, families);
+    try {
+      byte[] row = Bytes.toBytes("row");
+      byte[] qualifier = Bytes.toBytes("qual");
+      Put put = new Put(row);
+      for (byte[] family : families) {
+        put.addColumn(family, qualifier, family);
+      }
+      region.put(put);
+      region.flush(true);
+      assertEquals(0, region.getMemstoreSize());
+      for (byte[] family : families) {
+        Store store = region.getStore(family);
+        assertEquals(1, store.getStorefilesCount());
+        assertEquals(0, store.getFlushableSize());
+        assertEquals(1, store.getFlushedCellsCount());
+      }
+      Result result = region.get(new Get(row));
+      for (byte[] family : families) {
+        assertArrayEquals(family, result.getValue(family, qualifier));
+      }
+    } finally {
+      HBaseTestingUtility.closeRegionAndWAL(region);
+    }
+  }
+
   /**
    * Test we do not lose data if we fail a flush and then close.
    * Part of HBase-10466.  Tests the following from the issue description:
@@ -1620,6 +1657,75 @@ public class TestHRegion {
     }
   }
 
+  @Test
+  public void testBatchPut_appliesUncontendedRowsFirst() throws Exception {
+    byte[] cf = Bytes.toBytes(COLUMN_FAMILY);
+    byte[] qual = Bytes.toBytes("qual");
+    byte[] val = Bytes.toBytes("val");
+    this.region = initHRegion(TableName.valueOf(getName()), getName(), CONF, cf);
+    try {
+      final Put[] puts = new Put[3];
+      for (int i = 0; i < puts.length; i++) {
+        puts[i] = new Put(Bytes.toBytes("row_" + i));
+        puts[i].addColumn(cf, qual, val);
+      }
+      RowLock rowLock = region.getRowLock(Bytes.toBytes("row_1"));
+      final AtomicReference<OperationStatus[]> result = new AtomicReference<OperationStatus[]>();
+      Thread putter = new Thread() {
+        @Override
+        public void run() {
+          try {
+            result.set(region.batchMutate(puts));
+          } catch (IOException e) {
+            LOG.error("batchMutate failed", e);
+          }
+        }
+      };
+      putter.start();
+      // The batch goes ahead with row_0 rather than wait for row_1 while holding its lock
+      long deadline = System.currentTimeMillis() + 10000;
+      while (region.get(new Get(Bytes.toBytes("row_0"))).isEmpty()) {
+        assertTrue("row_0 not written", System.currentTimeMillis() < deadline);
+        Thread.sleep(10);
+      }
+      assertTrue(region.get(new Get(Bytes.toBytes("row_1"))).isEmpty());
+      rowLock.release();
+      putter.join();
+      for (OperationStatus status : result.get()) {
+        assertEquals(OperationStatusCode.SUCCESS, status.getOperationStatusCode());
+      }
+      assertFalse(region.get(new Get(Bytes.toBytes("row_2"))).isEmpty());
+    } finally {
+      HBaseTestingUtility.closeRegionAndWAL(this.region);
+      this.region = null;
+    }
+  }
+
+  @Test
+  public void testRowLockContextsDroppedOnceReleased() throws Exception {
+    this.region = initHRegion(TableName.valueOf(getName()), getName(), CONF,
+        Bytes.toBytes(COLUMN_FAMILY));
+    try {
+      byte[] row = Bytes.toBytes("row");
+      RowLockImpl first = (RowLockImpl) region.getRowLock(row, true);
+      RowLockImpl second = (RowLockImpl) region.getRowLock(row, true);
+      // Holders of the same row share its context and lock object
+      assertSame(first, second);
+      first.release();
+      RowLockImpl third = (RowLockImpl) region.getRowLock(row, true);
+      assertSame(first.getContext(), third.getContext());
+      second.release();
+      third.release();
+      // Nobody holds the row any more, so its context left the table
+      RowLockImpl fourth = (RowLockImpl) region.getRowLock(row, false);
+      assertNotSame(first.getContext(), fourth.getContext());
+      fourth.release();
+    } finally {
+      HBaseTestingUtility.closeRegionAndWAL(this.region);
+      this.region = null;
+    }
+  }
+
   private void waitForCounter(MetricsWALSource source, String metricName, long expectedCount)
       throws InterruptedException {
     long startWait = System.currentTimeMillis();
@@ -41,6 +41,7 @@ import org.apache.hadoop.hbase.io.hfile.BlockCacheKey;
 import org.apache.hadoop.hbase.io.hfile.CacheStats;
 import org.apache.hadoop.hbase.io.hfile.Cacheable;
 import org.apache.hadoop.hbase.io.hfile.CachedBlock;
+import org.apache.hadoop.hbase.io.hfile.GhostCache;
 import org.apache.hadoop.hbase.io.hfile.ResizableBlockCache;
 import org.apache.hadoop.hbase.io.util.HeapMemorySizeUtil;
 import org.apache.hadoop.hbase.regionserver.HeapMemoryManager.TunerContext;
@@ -59,6 +60,20 @@ public class TestHeapMemoryManager {
 
   private long maxHeapSize = ManagementFactory.getMemoryMXBean().getHeapMemoryUsage().getMax();
 
+  @Test
+  public void testAutoTunerStaysOnWhenMemstoreIsOffheap() throws Exception {
+    Configuration conf = HBaseConfiguration.create();
+    conf.setFloat(HeapMemoryManager.MEMSTORE_SIZE_MAX_RANGE_KEY, 0.75f);
+    conf.setFloat(HeapMemoryManager.MEMSTORE_SIZE_MIN_RANGE_KEY, 0.10f);
+    conf.setFloat(HeapMemoryManager.BLOCK_CACHE_SIZE_MAX_RANGE_KEY, 0.7f);
+    conf.setFloat(HeapMemoryManager.BLOCK_CACHE_SIZE_MIN_RANGE_KEY, 0.05f);
+    conf.setLong(HeapMemorySizeUtil.MEMSTORE_OFFHEAP_SIZE_KEY, 1024);
+    // The Cells and indexes of the memstores are still on the heap
+    HeapMemoryManager manager = new HeapMemoryManager(new BlockCacheStub(0),
+        new MemstoreFlusherStub(0), new RegionServerStub(conf), new RegionServerAccounting(conf));
+    assertTrue(manager.isTunerOn());
+  }
+
   @Test
   public void testAutoTunerShouldBeOffWhenMaxMinRangesForMemstoreIsNotGiven() throws Exception {
     Configuration conf = HBaseConfiguration.create();
@@ -269,6 +284,45 @@ public class TestHeapMemoryManager {
     assertHeapSpaceDelta(maxStepValue, oldBlockCacheSize, blockCache.maxSize);
   }
 
+  @Test
+  public void testReadHeavyClusterWithBlockCacheThatWouldNotGain() throws Exception {
+    BlockCacheStub blockCache = new BlockCacheStub((long) (maxHeapSize * 0.4));
+    MemstoreFlusherStub memStoreFlusher = new MemstoreFlusherStub((long) (maxHeapSize * 0.4));
+    // Nearly filled block cache, but its whole working set fits in 80% of it
+    blockCache.setTestBlockSize((long) (maxHeapSize * 0.4 * 0.8));
+    blockCache.ghostCache = new GhostCache(blockCache.maxSize, 1f, 0.05f, 4);
+    for (int i = 0; i < 10; i++) {
+      blockCache.ghostCache.cached(new BlockCacheKey("file", i), 1000);
+    }
+    for (int round = 0; round < 20; round++) {
+      for (int i = 0; i < 10; i++) {
+        blockCache.ghostCache.hit(new BlockCacheKey("file", i), 1000);
+      }
+    }
+    Configuration conf = HBaseConfiguration.create();
+    conf.setFloat(HeapMemorySizeUtil.MEMSTORE_SIZE_LOWER_LIMIT_KEY, 0.7f);
+    conf.setFloat(HeapMemoryManager.MEMSTORE_SIZE_MAX_RANGE_KEY, 0.75f);
+    conf.setFloat(HeapMemoryManager.MEMSTORE_SIZE_MIN_RANGE_KEY, 0.10f);
+    conf.setFloat(HeapMemoryManager.BLOCK_CACHE_SIZE_MAX_RANGE_KEY, 0.7f);
+    conf.setFloat(HeapMemoryManager.BLOCK_CACHE_SIZE_MIN_RANGE_KEY, 0.05f);
+    conf.setLong(HeapMemoryManager.HBASE_RS_HEAP_MEMORY_TUNER_PERIOD, 1000);
+    conf.setInt(DefaultHeapMemoryTuner.NUM_PERIODS_TO_IGNORE, 0);
+    HeapMemoryManager heapMemoryManager = new HeapMemoryManager(blockCache, memStoreFlusher,
+        new RegionServerStub(conf), new RegionServerAccountingStub());
+    long oldMemstoreHeapSize = memStoreFlusher.memstoreSize;
+    long oldBlockCacheSize = blockCache.maxSize;
+    final ChoreService choreService = new ChoreService("TEST_SERVER_NAME");
+    heapMemoryManager.start(choreService);
+    blockCache.evictBlock(null);
+    blockCache.evictBlock(null);
+    blockCache.evictBlock(null);
+    // Allow the tuner to run once
+    Thread.sleep(1500);
+    // No changes should be made by tuner as a larger block cache would not hit more
+    assertEquals(oldMemstoreHeapSize, memStoreFlusher.memstoreSize);
+    assertEquals(oldBlockCacheSize, blockCache.maxSize);
+  }
+
   @Test
   public void testWhenClusterIsHavingMoreWritesThanReads() throws Exception {
     BlockCacheStub blockCache = new BlockCacheStub((long) (maxHeapSize * 0.4));
@@ -536,6 +590,7 @@ public class TestHeapMemoryManager {
   private static class BlockCacheStub implements ResizableBlockCache {
     CacheStats stats = new CacheStats("test");
     long maxSize = 0;
+    GhostCache ghostCache = null;
     private long testBlockSize = 0;
 
     public BlockCacheStub(long size){
@@ -606,6 +661,11 @@ public class TestHeapMemoryManager {
       this.maxSize = size;
     }
 
+    @Override
+    public GhostCache getGhostCache() {
+      return ghostCache;
+    }
+
     @Override
     public Iterator<CachedBlock> iterator() {
       return null;
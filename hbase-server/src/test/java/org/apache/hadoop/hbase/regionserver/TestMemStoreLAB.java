@@ -26,11 +26,20 @@ import java.util.Random;
 import java.util.concurrent.atomic.AtomicInteger;
 
 import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.hbase.ArrayBackedTag;
+import org.apache.hadoop.hbase.Cell;
+import org.apache.hadoop.hbase.CellComparator;
+import org.apache.hadoop.hbase.CellUtil;
+import org.apache.hadoop.hbase.KeyValue;
 import org.apache.hadoop.hbase.MultithreadedTestUtil;
+import org.apache.hadoop.hbase.OffheapKeyValue;
+import org.apache.hadoop.hbase.Tag;
 import org.apache.hadoop.hbase.MultithreadedTestUtil.TestThread;
 import org.apache.hadoop.hbase.testclassification.RegionServerTests;
+import org.apache.hadoop.hbase.io.util.HeapMemorySizeUtil;
 import org.apache.hadoop.hbase.testclassification.SmallTests;
 import org.apache.hadoop.hbase.util.ByteRange;
+import org.apache.hadoop.hbase.util.Bytes;
 import org.junit.Test;
 
 import com.google.common.collect.Iterables;
@@ -77,6 +86,53 @@ public class TestMemStoreLAB {
       alloc);
   } 
 
+  @Test
+  public void testOffheapCopyCellInto() {
+    Configuration conf = new Configuration();
+    conf.setLong(HeapMemorySizeUtil.MEMSTORE_OFFHEAP_SIZE_KEY, 16);
+    // Keep the global chunk pool out of the test
+    conf.setFloat(MemStoreChunkPool.CHUNK_POOL_MAXSIZE_KEY, 0.0f);
+    MemStoreLAB mslab = new HeapMemStoreLAB(conf);
+    KeyValue kv = new KeyValue(Bytes.toBytes("row"), Bytes.toBytes("f"), Bytes.toBytes("q"), 1L,
+        Bytes.toBytes("value"), new Tag[] { new ArrayBackedTag((byte) 1, "tag") });
+    kv.setSequenceId(42);
+    RegionServerAccounting accounting = new RegionServerAccounting(conf);
+    long offheapSizeBefore = accounting.getGlobalMemstoreOffheapSize();
+
+    Cell copy = mslab.copyCellInto(kv);
+
+    assertTrue(copy instanceof OffheapKeyValue);
+    assertEquals(0, CellComparator.COMPARATOR.compare(kv, copy));
+    assertTrue(CellUtil.matchingValue(kv, copy));
+    assertArrayEquals(CellUtil.getTagArray(kv), CellUtil.getTagArray(copy));
+    assertEquals(42, copy.getSequenceId());
+    assertEquals(offheapSizeBefore + kv.getLength(), accounting.getGlobalMemstoreOffheapSize());
+    // Off-heap chunks have no backing array; the caller keeps such allocations on the heap
+    assertNull(mslab.allocateBytes(10));
+    mslab.close();
+    assertEquals(offheapSizeBefore, accounting.getGlobalMemstoreOffheapSize());
+  }
+
+  @Test
+  public void testOffheapDataNotCountedAsHeap() {
+    Configuration conf = new Configuration();
+    conf.setLong(HeapMemorySizeUtil.MEMSTORE_OFFHEAP_SIZE_KEY, 16);
+    conf.setFloat(MemStoreChunkPool.CHUNK_POOL_MAXSIZE_KEY, 0.0f);
+    MemStoreLAB mslab = new HeapMemStoreLAB(conf);
+    RegionServerAccounting accounting = new RegionServerAccounting(conf);
+    Cell copy = mslab.copyCellInto(new KeyValue(Bytes.toBytes("row"), Bytes.toBytes("f"),
+        Bytes.toBytes("q"), 1L, new byte[1000]));
+    long offheapSize = accounting.getGlobalMemstoreOffheapSize();
+    accounting.addAndGetGlobalMemstoreSize(CellUtil.estimatedHeapSizeOf(copy));
+    try {
+      assertTrue(offheapSize >= 1000);
+      // Only the Cell object itself is left on the heap
+      assertTrue(accounting.getGlobalMemstoreHeapSize() < 1000);
+    } finally {
+      mslab.close();
+    }
+  }
+
   /**
    * Test allocation from lots of threads, making sure the results don't
    * overlap in any way
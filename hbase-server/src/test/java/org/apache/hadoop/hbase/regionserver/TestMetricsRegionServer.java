@@ -87,8 +87,11 @@ public class TestMetricsRegionServer {
     HELPER.assertCounter("blockCacheEvictionCount", 418, serverSource);
     HELPER.assertGauge("blockCacheCountHitPercent", 98, serverSource);
     HELPER.assertGauge("blockCacheExpressHitPercent", 97, serverSource);
+    HELPER.assertGauge("blockCacheEstimatedHitRatioAtSize100", 0.5, serverSource);
     HELPER.assertCounter("blockCacheFailedInsertionCount", 36, serverSource);
     HELPER.assertCounter("updatesBlockedTime", 419, serverSource);
+    HELPER.assertCounter("storeFileParallelSeekCount", 420, serverSource);
+    HELPER.assertCounter("storeFileSerialSeekTime", 424, serverSource);
   }
 
   @Test
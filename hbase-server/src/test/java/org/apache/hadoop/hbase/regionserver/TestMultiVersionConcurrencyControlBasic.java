@@ -18,6 +18,13 @@
 package org.apache.hadoop.hbase.regionserver;
 
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicBoolean;
 
 import org.apache.hadoop.hbase.testclassification.RegionServerTests;
 import org.apache.hadoop.hbase.testclassification.SmallTests;
@@ -42,4 +49,69 @@ public class TestMultiVersionConcurrencyControlBasic {
     mvcc.complete(writeEntry);
     assertEquals(readPoint + 2, mvcc.getWritePoint());
   }
-}
\ No newline at end of file
+
+  @Test
+  public void testOutOfOrderCompletion() {
+    MultiVersionConcurrencyControl mvcc = new MultiVersionConcurrencyControl(10);
+    MultiVersionConcurrencyControl.WriteEntry first = mvcc.begin();
+    MultiVersionConcurrencyControl.WriteEntry second = mvcc.begin();
+    MultiVersionConcurrencyControl.WriteEntry third = mvcc.begin();
+    assertEquals(11, first.getWriteNumber());
+    assertEquals(13, third.getWriteNumber());
+    assertEquals(13, mvcc.getWritePoint());
+    // Not visible until the writes ahead of them are done
+    assertFalse(mvcc.complete(third));
+    assertFalse(mvcc.complete(second));
+    assertEquals(10, mvcc.getReadPoint());
+    assertTrue(mvcc.complete(first));
+    assertEquals(13, mvcc.getReadPoint());
+  }
+
+  @Test
+  public void testAdvanceTo() {
+    MultiVersionConcurrencyControl mvcc = new MultiVersionConcurrencyControl();
+    mvcc.advanceTo(100);
+    assertEquals(100, mvcc.getReadPoint());
+    assertEquals(100, mvcc.getWritePoint());
+    assertFalse(mvcc.tryAdvanceTo(50, MultiVersionConcurrencyControl.NONE));
+    MultiVersionConcurrencyControl.WriteEntry e = mvcc.begin();
+    assertEquals(101, e.getWriteNumber());
+    try {
+      mvcc.tryAdvanceTo(200, MultiVersionConcurrencyControl.NONE);
+      fail("Advanced over an outstanding write");
+    } catch (RuntimeException expected) {
+    }
+    mvcc.completeAndWait(e);
+    assertEquals(101, mvcc.getReadPoint());
+  }
+
+  @Test
+  public void testConcurrentWriters() throws Exception {
+    final MultiVersionConcurrencyControl mvcc = new MultiVersionConcurrencyControl();
+    final int writesPerThread = 10000;
+    final AtomicBoolean invisible = new AtomicBoolean();
+    List<Thread> writers = new ArrayList<Thread>();
+    for (int i = 0; i < 8; i++) {
+      Thread writer = new Thread() {
+        @Override
+        public void run() {
+          for (int j = 0; j < writesPerThread; j++) {
+            MultiVersionConcurrencyControl.WriteEntry e = mvcc.begin();
+            mvcc.completeAndWait(e);
+            if (mvcc.getReadPoint() < e.getWriteNumber()) {
+              invisible.set(true);
+            }
+          }
+        }
+      };
+      writers.add(writer);
+      writer.start();
+    }
+    for (Thread writer : writers) {
+      writer.join();
+    }
+    assertFalse(invisible.get());
+    assertEquals(writers.size() * writesPerThread, mvcc.getWritePoint());
+    assertEquals(mvcc.getWritePoint(), mvcc.getReadPoint());
+  }
+}
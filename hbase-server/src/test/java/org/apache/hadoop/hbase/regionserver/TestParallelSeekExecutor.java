@@ -0,0 +1,117 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.hadoop.hbase.regionserver;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+import static org.mockito.Matchers.any;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.List;
+
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.hbase.Cell;
+import org.apache.hadoop.hbase.HBaseConfiguration;
+import org.apache.hadoop.hbase.KeyValue;
+import org.apache.hadoop.hbase.testclassification.RegionServerTests;
+import org.apache.hadoop.hbase.testclassification.SmallTests;
+import org.apache.hadoop.hbase.util.Bytes;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.experimental.categories.Category;
+
+@Category({RegionServerTests.class, SmallTests.class})
+public class TestParallelSeekExecutor {
+  private static final Cell KEY = new KeyValue(Bytes.toBytes("row"), Bytes.toBytes("f"),
+      Bytes.toBytes("q"));
+
+  private ParallelSeekExecutor executor;
+
+  @Before
+  public void setUp() {
+    Configuration conf = HBaseConfiguration.create();
+    conf.setInt(ParallelSeekExecutor.MIN_UNCACHED_FILES_KEY, 2);
+    executor = new ParallelSeekExecutor(conf, "test");
+  }
+
+  @After
+  public void tearDown() {
+    executor.shutdown();
+  }
+
+  @Test
+  public void testCachedSeekLeftToCaller() throws IOException {
+    StoreFileScanner cached = mockStoreFileScanner(true);
+    StoreFileScanner uncached = mockStoreFileScanner(false);
+    KeyValueScanner memstore = mock(KeyValueScanner.class);
+    List<KeyValueScanner> scanners = Arrays.asList(cached, uncached, memstore);
+    assertFalse(executor.seek(scanners, KEY));
+    for (KeyValueScanner scanner : scanners) {
+      verify(scanner, never()).seek(any(Cell.class));
+    }
+    executor.serialSeekDone(1000000);
+    assertEquals(0, executor.getParallelSeekCount());
+    assertEquals(1, executor.getSerialSeekCount());
+    assertEquals(1, executor.getSerialSeekTime());
+  }
+
+  @Test
+  public void testUncachedSeekGoesParallel() throws IOException {
+    StoreFileScanner cached = mockStoreFileScanner(true);
+    StoreFileScanner uncached1 = mockStoreFileScanner(false);
+    StoreFileScanner uncached2 = mockStoreFileScanner(false);
+    KeyValueScanner memstore = mock(KeyValueScanner.class);
+    List<KeyValueScanner> scanners = Arrays.asList(cached, uncached1, uncached2, memstore);
+    assertTrue(executor.seek(scanners, KEY));
+    for (KeyValueScanner scanner : scanners) {
+      verify(scanner).seek(KEY);
+    }
+    assertEquals(1, executor.getParallelSeekCount());
+    assertEquals(2, executor.getParallelSeekFileCount());
+    assertEquals(0, executor.getSerialSeekCount());
+  }
+
+  @Test
+  public void testSeekFailure() throws IOException {
+    StoreFileScanner failing = mockStoreFileScanner(false);
+    when(failing.seek(KEY)).thenThrow(new IOException("injected"));
+    StoreFileScanner uncached = mockStoreFileScanner(false);
+    try {
+      executor.seek(Arrays.asList(failing, uncached), KEY);
+      fail("The seek failure should have been rethrown");
+    } catch (IOException e) {
+      assertEquals("injected", e.getMessage());
+    }
+    verify(uncached).seek(KEY);
+    assertEquals(0, executor.getParallelSeekCount());
+  }
+
+  private static StoreFileScanner mockStoreFileScanner(boolean cached) {
+    StoreFileScanner scanner = mock(StoreFileScanner.class);
+    when(scanner.isSeekCached(KEY)).thenReturn(cached);
+    return scanner;
+  }
+}
@@ -0,0 +1,138 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.hadoop.hbase.regionserver;
+
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+
+import java.io.IOException;
+
+import org.apache.hadoop.hbase.ipc.RpcCallback;
+import org.apache.hadoop.hbase.testclassification.RegionServerTests;
+import org.apache.hadoop.hbase.testclassification.SmallTests;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.experimental.categories.Category;
+
+@Category({RegionServerTests.class, SmallTests.class})
+public class TestRegionScannerShipper {
+  private RegionScanner scanner;
+  private RpcCallback leaseReturner;
+  private RpcCallback closer;
+  private RegionScannerShipper shipper;
+
+  @Before
+  public void setUp() {
+    scanner = mock(RegionScanner.class);
+    leaseReturner = mock(RpcCallback.class);
+    closer = mock(RpcCallback.class);
+    shipper = new RegionScannerShipper(scanner, leaseReturner, closer);
+  }
+
+  @Test
+  public void testCallbackRunAtResponse() throws IOException {
+    shipper.callStarted();
+    shipper.callEnded().run();
+    verify(scanner).shipped();
+    verify(leaseReturner).run();
+  }
+
+  @Test
+  public void testDelayedCallbackOfEarlierCall() throws IOException {
+    // The response to the first call is still being written when the second call starts
+    shipper.callStarted();
+    RpcCallback first = shipper.callEnded();
+    shipper.callStarted();
+    // The second call needs the lease the first one has not given back yet
+    verify(leaseReturner).run();
+    RpcCallback second = shipper.callEnded();
+    // The first response is written out while the second response still refers to cells
+    first.run();
+    verify(scanner, never()).shipped();
+    second.run();
+    verify(scanner).shipped();
+    verify(leaseReturner, times(2)).run();
+  }
+
+  @Test
+  public void testDelayedCallbackDuringNextCall() throws IOException {
+    shipper.callStarted();
+    RpcCallback first = shipper.callEnded();
+    shipper.callStarted();
+    // The second call is reading from the scanner, which must not be shipped under it
+    first.run();
+    verify(scanner, never()).shipped();
+    RpcCallback second = shipper.callEnded();
+    second.run();
+    verify(scanner).shipped();
+  }
+
+  @Test
+  public void testCallbackRunsOnce() throws IOException {
+    shipper.callStarted();
+    RpcCallback first = shipper.callEnded();
+    first.run();
+    shipper.callStarted();
+    RpcCallback second = shipper.callEnded();
+    // A stale second run of the first callback must not ship the second response's cells
+    first.run();
+    verify(scanner, times(1)).shipped();
+    second.run();
+    verify(scanner, times(2)).shipped();
+  }
+
+  @Test
+  public void testCloseWithNothingPending() throws IOException {
+    shipper.callStarted();
+    shipper.callEnded().run();
+    shipper.close();
+    verify(closer).run();
+  }
+
+  @Test
+  public void testCloseWhileCallbackPending() throws IOException {
+    shipper.callStarted();
+    RpcCallback first = shipper.callEnded();
+    // The close request arrives while the first response is still being written
+    shipper.close();
+    verify(closer, never()).run();
+    first.run();
+    // The scanner is closed in place of being shipped
+    verify(closer).run();
+    verify(scanner, never()).shipped();
+    first.run();
+    shipper.close();
+    verify(closer, times(1)).run();
+  }
+
+  @Test
+  public void testCloseWhileCallInProgress() throws IOException {
+    shipper.callStarted();
+    RpcCallback first = shipper.callEnded();
+    shipper.callStarted();
+    shipper.close();
+    first.run();
+    // The second call is still reading from the scanner
+    verify(closer, never()).run();
+    shipper.callEnded().run();
+    verify(closer).run();
+    verify(scanner, never()).shipped();
+  }
+}
@@ -57,6 +57,7 @@ import org.apache.hadoop.hbase.io.hfile.HFileScanner;
 import org.apache.hadoop.hbase.testclassification.RegionServerTests;
 import org.apache.hadoop.hbase.testclassification.SmallTests;
 import org.apache.hadoop.hbase.util.BloomFilterFactory;
+import org.apache.hadoop.hbase.util.BloomFilterUtil;
 import org.apache.hadoop.hbase.util.Bytes;
 import org.apache.hadoop.hbase.util.ChecksumType;
 import org.apache.hadoop.hbase.util.FSUtils;
@@ -737,6 +738,81 @@ public class TestStoreFile extends HBaseTestCase {
     }
   }
 
+  @Test
+  public void testRowPrefixBloomFilters() throws Exception {
+    float err = (float) 0.01;
+    FileSystem fs = FileSystem.getLocal(conf);
+    Configuration bloomConf = new Configuration(conf);
+    bloomConf.setFloat(BloomFilterFactory.IO_STOREFILE_BLOOM_ERROR_RATE, err);
+    bloomConf.setBoolean(BloomFilterFactory.IO_STOREFILE_BLOOM_ENABLED, true);
+    bloomConf.setInt(BloomFilterUtil.PREFIX_LENGTH_KEY, 5);
+    bloomConf.set(BloomFilterUtil.DELIMITER_KEY, "#");
+
+    int prefixCount = 200;
+    int rowsPerPrefix = 5;
+    BloomType[] bt = {BloomType.ROWPREFIX_FIXED_LENGTH, BloomType.ROWPREFIX_DELIMITED};
+    for (int x : new int[]{0,1}) {
+      Path f = new Path(ROOT_DIR, getName() + x);
+      HFileContext meta = new HFileContextBuilder().withBlockSize(BLOCKSIZE_SMALL)
+          .withChecksumType(CKTYPE)
+          .withBytesPerCheckSum(CKBYTES).build();
+      StoreFile.Writer writer = new StoreFile.WriterBuilder(bloomConf, cacheConf, this.fs)
+              .withFilePath(f)
+              .withBloomType(bt[x])
+              .withMaxKeyCount(prefixCount * rowsPerPrefix)
+              .withFileContext(meta)
+              .build();
+      long now = System.currentTimeMillis();
+      // only the even prefixes are written, as "0000#0000"
+      for (int i = 0; i < prefixCount; i += 2) {
+        for (int j = 0; j < rowsPerPrefix; j++) {
+          String row = String.format("%04d#%04d", i, j);
+          writer.append(new KeyValue(row.getBytes(), "family".getBytes(), "col".getBytes(),
+              now, "value".getBytes()));
+        }
+      }
+      writer.close();
+
+      StoreFile.Reader reader = new StoreFile.Reader(fs, f, cacheConf, conf);
+      reader.loadFileInfo();
+      reader.loadBloomfilter();
+      StoreFileScanner scanner = reader.getStoreFileScanner(false, false);
+      assertEquals(bt[x], reader.getBloomFilterType());
+      assertEquals(prefixCount / 2, reader.generalBloomFilter.getKeyCount());
+
+      Store store = mock(Store.class);
+      HColumnDescriptor hcd = mock(HColumnDescriptor.class);
+      when(hcd.getName()).thenReturn(Bytes.toBytes("family"));
+      when(store.getFamily()).thenReturn(hcd);
+      int falsePos = 0;
+      int falseNeg = 0;
+      for (int i = 0; i < prefixCount; i++) {
+        byte[] prefix = Bytes.toBytes(String.format("%04d#", i));
+        byte[] row = Bytes.toBytes(String.format("%04d#%04d", i, 1));
+        Scan prefixScan = new Scan().setRowPrefixFilter(prefix);
+        Scan reversedScan = new Scan(Bytes.add(prefix, Bytes.toBytes("9999")), prefix);
+        reversedScan.setReversed(true);
+        // the scans all look up the same prefix
+        boolean exists = scanner.shouldUseScanner(prefixScan, store, Long.MIN_VALUE);
+        assertEquals(exists, scanner.shouldUseScanner(reversedScan, store, Long.MIN_VALUE));
+        assertEquals(exists, scanner.shouldUseScanner(new Scan(row, row), store, Long.MIN_VALUE));
+        if (i % 2 == 0) {
+          if (!exists) falseNeg++;
+        } else {
+          if (exists) falsePos++;
+        }
+      }
+      // scans over more than one prefix cannot be filtered
+      Scan crossScan = new Scan(Bytes.toBytes("0001#"), Bytes.toBytes("0003#0001"));
+      assertTrue(scanner.shouldUseScanner(crossScan, store, Long.MIN_VALUE));
+      reader.close(true); // evict because we are about to delete the file
+      fs.delete(f, true);
+      assertEquals(0, falseNeg);
+      assertTrue("Too many false positives: " + falsePos,
+          falsePos <= 5 * (prefixCount / 2) * err);
+    }
+  }
+
   @Test
   public void testSeqIdComparator() {
     assertOrdering(StoreFile.Comparators.SEQ_ID, mockStoreFile(true, 100, 1000, -1, "/foo/123"),
@@ -0,0 +1,159 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.hadoop.hbase.regionserver;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.fs.FileSystem;
+import org.apache.hadoop.fs.Path;
+import org.apache.hadoop.hbase.Cell;
+import org.apache.hadoop.hbase.HBaseTestingUtility;
+import org.apache.hadoop.hbase.HColumnDescriptor;
+import org.apache.hadoop.hbase.HRegionInfo;
+import org.apache.hadoop.hbase.HTableDescriptor;
+import org.apache.hadoop.hbase.MockRegionServerServices;
+import org.apache.hadoop.hbase.TableName;
+import org.apache.hadoop.hbase.client.Put;
+import org.apache.hadoop.hbase.client.Scan;
+import org.apache.hadoop.hbase.io.hfile.BlockCache;
+import org.apache.hadoop.hbase.io.hfile.BlockCacheKey;
+import org.apache.hadoop.hbase.io.hfile.CachedBlock;
+import org.apache.hadoop.hbase.io.hfile.HFileBlockIndex;
+import org.apache.hadoop.hbase.testclassification.MediumTests;
+import org.apache.hadoop.hbase.testclassification.RegionServerTests;
+import org.apache.hadoop.hbase.util.Bytes;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.experimental.categories.Category;
+import org.junit.rules.TestName;
+
+/**
+ * Tests that StoreScanner seeks the files of a store in parallel when their blocks for the key
+ * are not cached, with a multi-level block index.
+ */
+@Category({RegionServerTests.class, MediumTests.class})
+public class TestStoreScannerParallelSeek {
+  private static final HBaseTestingUtility TEST_UTIL = new HBaseTestingUtility();
+  private static final byte[] FAMILY = Bytes.toBytes("f");
+  private static final byte[] QUALIFIER = Bytes.toBytes("q");
+  private static final int FILES = 3;
+  private static final int ROWS = 300;
+
+  @Rule public TestName name = new TestName();
+
+  private ParallelSeekExecutor seeker;
+  private HRegion region;
+
+  @Before
+  public void setUp() throws IOException {
+    Configuration conf = TEST_UTIL.getConfiguration();
+    conf.setInt("hbase.hstore.compactionThreshold", 10000);
+    conf.setBoolean(StoreScanner.STORESCANNER_PARALLEL_SEEK_ENABLE, true);
+    conf.setInt(ParallelSeekExecutor.MIN_UNCACHED_FILES_KEY, 2);
+    // Small index blocks, so that the index has intermediate and leaf levels
+    conf.setInt(HFileBlockIndex.MAX_CHUNK_SIZE_KEY, 128);
+    seeker = new ParallelSeekExecutor(conf, name.getMethodName());
+    RegionServerServices rss = new MockRegionServerServices(conf) {
+      @Override
+      public ParallelSeekExecutor getParallelSeekExecutor() {
+        return seeker;
+      }
+    };
+
+    HTableDescriptor htd = new HTableDescriptor(TableName.valueOf(name.getMethodName()));
+    htd.addFamily(new HColumnDescriptor(FAMILY).setBlocksize(64).setBlockCacheEnabled(true));
+    HRegionInfo info = new HRegionInfo(htd.getTableName(), null, null, false);
+    Path rootDir = TEST_UTIL.getDataTestDir(name.getMethodName());
+    HRegion created = HBaseTestingUtility.createRegionAndWAL(info, rootDir, conf, htd, false);
+    region = HRegion.openHRegion(conf, FileSystem.get(conf), rootDir, info, htd,
+      created.getWAL(), rss, null);
+  }
+
+  @After
+  public void tearDown() throws IOException {
+    HBaseTestingUtility.closeRegionAndWAL(region);
+    seeker.shutdown();
+  }
+
+  @Test
+  public void testUncachedSeekGoesParallel() throws IOException {
+    for (int f = 0; f < FILES; f++) {
+      for (int i = 0; i < ROWS; i++) {
+        Put put = new Put(Bytes.toBytes(String.format("row%05d", i)));
+        put.addColumn(FAMILY, QUALIFIER, Bytes.toBytes("value" + f));
+        region.put(put);
+      }
+      region.flush(true);
+    }
+    Store store = region.getStore(FAMILY);
+    assertEquals(FILES, store.getStorefilesCount());
+    Set<String> fileNames = new HashSet<String>();
+    for (StoreFile file : store.getStorefiles()) {
+      assertTrue(file.getReader().getHFileReader().getTrailer().getNumDataIndexLevels() > 2);
+      fileNames.add(file.getPath().getName());
+    }
+    byte[] row = Bytes.toBytes(String.format("row%05d", ROWS / 2));
+
+    // Reads the blocks on the way to the row into the cache
+    scanRow(row);
+    long parallelSeeks = seeker.getParallelSeekCount();
+    long serialSeeks = seeker.getSerialSeekCount();
+
+    // All cached now
+    scanRow(row);
+    assertEquals(parallelSeeks, seeker.getParallelSeekCount());
+    assertEquals(serialSeeks + 1, seeker.getSerialSeekCount());
+
+    // With the index blocks still cached but not the data blocks, the seeks read from the files
+    BlockCache cache = store.getCacheConfig().getBlockCache();
+    List<BlockCacheKey> dataBlocks = new ArrayList<BlockCacheKey>();
+    for (CachedBlock block : cache) {
+      if (fileNames.contains(block.getFilename()) && block.getBlockType().isData()) {
+        dataBlocks.add(new BlockCacheKey(block.getFilename(), block.getOffset()));
+      }
+    }
+    assertTrue(dataBlocks.size() >= FILES);
+    for (BlockCacheKey key : dataBlocks) {
+      cache.evictBlock(key);
+    }
+    scanRow(row);
+    assertEquals(parallelSeeks + 1, seeker.getParallelSeekCount());
+    assertEquals(serialSeeks + 1, seeker.getSerialSeekCount());
+  }
+
+  private void scanRow(byte[] row) throws IOException {
+    RegionScanner scanner = region.getScanner(new Scan(row, Bytes.add(row, new byte[] { 0 })));
+    try {
+      List<Cell> results = new ArrayList<Cell>();
+      scanner.next(results);
+      assertEquals(1, results.size());
+    } finally {
+      scanner.close();
+    }
+  }
+}
@@ -0,0 +1,79 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.hadoop.hbase.regionserver.compactions;
+
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.hbase.HBaseConfiguration;
+import org.apache.hadoop.hbase.io.hfile.HFile;
+import org.apache.hadoop.hbase.regionserver.StoreFile;
+import org.apache.hadoop.hbase.testclassification.RegionServerTests;
+import org.apache.hadoop.hbase.testclassification.SmallTests;
+import org.junit.Test;
+import org.junit.experimental.categories.Category;
+
+@Category({RegionServerTests.class, SmallTests.class})
+public class TestCompactionOutputCachePolicy {
+
+  private static StoreFile mockFile(long hits, long misses) {
+    HFile.Reader hfileReader = mock(HFile.Reader.class);
+    when(hfileReader.getDataBlockCacheHits()).thenReturn(hits);
+    when(hfileReader.getDataBlockCacheMisses()).thenReturn(misses);
+    StoreFile.Reader reader = mock(StoreFile.Reader.class);
+    when(reader.getHFileReader()).thenReturn(hfileReader);
+    StoreFile file = mock(StoreFile.class);
+    when(file.getReader()).thenReturn(reader);
+    return file;
+  }
+
+  @Test
+  public void testDisabledByDefault() {
+    assertNull(CompactionOutputCachePolicy.create(HBaseConfiguration.create()));
+  }
+
+  @Test
+  public void testShouldCacheOutput() {
+    Configuration conf = HBaseConfiguration.create();
+    conf.setBoolean(CompactionOutputCachePolicy.ENABLED_KEY, true);
+    conf.setFloat(CompactionOutputCachePolicy.MIN_HIT_RATIO_KEY, 0.5f);
+    conf.setLong(CompactionOutputCachePolicy.MIN_LOOKUPS_KEY, 100);
+    CompactionOutputCachePolicy policy = CompactionOutputCachePolicy.create(conf);
+
+    List<StoreFile> files = new ArrayList<StoreFile>();
+    // Never read
+    files.add(mockFile(0, 0));
+    assertFalse(policy.shouldCacheOutput(files));
+    // Read mostly from the cache, but too seldom to matter
+    files.add(mockFile(40, 10));
+    assertFalse(policy.shouldCacheOutput(files));
+    // Read often enough, and mostly from the cache
+    files.add(mockFile(40, 10));
+    assertTrue(policy.shouldCacheOutput(files));
+    // Read often, but mostly from the file system
+    files.add(mockFile(10, 200));
+    assertFalse(policy.shouldCacheOutput(files));
+  }
+}
@@ -0,0 +1,183 @@
+/**
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.hadoop.hbase.regionserver.wal;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.IOException;
+import java.nio.channels.CompletionHandler;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.fs.FileSystem;
+import org.apache.hadoop.fs.Path;
+import org.apache.hadoop.hbase.HBaseTestingUtility;
+import org.apache.hadoop.hbase.HColumnDescriptor;
+import org.apache.hadoop.hbase.HConstants;
+import org.apache.hadoop.hbase.HRegionInfo;
+import org.apache.hadoop.hbase.HTableDescriptor;
+import org.apache.hadoop.hbase.KeyValue;
+import org.apache.hadoop.hbase.TableName;
+import org.apache.hadoop.hbase.io.asyncfs.AsyncFSOutput;
+import org.apache.hadoop.hbase.io.asyncfs.AsyncFSOutputHelper;
+import org.apache.hadoop.hbase.regionserver.MultiVersionConcurrencyControl;
+import org.apache.hadoop.hbase.testclassification.MediumTests;
+import org.apache.hadoop.hbase.testclassification.RegionServerTests;
+import org.apache.hadoop.hbase.util.Bytes;
+import org.apache.hadoop.hbase.wal.WAL;
+import org.apache.hadoop.hbase.wal.WALFactory;
+import org.apache.hadoop.hbase.wal.WALKey;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.experimental.categories.Category;
+import org.junit.rules.TestName;
+
+/**
+ * Tests {@link AsyncFSWAL} and the async output it writes through, on the local filesystem.
+ */
+@Category({RegionServerTests.class, MediumTests.class})
+public class TestAsyncFSWAL {
+  private static final HBaseTestingUtility TEST_UTIL = new HBaseTestingUtility();
+
+  private Configuration conf;
+  private FileSystem fs;
+  private Path dir;
+
+  @Rule
+  public final TestName currentTest = new TestName();
+
+  @Before
+  public void setUp() throws Exception {
+    conf = TEST_UTIL.getConfiguration();
+    fs = FileSystem.getLocal(conf);
+    dir = new Path(TEST_UTIL.getDataTestDir(), currentTest.getMethodName());
+    fs.delete(dir, true);
+    fs.mkdirs(dir);
+  }
+
+  @Test
+  public void testFlushCallbacksCompleteInOrder() throws Exception {
+    final int count = 100;
+    final List<Integer> completed = Collections.synchronizedList(new ArrayList<Integer>());
+    final CountDownLatch latch = new CountDownLatch(count);
+    final byte[] data = Bytes.toBytes("0123456789");
+    AsyncFSOutput out = AsyncFSOutputHelper.createOutput(fs, new Path(dir, "out"), false,
+      4096, (short) 1, 64 * 1024 * 1024);
+    for (int i = 0; i < count; i++) {
+      out.write(data, 0, data.length);
+      out.flush(i, new CompletionHandler<Long, Integer>() {
+        @Override
+        public void completed(Long length, Integer attachment) {
+          // Everything written before the flush must be out
+          assertTrue(length >= (attachment + 1) * data.length);
+          completed.add(attachment);
+          latch.countDown();
+        }
+
+        @Override
+        public void failed(Throwable cause, Integer attachment) {
+          latch.countDown();
+        }
+      }, i % 2 == 0);
+    }
+    assertTrue(latch.await(30, TimeUnit.SECONDS));
+    out.close();
+    assertEquals(count, completed.size());
+    for (int i = 0; i < count; i++) {
+      assertEquals(i, completed.get(i).intValue());
+    }
+    assertEquals(count * data.length, fs.getFileStatus(new Path(dir, "out")).getLen());
+  }
+
+  @Test
+  public void testConcurrentSyncsAreDurable() throws Exception {
+    final int threads = 4;
+    final int editsPerThread = 50;
+    final FSHLog wal = new AsyncFSWAL(fs, dir, "wals", HConstants.HREGION_OLDLOGDIR_NAME, conf,
+      null, true, null, null);
+    final HTableDescriptor htd =
+        new HTableDescriptor(TableName.valueOf(currentTest.getMethodName()));
+    htd.addFamily(new HColumnDescriptor("f"));
+    final HRegionInfo hri = new HRegionInfo(htd.getTableName());
+    final MultiVersionConcurrencyControl mvcc = new MultiVersionConcurrencyControl();
+    Path walPath;
+    try {
+      List<Thread> writers = new ArrayList<Thread>(threads);
+      final List<Throwable> errors = Collections.synchronizedList(new ArrayList<Throwable>());
+      for (int t = 0; t < threads; t++) {
+        Thread writer = new Thread() {
+          @Override
+          public void run() {
+            try {
+              for (int i = 0; i < editsPerThread; i++) {
+                append(wal, hri, htd, mvcc);
+              }
+            } catch (Throwable e) {
+              errors.add(e);
+            }
+          }
+        };
+        writers.add(writer);
+        writer.start();
+      }
+      for (Thread writer : writers) {
+        writer.join();
+      }
+      assertTrue(errors.toString(), errors.isEmpty());
+      walPath = wal.getCurrentFileName();
+      wal.rollWriter();
+    } finally {
+      wal.close();
+    }
+    Path archived = new Path(new Path(dir, HConstants.HREGION_OLDLOGDIR_NAME), walPath.getName());
+    WAL.Reader reader = WALFactory.createReader(fs,
+      fs.exists(walPath) ? walPath : archived, conf);
+    try {
+      for (int i = 0; i < threads * editsPerThread; i++) {
+        WAL.Entry entry = reader.next();
+        assertEquals(1, entry.getEdit().size());
+        assertTrue(Bytes.equals(hri.getEncodedNameAsBytes(),
+          entry.getKey().getEncodedRegionName()));
+      }
+      assertNull(reader.next());
+    } finally {
+      reader.close();
+    }
+  }
+
+  private static void append(WAL wal, HRegionInfo hri, HTableDescriptor htd,
+      MultiVersionConcurrencyControl mvcc) throws IOException {
+    final byte[] row = Bytes.toBytes("row");
+    long timestamp = System.currentTimeMillis();
+    WALEdit cols = new WALEdit();
+    cols.add(new KeyValue(row, Bytes.toBytes("f"), row, timestamp, row));
+    WALKey key = new WALKey(hri.getEncodedNameAsBytes(), htd.getTableName(),
+        WALKey.NO_SEQUENCE_ID, timestamp, WALKey.EMPTY_UUIDS, HConstants.NO_NONCE,
+        HConstants.NO_NONCE, mvcc);
+    long txid = wal.append(htd, hri, key, cols, true);
+    wal.sync(txid);
+  }
+}
@@ -20,6 +20,7 @@ package org.apache.hadoop.hbase.regionserver.wal;
 
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
 import static org.junit.Assert.assertTrue;
 import static org.junit.Assert.fail;
 
@@ -30,6 +31,8 @@ import java.util.Comparator;
 import java.util.List;
 import java.util.Set;
 import java.util.UUID;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
 
 import org.apache.commons.lang.mutable.MutableBoolean;
 import org.apache.commons.logging.Log;
@@ -421,6 +424,66 @@ public class TestFSHLog {
     }
   }
 
+  /**
+   * Syncs that come in while a sync runner waits out its group commit window must go out in the
+   * same filesystem sync rather than be spread over the other runners.
+   */
+  @Test
+  public void testGroupCommitWindowGrowsBatches() throws Exception {
+    final String name = "testGroupCommitWindowGrowsBatches";
+    final int handlers = 20;
+    Configuration conf1 = HBaseConfiguration.create(conf);
+    conf1.setInt("hbase.regionserver.hlog.syncer.count", 5);
+    conf1.setLong(GroupCommitWindow.MAX_WINDOW_KEY, 50000);
+    conf1.setFloat(GroupCommitWindow.LATENCY_FRACTION_KEY, 1000);
+    final AtomicInteger largestBatch = new AtomicInteger();
+    List<WALActionsListener> listeners = new ArrayList<WALActionsListener>();
+    listeners.add(new WALActionsListener.Base() {
+      @Override
+      public void postSync(long timeInNanos, int handlerSyncs) {
+        int largest;
+        while (handlerSyncs > (largest = largestBatch.get())
+            && !largestBatch.compareAndSet(largest, handlerSyncs)) {
+          continue;
+        }
+      }
+    });
+    final FSHLog log = new FSHLog(fs, FSUtils.getRootDir(conf1), name,
+        HConstants.HREGION_OLDLOGDIR_NAME, conf1, listeners, true, null, null);
+    try {
+      final HTableDescriptor htd =
+          new HTableDescriptor(TableName.valueOf("t1")).addFamily(new HColumnDescriptor("row"));
+      final HRegionInfo hri =
+          new HRegionInfo(htd.getTableName(), HConstants.EMPTY_START_ROW, HConstants.EMPTY_END_ROW);
+      final MultiVersionConcurrencyControl mvcc = new MultiVersionConcurrencyControl();
+      final AtomicReference<Throwable> failure = new AtomicReference<Throwable>();
+      Thread[] threads = new Thread[handlers];
+      for (int i = 0; i < handlers; i++) {
+        threads[i] = new Thread(name + "-" + i) {
+          @Override
+          public void run() {
+            try {
+              for (int j = 0; j < 10; j++) {
+                addEdits(log, hri, htd, 1, mvcc);
+              }
+            } catch (Throwable t) {
+              failure.compareAndSet(null, t);
+            }
+          }
+        };
+        threads[i].start();
+      }
+      for (Thread thread : threads) {
+        thread.join();
+      }
+      assertNull(failure.get());
+      // Round robin over the runners would leave each with about handlers / runners syncs
+      assertTrue("largest batch " + largestBatch.get(), largestBatch.get() > handlers / 2);
+    } finally {
+      log.close();
+    }
+  }
+
   @Test
   public void testSyncRunnerIndexOverflow() throws IOException, NoSuchFieldException,
       SecurityException, IllegalArgumentException, IllegalAccessException {
@@ -0,0 +1,110 @@
+/**
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.hadoop.hbase.regionserver.wal;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.concurrent.TimeUnit;
+
+import org.apache.hadoop.hbase.testclassification.RegionServerTests;
+import org.apache.hadoop.hbase.testclassification.SmallTests;
+import org.junit.Test;
+import org.junit.experimental.categories.Category;
+
+@Category({RegionServerTests.class, SmallTests.class})
+public class TestGroupCommitWindow {
+  private static final long SYNC_NANOS = TimeUnit.MILLISECONDS.toNanos(2);
+  private static final long MAX_WINDOW_NANOS = TimeUnit.MILLISECONDS.toNanos(1);
+
+  /**
+   * Feeds <code>batches</code> syncs, each taking {@link #SYNC_NANOS} and each releasing
+   * <code>handlerSyncs</code> handlers that came in over <code>gapNanos</code>.
+   */
+  private static long feed(GroupCommitWindow window, int batches, long gapNanos,
+      int handlerSyncs) {
+    long now = 0;
+    for (int i = 0; i < batches; i++) {
+      now += gapNanos;
+      window.update(now, handlerSyncs, SYNC_NANOS);
+    }
+    return window.getWindowNanos();
+  }
+
+  @Test
+  public void testNoWindowWithoutHistory() {
+    assertEquals(0, new GroupCommitWindow(MAX_WINDOW_NANOS, 0.2).getWindowNanos());
+  }
+
+  @Test
+  public void testClosedUnderLightLoad() {
+    // One handler sync every 10ms, while a sync takes 2ms: nothing to wait for
+    GroupCommitWindow window = new GroupCommitWindow(MAX_WINDOW_NANOS, 0.2);
+    assertEquals(0, feed(window, 20, TimeUnit.MILLISECONDS.toNanos(10), 1));
+  }
+
+  @Test
+  public void testOpensUnderHeavyLoad() {
+    // 20 handler syncs every 2ms: one every 100us, well inside 20% of a 2ms sync
+    GroupCommitWindow window = new GroupCommitWindow(MAX_WINDOW_NANOS, 0.2);
+    long open = feed(window, 20, SYNC_NANOS, 20);
+    assertEquals((long) (SYNC_NANOS * 0.2), open);
+    // Never wider than the configured maximum
+    window = new GroupCommitWindow(TimeUnit.MICROSECONDS.toNanos(100), 0.2);
+    assertEquals(TimeUnit.MICROSECONDS.toNanos(100), feed(window, 20, SYNC_NANOS, 20));
+  }
+
+  @Test
+  public void testNarrowsAsLoadDrops() {
+    GroupCommitWindow window = new GroupCommitWindow(MAX_WINDOW_NANOS, 0.2);
+    assertTrue(feed(window, 20, SYNC_NANOS, 20) > 0);
+    assertEquals(0, feed(window, 20, TimeUnit.MILLISECONDS.toNanos(50), 1));
+  }
+
+  /**
+   * Feeds two sync threads, each picking up <code>handlerSyncs</code> handler syncs every
+   * 2 * <code>gapNanos</code>, <code>gapNanos</code> apart, the later one reporting first.
+   */
+  private static long feedOutOfOrder(GroupCommitWindow window, int batches, long gapNanos,
+      int handlerSyncs) {
+    window.update(0, handlerSyncs, SYNC_NANOS);
+    for (long now = 2 * gapNanos; now <= 2 * batches * gapNanos; now += 2 * gapNanos) {
+      window.update(now, handlerSyncs, SYNC_NANOS);
+      window.update(now - gapNanos, handlerSyncs, SYNC_NANOS);
+    }
+    return window.getWindowNanos();
+  }
+
+  @Test
+  public void testSyncsReportedOutOfOrder() {
+    long oneMs = TimeUnit.MILLISECONDS.toNanos(1);
+    // 4 handler syncs every 2ms overall, one every 500us: longer than 20% of a 2ms sync
+    GroupCommitWindow window = new GroupCommitWindow(MAX_WINDOW_NANOS, 0.2);
+    assertEquals(0, feedOutOfOrder(window, 20, oneMs, 2));
+    // 20 handler syncs every 2ms overall, one every 100us
+    window = new GroupCommitWindow(MAX_WINDOW_NANOS, 0.2);
+    assertEquals((long) (SYNC_NANOS * 0.2), feedOutOfOrder(window, 20, oneMs, 10));
+  }
+
+  @Test
+  public void testDisabled() {
+    GroupCommitWindow window = new GroupCommitWindow(0, 0.2);
+    assertEquals(0, feed(window, 20, SYNC_NANOS, 20));
+  }
+}
@@ -28,6 +28,7 @@ import java.util.concurrent.TimeUnit;
 
 import static org.junit.Assert.assertEquals;
 import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
 import static org.mockito.Mockito.times;
 import static org.mockito.Mockito.verify;
 
@@ -53,6 +54,18 @@ public class TestMetricsWAL {
     MetricsWAL metricsWAL = new MetricsWAL(source);
     metricsWAL.postSync(nanos, 1);
     verify(source, times(1)).incrementSyncTime(145);
+    verify(source, times(1)).incrementSyncBatchSize(1);
+    // A sync releasing no handlers is not a batch
+    metricsWAL.postSync(nanos, 0);
+    verify(source, never()).incrementSyncBatchSize(0);
+  }
+
+  @Test
+  public void testPostGroupCommitWait() throws Exception {
+    MetricsWALSource source = mock(MetricsWALSourceImpl.class);
+    MetricsWAL metricsWAL = new MetricsWAL(source);
+    metricsWAL.postGroupCommitWait(TimeUnit.MICROSECONDS.toNanos(250));
+    verify(source, times(1)).incrementGroupCommitWaitTime(250);
   }
 
   @Test
@@ -120,6 +120,40 @@ public class TestBloomFilterChunk extends TestCase {
     // test: foldFactor > log(max/actual)
   }
 
+  public void testBlockedBloom() throws Exception {
+    float err = (float) 0.01;
+    BloomFilterChunk b = BloomFilterUtil.createBySize(4096, err, Hash.MURMUR_HASH, 3, true);
+    b.allocBloom();
+    assertTrue(b.isBlocked());
+    assertEquals(4096, b.getByteSize());
+    assertTrue(b.getMaxKeys() < BloomFilterUtil.computeMaxKeys(4096 * 8, err, b.getHashCount()));
+    assertTrue(BloomFilterUtil.actualBlockedErrorRate(b.getMaxKeys(), 4096 * 8,
+        b.getHashCount()) <= err);
+    assertEquals(b.getByteSize(), b.createAnother().getByteSize());
+    assertTrue(b.createAnother().isBlocked());
+
+    for (int i = 0; i < 110; ++i) {
+      b.add(Bytes.toBytes(i));
+    }
+    // folds down to whole blocks only
+    b.compactBloom();
+    assertEquals(256, b.getByteSize());
+
+    int falsePositives = 0;
+    for (int i = 0; i < 1110; ++i) {
+      byte[] bytes = Bytes.toBytes(i);
+      if (BloomFilterUtil.containsBlocked(bytes, 0, bytes.length, new MultiByteBuff(b.bloom), 0,
+          (int) b.byteSize, b.hash, b.hashCount)) {
+        if (i >= 110) {
+          falsePositives++;
+        }
+      } else {
+        assertFalse(i < 110);
+      }
+    }
+    assertTrue("False positives: " + falsePositives, falsePositives <= 1000 * err);
+  }
+
   public void testBloomPerf() throws Exception {
     // add
     float err = (float)0.01;